@@ -3,6 +3,7 @@ import com.github.gradle.node.npm.task.NpmTask
 plugins {
   kotlin("jvm") version "1.5.10"
   id("com.github.node-gradle.node") version "3.0.1"
+  id("me.champeau.jmh") version "0.6.5"
 }
 
 group "com.jonathanpotts"
@@ -19,6 +20,24 @@ dependencies {
   compileOnly("org.jetbrains.kotlin:kotlin-stdlib-jdk8:1.5.10")
   compileOnly("org.spigotmc:spigot-api:1.17-R0.1-SNAPSHOT")
   implementation("com.github.imcdonagh:image4j:0.7.2")
+  jmh("org.spigotmc:spigot-api:1.17-R0.1-SNAPSHOT")
+  testImplementation("org.spigotmc:spigot-api:1.17-R0.1-SNAPSHOT")
+  testImplementation("org.junit.jupiter:junit-jupiter:5.7.2")
+}
+
+tasks.test {
+  useJUnitPlatform()
+}
+
+jmh {
+  jmhVersion.set("1.32")
+  warmupIterations.set(2)
+  warmup.set("1s")
+  iterations.set(3)
+  timeOnIteration.set("1s")
+  fork.set(1)
+  profilers.add("gc")
+  resultFormat.set("JSON")
 }
 
 node {
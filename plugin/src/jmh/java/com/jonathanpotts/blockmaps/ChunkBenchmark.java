@@ -0,0 +1,251 @@
+package com.jonathanpotts.blockmaps;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.jonathanpotts.blockmaps.models.BlockDataModel;
+import com.jonathanpotts.blockmaps.models.ChunkModel;
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks the stages of rendering a chunk on a worker thread: scanning the
+ * blocks, serializing them, compressing the data and writing the chunk file.
+ * Run with {@code ./gradlew jmh}, which also reports allocation rates through
+ * the GC profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChunkBenchmark {
+  /**
+   * Kind of chunk being rendered.
+   */
+  @Param({ "TERRAIN", "CAVES", "OCEAN", "MOSTLY_AIR" })
+  public SyntheticChunks.Kind kind;
+
+  /**
+   * The gson object used to serialize JSON chunks.
+   */
+  private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+  /**
+   * The captured chunk.
+   */
+  private CapturedChunk chunk;
+
+  /**
+   * The scanned blocks of the chunk.
+   */
+  private ChunkScan scan;
+
+  /**
+   * Table interning the block states of rendered blocks.
+   */
+  private BlockStateTable blockStates;
+
+  /**
+   * Processed blocks of the chunk.
+   */
+  private BlockDataModel[] blocks;
+
+  /**
+   * Biomes of the chunk.
+   */
+  private BiomeGrid biomes;
+
+  /**
+   * The chunk encoded in the binary format.
+   */
+  private byte[] chunkBinary;
+
+  /**
+   * The chunk encoded in the binary format with its last byte flipped, so
+   * that writing alternates between different contents.
+   */
+  private byte[] changedChunkBinary;
+
+  /**
+   * Folder the chunk files are written to.
+   */
+  private Path outputPath;
+
+  /**
+   * Writer of the chunk files.
+   */
+  private GzipFileWriter gzipWriter;
+
+  /**
+   * Number of times the changed chunk file has been written.
+   */
+  private long writes;
+
+  /**
+   * Generates the chunk and the data used by the later stages.
+   *
+   * @throws IOException Thrown if the output folder could not be created.
+   */
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    chunk = SyntheticChunks.create(kind, new VectorXZ(3, -2));
+    scan = new ChunkScan(chunk);
+    blockStates = new BlockStateTable();
+    blocks = CommandRefreshMapData.scanBlocks(chunk, scan, blockStates, true);
+    biomes = new BiomeGrid(chunk);
+
+    if (blocks == null) {
+      blocks = new BlockDataModel[0];
+    }
+
+    chunkBinary = BinaryChunkWriter.write(blocks, chunk.minHeight, chunk.maxHeight, blockStates, biomes);
+    changedChunkBinary = chunkBinary.clone();
+    changedChunkBinary[changedChunkBinary.length - 1] ^= 1;
+
+    outputPath = Files.createTempDirectory("blockmaps-benchmark");
+    OutputManifest manifest = new OutputManifest(outputPath);
+    manifest.beginGeneration();
+    gzipWriter = new GzipFileWriter(manifest, -1, GzipFileWriter.SyncMode.NONE, new RenderMetrics());
+  }
+
+  /**
+   * Deletes the written chunk files.
+   *
+   * @throws IOException Thrown if the files could not be deleted.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    gzipWriter.close();
+
+    try (Stream<Path> paths = Files.walk(outputPath)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  /**
+   * Reads the blocks from the snapshot and classifies them.
+   *
+   * @return The scan.
+   */
+  @Benchmark
+  public ChunkScan scanChunk() {
+    return new ChunkScan(chunk);
+  }
+
+  /**
+   * Culls hidden blocks and interns the block states and light levels of the
+   * remaining blocks.
+   *
+   * @return The processed blocks.
+   */
+  @Benchmark
+  public BlockDataModel[] processBlocks() {
+    return CommandRefreshMapData.scanBlocks(chunk, scan, blockStates, true);
+  }
+
+  /**
+   * Serializes the chunk to JSON.
+   *
+   * @return Number of bytes serialized.
+   * @throws IOException Thrown if the chunk could not be serialized.
+   */
+  @Benchmark
+  public long serializeJson() throws IOException {
+    ChunkModel chunkModel = new ChunkModel();
+    chunkModel.blocks = CommandRefreshMapData.toNestedMap(blocks, chunk.minHeight);
+    chunkModel.biomes = biomes.toModel();
+
+    CountingOutputStream stream = new CountingOutputStream();
+    Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+    gson.toJson(chunkModel, ChunkModel.class, gson.newJsonWriter(writer));
+    writer.flush();
+
+    return stream.count;
+  }
+
+  /**
+   * Serializes the chunk to the binary format.
+   *
+   * @return The encoded chunk.
+   * @throws IOException Thrown if the chunk could not be encoded.
+   */
+  @Benchmark
+  public byte[] serializeBinary() throws IOException {
+    return BinaryChunkWriter.write(blocks, chunk.minHeight, chunk.maxHeight, blockStates, biomes);
+  }
+
+  /**
+   * Compresses the binary chunk in memory as done for region packs.
+   *
+   * @return The compressed chunk.
+   * @throws IOException Thrown if the chunk could not be compressed.
+   */
+  @Benchmark
+  public byte[] compressBinary() throws IOException {
+    return gzipWriter.compress(stream -> stream.write(chunkBinary));
+  }
+
+  /**
+   * Writes a chunk file whose contents changed since it was last written.
+   *
+   * @return Number of bytes written.
+   * @throws IOException Thrown if the file could not be written.
+   */
+  @Benchmark
+  public long writeChangedFile() throws IOException {
+    byte[] bytes = (writes++ & 1) == 0 ? chunkBinary : changedChunkBinary;
+    return gzipWriter.write(outputPath.resolve("changed" + Constants.BINARY_CHUNK_EXTENSION),
+        stream -> stream.write(bytes));
+  }
+
+  /**
+   * Writes a chunk file that already contains the same contents, which is only
+   * compressed and hashed.
+   *
+   * @return Number of bytes written.
+   * @throws IOException Thrown if the file could not be written.
+   */
+  @Benchmark
+  public long writeUnchangedFile() throws IOException {
+    return gzipWriter.write(outputPath.resolve("unchanged" + Constants.BINARY_CHUNK_EXTENSION),
+        stream -> stream.write(chunkBinary));
+  }
+
+  /**
+   * Stream counting and discarding the bytes written to it.
+   */
+  private static class CountingOutputStream extends OutputStream {
+    /**
+     * Number of bytes written.
+     */
+    long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+}
@@ -0,0 +1,400 @@
+package com.jonathanpotts.blockmaps;
+
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+import org.bukkit.Material;
+import org.bukkit.block.Biome;
+import org.bukkit.block.data.BlockData;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates deterministic chunks for benchmarking without a running server.
+ * The chunks are stored in {@link AnvilChunkSnapshot}s, the same snapshots the
+ * plugin decodes from region files, with block data that only reports its
+ * material and block state string.
+ */
+public final class SyntheticChunks {
+  /**
+   * Minimum height of the generated worlds.
+   */
+  public static final int MIN_HEIGHT = -64;
+
+  /**
+   * Maximum height of the generated worlds.
+   */
+  public static final int MAX_HEIGHT = 320;
+
+  /**
+   * Height of the sea level.
+   */
+  private static final int SEA_LEVEL = 62;
+
+  /**
+   * Distance in blocks between the points of the value noise lattice.
+   */
+  private static final int NOISE_SCALE = 8;
+
+  /**
+   * Block data of each material.
+   */
+  private static final Map<Material, BlockData> BLOCK_DATA = new EnumMap<>(Material.class);
+
+  /**
+   * Kinds of chunks that can be generated.
+   */
+  public enum Kind {
+    /**
+     * Solid terrain with a grass surface.
+     */
+    TERRAIN,
+
+    /**
+     * Terrain with lit caves and ores below the surface.
+     */
+    CAVES,
+
+    /**
+     * A sea floor below deep water.
+     */
+    OCEAN,
+
+    /**
+     * Small floating islands in an otherwise empty chunk.
+     */
+    MOSTLY_AIR
+  }
+
+  private SyntheticChunks() {
+  }
+
+  /**
+   * Generates a captured chunk.
+   *
+   * @param kind        Kind of chunk to generate.
+   * @param coordinates Coordinates of the chunk.
+   * @return The captured chunk.
+   */
+  public static CapturedChunk create(Kind kind, VectorXZ coordinates) {
+    int height = MAX_HEIGHT - MIN_HEIGHT;
+    BlockData[] blocks = new BlockData[height * Constants.WIDTH_OF_CHUNK * Constants.DEPTH_OF_CHUNK];
+    byte[] skyLight = new byte[blocks.length];
+    byte[] emittedLight = new byte[blocks.length];
+
+    for (int z = 0; z < Constants.DEPTH_OF_CHUNK; z++) {
+      for (int x = 0; x < Constants.WIDTH_OF_CHUNK; x++) {
+        int blockX = coordinates.x * Constants.WIDTH_OF_CHUNK + x;
+        int blockZ = coordinates.z * Constants.DEPTH_OF_CHUNK + z;
+
+        generateColumn(kind, blockX, blockZ, x, z, blocks, emittedLight);
+        lightColumn(x, z, blocks, skyLight);
+      }
+    }
+
+    Biome biome = kind == Kind.OCEAN ? Biome.DEEP_OCEAN
+        : kind == Kind.MOSTLY_AIR ? Biome.SMALL_END_ISLANDS : Biome.PLAINS;
+    Biome[] biomes = new Biome[height / AnvilChunkSnapshot.BIOME_CELL_SIZE
+        * (Constants.WIDTH_OF_CHUNK / AnvilChunkSnapshot.BIOME_CELL_SIZE)
+        * (Constants.DEPTH_OF_CHUNK / AnvilChunkSnapshot.BIOME_CELL_SIZE)];
+
+    for (int i = 0; i < biomes.length; i++) {
+      biomes[i] = kind == Kind.CAVES && i < biomes.length / 4 ? Biome.DRIPSTONE_CAVES : biome;
+    }
+
+    AnvilChunkSnapshot snapshot = pack(coordinates, blocks, skyLight, emittedLight, biomes);
+    RegionBatch region = new RegionBatch(null, RegionBatch.getRegionCoordinates(coordinates));
+
+    return new CapturedChunk(region, coordinates, snapshot, MIN_HEIGHT, MAX_HEIGHT,
+        CapturedChunk.estimateBytes(MIN_HEIGHT, MAX_HEIGHT));
+  }
+
+  /**
+   * Gets block data that reports a material and its default block state.
+   *
+   * @param material The material.
+   * @return The block data, which is the same instance for each material.
+   */
+  public static synchronized BlockData getBlockData(Material material) {
+    return BLOCK_DATA.computeIfAbsent(material, SyntheticChunks::createBlockData);
+  }
+
+  /**
+   * Generates the blocks of a column.
+   *
+   * @param kind         Kind of chunk to generate.
+   * @param blockX       X coordinate of the column in the world.
+   * @param blockZ       Z coordinate of the column in the world.
+   * @param x            X coordinate of the column in the chunk.
+   * @param z            Z coordinate of the column in the chunk.
+   * @param blocks       Blocks of the chunk in YZX order.
+   * @param emittedLight Emitted light levels of the chunk in YZX order.
+   */
+  private static void generateColumn(Kind kind, int blockX, int blockZ, int x, int z, BlockData[] blocks,
+      byte[] emittedLight) {
+    double surfaceNoise = noise2(blockX, blockZ);
+
+    for (int y = MIN_HEIGHT; y < MAX_HEIGHT; y++) {
+      int index = getIndex(x, y, z);
+      Material material;
+
+      switch (kind) {
+        case TERRAIN:
+          material = getTerrain(y, SEA_LEVEL + 4 + (int) (surfaceNoise * 12));
+          break;
+        case CAVES:
+          material = getTerrain(y, SEA_LEVEL + 4 + (int) (surfaceNoise * 12));
+
+          if (material != Material.AIR && material != Material.BEDROCK && y < SEA_LEVEL - 8) {
+            if (noise3(blockX, y, blockZ) > 0.6) {
+              material = y < MIN_HEIGHT + 10 ? Material.LAVA : Material.CAVE_AIR;
+              emittedLight[index] = (byte) (material == Material.LAVA ? 15 : hash(blockX, y, blockZ) & 7);
+            } else if ((hash(blockX, y, blockZ) & 63) == 0) {
+              material = y < 0 ? Material.DEEPSLATE_IRON_ORE : Material.COAL_ORE;
+            }
+          }
+          break;
+        case OCEAN:
+          int floor = SEA_LEVEL - 24 + (int) (surfaceNoise * 6);
+
+          if (y <= floor) {
+            material = getTerrain(y, floor);
+
+            if (material == Material.GRASS_BLOCK || material == Material.DIRT) {
+              material = (hash(blockX, y, blockZ) & 3) == 0 ? Material.GRAVEL : Material.SAND;
+            }
+          } else if (y == floor + 1 && (hash(blockX, y, blockZ) & 7) == 0) {
+            material = Material.SEAGRASS;
+          } else {
+            material = y <= SEA_LEVEL ? Material.WATER : Material.AIR;
+          }
+          break;
+        default:
+          double island = noise3(blockX, y, blockZ);
+          material = y > SEA_LEVEL && y < SEA_LEVEL + 24 && island > 0.85 ? Material.END_STONE : Material.AIR;
+          break;
+      }
+
+      blocks[index] = getBlockData(material);
+    }
+  }
+
+  /**
+   * Gets the material of solid terrain.
+   *
+   * @param y       Y coordinate of the block.
+   * @param surface Y coordinate of the surface of the column.
+   * @return The material.
+   */
+  private static Material getTerrain(int y, int surface) {
+    if (y == MIN_HEIGHT) {
+      return Material.BEDROCK;
+    } else if (y > surface) {
+      return Material.AIR;
+    } else if (y == surface) {
+      return Material.GRASS_BLOCK;
+    } else if (y > surface - 4) {
+      return Material.DIRT;
+    } else if (y < 0) {
+      return Material.DEEPSLATE;
+    } else {
+      return Material.STONE;
+    }
+  }
+
+  /**
+   * Calculates the sky light of a column, which is full until the first solid
+   * block and drops by one for each block of water.
+   *
+   * @param x        X coordinate of the column in the chunk.
+   * @param z        Z coordinate of the column in the chunk.
+   * @param blocks   Blocks of the chunk in YZX order.
+   * @param skyLight Sky light levels of the chunk in YZX order.
+   */
+  private static void lightColumn(int x, int z, BlockData[] blocks, byte[] skyLight) {
+    int light = Constants.MAX_LIGHT_LEVEL;
+
+    for (int y = MAX_HEIGHT - 1; y >= MIN_HEIGHT; y--) {
+      int index = getIndex(x, y, z);
+      Material material = blocks[index].getMaterial();
+
+      if (material == Material.WATER || material == Material.SEAGRASS) {
+        light = Math.max(light - 1, Constants.MIN_LIGHT_LEVEL);
+      } else if (!material.isAir()) {
+        light = Constants.MIN_LIGHT_LEVEL;
+      }
+
+      skyLight[index] = (byte) light;
+    }
+  }
+
+  /**
+   * Packs the blocks and light levels of a chunk into sections.
+   *
+   * @param coordinates  Coordinates of the chunk.
+   * @param blocks       Blocks of the chunk in YZX order.
+   * @param skyLight     Sky light levels of the chunk in YZX order.
+   * @param emittedLight Emitted light levels of the chunk in YZX order.
+   * @param biomes       Biome of each 4x4x4 cell.
+   * @return The chunk snapshot.
+   */
+  private static AnvilChunkSnapshot pack(VectorXZ coordinates, BlockData[] blocks, byte[] skyLight,
+      byte[] emittedLight, Biome[] biomes) {
+    int sections = (MAX_HEIGHT - MIN_HEIGHT) / Constants.HEIGHT_OF_SECTION;
+    BlockData[][] palettes = new BlockData[sections][];
+    char[][] indices = new char[sections][];
+    byte[][] packedSkyLight = new byte[sections][];
+    byte[][] packedEmittedLight = new byte[sections][];
+    BlockData air = getBlockData(Material.AIR);
+
+    for (int section = 0; section < sections; section++) {
+      int offset = section * AnvilChunkSnapshot.BLOCKS_PER_SECTION;
+      List<BlockData> palette = new ArrayList<>();
+      char[] sectionIndices = new char[AnvilChunkSnapshot.BLOCKS_PER_SECTION];
+      byte[] sectionSkyLight = new byte[AnvilChunkSnapshot.BLOCKS_PER_SECTION / 2];
+      byte[] sectionEmittedLight = new byte[AnvilChunkSnapshot.BLOCKS_PER_SECTION / 2];
+      boolean emits = false;
+
+      for (int i = 0; i < AnvilChunkSnapshot.BLOCKS_PER_SECTION; i++) {
+        int paletteIndex = palette.indexOf(blocks[offset + i]);
+
+        if (paletteIndex < 0) {
+          paletteIndex = palette.size();
+          palette.add(blocks[offset + i]);
+        }
+
+        sectionIndices[i] = (char) paletteIndex;
+        setNibble(sectionSkyLight, i, skyLight[offset + i]);
+        setNibble(sectionEmittedLight, i, emittedLight[offset + i]);
+        emits |= emittedLight[offset + i] != 0;
+      }
+
+      if (palette.size() > 1 || palette.get(0) != air) {
+        palettes[section] = palette.toArray(new BlockData[0]);
+        indices[section] = palette.size() > 1 ? sectionIndices : null;
+      }
+
+      packedSkyLight[section] = sectionSkyLight;
+      packedEmittedLight[section] = emits ? sectionEmittedLight : null;
+    }
+
+    return new AnvilChunkSnapshot("benchmark", coordinates.x, coordinates.z, MIN_HEIGHT, air, palettes, indices,
+        packedSkyLight, packedEmittedLight, biomes, 0);
+  }
+
+  /**
+   * Creates block data that only supports the methods used when rendering
+   * chunks.
+   *
+   * @param material The material.
+   * @return The block data.
+   */
+  private static BlockData createBlockData(Material material) {
+    String asString = material.getKey().toString();
+    BlockData[] self = new BlockData[1];
+
+    self[0] = (BlockData) Proxy.newProxyInstance(BlockData.class.getClassLoader(), new Class<?>[] { BlockData.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getMaterial":
+              return material;
+            case "getAsString":
+            case "toString":
+              return asString;
+            case "matches":
+            case "equals":
+              return proxy == args[0];
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "clone":
+              return self[0];
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+
+    return self[0];
+  }
+
+  /**
+   * Gets the index of a block in YZX order.
+   *
+   * @param x X coordinate of the block in the chunk.
+   * @param y Y coordinate of the block.
+   * @param z Z coordinate of the block in the chunk.
+   * @return The index.
+   */
+  private static int getIndex(int x, int y, int z) {
+    return ((y - MIN_HEIGHT) * Constants.DEPTH_OF_CHUNK + z) * Constants.WIDTH_OF_CHUNK + x;
+  }
+
+  /**
+   * Sets a value in packed nibbles.
+   *
+   * @param nibbles The packed nibbles.
+   * @param index   Index of the nibble.
+   * @param value   The value.
+   */
+  private static void setNibble(byte[] nibbles, int index, int value) {
+    int shift = (index & 1) == 0 ? 0 : 4;
+    nibbles[index >> 1] = (byte) ((nibbles[index >> 1] & ~(0xF << shift)) | ((value & 0xF) << shift));
+  }
+
+  /**
+   * Interpolates two-dimensional value noise.
+   *
+   * @param x X coordinate.
+   * @param z Z coordinate.
+   * @return Noise from 0 to 1.
+   */
+  private static double noise2(int x, int z) {
+    return noise3(x, 0, z);
+  }
+
+  /**
+   * Interpolates three-dimensional value noise.
+   *
+   * @param x X coordinate.
+   * @param y Y coordinate.
+   * @param z Z coordinate.
+   * @return Noise from 0 to 1.
+   */
+  private static double noise3(int x, int y, int z) {
+    int cellX = Math.floorDiv(x, NOISE_SCALE);
+    int cellY = Math.floorDiv(y, NOISE_SCALE);
+    int cellZ = Math.floorDiv(z, NOISE_SCALE);
+    double fx = (double) Math.floorMod(x, NOISE_SCALE) / NOISE_SCALE;
+    double fy = (double) Math.floorMod(y, NOISE_SCALE) / NOISE_SCALE;
+    double fz = (double) Math.floorMod(z, NOISE_SCALE) / NOISE_SCALE;
+    double value = 0;
+
+    for (int corner = 0; corner < 8; corner++) {
+      int dx = corner & 1;
+      int dy = (corner >> 1) & 1;
+      int dz = (corner >> 2) & 1;
+      double weight = (dx == 1 ? fx : 1 - fx) * (dy == 1 ? fy : 1 - fy) * (dz == 1 ? fz : 1 - fz);
+
+      value += weight * (hash(cellX + dx, cellY + dy, cellZ + dz) & 0xFFFF) / 65536.0;
+    }
+
+    return value;
+  }
+
+  /**
+   * Hashes a position.
+   *
+   * @param x X coordinate.
+   * @param y Y coordinate.
+   * @param z Z coordinate.
+   * @return The hash.
+   */
+  private static int hash(int x, int y, int z) {
+    int hash = x * 73856093 ^ y * 19349663 ^ z * 83492791;
+    hash ^= hash >>> 16;
+    hash *= 0x85EBCA6B;
+    hash ^= hash >>> 13;
+    return hash;
+  }
+}
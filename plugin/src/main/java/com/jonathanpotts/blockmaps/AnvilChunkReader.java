@@ -0,0 +1,515 @@
+package com.jonathanpotts.blockmaps;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.block.data.BlockData;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decodes chunks read from region files into chunk snapshots on worker threads
+ * so unloaded chunks do not have to be loaded by the server to be rendered.
+ *
+ * <p>
+ * Supports the chunk format of Minecraft 1.17, where the chunk data is stored
+ * in a {@code Level} compound and biomes are stored as numeric IDs for the
+ * whole chunk, and the format of Minecraft 1.18 and later, where each section
+ * stores its own biome palette. Chunks that are not fully generated are
+ * treated as missing. Chunks that cannot be decoded cause an
+ * {@link IOException} so they can be captured from the server instead.
+ */
+public class AnvilChunkReader {
+  /**
+   * Status of chunks that are fully generated.
+   */
+  private static final String FULL_STATUS = "full";
+
+  /**
+   * Minimum number of bits used to store a block palette index.
+   */
+  private static final int MIN_BLOCK_INDEX_BITS = 4;
+
+  /**
+   * Number of biome cells in a chunk section.
+   */
+  private static final int BIOME_CELLS_PER_SECTION = 64;
+
+  /**
+   * Keys of the biomes with numeric IDs in the Minecraft 1.17 chunk format
+   * indexed by ID.
+   */
+  private static final Map<Integer, String> LEGACY_BIOME_KEYS = createLegacyBiomeKeys();
+
+  /**
+   * Packed sky light levels of a section without sky light.
+   */
+  private static final byte[] DARK_SECTION = new byte[AnvilChunkSnapshot.BLOCKS_PER_SECTION / 2];
+
+  /**
+   * Packed sky light levels of a section lit by the sky.
+   */
+  private static final byte[] LIT_SECTION = new byte[AnvilChunkSnapshot.BLOCKS_PER_SECTION / 2];
+
+  static {
+    Arrays.fill(LIT_SECTION, (byte) 0xFF);
+  }
+
+  /**
+   * Block data keyed by block state string.
+   */
+  private final Map<String, BlockData> blockData = new ConcurrentHashMap<>();
+
+  /**
+   * Biomes keyed by namespaced key.
+   */
+  private final Map<String, Biome> biomesByKey = new HashMap<>();
+
+  /**
+   * Creates a chunk reader.
+   */
+  public AnvilChunkReader() {
+    for (Biome biome : Biome.values()) {
+      biomesByKey.put(biome.getKey().toString(), biome);
+    }
+  }
+
+  /**
+   * Reads a chunk from a region file.
+   *
+   * @param regionFile The region file.
+   * @param chunk      The requested chunk.
+   * @return A snapshot of the chunk or null if the chunk has not been fully
+   *         generated.
+   * @throws IOException Thrown if the chunk could not be read or decoded.
+   */
+  public AnvilChunkSnapshot read(AnvilRegionFile regionFile, CapturedChunk chunk) throws IOException {
+    Map<String, Object> root = regionFile.readChunk(chunk.coordinates);
+
+    if (root == null) {
+      return null;
+    }
+
+    Map<String, Object> level = getCompound(root, "Level");
+    boolean legacy = level != null;
+
+    if (!legacy) {
+      level = root;
+    }
+
+    String status = get(level, "Status", String.class);
+
+    if (status == null || !stripNamespace(status).equals(FULL_STATUS)) {
+      return null;
+    }
+
+    Byte lightOn = get(level, "isLightOn", Byte.class);
+
+    if (lightOn == null || lightOn == 0) {
+      throw new IOException("Lighting of chunk has not been computed");
+    }
+
+    int minSection = chunk.minHeight >> 4;
+    int sectionCount = (chunk.maxHeight - chunk.minHeight) >> 4;
+    int cellsPerLayer = Constants.WIDTH_OF_CHUNK / AnvilChunkSnapshot.BIOME_CELL_SIZE * Constants.DEPTH_OF_CHUNK
+        / AnvilChunkSnapshot.BIOME_CELL_SIZE;
+    boolean hasSkyLight = chunk.world.getEnvironment() == World.Environment.NORMAL;
+
+    BlockData[][] palettes = new BlockData[sectionCount][];
+    char[][] blocks = new char[sectionCount][];
+    byte[][] emittedLight = new byte[sectionCount][];
+    Biome[] biomes = new Biome[sectionCount * Constants.HEIGHT_OF_SECTION / AnvilChunkSnapshot.BIOME_CELL_SIZE
+        * cellsPerLayer];
+    TreeMap<Integer, byte[]> storedSkyLight = new TreeMap<>();
+
+    List<?> sections = get(level, legacy ? "Sections" : "sections", List.class);
+
+    if (sections == null) {
+      throw new IOException("Chunk has no sections");
+    }
+
+    for (Object element : sections) {
+      @SuppressWarnings("unchecked")
+      Map<String, Object> section = (Map<String, Object>) element;
+      Byte sectionY = get(section, "Y", Byte.class);
+
+      if (sectionY == null) {
+        continue;
+      }
+
+      byte[] sky = get(section, "SkyLight", byte[].class);
+      if (sky != null && sky.length == DARK_SECTION.length) {
+        storedSkyLight.put((int) sectionY, sky);
+      }
+
+      int index = sectionY - minSection;
+
+      if (index < 0 || index >= sectionCount) {
+        continue;
+      }
+
+      byte[] emitted = get(section, "BlockLight", byte[].class);
+      if (emitted != null && emitted.length == DARK_SECTION.length) {
+        emittedLight[index] = emitted;
+      }
+
+      List<?> palette;
+      long[] data;
+
+      if (legacy) {
+        palette = get(section, "Palette", List.class);
+        data = get(section, "BlockStates", long[].class);
+      } else {
+        Map<String, Object> blockStates = getCompound(section, "block_states");
+        palette = blockStates != null ? get(blockStates, "palette", List.class) : null;
+        data = blockStates != null ? get(blockStates, "data", long[].class) : null;
+
+        Map<String, Object> biomeContainer = getCompound(section, "biomes");
+        if (biomeContainer != null) {
+          readSectionBiomes(biomeContainer, biomes, index * BIOME_CELLS_PER_SECTION);
+        }
+      }
+
+      if (palette != null && !palette.isEmpty()) {
+        palettes[index] = readBlockPalette(palette);
+        blocks[index] = palettes[index].length > 1
+            ? unpack(data, AnvilChunkSnapshot.BLOCKS_PER_SECTION,
+                Math.max(MIN_BLOCK_INDEX_BITS, getBits(palettes[index].length)), palettes[index].length)
+            : null;
+      }
+    }
+
+    if (legacy) {
+      readLegacyBiomes(get(level, "Biomes", int[].class), biomes);
+    }
+
+    for (Biome biome : biomes) {
+      if (biome == null) {
+        throw new IOException("Chunk is missing biomes");
+      }
+    }
+
+    Long lastUpdate = get(level, "LastUpdate", Long.class);
+
+    return new AnvilChunkSnapshot(chunk.world.getName(), chunk.coordinates.x, chunk.coordinates.z,
+        chunk.minHeight, getBlockData("minecraft:air"), palettes, blocks,
+        resolveSkyLight(storedSkyLight, minSection, sectionCount, hasSkyLight), emittedLight, biomes,
+        lastUpdate != null ? lastUpdate : 0);
+  }
+
+  /**
+   * Gets the sky light of each section. Sections without stored sky light
+   * repeat the bottom layer of the nearest section above them that has it, the
+   * same way the server fills them in.
+   *
+   * @param storedSkyLight Stored sky light keyed by section Y coordinate.
+   * @param minSection     Y coordinate of the lowest section.
+   * @param sectionCount   Number of sections.
+   * @param hasSkyLight    Status of the world having sky light.
+   * @return Packed sky light levels of each section.
+   */
+  private static byte[][] resolveSkyLight(TreeMap<Integer, byte[]> storedSkyLight, int minSection,
+      int sectionCount, boolean hasSkyLight) {
+    byte[][] skyLight = new byte[sectionCount][];
+    int layerBytes = Constants.WIDTH_OF_CHUNK * Constants.DEPTH_OF_CHUNK / 2;
+
+    for (int index = sectionCount - 1; index >= 0; index--) {
+      byte[] stored = storedSkyLight.get(minSection + index);
+
+      if (stored != null) {
+        skyLight[index] = stored;
+        continue;
+      }
+
+      if (!hasSkyLight) {
+        skyLight[index] = DARK_SECTION;
+        continue;
+      }
+
+      Map.Entry<Integer, byte[]> above = storedSkyLight.higherEntry(minSection + index);
+
+      if (above == null) {
+        skyLight[index] = LIT_SECTION;
+        continue;
+      }
+
+      byte[] repeated = new byte[DARK_SECTION.length];
+
+      for (int offset = 0; offset < repeated.length; offset += layerBytes) {
+        System.arraycopy(above.getValue(), 0, repeated, offset, layerBytes);
+      }
+
+      skyLight[index] = repeated;
+    }
+
+    return skyLight;
+  }
+
+  /**
+   * Reads a block palette.
+   *
+   * @param palette The palette entries containing block names and properties.
+   * @return Block data of each palette entry.
+   * @throws IOException Thrown if a block state is not known to the server.
+   */
+  private BlockData[] readBlockPalette(List<?> palette) throws IOException {
+    BlockData[] result = new BlockData[palette.size()];
+
+    for (int i = 0; i < result.length; i++) {
+      @SuppressWarnings("unchecked")
+      Map<String, Object> entry = (Map<String, Object>) palette.get(i);
+      String name = get(entry, "Name", String.class);
+
+      if (name == null) {
+        throw new IOException("Block palette entry has no name");
+      }
+
+      StringBuilder state = new StringBuilder(name);
+      Map<String, Object> properties = getCompound(entry, "Properties");
+
+      if (properties != null && !properties.isEmpty()) {
+        state.append('[');
+
+        for (Map.Entry<String, Object> property : new TreeMap<>(properties).entrySet()) {
+          if (state.charAt(state.length() - 1) != '[') {
+            state.append(',');
+          }
+
+          state.append(property.getKey()).append('=').append(property.getValue());
+        }
+
+        state.append(']');
+      }
+
+      result[i] = getBlockData(state.toString());
+    }
+
+    return result;
+  }
+
+  /**
+   * Gets the block data of a block state string.
+   *
+   * @param state The block state string.
+   * @return The block data.
+   * @throws IOException Thrown if the block state is not known to the server.
+   */
+  private BlockData getBlockData(String state) throws IOException {
+    BlockData data = blockData.get(state);
+
+    if (data == null) {
+      try {
+        data = Bukkit.createBlockData(state);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Unknown block state " + state, e);
+      }
+
+      blockData.put(state, data);
+    }
+
+    return data;
+  }
+
+  /**
+   * Reads the biomes of a section in the Minecraft 1.18 chunk format.
+   *
+   * @param container The biome palette container of the section.
+   * @param biomes    Biomes of the chunk.
+   * @param offset    Index of the first biome cell of the section.
+   * @throws IOException Thrown if a biome is not known to the server.
+   */
+  private void readSectionBiomes(Map<String, Object> container, Biome[] biomes, int offset) throws IOException {
+    List<?> palette = get(container, "palette", List.class);
+
+    if (palette == null || palette.isEmpty()) {
+      return;
+    }
+
+    Biome[] paletteBiomes = new Biome[palette.size()];
+    for (int i = 0; i < paletteBiomes.length; i++) {
+      paletteBiomes[i] = getBiome(String.valueOf(palette.get(i)));
+    }
+
+    if (paletteBiomes.length == 1) {
+      Arrays.fill(biomes, offset, offset + BIOME_CELLS_PER_SECTION, paletteBiomes[0]);
+      return;
+    }
+
+    char[] indices = unpack(get(container, "data", long[].class), BIOME_CELLS_PER_SECTION,
+        getBits(paletteBiomes.length), paletteBiomes.length);
+
+    for (int i = 0; i < BIOME_CELLS_PER_SECTION; i++) {
+      biomes[offset + i] = paletteBiomes[indices[i]];
+    }
+  }
+
+  /**
+   * Reads the biomes of a chunk in the Minecraft 1.17 chunk format.
+   *
+   * @param ids    Numeric biome IDs of the chunk.
+   * @param biomes Biomes of the chunk.
+   * @throws IOException Thrown if the biomes are missing or a biome is not
+   *                     known.
+   */
+  private void readLegacyBiomes(int[] ids, Biome[] biomes) throws IOException {
+    if (ids == null || ids.length != biomes.length) {
+      throw new IOException("Chunk has an unexpected number of biomes");
+    }
+
+    for (int i = 0; i < ids.length; i++) {
+      String key = LEGACY_BIOME_KEYS.get(ids[i]);
+
+      if (key == null) {
+        throw new IOException("Unknown biome ID " + ids[i]);
+      }
+
+      biomes[i] = getBiome(key);
+    }
+  }
+
+  /**
+   * Gets a biome by its namespaced key.
+   *
+   * @param key Namespaced key of the biome.
+   * @return The biome.
+   * @throws IOException Thrown if the biome is not known to the server.
+   */
+  private Biome getBiome(String key) throws IOException {
+    Biome biome = biomesByKey.get(key.indexOf(':') < 0 ? "minecraft:" + key : key);
+
+    if (biome == null) {
+      throw new IOException("Unknown biome " + key);
+    }
+
+    return biome;
+  }
+
+  /**
+   * Unpacks palette indices stored in longs where no index spans two longs.
+   *
+   * @param data        The packed indices.
+   * @param count       Number of indices.
+   * @param bits        Number of bits used by each index.
+   * @param paletteSize Size of the palette the indices refer to.
+   * @return The indices.
+   * @throws IOException Thrown if the data is not in the expected layout.
+   */
+  private static char[] unpack(long[] data, int count, int bits, int paletteSize) throws IOException {
+    int valuesPerLong = 64 / bits;
+
+    if (data == null || data.length != (count + valuesPerLong - 1) / valuesPerLong) {
+      throw new IOException("Palette indices are not in a supported layout");
+    }
+
+    char[] indices = new char[count];
+    long mask = (1L << bits) - 1;
+
+    for (int i = 0; i < count; i++) {
+      int index = (int) ((data[i / valuesPerLong] >>> ((i % valuesPerLong) * bits)) & mask);
+
+      if (index >= paletteSize) {
+        throw new IOException("Palette index " + index + " is out of range");
+      }
+
+      indices[i] = (char) index;
+    }
+
+    return indices;
+  }
+
+  /**
+   * Gets the number of bits needed to store indices into a palette.
+   *
+   * @param paletteSize Size of the palette.
+   * @return The number of bits.
+   */
+  private static int getBits(int paletteSize) {
+    return Math.max(1, 32 - Integer.numberOfLeadingZeros(paletteSize - 1));
+  }
+
+  /**
+   * Removes the namespace from a namespaced key.
+   *
+   * @param key The namespaced key.
+   * @return The key without its namespace.
+   */
+  private static String stripNamespace(String key) {
+    return key.substring(key.indexOf(':') + 1);
+  }
+
+  /**
+   * Gets a tag of a compound.
+   *
+   * @param <T>      Type of the tag value.
+   * @param compound The compound.
+   * @param name     Name of the tag.
+   * @param type     Type of the tag value.
+   * @return The value of the tag or null if the compound does not contain a tag
+   *         with the name and type.
+   */
+  private static <T> T get(Map<String, Object> compound, String name, Class<T> type) {
+    Object value = compound.get(name);
+    return type.isInstance(value) ? type.cast(value) : null;
+  }
+
+  /**
+   * Gets a compound tag of a compound.
+   *
+   * @param compound The compound.
+   * @param name     Name of the tag.
+   * @return The compound tag or null if the compound does not contain one with
+   *         the name.
+   */
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> getCompound(Map<String, Object> compound, String name) {
+    return get(compound, name, Map.class);
+  }
+
+  /**
+   * Creates the keys of the biomes with numeric IDs in the Minecraft 1.17 chunk
+   * format.
+   *
+   * @return Keys of the biomes indexed by ID.
+   */
+  private static Map<Integer, String> createLegacyBiomeKeys() {
+    String[] keys = { "ocean", "plains", "desert", "mountains", "forest", "taiga", "swamp", "river",
+        "nether_wastes", "the_end", "frozen_ocean", "frozen_river", "snowy_tundra", "snowy_mountains",
+        "mushroom_fields", "mushroom_field_shore", "beach", "desert_hills", "wooded_hills", "taiga_hills",
+        "mountain_edge", "jungle", "jungle_hills", "jungle_edge", "deep_ocean", "stone_shore", "snowy_beach",
+        "birch_forest", "birch_forest_hills", "dark_forest", "snowy_taiga", "snowy_taiga_hills",
+        "giant_tree_taiga", "giant_tree_taiga_hills", "wooded_mountains", "savanna", "savanna_plateau",
+        "badlands", "wooded_badlands_plateau", "badlands_plateau", "small_end_islands", "end_midlands",
+        "end_highlands", "end_barrens", "warm_ocean", "lukewarm_ocean", "cold_ocean", "deep_warm_ocean",
+        "deep_lukewarm_ocean", "deep_cold_ocean", "deep_frozen_ocean" };
+
+    Map<Integer, String> legacyKeys = new HashMap<>();
+
+    for (int i = 0; i < keys.length; i++) {
+      legacyKeys.put(i, "minecraft:" + keys[i]);
+    }
+
+    Object[][] variants = { { 127, "the_void" }, { 129, "sunflower_plains" }, { 130, "desert_lakes" },
+        { 131, "gravelly_mountains" }, { 132, "flower_forest" }, { 133, "taiga_mountains" },
+        { 134, "swamp_hills" }, { 140, "ice_spikes" }, { 149, "modified_jungle" },
+        { 151, "modified_jungle_edge" }, { 155, "tall_birch_forest" }, { 156, "tall_birch_hills" },
+        { 157, "dark_forest_hills" }, { 158, "snowy_taiga_mountains" }, { 160, "giant_spruce_taiga" },
+        { 161, "giant_spruce_taiga_hills" }, { 162, "modified_gravelly_mountains" },
+        { 163, "shattered_savanna" }, { 164, "shattered_savanna_plateau" }, { 165, "eroded_badlands" },
+        { 166, "modified_wooded_badlands_plateau" }, { 167, "modified_badlands_plateau" },
+        { 168, "bamboo_jungle" }, { 169, "bamboo_jungle_hills" }, { 170, "soul_sand_valley" },
+        { 171, "crimson_forest" }, { 172, "warped_forest" }, { 173, "basalt_deltas" },
+        { 174, "dripstone_caves" }, { 175, "lush_caves" } };
+
+    for (Object[] variant : variants) {
+      legacyKeys.put((Integer) variant[0], "minecraft:" + variant[1]);
+    }
+
+    return legacyKeys;
+  }
+}
@@ -0,0 +1,275 @@
+package com.jonathanpotts.blockmaps;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.block.Biome;
+import org.bukkit.block.data.BlockData;
+
+/**
+ * A chunk snapshot decoded from a region file by {@link AnvilChunkReader}
+ * instead of being captured from a loaded chunk.
+ *
+ * <p>
+ * Raw biome temperatures are not stored in region files, so they are not
+ * available from this snapshot.
+ */
+public class AnvilChunkSnapshot implements ChunkSnapshot {
+  /**
+   * Number of blocks in a chunk section.
+   */
+  static final int BLOCKS_PER_SECTION = Constants.WIDTH_OF_CHUNK * Constants.DEPTH_OF_CHUNK
+      * Constants.HEIGHT_OF_SECTION;
+
+  /**
+   * Width, depth and height in blocks of a biome cell.
+   */
+  static final int BIOME_CELL_SIZE = 4;
+
+  /**
+   * Name of the world containing the chunk.
+   */
+  private final String worldName;
+
+  /**
+   * X coordinate of the chunk.
+   */
+  private final int x;
+
+  /**
+   * Z coordinate of the chunk.
+   */
+  private final int z;
+
+  /**
+   * Minimum height of the world.
+   */
+  private final int minHeight;
+
+  /**
+   * Block data used for blocks in sections without blocks.
+   */
+  private final BlockData air;
+
+  /**
+   * Block palette of each section from the bottom up. Sections without blocks
+   * are null.
+   */
+  private final BlockData[][] palettes;
+
+  /**
+   * Palette index of each block of each section in YZX order. Sections with a
+   * single block state are null.
+   */
+  private final char[][] blocks;
+
+  /**
+   * Packed sky light levels of each section.
+   */
+  private final byte[][] skyLight;
+
+  /**
+   * Packed emitted light levels of each section. Sections without emitted
+   * light are null.
+   */
+  private final byte[][] emittedLight;
+
+  /**
+   * Biome of each 4x4x4 cell in YZX order starting at the minimum height.
+   */
+  private final Biome[] biomes;
+
+  /**
+   * Game time the chunk was last saved at.
+   */
+  private final long lastUpdate;
+
+  /**
+   * Creates a chunk snapshot from decoded chunk data.
+   *
+   * @param worldName    Name of the world containing the chunk.
+   * @param x            X coordinate of the chunk.
+   * @param z            Z coordinate of the chunk.
+   * @param minHeight    Minimum height of the world.
+   * @param air          Block data used for blocks in sections without blocks.
+   * @param palettes     Block palette of each section.
+   * @param blocks       Palette index of each block of each section.
+   * @param skyLight     Packed sky light levels of each section.
+   * @param emittedLight Packed emitted light levels of each section.
+   * @param biomes       Biome of each 4x4x4 cell.
+   * @param lastUpdate   Game time the chunk was last saved at.
+   */
+  AnvilChunkSnapshot(String worldName, int x, int z, int minHeight, BlockData air, BlockData[][] palettes,
+      char[][] blocks, byte[][] skyLight, byte[][] emittedLight, Biome[] biomes, long lastUpdate) {
+    this.worldName = worldName;
+    this.x = x;
+    this.z = z;
+    this.minHeight = minHeight;
+    this.air = air;
+    this.palettes = palettes;
+    this.blocks = blocks;
+    this.skyLight = skyLight;
+    this.emittedLight = emittedLight;
+    this.biomes = biomes;
+    this.lastUpdate = lastUpdate;
+  }
+
+  @Override
+  public int getX() {
+    return x;
+  }
+
+  @Override
+  public int getZ() {
+    return z;
+  }
+
+  @Override
+  public String getWorldName() {
+    return worldName;
+  }
+
+  @Override
+  public Material getBlockType(int x, int y, int z) {
+    return getBlockData(x, y, z).getMaterial();
+  }
+
+  @Override
+  public BlockData getBlockData(int x, int y, int z) {
+    int section = (y - minHeight) >> 4;
+    BlockData[] palette = palettes[section];
+
+    if (palette == null) {
+      return air;
+    }
+
+    char[] indices = blocks[section];
+    return indices != null ? palette[indices[getBlockIndex(x, y, z)]] : palette[0];
+  }
+
+  @Override
+  @Deprecated
+  public int getData(int x, int y, int z) {
+    return 0;
+  }
+
+  @Override
+  public int getBlockSkyLight(int x, int y, int z) {
+    return getNibble(skyLight[(y - minHeight) >> 4], getBlockIndex(x, y, z));
+  }
+
+  @Override
+  public int getBlockEmittedLight(int x, int y, int z) {
+    byte[] light = emittedLight[(y - minHeight) >> 4];
+    return light != null ? getNibble(light, getBlockIndex(x, y, z)) : Constants.MIN_LIGHT_LEVEL;
+  }
+
+  @Override
+  public int getHighestBlockYAt(int x, int z) {
+    for (int section = palettes.length - 1; section >= 0; section--) {
+      if (isSectionEmpty(section)) {
+        continue;
+      }
+
+      int sectionY = minHeight + section * Constants.HEIGHT_OF_SECTION;
+
+      for (int y = sectionY + Constants.HEIGHT_OF_SECTION - 1; y >= sectionY; y--) {
+        if (!getBlockData(x, y, z).getMaterial().isAir()) {
+          return y;
+        }
+      }
+    }
+
+    return minHeight;
+  }
+
+  @Override
+  @Deprecated
+  public Biome getBiome(int x, int z) {
+    return getBiome(x, Math.max(minHeight, 0), z);
+  }
+
+  @Override
+  public Biome getBiome(int x, int y, int z) {
+    int cellsY = biomes.length / (Constants.WIDTH_OF_CHUNK / BIOME_CELL_SIZE * Constants.DEPTH_OF_CHUNK
+        / BIOME_CELL_SIZE);
+    int cellY = Math.min(Math.max((y - minHeight) / BIOME_CELL_SIZE, 0), cellsY - 1);
+
+    return biomes[(cellY * (Constants.DEPTH_OF_CHUNK / BIOME_CELL_SIZE) + z / BIOME_CELL_SIZE)
+        * (Constants.WIDTH_OF_CHUNK / BIOME_CELL_SIZE) + x / BIOME_CELL_SIZE];
+  }
+
+  @Override
+  @Deprecated
+  public double getRawBiomeTemperature(int x, int z) {
+    throw new UnsupportedOperationException("Region files do not store biome temperatures");
+  }
+
+  @Override
+  public double getRawBiomeTemperature(int x, int y, int z) {
+    throw new UnsupportedOperationException("Region files do not store biome temperatures");
+  }
+
+  @Override
+  public long getCaptureFullTime() {
+    return lastUpdate;
+  }
+
+  @Override
+  public boolean isSectionEmpty(int sy) {
+    BlockData[] palette = palettes[sy];
+
+    if (palette == null) {
+      return true;
+    }
+
+    for (BlockData data : palette) {
+      if (!data.getMaterial().isAir()) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public boolean contains(BlockData block) {
+    for (BlockData[] palette : palettes) {
+      if (palette == null) {
+        continue;
+      }
+
+      for (BlockData data : palette) {
+        if (data.equals(block)) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Gets the index of a block within its section.
+   *
+   * @param x X coordinate of the block in the chunk.
+   * @param y Y coordinate of the block.
+   * @param z Z coordinate of the block in the chunk.
+   * @return Index of the block in YZX order.
+   */
+  private int getBlockIndex(int x, int y, int z) {
+    return (((y - minHeight) & (Constants.HEIGHT_OF_SECTION - 1)) * Constants.DEPTH_OF_CHUNK + z)
+        * Constants.WIDTH_OF_CHUNK + x;
+  }
+
+  /**
+   * Gets a value from packed nibbles.
+   *
+   * @param nibbles The packed nibbles.
+   * @param index   Index of the nibble.
+   * @return The value.
+   */
+  private static int getNibble(byte[] nibbles, int index) {
+    int value = nibbles[index >> 1];
+    return (index & 1) == 0 ? value & 0xF : (value >> 4) & 0xF;
+  }
+}
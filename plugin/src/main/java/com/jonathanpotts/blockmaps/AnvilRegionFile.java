@@ -0,0 +1,256 @@
+package com.jonathanpotts.blockmaps;
+
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads chunks from a region file in the Anvil format ({@code r.x.z.mca})
+ * without involving the server.
+ *
+ * <p>
+ * A region file starts with a table of 1024 big-endian locations, one for
+ * each chunk ordered by Z and then X within the region. Each location is the
+ * offset of the chunk in 4 KiB sectors (u24) followed by its length in sectors
+ * (u8). Chunks that have not been saved have a location of 0. The locations
+ * are followed by a table of 1024 big-endian timestamps (u32) of when each
+ * chunk was last saved in seconds since the epoch. Each chunk starts
+ * with its length in bytes (u32) and its compression type (u8) followed by the
+ * compressed NBT data. Chunks too large for the region file are stored in a
+ * separate {@code c.x.z.mcc} file next to it.
+ */
+public class AnvilRegionFile {
+  /**
+   * Size in bytes of a sector.
+   */
+  private static final int SECTOR_BYTES = 4096;
+
+  /**
+   * Size in bytes of the location and timestamp tables.
+   */
+  private static final int HEADER_BYTES = 2 * SECTOR_BYTES;
+
+  /**
+   * Compression type of GZIP-compressed chunks.
+   */
+  private static final int COMPRESSION_GZIP = 1;
+
+  /**
+   * Compression type of zlib-compressed chunks.
+   */
+  private static final int COMPRESSION_ZLIB = 2;
+
+  /**
+   * Compression type of uncompressed chunks.
+   */
+  private static final int COMPRESSION_NONE = 3;
+
+  /**
+   * Flag in the compression type of chunks stored in a separate file.
+   */
+  private static final int EXTERNAL_FLAG = 0x80;
+
+  /**
+   * Path of the region file.
+   */
+  public final Path path;
+
+  /**
+   * Creates a reader of a region file.
+   *
+   * @param path Path of the region file.
+   */
+  public AnvilRegionFile(Path path) {
+    this.path = path;
+  }
+
+  /**
+   * Reads the location and timestamp tables of the region file.
+   *
+   * @return The header of the region file. If the region file does not exist
+   *         or is too small to contain a header, no chunks are present.
+   * @throws IOException Thrown if the header could not be read.
+   */
+  public Header readHeader() throws IOException {
+    ByteBuffer header;
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_BYTES) {
+        return new Header(new int[RegionBatch.CHUNKS_PER_REGION], new int[RegionBatch.CHUNKS_PER_REGION]);
+      }
+
+      header = readFully(channel, 0, HEADER_BYTES);
+    } catch (NoSuchFileException e) {
+      return new Header(new int[RegionBatch.CHUNKS_PER_REGION], new int[RegionBatch.CHUNKS_PER_REGION]);
+    }
+
+    int[] locations = new int[RegionBatch.CHUNKS_PER_REGION];
+    int[] timestamps = new int[RegionBatch.CHUNKS_PER_REGION];
+    header.flip();
+    header.asIntBuffer().get(locations).get(timestamps);
+
+    return new Header(locations, timestamps);
+  }
+
+  /**
+   * Reads the NBT data of a chunk. Safe to call from multiple threads.
+   *
+   * @param chunkCoordinates Coordinates of the chunk.
+   * @return The root compound of the chunk or null if the chunk has not been
+   *         saved.
+   * @throws IOException Thrown if the chunk could not be read.
+   */
+  public Map<String, Object> readChunk(VectorXZ chunkCoordinates) throws IOException {
+    byte[] data;
+    int compression;
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer location = readFully(channel, RegionBatch.getChunkIndex(chunkCoordinates) * 4L, 4);
+      int entry = location.getInt(0);
+      long offset = (long) (entry >>> 8) * SECTOR_BYTES;
+      int sectors = entry & 0xFF;
+
+      if (offset == 0 || sectors == 0) {
+        return null;
+      }
+
+      ByteBuffer header = readFully(channel, offset, 5);
+      int length = header.getInt(0) - 1;
+      compression = header.get(4) & 0xFF;
+
+      if (length < 0 || length + 5L > (long) sectors * SECTOR_BYTES) {
+        throw new IOException("Invalid length of chunk " + chunkCoordinates.x + "," + chunkCoordinates.z
+            + " in " + path);
+      }
+
+      if ((compression & EXTERNAL_FLAG) != 0) {
+        compression &= ~EXTERNAL_FLAG;
+        data = readExternalChunk(chunkCoordinates);
+      } else {
+        data = readFully(channel, offset + 5, length).array();
+      }
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(decompress(data, compression)))) {
+      return NbtReader.readRoot(input);
+    }
+  }
+
+  /**
+   * The location and timestamp tables of a region file.
+   */
+  public static class Header {
+    /**
+     * Location of each chunk indexed by chunk index.
+     */
+    private final int[] locations;
+
+    /**
+     * Timestamp of each chunk indexed by chunk index.
+     */
+    private final int[] timestamps;
+
+    /**
+     * Creates a region file header.
+     *
+     * @param locations  Location of each chunk indexed by chunk index.
+     * @param timestamps Timestamp of each chunk indexed by chunk index.
+     */
+    Header(int[] locations, int[] timestamps) {
+      this.locations = locations;
+      this.timestamps = timestamps;
+    }
+
+    /**
+     * Checks if a chunk has been saved to the region file.
+     *
+     * @param index Index of the chunk within the region.
+     * @return True if the region file contains the chunk.
+     */
+    public boolean isPresent(int index) {
+      return (locations[index] >>> 8) != 0 && (locations[index] & 0xFF) != 0;
+    }
+
+    /**
+     * Gets when a chunk was last saved to the region file.
+     *
+     * @param index Index of the chunk within the region.
+     * @return Time in seconds since the epoch or 0 if the chunk has not been
+     *         saved.
+     */
+    public long getTimestamp(int index) {
+      return timestamps[index] & 0xFFFFFFFFL;
+    }
+  }
+
+  /**
+   * Reads the data of a chunk stored in a separate file.
+   *
+   * @param chunkCoordinates Coordinates of the chunk.
+   * @return The compressed data of the chunk.
+   * @throws IOException Thrown if the file could not be read.
+   */
+  private byte[] readExternalChunk(VectorXZ chunkCoordinates) throws IOException {
+    return Files.readAllBytes(
+        path.resolveSibling("c." + chunkCoordinates.x + "." + chunkCoordinates.z + ".mcc"));
+  }
+
+  /**
+   * Creates a stream decompressing the data of a chunk.
+   *
+   * @param data        The compressed data.
+   * @param compression Compression type of the data.
+   * @return Stream of the decompressed data.
+   * @throws IOException Thrown if the compression type is not supported.
+   */
+  private static InputStream decompress(byte[] data, int compression) throws IOException {
+    InputStream input = new ByteArrayInputStream(data);
+
+    switch (compression) {
+      case COMPRESSION_GZIP:
+        return new GZIPInputStream(input);
+      case COMPRESSION_ZLIB:
+        return new InflaterInputStream(input);
+      case COMPRESSION_NONE:
+        return input;
+      default:
+        throw new IOException("Unsupported chunk compression type " + compression);
+    }
+  }
+
+  /**
+   * Reads bytes from a channel at a position.
+   *
+   * @param channel  Channel to read from.
+   * @param position Position to read at.
+   * @param length   Number of bytes to read.
+   * @return Buffer containing the bytes.
+   * @throws IOException Thrown if the channel ends before all bytes are read.
+   */
+  private ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of " + path);
+      }
+    }
+
+    return buffer;
+  }
+}
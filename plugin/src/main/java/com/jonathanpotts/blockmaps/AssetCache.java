@@ -0,0 +1,354 @@
+package com.jonathanpotts.blockmaps;
+
+import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.jonathanpotts.blockmaps.models.AssetCacheModel;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Caches the Minecraft client jar the web app assets are extracted from. The
+ * client jar is stored by version ID and SHA-1 hash and is only downloaded
+ * when the release manifest refers to a different jar.
+ */
+public class AssetCache {
+  /**
+   * Name of the file storing the state of the cache.
+   */
+  private static final String STATE_FILE_NAME = "assets.json";
+
+  /**
+   * Folder containing the cache.
+   */
+  private final Path cachePath;
+
+  /**
+   * Settings containing the asset locations.
+   */
+  private final Settings settings;
+
+  /**
+   * Gson instance used to read and write the state of the cache.
+   */
+  private final Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+  /**
+   * State of the cache.
+   */
+  private AssetCacheModel state;
+
+  /**
+   * SHA-1 hash of the client jar returned by {@link #getClientJar()}.
+   */
+  private String clientSha1;
+
+  /**
+   * Creates an asset cache.
+   *
+   * @param cachePath Folder containing the cache.
+   * @param settings  Settings containing the asset locations.
+   */
+  public AssetCache(Path cachePath, Settings settings) {
+    this.cachePath = cachePath;
+    this.settings = settings;
+  }
+
+  /**
+   * Gets the client jar, downloading it if it is not cached. If the version
+   * manifest cannot be read, the cached client jar of the configured version is
+   * used.
+   *
+   * @return Path of the client jar.
+   * @throws IOException Thrown if there is an issue while getting the client
+   *                     jar.
+   */
+  public Path getClientJar() throws IOException {
+    state = loadState();
+
+    if (!settings.assetClientJar.isEmpty()) {
+      Path clientJar = Paths.get(settings.assetClientJar);
+      if (!Files.exists(clientJar)) {
+        throw new FileNotFoundException("Unable to find client jar " + clientJar);
+      }
+
+      clientSha1 = hash(clientJar);
+      return clientJar;
+    }
+
+    JsonObject release;
+
+    try {
+      release = readRelease();
+    } catch (IOException | JsonParseException e) {
+      Path cachedJar = getCachedJar();
+
+      if (cachedJar == null || (!settings.assetVersion.equals("latest")
+          && !settings.assetVersion.equals(state.versionId))) {
+        throw e;
+      }
+
+      clientSha1 = state.clientSha1;
+      return cachedJar;
+    }
+
+    JsonObject client = release.get("downloads").getAsJsonObject().get("client").getAsJsonObject();
+    String versionId = release.get("id").getAsString();
+    clientSha1 = client.get("sha1").getAsString();
+
+    Path clientJar = getJarPath(versionId, clientSha1);
+
+    if (!Files.exists(clientJar) || Files.size(clientJar) != client.get("size").getAsLong()) {
+      download(client.get("url").getAsString(), clientJar, clientSha1);
+
+      Path previousJar = getCachedJar();
+      if (previousJar != null && !previousJar.equals(clientJar)) {
+        Files.deleteIfExists(previousJar);
+      }
+    }
+
+    state.versionId = versionId;
+    state.clientSha1 = clientSha1;
+    saveState();
+
+    return clientJar;
+  }
+
+  /**
+   * Checks if the assets of the client jar were already extracted and all of the
+   * extracted files still exist.
+   *
+   * @param rootPath Folder containing the web app.
+   * @return True if the assets do not need to be extracted.
+   */
+  public boolean isExtracted(Path rootPath) {
+    if (clientSha1 == null || !clientSha1.equals(state.extractedSha1) || state.extractedFiles == null) {
+      return false;
+    }
+
+    for (String file : state.extractedFiles) {
+      if (!Files.exists(rootPath.resolve(file))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Records that the assets of the client jar were extracted.
+   *
+   * @param extractedFiles Extracted files relative to the web app folder.
+   * @throws IOException Thrown if there is an issue while saving the state of the
+   *                     cache.
+   */
+  public void setExtracted(List<String> extractedFiles) throws IOException {
+    state.extractedSha1 = clientSha1;
+    state.extractedFiles = new ArrayList<>(extractedFiles);
+    saveState();
+  }
+
+  /**
+   * Reads the release manifest of the configured version. The release manifest
+   * is cached by its location.
+   *
+   * @return The release manifest.
+   * @throws IOException Thrown if there is an issue while reading the manifests.
+   */
+  private JsonObject readRelease() throws IOException {
+    JsonObject versionManifest = readJson(settings.assetVersionManifest);
+
+    String versionId = settings.assetVersion;
+    if (versionId.equals("latest")) {
+      versionId = versionManifest.get("latest").getAsJsonObject().get("release").getAsString();
+    }
+
+    String releaseManifestUrl = null;
+
+    for (JsonElement version : versionManifest.get("versions").getAsJsonArray()) {
+      if (!version.getAsJsonObject().get("id").getAsString().equals(versionId)) {
+        continue;
+      }
+
+      releaseManifestUrl = version.getAsJsonObject().get("url").getAsString();
+      break;
+    }
+
+    if (releaseManifestUrl == null) {
+      throw new JsonParseException("Unable to find " + versionId + " in Minecraft version manifest");
+    }
+
+    Path releaseManifestPath = cachePath.resolve("versions").resolve(versionId + ".json");
+
+    if (releaseManifestUrl.equals(state.releaseManifestUrl) && Files.exists(releaseManifestPath)) {
+      return readJson(releaseManifestPath.toString());
+    }
+
+    Files.createDirectories(releaseManifestPath.getParent());
+
+    try (InputStream releaseStream = openStream(releaseManifestUrl)) {
+      Files.copy(releaseStream, releaseManifestPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    state.releaseManifestUrl = releaseManifestUrl;
+
+    return readJson(releaseManifestPath.toString());
+  }
+
+  /**
+   * Downloads a file and verifies its SHA-1 hash.
+   *
+   * @param location    Location of the file.
+   * @param destination Path to save the file to.
+   * @param sha1        Expected SHA-1 hash of the file.
+   * @throws IOException Thrown if there is an issue while downloading the file or
+   *                     the hash does not match.
+   */
+  private static void download(String location, Path destination, String sha1) throws IOException {
+    Files.createDirectories(destination.getParent());
+    Path tempPath = destination.resolveSibling(destination.getFileName() + ".tmp");
+
+    MessageDigest digest = OutputManifest.createDigest();
+
+    try (InputStream inputStream = new DigestInputStream(openStream(location), digest)) {
+      Files.copy(inputStream, tempPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    String actualSha1 = OutputManifest.toHex(digest.digest());
+
+    if (!actualSha1.equalsIgnoreCase(sha1)) {
+      Files.delete(tempPath);
+      throw new IOException("SHA-1 hash of " + location + " was " + actualSha1 + " instead of " + sha1);
+    }
+
+    Files.move(tempPath, destination, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Computes the SHA-1 hash of a file.
+   *
+   * @param filePath Path of the file.
+   * @return The hash as a hexadecimal string.
+   * @throws IOException Thrown if there is an issue reading the file.
+   */
+  private static String hash(Path filePath) throws IOException {
+    MessageDigest digest = OutputManifest.createDigest();
+
+    try (InputStream inputStream = Files.newInputStream(filePath)) {
+      byte[] buffer = new byte[64 * 1024];
+      int length;
+
+      while ((length = inputStream.read(buffer)) != -1) {
+        digest.update(buffer, 0, length);
+      }
+    }
+
+    return OutputManifest.toHex(digest.digest());
+  }
+
+  /**
+   * Opens a location that is either a URL (including file: URLs) or a local
+   * file path.
+   *
+   * @param location The location to open.
+   * @return Stream of the contents of the location.
+   * @throws IOException Thrown if there is an issue opening the location.
+   */
+  private static InputStream openStream(String location) throws IOException {
+    URI uri = URI.create(location.replace('\\', '/'));
+
+    if (uri.getScheme() == null || uri.getScheme().length() == 1) {
+      return Files.newInputStream(Paths.get(location));
+    }
+
+    return new URL(location).openStream();
+  }
+
+  /**
+   * Reads a JSON object from a location.
+   *
+   * @param location The location to read.
+   * @return The JSON object.
+   * @throws IOException Thrown if there is an issue reading the location.
+   */
+  private static JsonObject readJson(String location) throws IOException {
+    try (JsonReader jsonReader = new JsonReader(
+        new InputStreamReader(openStream(location), StandardCharsets.UTF_8))) {
+      return new JsonParser().parse(jsonReader).getAsJsonObject();
+    }
+  }
+
+  /**
+   * Gets the path of a cached client jar.
+   *
+   * @param versionId  ID of the Minecraft version.
+   * @param clientSha1 SHA-1 hash of the client jar.
+   * @return Path of the client jar.
+   */
+  private Path getJarPath(String versionId, String clientSha1) {
+    return cachePath.resolve("versions").resolve(versionId + "-" + clientSha1 + ".jar");
+  }
+
+  /**
+   * Gets the client jar recorded in the state of the cache.
+   *
+   * @return Path of the client jar or null if there is no cached client jar.
+   */
+  private Path getCachedJar() {
+    if (state.versionId == null || state.clientSha1 == null) {
+      return null;
+    }
+
+    Path clientJar = getJarPath(state.versionId, state.clientSha1);
+    return Files.exists(clientJar) ? clientJar : null;
+  }
+
+  /**
+   * Loads the state of the cache.
+   *
+   * @return The state of the cache.
+   * @throws IOException Thrown if there is an issue reading the state.
+   */
+  private AssetCacheModel loadState() throws IOException {
+    Path statePath = cachePath.resolve(STATE_FILE_NAME);
+
+    if (Files.exists(statePath)) {
+      AssetCacheModel model = gson.fromJson(new String(Files.readAllBytes(statePath), StandardCharsets.UTF_8),
+          AssetCacheModel.class);
+
+      if (model != null) {
+        return model;
+      }
+    }
+
+    return new AssetCacheModel();
+  }
+
+  /**
+   * Saves the state of the cache.
+   *
+   * @throws IOException Thrown if there is an issue writing the state.
+   */
+  private void saveState() throws IOException {
+    Files.createDirectories(cachePath);
+
+    Path statePath = cachePath.resolve(STATE_FILE_NAME);
+    Path tempPath = cachePath.resolve(STATE_FILE_NAME + ".tmp");
+
+    Files.write(tempPath, gson.toJson(state).getBytes(StandardCharsets.UTF_8));
+    Files.move(tempPath, statePath, StandardCopyOption.REPLACE_EXISTING);
+  }
+}
@@ -0,0 +1,268 @@
+package com.jonathanpotts.blockmaps;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.jonathanpotts.blockmaps.models.AssetSyncModel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Synchronizes folders of the plugin data folder with the entries of a zip
+ * file. The CRC-32 and size of the entry each file was copied from are
+ * recorded, so entries that did not change are skipped without reading them.
+ * Changed entries are copied in parallel through the output manifest, which
+ * leaves files with the same contents untouched, and files copied by an
+ * earlier sync whose entries no longer exist are deleted.
+ */
+public class AssetSync {
+  /**
+   * Name of the file storing the state of the syncs.
+   */
+  private static final String STATE_FILE_NAME = "asset-sync.json";
+
+  /**
+   * Folder the synced files are recorded relative to.
+   */
+  private final Path rootPath;
+
+  /**
+   * Folder containing the state file.
+   */
+  private final Path cachePath;
+
+  /**
+   * Manifest recording the written files.
+   */
+  private final OutputManifest manifest;
+
+  /**
+   * Number of threads copying entries.
+   */
+  private final int threads;
+
+  /**
+   * Gson instance used to read and write the state of the syncs.
+   */
+  private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+  /**
+   * State of the syncs.
+   */
+  private AssetSyncModel state;
+
+  /**
+   * Creates an asset sync.
+   *
+   * @param rootPath  Folder the synced files are recorded relative to.
+   * @param cachePath Folder containing the state file.
+   * @param manifest  Manifest recording the written files.
+   * @param threads   Number of threads copying entries.
+   */
+  public AssetSync(Path rootPath, Path cachePath, OutputManifest manifest, int threads) {
+    this.rootPath = rootPath;
+    this.cachePath = cachePath;
+    this.manifest = manifest;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Synchronizes folders with the entries of a zip file under prefixes.
+   *
+   * @param name    Name of the sync, which tracks the files it copied separately
+   *                from other syncs.
+   * @param zipFile The zip file.
+   * @param folders Destination folders by the entry name prefix copied to them.
+   *                Prefixes end with a slash.
+   * @return Paths of the synced files.
+   * @throws IOException          Thrown if there is an issue copying or deleting
+   *                              files.
+   * @throws InterruptedException Thrown if interrupted while waiting for the
+   *                              copies.
+   */
+  public List<Path> sync(String name, ZipFile zipFile, Map<String, Path> folders)
+      throws IOException, InterruptedException {
+    if (state == null) {
+      state = loadState();
+    }
+
+    if (state.syncs == null) {
+      state.syncs = new HashMap<>();
+    }
+
+    Map<String, String> previous = state.syncs.getOrDefault(name, Collections.emptyMap());
+    Map<String, String> current = new ConcurrentHashMap<>();
+    List<Path> files = new ArrayList<>();
+
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "BlockMaps Asset Sync #" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    List<Future<?>> futures = new ArrayList<>();
+
+    try {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+
+        if (entry.isDirectory()) {
+          continue;
+        }
+
+        Path destination = getDestination(entry.getName(), folders);
+
+        if (destination == null) {
+          continue;
+        }
+
+        String key = rootPath.relativize(destination).toString().replace('\\', '/');
+        String signature = Long.toHexString(entry.getCrc()) + ":" + entry.getSize();
+        files.add(destination);
+
+        if (signature.equals(previous.get(key)) && Files.exists(destination)
+            && Files.size(destination) == entry.getSize()) {
+          current.put(key, signature);
+          continue;
+        }
+
+        futures.add(executor.submit(() -> {
+          manifest.write(destination, readEntry(zipFile, entry));
+          current.put(key, signature);
+
+          return null;
+        }));
+      }
+
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+          }
+
+          throw new IOException(e.getCause());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    for (String key : previous.keySet()) {
+      if (!current.containsKey(key)) {
+        Files.deleteIfExists(rootPath.resolve(key));
+      }
+    }
+
+    state.syncs.put(name, new HashMap<>(current));
+    saveState();
+
+    Collections.sort(files);
+
+    return files;
+  }
+
+  /**
+   * Reads the contents of a zip file entry.
+   *
+   * @param zipFile The zip file.
+   * @param entry   The entry to read.
+   * @return The contents of the entry.
+   * @throws IOException Thrown if there is an issue reading the entry.
+   */
+  public static byte[] readEntry(ZipFile zipFile, ZipEntry entry) throws IOException {
+    if (entry == null) {
+      throw new FileNotFoundException("Unable to find entry in " + zipFile.getName());
+    }
+
+    try (InputStream inputStream = zipFile.getInputStream(entry);
+        ByteArrayOutputStream byteArrayOS = new ByteArrayOutputStream((int) Math.max(entry.getSize(), 32))) {
+      byte[] buffer = new byte[8192];
+      int length;
+
+      while ((length = inputStream.read(buffer)) != -1) {
+        byteArrayOS.write(buffer, 0, length);
+      }
+
+      return byteArrayOS.toByteArray();
+    }
+  }
+
+  /**
+   * Gets the destination of a zip file entry.
+   *
+   * @param entryName Name of the entry.
+   * @param folders   Destination folders by the entry name prefix copied to
+   *                  them.
+   * @return The destination or null if the entry is not synced.
+   */
+  private static Path getDestination(String entryName, Map<String, Path> folders) {
+    for (Map.Entry<String, Path> folder : folders.entrySet()) {
+      if (entryName.startsWith(folder.getKey())) {
+        return folder.getValue().resolve(entryName.substring(folder.getKey().length()));
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Loads the state of the syncs.
+   *
+   * @return The state.
+   * @throws IOException Thrown if there is an issue reading the state.
+   */
+  private AssetSyncModel loadState() throws IOException {
+    Path statePath = cachePath.resolve(STATE_FILE_NAME);
+
+    if (Files.exists(statePath)) {
+      AssetSyncModel model = gson.fromJson(new String(Files.readAllBytes(statePath), StandardCharsets.UTF_8),
+          AssetSyncModel.class);
+
+      if (model != null) {
+        return model;
+      }
+    }
+
+    return new AssetSyncModel();
+  }
+
+  /**
+   * Saves the state of the syncs.
+   *
+   * @throws IOException Thrown if there is an issue writing the state.
+   */
+  private void saveState() throws IOException {
+    Files.createDirectories(cachePath);
+
+    Path statePath = cachePath.resolve(STATE_FILE_NAME);
+    Path tempPath = cachePath.resolve(STATE_FILE_NAME + ".tmp");
+
+    Files.write(tempPath, gson.toJson(state).getBytes(StandardCharsets.UTF_8));
+    Files.move(tempPath, statePath, StandardCopyOption.REPLACE_EXISTING);
+  }
+}
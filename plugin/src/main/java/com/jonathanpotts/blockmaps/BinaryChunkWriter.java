@@ -0,0 +1,251 @@
+package com.jonathanpotts.blockmaps;
+
+import com.jonathanpotts.blockmaps.models.BlockDataModel;
+import org.bukkit.Material;
+import org.bukkit.block.Biome;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes chunks in the compact binary chunk format.
+ *
+ * <p>
+ * All values are big-endian. A chunk starts with the magic number
+ * {@link Constants#BINARY_CHUNK_MAGIC}, the format version (u8) and the number
+ * of stored sections (u8). Each stored section contains:
+ * <ul>
+ * <li>Section Y coordinate (i8)</li>
+ * <li>Palette size (u16) followed by the palette entries. Entry 0 is reserved
+ * for omitted blocks. Every other entry is a block state ID (i32) in the block
+ * state table.</li>
+ * <li>Bits per palette index (u8) followed by the 4096 palette indices packed
+ * least significant bit first in YZX order.</li>
+ * <li>Sky light and emitted light, each as 2048 bytes of packed nibbles with the
+ * even block in the low nibble.</li>
+ * </ul>
+ * Sections without any stored blocks are not written. The sections are followed
+ * by the biome grid of the chunk:
+ * <ul>
+ * <li>Y coordinate of the bottom of the lowest cell (i16) and number of cells on
+ * the Y axis (u16)</li>
+ * <li>Palette size (u16) followed by the biome ordinals (u16)</li>
+ * <li>Bits per palette index (u8) followed by the palette indices of the 4x4x4
+ * block cells packed least significant bit first in YZX order.</li>
+ * </ul>
+ */
+public final class BinaryChunkWriter {
+  /**
+   * Number of blocks in a chunk section.
+   */
+  private static final int BLOCKS_PER_SECTION = Constants.WIDTH_OF_CHUNK * Constants.DEPTH_OF_CHUNK
+      * Constants.HEIGHT_OF_SECTION;
+
+  private BinaryChunkWriter() {
+  }
+
+  /**
+   * Writes a chunk.
+   *
+   * @param blocks      Blocks of the chunk indexed in YZX order starting at the
+   *                    minimum height. Omitted blocks are null.
+   * @param minHeight   Minimum height of the world.
+   * @param maxHeight   Maximum height of the world.
+   * @param blockStates Table containing the block states of the blocks.
+   * @param biomes      Biomes of the chunk.
+   * @return The encoded chunk.
+   * @throws IOException Thrown if there is an issue encoding the chunk.
+   */
+  public static byte[] write(BlockDataModel[] blocks, int minHeight, int maxHeight, BlockStateTable blockStates,
+      BiomeGrid biomes) throws IOException {
+    int minSection = Math.floorDiv(minHeight, Constants.HEIGHT_OF_SECTION);
+    int maxSection = Math.floorDiv(maxHeight - 1, Constants.HEIGHT_OF_SECTION);
+
+    List<BlockDataModel[]> sections = new ArrayList<>();
+    List<Integer> sectionYs = new ArrayList<>();
+
+    for (int sectionY = minSection; sectionY <= maxSection; sectionY++) {
+      BlockDataModel[] section = getSection(blocks, minHeight, maxHeight, sectionY);
+
+      if (section != null) {
+        sections.add(section);
+        sectionYs.add(sectionY);
+      }
+    }
+
+    ByteArrayOutputStream byteArrayOS = new ByteArrayOutputStream();
+
+    try (DataOutputStream dataOS = new DataOutputStream(byteArrayOS)) {
+      dataOS.writeInt(Constants.BINARY_CHUNK_MAGIC);
+      dataOS.writeByte(Constants.BINARY_CHUNK_FORMAT_VERSION);
+      dataOS.writeByte(sections.size());
+
+      for (int i = 0; i < sections.size(); i++) {
+        writeSection(dataOS, sectionYs.get(i), sections.get(i), blockStates);
+      }
+
+      writeBiomes(dataOS, biomes);
+    }
+
+    return byteArrayOS.toByteArray();
+  }
+
+  /**
+   * Gets the blocks of a section.
+   *
+   * @param blocks    Blocks of the chunk.
+   * @param minHeight Minimum height of the world.
+   * @param maxHeight Maximum height of the world.
+   * @param sectionY  Y coordinate of the section.
+   * @return Blocks of the section in YZX order or null if no blocks are stored.
+   */
+  private static BlockDataModel[] getSection(BlockDataModel[] blocks, int minHeight, int maxHeight, int sectionY) {
+    BlockDataModel[] section = null;
+    int layerSize = Constants.WIDTH_OF_CHUNK * Constants.DEPTH_OF_CHUNK;
+
+    for (int localY = 0; localY < Constants.HEIGHT_OF_SECTION; localY++) {
+      int y = sectionY * Constants.HEIGHT_OF_SECTION + localY;
+
+      if (y < minHeight || y >= maxHeight) {
+        continue;
+      }
+
+      for (int i = 0; i < layerSize; i++) {
+        BlockDataModel block = blocks[(y - minHeight) * layerSize + i];
+
+        if (block == null) {
+          continue;
+        }
+
+        if (section == null) {
+          section = new BlockDataModel[BLOCKS_PER_SECTION];
+        }
+
+        section[localY * layerSize + i] = block;
+      }
+    }
+
+    return section;
+  }
+
+  /**
+   * Writes a section.
+   *
+   * @param dataOS      Stream to write to.
+   * @param sectionY    Y coordinate of the section.
+   * @param section     Blocks of the section in YZX order.
+   * @param blockStates Table containing the block states of the blocks.
+   * @throws IOException Thrown if there is an issue writing the section.
+   */
+  private static void writeSection(DataOutputStream dataOS, int sectionY, BlockDataModel[] section,
+      BlockStateTable blockStates) throws IOException {
+    Map<Integer, Integer> paletteIndices = new HashMap<>();
+    List<Integer> palette = new ArrayList<>();
+    palette.add(null);
+    int airOrdinal = Material.AIR.ordinal();
+
+    int[] indices = new int[BLOCKS_PER_SECTION];
+    byte[] skyLight = new byte[BLOCKS_PER_SECTION / 2];
+    byte[] emittedLight = new byte[BLOCKS_PER_SECTION / 2];
+
+    for (int i = 0; i < BLOCKS_PER_SECTION; i++) {
+      BlockDataModel block = section[i];
+
+      if (block == null) {
+        continue;
+      }
+
+      Integer index = paletteIndices.get(block.state);
+
+      if (index == null) {
+        index = palette.size();
+        paletteIndices.put(block.state, index);
+        palette.add(block.state);
+      }
+
+      indices[i] = index;
+
+      Integer material = blockStates.getState(block.state).material;
+      int defaultLightValue = material != null && material == airOrdinal ? Constants.MAX_LIGHT_LEVEL
+          : Constants.MIN_LIGHT_LEVEL;
+
+      setNibble(skyLight, i, block.skyLight != null ? block.skyLight : defaultLightValue);
+      setNibble(emittedLight, i, block.emittedLight != null ? block.emittedLight : defaultLightValue);
+    }
+
+    dataOS.writeByte(sectionY);
+
+    dataOS.writeShort(palette.size());
+    for (int i = 1; i < palette.size(); i++) {
+      dataOS.writeInt(palette.get(i));
+    }
+
+    int bitsPerIndex = Math.max(1, 32 - Integer.numberOfLeadingZeros(palette.size() - 1));
+    dataOS.writeByte(bitsPerIndex);
+    dataOS.write(packIndices(indices, bitsPerIndex));
+
+    dataOS.write(skyLight);
+    dataOS.write(emittedLight);
+  }
+
+  /**
+   * Writes the biome grid.
+   *
+   * @param dataOS Stream to write to.
+   * @param biomes Biomes of the chunk.
+   * @throws IOException Thrown if there is an issue writing the biome grid.
+   */
+  private static void writeBiomes(DataOutputStream dataOS, BiomeGrid biomes) throws IOException {
+    dataOS.writeShort(biomes.minY);
+    dataOS.writeShort(biomes.cellsY);
+
+    dataOS.writeShort(biomes.palette.size());
+    for (Biome biome : biomes.palette) {
+      dataOS.writeShort(biome.ordinal());
+    }
+
+    int bitsPerIndex = Math.max(1, 32 - Integer.numberOfLeadingZeros(biomes.palette.size() - 1));
+    dataOS.writeByte(bitsPerIndex);
+    dataOS.write(packIndices(biomes.cells, bitsPerIndex));
+  }
+
+  /**
+   * Packs palette indices least significant bit first.
+   *
+   * @param indices      Palette indices to pack.
+   * @param bitsPerIndex Number of bits used for each index.
+   * @return The packed indices.
+   */
+  private static byte[] packIndices(int[] indices, int bitsPerIndex) {
+    byte[] packed = new byte[(indices.length * bitsPerIndex + 7) / 8];
+
+    for (int i = 0; i < indices.length; i++) {
+      int bitIndex = i * bitsPerIndex;
+
+      for (int bit = 0; bit < bitsPerIndex; bit++) {
+        if ((indices[i] >> bit & 1) != 0) {
+          packed[(bitIndex + bit) >> 3] |= 1 << ((bitIndex + bit) & 7);
+        }
+      }
+    }
+
+    return packed;
+  }
+
+  /**
+   * Sets a nibble in a packed nibble array.
+   *
+   * @param nibbles Packed nibble array.
+   * @param index   Index of the nibble.
+   * @param value   Value of the nibble.
+   */
+  private static void setNibble(byte[] nibbles, int index, int value) {
+    int shift = (index & 1) == 0 ? 0 : 4;
+    nibbles[index >> 1] |= (value & 0xF) << shift;
+  }
+}
@@ -0,0 +1,134 @@
+package com.jonathanpotts.blockmaps;
+
+import com.jonathanpotts.blockmaps.models.BiomeGridModel;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.block.Biome;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The biomes of a captured chunk sampled once per cell of 4x4x4 blocks, which
+ * is the resolution biomes are stored at.
+ */
+public class BiomeGrid {
+  /**
+   * Size in blocks of a cell on each axis.
+   */
+  public static final int CELL_SIZE = 4;
+
+  /**
+   * Number of cells on the X axis.
+   */
+  public static final int CELLS_X = Constants.WIDTH_OF_CHUNK / CELL_SIZE;
+
+  /**
+   * Number of cells on the Z axis.
+   */
+  public static final int CELLS_Z = Constants.DEPTH_OF_CHUNK / CELL_SIZE;
+
+  /**
+   * Y coordinate of the bottom of the lowest cell.
+   */
+  public final int minY;
+
+  /**
+   * Number of cells on the Y axis.
+   */
+  public final int cellsY;
+
+  /**
+   * Biomes referenced by the cells.
+   */
+  public final List<Biome> palette;
+
+  /**
+   * Palette indices of the cells in YZX order.
+   */
+  public final int[] cells;
+
+  /**
+   * Samples the biomes of a captured chunk.
+   *
+   * @param chunk The captured chunk.
+   */
+  public BiomeGrid(CapturedChunk chunk) {
+    ChunkSnapshot snapshot = chunk.snapshot;
+
+    minY = chunk.minHeight;
+    cellsY = (chunk.maxHeight - chunk.minHeight + CELL_SIZE - 1) / CELL_SIZE;
+    cells = new int[cellsY * CELLS_Z * CELLS_X];
+
+    List<Biome> biomes = new ArrayList<>();
+    int index = 0;
+
+    for (int cellY = 0; cellY < cellsY; cellY++) {
+      for (int cellZ = 0; cellZ < CELLS_Z; cellZ++) {
+        for (int cellX = 0; cellX < CELLS_X; cellX++) {
+          Biome biome = snapshot.getBiome(cellX * CELL_SIZE, minY + cellY * CELL_SIZE, cellZ * CELL_SIZE);
+          int paletteIndex = biomes.indexOf(biome);
+
+          if (paletteIndex < 0) {
+            paletteIndex = biomes.size();
+            biomes.add(biome);
+          }
+
+          cells[index++] = paletteIndex;
+        }
+      }
+    }
+
+    palette = Collections.unmodifiableList(biomes);
+  }
+
+  /**
+   * Gets the biome of a block.
+   *
+   * @param x X coordinate of the block within the chunk.
+   * @param y Y coordinate of the block.
+   * @param z Z coordinate of the block within the chunk.
+   * @return The biome of the cell containing the block.
+   */
+  public Biome getBiome(int x, int y, int z) {
+    int cellY = Math.min(Math.max((y - minY) / CELL_SIZE, 0), cellsY - 1);
+    return palette.get(cells[(cellY * CELLS_Z + z / CELL_SIZE) * CELLS_X + x / CELL_SIZE]);
+  }
+
+  /**
+   * Gets the local coordinates of the first block sampled for a biome.
+   *
+   * @param paletteIndex Palette index of the biome.
+   * @return The X, Y and Z coordinates of the block.
+   */
+  public int[] getSampleCoordinates(int paletteIndex) {
+    int layerSize = CELLS_Z * CELLS_X;
+
+    for (int i = 0; i < cells.length; i++) {
+      if (cells[i] == paletteIndex) {
+        return new int[] { (i % CELLS_X) * CELL_SIZE, minY + (i / layerSize) * CELL_SIZE,
+            ((i % layerSize) / CELLS_X) * CELL_SIZE };
+      }
+    }
+
+    throw new IllegalArgumentException("Biome " + paletteIndex + " is not in the grid");
+  }
+
+  /**
+   * Converts the grid to the model used by the JSON chunk format.
+   *
+   * @return The biome grid model.
+   */
+  public BiomeGridModel toModel() {
+    BiomeGridModel model = new BiomeGridModel();
+    model.minY = minY;
+    model.palette = new ArrayList<>();
+    model.cells = cells;
+
+    for (Biome biome : palette) {
+      model.palette.add(biome.ordinal());
+    }
+
+    return model;
+  }
+}
@@ -0,0 +1,307 @@
+package com.jonathanpotts.blockmaps;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.jonathanpotts.blockmaps.models.BiomeTintModel;
+import org.bukkit.Material;
+import org.bukkit.block.Biome;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Stores the climate of each biome rendered and the grass, foliage and water
+ * tint colors computed from it. Biomes are kept between refreshes by loading
+ * the previously saved table.
+ */
+public class BiomeTintTable {
+  /**
+   * Name of the biome tint table file.
+   */
+  public static final String FILE_NAME = "biometints.json";
+
+  /**
+   * Tint color returned for materials that are not tinted.
+   */
+  public static final int NO_TINT = -1;
+
+  /**
+   * Materials tinted with the grass color of the biome.
+   */
+  private static final Set<Material> GRASS_MATERIALS = EnumSet.of(Material.GRASS_BLOCK, Material.GRASS,
+      Material.TALL_GRASS, Material.FERN, Material.LARGE_FERN, Material.POTTED_FERN, Material.SUGAR_CANE);
+
+  /**
+   * Materials tinted with the foliage color of the biome.
+   */
+  private static final Set<Material> FOLIAGE_MATERIALS = EnumSet.of(Material.OAK_LEAVES, Material.JUNGLE_LEAVES,
+      Material.ACACIA_LEAVES, Material.DARK_OAK_LEAVES, Material.VINE);
+
+  /**
+   * Tint colors of materials that do not depend on the biome.
+   */
+  private static final Map<Material, Integer> FIXED_TINTS = new EnumMap<>(Material.class);
+
+  static {
+    FIXED_TINTS.put(Material.BIRCH_LEAVES, 0x80A755);
+    FIXED_TINTS.put(Material.SPRUCE_LEAVES, 0x619961);
+    FIXED_TINTS.put(Material.LILY_PAD, 0x208030);
+  }
+
+  /**
+   * Default water tint color.
+   */
+  private static final int DEFAULT_WATER_COLOR = 0x3F76E4;
+
+  /**
+   * Water tint colors of biomes that do not use the default.
+   */
+  private static final Map<String, Integer> WATER_COLORS = new HashMap<>();
+
+  static {
+    WATER_COLORS.put("COLD_OCEAN", 0x3D57D6);
+    WATER_COLORS.put("DEEP_COLD_OCEAN", 0x3D57D6);
+    WATER_COLORS.put("SNOWY_BEACH", 0x3D57D6);
+    WATER_COLORS.put("SNOWY_TAIGA", 0x3D57D6);
+    WATER_COLORS.put("SNOWY_TAIGA_HILLS", 0x3D57D6);
+    WATER_COLORS.put("SNOWY_TAIGA_MOUNTAINS", 0x3D57D6);
+    WATER_COLORS.put("FROZEN_OCEAN", 0x3938C9);
+    WATER_COLORS.put("DEEP_FROZEN_OCEAN", 0x3938C9);
+    WATER_COLORS.put("FROZEN_RIVER", 0x3938C9);
+    WATER_COLORS.put("LUKEWARM_OCEAN", 0x45ADF2);
+    WATER_COLORS.put("DEEP_LUKEWARM_OCEAN", 0x45ADF2);
+    WATER_COLORS.put("SWAMP", 0x617B64);
+    WATER_COLORS.put("SWAMP_HILLS", 0x617B64);
+    WATER_COLORS.put("WARM_OCEAN", 0x43D5EE);
+    WATER_COLORS.put("DEEP_WARM_OCEAN", 0x43D5EE);
+  }
+
+  /**
+   * Gson instance used to read and write the table.
+   */
+  private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+  /**
+   * Climate and tint colors keyed by biome.
+   */
+  private final Map<Biome, BiomeTintModel> biomes = new ConcurrentHashMap<>();
+
+  /**
+   * Grass color map or null if tint colors are not computed.
+   */
+  private BufferedImage grassColorMap;
+
+  /**
+   * Foliage color map or null if tint colors are not computed.
+   */
+  private BufferedImage foliageColorMap;
+
+  /**
+   * Status of the tint colors being computed.
+   */
+  private boolean computeTints;
+
+  /**
+   * Loads a saved table, replacing any recorded biomes.
+   *
+   * @param filePath     Path of the table file.
+   * @param colorMapPath Folder containing the grass and foliage color maps.
+   * @param computeTints Status of the tint colors being computed.
+   * @throws IOException Thrown if there is an issue reading the table or color
+   *                     maps.
+   */
+  public void load(Path filePath, Path colorMapPath, boolean computeTints) throws IOException {
+    biomes.clear();
+
+    this.computeTints = computeTints;
+    grassColorMap = computeTints ? readColorMap(colorMapPath.resolve("grass.png")) : null;
+    foliageColorMap = computeTints ? readColorMap(colorMapPath.resolve("foliage.png")) : null;
+
+    if (!Files.exists(filePath)) {
+      return;
+    }
+
+    Type type = new TypeToken<Map<Integer, BiomeTintModel>>() {
+    }.getType();
+    Map<Integer, BiomeTintModel> models = gson
+        .fromJson(new String(Files.readAllBytes(filePath), StandardCharsets.UTF_8), type);
+
+    if (models == null) {
+      return;
+    }
+
+    // Biome ordinals can change between server versions.
+    for (BiomeTintModel model : models.values()) {
+      try {
+        Biome biome = Biome.valueOf(model.name);
+        computeTints(model);
+        biomes.put(biome, model);
+      } catch (IllegalArgumentException | NullPointerException e) {
+        continue;
+      }
+    }
+  }
+
+  /**
+   * Checks if the climate of a biome was recorded.
+   *
+   * @param biome The biome.
+   * @return True if the biome is in the table.
+   */
+  public boolean contains(Biome biome) {
+    return biomes.containsKey(biome);
+  }
+
+  /**
+   * Gets the climate and tint colors of a biome.
+   *
+   * @param biome The biome.
+   * @return The climate and tint colors or null if the biome was not recorded.
+   */
+  public BiomeTintModel get(Biome biome) {
+    return biomes.get(biome);
+  }
+
+  /**
+   * Gets the tint color of a material in a biome.
+   *
+   * @param material The material.
+   * @param biome    The biome.
+   * @return The tint color as RGB or {@link #NO_TINT} if the material is not
+   *         tinted or the tint of the biome is unknown.
+   */
+  public int getTintColor(Material material, Biome biome) {
+    Integer fixedTint = FIXED_TINTS.get(material);
+
+    if (fixedTint != null) {
+      return fixedTint;
+    }
+
+    BiomeTintModel model = biomes.get(biome);
+    Integer tint = null;
+
+    if (model != null) {
+      if (GRASS_MATERIALS.contains(material)) {
+        tint = model.grass;
+      } else if (FOLIAGE_MATERIALS.contains(material)) {
+        tint = model.foliage;
+      } else if (material == Material.WATER) {
+        tint = model.water;
+      }
+    }
+
+    return tint != null ? tint : NO_TINT;
+  }
+
+  /**
+   * Records the climate of a biome unless it was already recorded.
+   *
+   * @param biome       The biome.
+   * @param temperature Temperature of the biome.
+   * @param humidity    Humidity of the biome.
+   */
+  public void record(Biome biome, double temperature, double humidity) {
+    BiomeTintModel model = new BiomeTintModel();
+    model.name = biome.name();
+    model.temperature = temperature;
+    model.humidity = humidity;
+    computeTints(model);
+
+    biomes.putIfAbsent(biome, model);
+  }
+
+  /**
+   * Saves the table keyed by biome ordinal.
+   *
+   * @param filePath Path of the table file.
+   * @param manifest Manifest recording the table file.
+   * @throws IOException Thrown if there is an issue writing the table.
+   */
+  public void save(Path filePath, OutputManifest manifest) throws IOException {
+    Map<Integer, BiomeTintModel> models = new TreeMap<>();
+
+    for (Map.Entry<Biome, BiomeTintModel> entry : biomes.entrySet()) {
+      models.put(entry.getKey().ordinal(), entry.getValue());
+    }
+
+    manifest.write(filePath, gson.toJson(models).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Computes the tint colors of a biome from its climate.
+   *
+   * @param model Climate of the biome.
+   */
+  private void computeTints(BiomeTintModel model) {
+    model.grass = null;
+    model.foliage = null;
+    model.water = null;
+
+    if (!computeTints) {
+      return;
+    }
+
+    String name = model.name;
+
+    model.water = WATER_COLORS.getOrDefault(name, DEFAULT_WATER_COLOR);
+    model.grass = getColor(grassColorMap, model);
+    model.foliage = getColor(foliageColorMap, model);
+
+    if (name.contains("BADLANDS")) {
+      model.grass = 0x90814D;
+      model.foliage = 0x9E814D;
+    } else if (name.startsWith("SWAMP")) {
+      model.grass = 0x6A7039;
+      model.foliage = 0x6A7039;
+    } else if (name.startsWith("DARK_FOREST") && model.grass != null) {
+      model.grass = ((model.grass & 0xFEFEFE) + 0x28340A) >> 1;
+    }
+  }
+
+  /**
+   * Reads a color map.
+   *
+   * @param filePath Path of the color map.
+   * @return The color map or null if it does not exist.
+   * @throws IOException Thrown if there is an issue reading the color map.
+   */
+  private static BufferedImage readColorMap(Path filePath) throws IOException {
+    return Files.exists(filePath) ? ImageIO.read(filePath.toFile()) : null;
+  }
+
+  /**
+   * Gets the color of a biome from a color map the same way as the Minecraft
+   * client.
+   *
+   * @param colorMap The color map.
+   * @param model    Climate of the biome.
+   * @return The color as RGB or null if it cannot be computed.
+   */
+  private static Integer getColor(BufferedImage colorMap, BiomeTintModel model) {
+    if (colorMap == null || model.temperature == null || model.humidity == null) {
+      return null;
+    }
+
+    double temperature = Math.min(1, Math.max(0, model.temperature));
+    double humidity = Math.min(1, Math.max(0, model.humidity)) * temperature;
+
+    int x = (int) ((1 - temperature) * (colorMap.getWidth() - 1));
+    int y = (int) ((1 - humidity) * (colorMap.getHeight() - 1));
+
+    return colorMap.getRGB(x, y) & 0xFFFFFF;
+  }
+}
@@ -0,0 +1,182 @@
+package com.jonathanpotts.blockmaps;
+
+import org.bukkit.Material;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Colors of materials seen from above, computed as the average color of their
+ * block textures. Colors are computed the first time each material is used.
+ */
+public class BlockColorTable {
+  /**
+   * Color of materials without a block texture.
+   */
+  public static final int NO_COLOR = 0;
+
+  /**
+   * Value of colors that have not been computed.
+   */
+  private static final int UNKNOWN = 1;
+
+  /**
+   * Suffixes of materials that use the textures of another block.
+   */
+  private static final String[] SHAPE_SUFFIXES = { "_stairs", "_slab", "_wall_sign", "_sign", "_wall",
+      "_fence_gate", "_fence", "_pressure_plate", "_button", "_carpet" };
+
+  /**
+   * Folder containing the block textures.
+   */
+  private final Path texturesPath;
+
+  /**
+   * ARGB colors indexed by material ordinal.
+   */
+  private final AtomicIntegerArray colors = new AtomicIntegerArray(Material.values().length);
+
+  /**
+   * Creates a block color table.
+   *
+   * @param texturesPath Folder containing the block textures.
+   */
+  public BlockColorTable(Path texturesPath) {
+    this.texturesPath = texturesPath;
+
+    for (int i = 0; i < colors.length(); i++) {
+      colors.set(i, UNKNOWN);
+    }
+  }
+
+  /**
+   * Gets the color of a material.
+   *
+   * @param material The material.
+   * @return The color as ARGB or {@link #NO_COLOR} if the material does not have
+   *         a block texture.
+   */
+  public int getColor(Material material) {
+    int color = colors.get(material.ordinal());
+
+    if (color == UNKNOWN) {
+      color = computeColor(material);
+      colors.set(material.ordinal(), color);
+    }
+
+    return color;
+  }
+
+  /**
+   * Computes the color of a material from the first of its candidate textures
+   * that exists.
+   *
+   * @param material The material.
+   * @return The color as ARGB or {@link #NO_COLOR}.
+   */
+  private int computeColor(Material material) {
+    if (material.isAir() || material.isLegacy()) {
+      return NO_COLOR;
+    }
+
+    for (String name : getTextureNames(material.getKey().getKey())) {
+      Path texturePath = texturesPath.resolve(name + ".png");
+
+      if (!Files.exists(texturePath)) {
+        continue;
+      }
+
+      try {
+        BufferedImage texture = ImageIO.read(texturePath.toFile());
+
+        if (texture != null) {
+          return averageColor(texture);
+        }
+      } catch (IOException e) {
+        continue;
+      }
+    }
+
+    return NO_COLOR;
+  }
+
+  /**
+   * Gets the names of the textures that may be used for the top of a block.
+   *
+   * @param name Name of the material without the namespace.
+   * @return The candidate texture names in order of preference.
+   */
+  private static List<String> getTextureNames(String name) {
+    List<String> names = new ArrayList<>();
+
+    if (name.equals("water") || name.equals("lava")) {
+      names.add(name + "_still");
+    }
+
+    names.add(name + "_top");
+    names.add(name);
+
+    for (String suffix : SHAPE_SUFFIXES) {
+      if (!name.endsWith(suffix)) {
+        continue;
+      }
+
+      String base = name.substring(0, name.length() - suffix.length());
+
+      if (suffix.equals("_carpet")) {
+        names.add(base + "_wool");
+      }
+
+      names.add(base + "_planks");
+      names.add(base + "s");
+      names.add(base + "_top");
+      names.add(base);
+      break;
+    }
+
+    return names;
+  }
+
+  /**
+   * Computes the average color of the visible pixels of a texture. Animated
+   * textures are averaged over all frames.
+   *
+   * @param texture The texture.
+   * @return The color as opaque ARGB or {@link #NO_COLOR} if the texture is
+   *         fully transparent.
+   */
+  private static int averageColor(BufferedImage texture) {
+    long red = 0;
+    long green = 0;
+    long blue = 0;
+    int count = 0;
+
+    for (int y = 0; y < texture.getHeight(); y++) {
+      for (int x = 0; x < texture.getWidth(); x++) {
+        int argb = texture.getRGB(x, y);
+
+        if ((argb >>> 24) == 0) {
+          continue;
+        }
+
+        red += (argb >> 16) & 0xFF;
+        green += (argb >> 8) & 0xFF;
+        blue += argb & 0xFF;
+        count++;
+      }
+    }
+
+    if (count == 0) {
+      return NO_COLOR;
+    }
+
+    return 0xFF000000 | (int) (red / count) << 16 | (int) (green / count) << 8 | (int) (blue / count);
+  }
+}
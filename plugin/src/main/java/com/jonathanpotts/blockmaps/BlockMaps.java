@@ -2,12 +2,76 @@ package com.jonathanpotts.blockmaps;
 
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.IOException;
+
 /**
  * The BlockMaps server plugin.
  */
 public class BlockMaps extends JavaPlugin {
+  /**
+   * Tracker of chunks that changed since they were last rendered.
+   */
+  private DirtyChunkTracker dirtyChunkTracker;
+
   @Override
   public void onEnable() {
-    getCommand("refresh-map-data").setExecutor(new CommandRefreshMapData(this));
+    saveDefaultConfig();
+
+    dirtyChunkTracker = new DirtyChunkTracker(getDataFolder().toPath().resolve("dirty-chunks.json"));
+
+    try {
+      dirtyChunkTracker.load();
+    } catch (IOException e) {
+      getLogger().warning("Unable to load changed chunks");
+      e.printStackTrace();
+    }
+
+    getServer().getPluginManager().registerEvents(dirtyChunkTracker, this);
+
+    RenderMetrics metrics = new RenderMetrics();
+
+    CommandRefreshMapData commandRefreshMapData = new CommandRefreshMapData(this, dirtyChunkTracker, metrics);
+    getCommand("refresh-map-data").setExecutor(commandRefreshMapData);
+    getCommand("blockmaps").setExecutor(new CommandBlockMaps(metrics));
+
+    // Resume once the server has started and loaded its worlds.
+    getServer().getScheduler().runTask(this, () -> {
+      if (!commandRefreshMapData.hasInterruptedRefresh()) {
+        return;
+      }
+
+      if (!getConfig().getBoolean("checkpoint.resume-on-startup", true)) {
+        getLogger().info("A map data refresh was interrupted. Run \"refresh-map-data resume\" to continue it.");
+      } else if (!commandRefreshMapData.resumeRefresh()) {
+        getLogger().warning("Unable to resume the interrupted map data refresh");
+      }
+    });
+
+    long interval = Math.max(1, getConfig().getLong("incremental.interval-seconds", 300)) * 20;
+
+    getServer().getScheduler().runTaskTimer(this, () -> {
+      if (getConfig().getBoolean("incremental.enabled", false)) {
+        commandRefreshMapData.refreshDirtyChunks();
+      }
+
+      getServer().getScheduler().runTaskAsynchronously(this, this::saveDirtyChunks);
+    }, interval, interval);
+  }
+
+  @Override
+  public void onDisable() {
+    saveDirtyChunks();
+  }
+
+  /**
+   * Persists the chunks that changed since they were last rendered.
+   */
+  private void saveDirtyChunks() {
+    try {
+      dirtyChunkTracker.save();
+    } catch (IOException e) {
+      getLogger().warning("Unable to save changed chunks");
+      e.printStackTrace();
+    }
   }
 }
@@ -0,0 +1,164 @@
+package com.jonathanpotts.blockmaps;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes the block states of the blocks in the materials map together with the
+ * models they use into one file, so the web app loads them with one request
+ * instead of fetching every block state and model file and walking the parents
+ * of the models. Models are merged with their parents and their texture
+ * variables are resolved. Variants and multipart rules keep their conditions
+ * since they are matched against the block data of each block, but every
+ * variant and part lists its models in an array.
+ */
+public final class BlockModelBundle {
+  /**
+   * Name of the bundle file.
+   */
+  public static final String FILE_NAME = "blockmodels.json";
+
+  /**
+   * Prevents creating instances.
+   */
+  private BlockModelBundle() {
+  }
+
+  /**
+   * Writes the bundle of the block states of blocks.
+   *
+   * @param dataPath   Folder containing the web app data and the extracted
+   *                   block states and models.
+   * @param blockNames Names of the blocks (e.g. "minecraft:stone").
+   * @param manifest   Manifest recording the written files.
+   * @throws IOException Thrown if there is an issue writing the bundle.
+   */
+  public static void write(Path dataPath, Collection<String> blockNames, OutputManifest manifest)
+      throws IOException {
+    BlockModelTable table = new BlockModelTable(dataPath);
+    JsonObject blockStates = new JsonObject();
+    Set<String> modelNames = new TreeSet<>();
+
+    for (String blockName : new TreeSet<>(blockNames)) {
+      String name = stripNamespace(blockName);
+      JsonObject blockState = table.getBlockState(name);
+
+      if (blockState != null) {
+        blockStates.add(name, normalizeBlockState(blockState, modelNames));
+      }
+    }
+
+    JsonObject models = new JsonObject();
+
+    for (String modelName : modelNames) {
+      JsonObject model = table.getResolvedModel(modelName);
+
+      if (model != null) {
+        models.add(modelName, model);
+      }
+    }
+
+    JsonObject bundle = new JsonObject();
+    bundle.add("blockstates", blockStates);
+    bundle.add("models", models);
+
+    Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    manifest.write(dataPath.resolve(FILE_NAME), gson.toJson(bundle).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Normalizes a block state so every variant and part lists its models in an
+   * array and model names have no namespace.
+   *
+   * @param blockState The block state file.
+   * @param modelNames Names of the models used, which the models of the block
+   *                   state are added to.
+   * @return The normalized block state.
+   */
+  private static JsonObject normalizeBlockState(JsonObject blockState, Set<String> modelNames) {
+    JsonObject normalized = new JsonObject();
+
+    if (blockState.has("variants")) {
+      JsonObject variants = new JsonObject();
+
+      for (Map.Entry<String, JsonElement> variant : blockState.getAsJsonObject("variants").entrySet()) {
+        variants.add(variant.getKey(), normalizeModels(variant.getValue(), modelNames));
+      }
+
+      normalized.add("variants", variants);
+    } else if (blockState.has("multipart")) {
+      JsonArray multipart = new JsonArray();
+
+      for (JsonElement part : blockState.getAsJsonArray("multipart")) {
+        JsonObject partObject = part.getAsJsonObject();
+        JsonObject normalizedPart = new JsonObject();
+
+        if (partObject.has("when")) {
+          normalizedPart.add("when", partObject.get("when"));
+        }
+
+        normalizedPart.add("apply", normalizeModels(partObject.get("apply"), modelNames));
+        multipart.add(normalizedPart);
+      }
+
+      normalized.add("multipart", multipart);
+    }
+
+    return normalized;
+  }
+
+  /**
+   * Normalizes the models of a variant or part into an array.
+   *
+   * @param models     A model or an array of models.
+   * @param modelNames Names of the models used, which the models are added to.
+   * @return The models.
+   */
+  private static JsonArray normalizeModels(JsonElement models, Set<String> modelNames) {
+    JsonArray array = new JsonArray();
+
+    if (models.isJsonArray()) {
+      array.addAll(models.getAsJsonArray());
+    } else {
+      array.add(models);
+    }
+
+    JsonArray normalized = new JsonArray();
+
+    for (JsonElement model : array) {
+      JsonObject modelObject = new JsonObject();
+
+      for (Map.Entry<String, JsonElement> entry : model.getAsJsonObject().entrySet()) {
+        modelObject.add(entry.getKey(), entry.getValue());
+      }
+
+      String modelName = stripNamespace(modelObject.get("model").getAsString());
+      modelObject.addProperty("model", modelName);
+      modelNames.add(modelName);
+      normalized.add(modelObject);
+    }
+
+    return normalized;
+  }
+
+  /**
+   * Removes the "minecraft:" namespace from a resource name.
+   *
+   * @param name The resource name.
+   * @return The name without the namespace.
+   */
+  private static String stripNamespace(String name) {
+    return name.startsWith("minecraft:") ? name.substring("minecraft:".length()) : name;
+  }
+}
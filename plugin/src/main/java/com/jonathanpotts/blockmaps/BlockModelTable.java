@@ -0,0 +1,938 @@
+package com.jonathanpotts.blockmaps;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.bukkit.block.data.BlockData;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Resolves block states to baked quads using the block states and models
+ * extracted from the Minecraft client jar. Blocks are baked the first time each
+ * block state is used.
+ */
+public class BlockModelTable {
+  /**
+   * Direction towards negative Y.
+   */
+  public static final int DOWN = 0;
+
+  /**
+   * Direction towards positive Y.
+   */
+  public static final int UP = 1;
+
+  /**
+   * Direction towards negative Z.
+   */
+  public static final int NORTH = 2;
+
+  /**
+   * Direction towards positive Z.
+   */
+  public static final int SOUTH = 3;
+
+  /**
+   * Direction towards negative X.
+   */
+  public static final int WEST = 4;
+
+  /**
+   * Direction towards positive X.
+   */
+  public static final int EAST = 5;
+
+  /**
+   * Offsets of the neighboring block in each direction as [x, y, z].
+   */
+  public static final int[][] DIRECTION_OFFSETS = { { 0, -1, 0 }, { 0, 1, 0 }, { 0, 0, -1 }, { 0, 0, 1 },
+      { -1, 0, 0 }, { 1, 0, 0 } };
+
+  /**
+   * Names of the directions used by models.
+   */
+  private static final String[] DIRECTION_NAMES = { "down", "up", "north", "south", "west", "east" };
+
+  /**
+   * Number of units in a block used by model coordinates.
+   */
+  private static final float UNITS_PER_BLOCK = 16;
+
+  /**
+   * Folder containing the web app data.
+   */
+  private final Path dataPath;
+
+  /**
+   * Baked blocks keyed by block state.
+   */
+  private final Map<BlockData, BakedBlock> blocks = new ConcurrentHashMap<>();
+
+  /**
+   * Parsed block state files keyed by path.
+   */
+  private final Map<String, JsonObject> blockStateFiles = new ConcurrentHashMap<>();
+
+  /**
+   * Parsed model files keyed by path.
+   */
+  private final Map<String, JsonObject> modelFiles = new ConcurrentHashMap<>();
+
+  /**
+   * Number of animation frames of textures keyed by texture name.
+   */
+  private final Map<String, Integer> textureFrames = new ConcurrentHashMap<>();
+
+  /**
+   * A quad of a baked model.
+   */
+  public static class Quad {
+    /**
+     * Positions of the corners relative to the block as [x, y, z] in blocks.
+     */
+    public final float[] positions;
+
+    /**
+     * Normal of the quad as [x, y, z].
+     */
+    public final float[] normal;
+
+    /**
+     * Texture coordinates of the corners as [u, v] in textures.
+     */
+    public final float[] uvs;
+
+    /**
+     * Name of the texture (e.g. "block/stone").
+     */
+    public final String texture;
+
+    /**
+     * Status of the quad being tinted by the biome.
+     */
+    public final boolean tinted;
+
+    /**
+     * Direction of the block that hides the quad or -1 if it is never hidden.
+     */
+    public final int cullFace;
+
+    /**
+     * Direction of the block lighting the quad.
+     */
+    public final int lightFace;
+
+    private Quad(float[] positions, float[] uvs, String texture, boolean tinted, int cullFace, int lightFace) {
+      this.positions = positions;
+      this.normal = computeNormal(positions);
+      this.uvs = uvs;
+      this.texture = texture;
+      this.tinted = tinted;
+      this.cullFace = cullFace;
+      this.lightFace = lightFace;
+    }
+  }
+
+  /**
+   * A face of a full cube element that can be merged with the faces of its
+   * neighbors.
+   */
+  public static class CubeFace {
+    /**
+     * Name of the texture.
+     */
+    public final String texture;
+
+    /**
+     * Status of the face being tinted by the biome.
+     */
+    public final boolean tinted;
+
+    private CubeFace(String texture, boolean tinted) {
+      this.texture = texture;
+      this.tinted = tinted;
+    }
+  }
+
+  /**
+   * A model with its weight.
+   */
+  public static class WeightedQuads {
+    /**
+     * Weight of the model.
+     */
+    public final int weight;
+
+    /**
+     * Quads of the model.
+     */
+    public final List<Quad> quads;
+
+    private WeightedQuads(int weight, List<Quad> quads) {
+      this.weight = weight;
+      this.quads = quads;
+    }
+  }
+
+  /**
+   * A baked block state.
+   */
+  public static class BakedBlock {
+    /**
+     * Parts of the block, each containing the models one is picked from.
+     */
+    public final List<List<WeightedQuads>> parts;
+
+    /**
+     * Faces of the full cube elements indexed by element and direction or null
+     * if the block is not made of full cubes. Faces an element does not have are
+     * null.
+     */
+    public final CubeFace[][] cubeFaces;
+
+    private BakedBlock(List<List<WeightedQuads>> parts, CubeFace[][] cubeFaces) {
+      this.parts = parts;
+      this.cubeFaces = cubeFaces;
+    }
+  }
+
+  /**
+   * Creates a block model table.
+   *
+   * @param dataPath Folder containing the web app data.
+   */
+  public BlockModelTable(Path dataPath) {
+    this.dataPath = dataPath;
+  }
+
+  /**
+   * Gets the baked block of a block state.
+   *
+   * @param blockData The block state.
+   * @return The baked block. Blocks without a block state file have no parts.
+   */
+  public BakedBlock get(BlockData blockData) {
+    BakedBlock block = blocks.get(blockData);
+
+    if (block == null) {
+      block = bake(blockData);
+      blocks.putIfAbsent(blockData, block);
+    }
+
+    return block;
+  }
+
+  /**
+   * Gets the block state file of a block.
+   *
+   * @param name Name of the block (e.g. "minecraft:stone").
+   * @return The block state file or null if it does not exist.
+   */
+  public JsonObject getBlockState(String name) {
+    return readJson(blockStateFiles, dataPath.resolve("blockstates").resolve(stripNamespace(name) + ".json"));
+  }
+
+  /**
+   * Gets a model merged with its parents. Texture variables are resolved to
+   * the textures they refer to.
+   *
+   * @param name Name of the model (e.g. "minecraft:block/stone").
+   * @return The model with the ambient occlusion, textures and elements of its
+   *         parents or null if the model does not exist.
+   */
+  public JsonObject getResolvedModel(String name) {
+    JsonObject model = resolveModel(name);
+
+    if (model == null) {
+      return null;
+    }
+
+    JsonObject textures = model.getAsJsonObject("textures");
+    JsonObject resolvedTextures = new JsonObject();
+
+    for (Map.Entry<String, JsonElement> texture : textures.entrySet()) {
+      String resolved = resolveTexture(textures, texture.getValue().getAsString());
+      resolvedTextures.addProperty(texture.getKey(), resolved != null ? resolved : texture.getValue().getAsString());
+    }
+
+    JsonObject resolvedModel = new JsonObject();
+
+    for (Map.Entry<String, JsonElement> entry : model.entrySet()) {
+      resolvedModel.add(entry.getKey(), entry.getValue());
+    }
+
+    resolvedModel.add("textures", resolvedTextures);
+
+    return resolvedModel;
+  }
+
+  /**
+   * Gets the positions of the corners of a face of a box. The corners are
+   * ordered by their texture coordinates as (u0, v0), (u1, v0), (u1, v1) and
+   * (u0, v1) so triangles (0, 2, 1) and (0, 3, 2) are counter-clockwise when
+   * seen from outside of the box.
+   *
+   * @param direction Direction of the face.
+   * @param from      Minimum corner of the box as [x, y, z].
+   * @param to        Maximum corner of the box as [x, y, z].
+   * @return Positions of the corners as [x, y, z].
+   */
+  public static float[] getFaceCorners(int direction, float[] from, float[] to) {
+    float x0 = from[0];
+    float y0 = from[1];
+    float z0 = from[2];
+    float x1 = to[0];
+    float y1 = to[1];
+    float z1 = to[2];
+
+    switch (direction) {
+      case DOWN:
+        return new float[] { x0, y0, z1, x1, y0, z1, x1, y0, z0, x0, y0, z0 };
+      case UP:
+        return new float[] { x0, y1, z0, x1, y1, z0, x1, y1, z1, x0, y1, z1 };
+      case NORTH:
+        return new float[] { x1, y1, z0, x0, y1, z0, x0, y0, z0, x1, y0, z0 };
+      case SOUTH:
+        return new float[] { x0, y1, z1, x1, y1, z1, x1, y0, z1, x0, y0, z1 };
+      case WEST:
+        return new float[] { x0, y1, z0, x0, y1, z1, x0, y0, z1, x0, y0, z0 };
+      default:
+        return new float[] { x1, y1, z1, x1, y1, z0, x1, y0, z0, x1, y0, z1 };
+    }
+  }
+
+  /**
+   * Bakes a block state.
+   *
+   * @param blockData The block state.
+   * @return The baked block.
+   */
+  private BakedBlock bake(BlockData blockData) {
+    String state = blockData.getAsString();
+    int propertiesStart = state.indexOf('[');
+    String name = stripNamespace(propertiesStart >= 0 ? state.substring(0, propertiesStart) : state);
+    Map<String, String> properties = new HashMap<>();
+
+    if (propertiesStart >= 0) {
+      for (String property : state.substring(propertiesStart + 1, state.length() - 1).split(",")) {
+        String[] keyValue = property.split("=", 2);
+
+        if (keyValue.length == 2) {
+          properties.put(keyValue[0], keyValue[1]);
+        }
+      }
+    }
+
+    JsonObject blockState = readJson(blockStateFiles, dataPath.resolve("blockstates").resolve(name + ".json"));
+    List<JsonElement> appliedParts = new ArrayList<>();
+
+    if (blockState != null && blockState.has("variants")) {
+      for (Map.Entry<String, JsonElement> variant : blockState.getAsJsonObject("variants").entrySet()) {
+        if (matchesVariant(variant.getKey(), properties)) {
+          appliedParts.add(variant.getValue());
+          break;
+        }
+      }
+    } else if (blockState != null && blockState.has("multipart")) {
+      for (JsonElement part : blockState.getAsJsonArray("multipart")) {
+        JsonObject partObject = part.getAsJsonObject();
+
+        if (!partObject.has("when") || matchesCondition(partObject.getAsJsonObject("when"), properties)) {
+          appliedParts.add(partObject.get("apply"));
+        }
+      }
+    }
+
+    List<List<WeightedQuads>> parts = new ArrayList<>();
+    JsonObject lastModel = null;
+    boolean lastModelRotated = false;
+
+    for (JsonElement appliedPart : appliedParts) {
+      List<WeightedQuads> models = new ArrayList<>();
+      JsonArray variants = new JsonArray();
+
+      if (appliedPart.isJsonArray()) {
+        variants = appliedPart.getAsJsonArray();
+      } else {
+        variants.add(appliedPart);
+      }
+
+      for (JsonElement variant : variants) {
+        JsonObject variantObject = variant.getAsJsonObject();
+        JsonObject model = resolveModel(variantObject.get("model").getAsString());
+
+        if (model == null) {
+          continue;
+        }
+
+        int weight = variantObject.has("weight") ? variantObject.get("weight").getAsInt() : 1;
+        int rotationX = variantObject.has("x") ? variantObject.get("x").getAsInt() : 0;
+        int rotationY = variantObject.has("y") ? variantObject.get("y").getAsInt() : 0;
+
+        models.add(new WeightedQuads(weight, bakeModel(model, rotationX, rotationY)));
+        lastModel = model;
+        lastModelRotated = rotationX != 0 || rotationY != 0;
+      }
+
+      if (!models.isEmpty()) {
+        parts.add(models);
+      }
+    }
+
+    // Only a state resolving to exactly one unrotated model can share its cube
+    // faces, since random variants and rotations are chosen per block.
+    CubeFace[][] cubeFaces = null;
+
+    if (parts.size() == 1 && parts.get(0).size() == 1 && !lastModelRotated) {
+      cubeFaces = bakeCubeFaces(lastModel);
+    }
+
+    return new BakedBlock(parts, cubeFaces);
+  }
+
+  /**
+   * Bakes the quads of a model.
+   *
+   * @param model     The resolved model.
+   * @param rotationX Rotation of the model around the X axis in degrees.
+   * @param rotationY Rotation of the model around the Y axis in degrees.
+   * @return The quads of the model.
+   */
+  private List<Quad> bakeModel(JsonObject model, int rotationX, int rotationY) {
+    if (!model.has("elements")) {
+      return Collections.emptyList();
+    }
+
+    JsonObject textures = model.has("textures") ? model.getAsJsonObject("textures") : new JsonObject();
+    List<Quad> quads = new ArrayList<>();
+
+    for (JsonElement elementJson : model.getAsJsonArray("elements")) {
+      JsonObject element = elementJson.getAsJsonObject();
+      float[] from = toVector(element.getAsJsonArray("from"));
+      float[] to = toVector(element.getAsJsonArray("to"));
+      JsonObject faces = element.getAsJsonObject("faces");
+
+      for (int direction = 0; direction < DIRECTION_NAMES.length; direction++) {
+        if (!faces.has(DIRECTION_NAMES[direction])) {
+          continue;
+        }
+
+        JsonObject face = faces.getAsJsonObject(DIRECTION_NAMES[direction]);
+        String texture = resolveTexture(textures, face.get("texture").getAsString());
+
+        if (texture == null) {
+          continue;
+        }
+
+        float[] positions = getFaceCorners(direction, from, to);
+
+        if (element.has("rotation")) {
+          rotateElement(positions, element.getAsJsonObject("rotation"));
+        }
+
+        for (int i = 0; i < positions.length; i += 3) {
+          rotateBlock(positions, i, rotationX, rotationY);
+        }
+
+        for (int i = 0; i < positions.length; i++) {
+          positions[i] /= UNITS_PER_BLOCK;
+        }
+
+        float[] uv = face.has("uv") ? toVector(face.getAsJsonArray("uv")) : getDefaultUv(direction, from, to);
+        int frames = getTextureFrames(texture);
+        int uvRotation = face.has("rotation") ? face.get("rotation").getAsInt() / 90 : 0;
+        float[] corners = { uv[0], uv[1], uv[2], uv[1], uv[2], uv[3], uv[0], uv[3] };
+        float[] uvs = new float[8];
+
+        for (int i = 0; i < 4; i++) {
+          int corner = (i + uvRotation) % 4;
+          uvs[i * 2] = corners[corner * 2] / UNITS_PER_BLOCK;
+          uvs[i * 2 + 1] = corners[corner * 2 + 1] / UNITS_PER_BLOCK / frames;
+        }
+
+        int cullFace = face.has("cullface") ? rotateDirection(getDirection(face.get("cullface").getAsString()),
+            rotationX, rotationY) : -1;
+        int lightFace = rotateDirection(direction, rotationX, rotationY);
+
+        quads.add(new Quad(positions, uvs, texture, face.has("tintindex"), cullFace, lightFace));
+      }
+    }
+
+    return quads;
+  }
+
+  /**
+   * Bakes the faces of a model made only of full cube elements with default
+   * texture coordinates. The faces of these models can be merged with the faces
+   * of neighboring blocks.
+   *
+   * @param model The resolved model.
+   * @return The faces indexed by element and direction or null if the model
+   *         cannot be merged.
+   */
+  private CubeFace[][] bakeCubeFaces(JsonObject model) {
+    if (!model.has("elements")) {
+      return null;
+    }
+
+    JsonObject textures = model.has("textures") ? model.getAsJsonObject("textures") : new JsonObject();
+    JsonArray elements = model.getAsJsonArray("elements");
+    CubeFace[][] cubeFaces = new CubeFace[elements.size()][DIRECTION_NAMES.length];
+
+    for (int index = 0; index < elements.size(); index++) {
+      JsonObject element = elements.get(index).getAsJsonObject();
+      float[] from = toVector(element.getAsJsonArray("from"));
+      float[] to = toVector(element.getAsJsonArray("to"));
+
+      if (element.has("rotation") || from[0] != 0 || from[1] != 0 || from[2] != 0
+          || to[0] != UNITS_PER_BLOCK || to[1] != UNITS_PER_BLOCK || to[2] != UNITS_PER_BLOCK) {
+        return null;
+      }
+
+      JsonObject faces = element.getAsJsonObject("faces");
+
+      for (int direction = 0; direction < DIRECTION_NAMES.length; direction++) {
+        if (!faces.has(DIRECTION_NAMES[direction])) {
+          continue;
+        }
+
+        JsonObject face = faces.getAsJsonObject(DIRECTION_NAMES[direction]);
+        String texture = resolveTexture(textures, face.get("texture").getAsString());
+
+        if (texture == null) {
+          continue;
+        }
+
+        float[] uv = face.has("uv") ? toVector(face.getAsJsonArray("uv")) : new float[] { 0, 0, 16, 16 };
+        boolean fullUv = uv[0] == 0 && uv[1] == 0 && uv[2] == UNITS_PER_BLOCK && uv[3] == UNITS_PER_BLOCK;
+        boolean rotated = face.has("rotation") && face.get("rotation").getAsInt() != 0;
+        boolean culled = face.has("cullface") && getDirection(face.get("cullface").getAsString()) == direction;
+
+        if (!fullUv || rotated || !culled || getTextureFrames(texture) != 1) {
+          return null;
+        }
+
+        cubeFaces[index][direction] = new CubeFace(texture, face.has("tintindex"));
+      }
+    }
+
+    return cubeFaces;
+  }
+
+  /**
+   * Resolves a model by merging it with its parents.
+   *
+   * @param name Name of the model.
+   * @return The model with the textures and elements of its parents or null if
+   *         the model does not exist.
+   */
+  private JsonObject resolveModel(String name) {
+    String modelName = stripNamespace(name);
+
+    if (!modelName.startsWith("block/")) {
+      return null;
+    }
+
+    JsonObject file = readJson(modelFiles,
+        dataPath.resolve("models").resolve("block").resolve(modelName.substring("block/".length()) + ".json"));
+
+    if (file == null) {
+      return null;
+    }
+
+    JsonObject model = new JsonObject();
+    JsonObject textures = new JsonObject();
+
+    if (file.has("parent")) {
+      JsonObject parent = resolveModel(file.get("parent").getAsString());
+
+      if (parent != null) {
+        if (parent.has("textures")) {
+          for (Map.Entry<String, JsonElement> texture : parent.getAsJsonObject("textures").entrySet()) {
+            textures.add(texture.getKey(), texture.getValue());
+          }
+        }
+
+        if (parent.has("ambientocclusion")) {
+          model.add("ambientocclusion", parent.get("ambientocclusion"));
+        }
+
+        if (parent.has("elements")) {
+          model.add("elements", parent.get("elements"));
+        }
+      }
+    }
+
+    if (file.has("ambientocclusion")) {
+      model.add("ambientocclusion", file.get("ambientocclusion"));
+    }
+
+    if (file.has("textures")) {
+      for (Map.Entry<String, JsonElement> texture : file.getAsJsonObject("textures").entrySet()) {
+        textures.add(texture.getKey(), texture.getValue());
+      }
+    }
+
+    if (file.has("elements")) {
+      model.add("elements", file.get("elements"));
+    }
+
+    model.add("textures", textures);
+
+    return model;
+  }
+
+  /**
+   * Resolves a texture reference of a model.
+   *
+   * @param textures  Textures of the model.
+   * @param reference The texture or texture variable.
+   * @return Name of the block texture or null if it cannot be resolved.
+   */
+  private static String resolveTexture(JsonObject textures, String reference) {
+    String texture = reference;
+
+    for (int depth = 0; texture.startsWith("#") && depth < 16; depth++) {
+      String variable = texture.substring(1);
+
+      if (!textures.has(variable)) {
+        return null;
+      }
+
+      texture = textures.get(variable).getAsString();
+    }
+
+    texture = stripNamespace(texture);
+
+    return texture.startsWith("block/") ? texture : null;
+  }
+
+  /**
+   * Gets the number of animation frames of a texture. Animated textures stack
+   * their frames vertically.
+   *
+   * @param texture Name of the texture.
+   * @return Number of frames.
+   */
+  private int getTextureFrames(String texture) {
+    return textureFrames.computeIfAbsent(texture, t -> {
+      Path texturePath = dataPath.resolve("textures").resolve(t + ".png");
+
+      try {
+        BufferedImage image = Files.exists(texturePath) ? ImageIO.read(texturePath.toFile()) : null;
+
+        if (image != null && image.getWidth() > 0 && image.getHeight() > image.getWidth()) {
+          return image.getHeight() / image.getWidth();
+        }
+      } catch (IOException e) {
+        return 1;
+      }
+
+      return 1;
+    });
+  }
+
+  /**
+   * Checks if a variant of a block state matches the properties of a block.
+   *
+   * @param variant    Properties of the variant (e.g. "facing=east,half=top").
+   * @param properties Properties of the block.
+   * @return True if every property of the variant matches.
+   */
+  private static boolean matchesVariant(String variant, Map<String, String> properties) {
+    if (variant.isEmpty() || variant.equals("normal")) {
+      return true;
+    }
+
+    for (String property : variant.split(",")) {
+      String[] keyValue = property.split("=", 2);
+
+      if (keyValue.length != 2 || !keyValue[1].equals(properties.get(keyValue[0]))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Checks if a multipart condition matches the properties of a block.
+   *
+   * @param condition  The condition.
+   * @param properties Properties of the block.
+   * @return True if the condition matches.
+   */
+  private static boolean matchesCondition(JsonObject condition, Map<String, String> properties) {
+    if (condition.has("OR")) {
+      for (JsonElement alternative : condition.getAsJsonArray("OR")) {
+        if (matchesCondition(alternative.getAsJsonObject(), properties)) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    if (condition.has("AND")) {
+      for (JsonElement requirement : condition.getAsJsonArray("AND")) {
+        if (!matchesCondition(requirement.getAsJsonObject(), properties)) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    for (Map.Entry<String, JsonElement> entry : condition.entrySet()) {
+      String value = properties.get(entry.getKey());
+      boolean matched = false;
+
+      for (String allowed : entry.getValue().getAsString().split("\\|")) {
+        if (allowed.equals(value)) {
+          matched = true;
+          break;
+        }
+      }
+
+      if (!matched) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Rotates the positions of a face by the rotation of its element.
+   *
+   * @param positions Positions of the corners in model units.
+   * @param rotation  Rotation of the element.
+   */
+  private static void rotateElement(float[] positions, JsonObject rotation) {
+    float[] origin = toVector(rotation.getAsJsonArray("origin"));
+    String axis = rotation.get("axis").getAsString();
+    double angle = Math.toRadians(rotation.get("angle").getAsDouble());
+    boolean rescale = rotation.has("rescale") && rotation.get("rescale").getAsBoolean();
+    float cos = (float) Math.cos(angle);
+    float sin = (float) Math.sin(angle);
+    float scale = rescale ? 1 / cos : 1;
+
+    for (int i = 0; i < positions.length; i += 3) {
+      float x = positions[i] - origin[0];
+      float y = positions[i + 1] - origin[1];
+      float z = positions[i + 2] - origin[2];
+
+      switch (axis) {
+        case "x":
+          positions[i + 1] = (y * cos - z * sin) * scale + origin[1];
+          positions[i + 2] = (y * sin + z * cos) * scale + origin[2];
+          break;
+        case "y":
+          positions[i] = (x * cos + z * sin) * scale + origin[0];
+          positions[i + 2] = (z * cos - x * sin) * scale + origin[2];
+          break;
+        default:
+          positions[i] = (x * cos - y * sin) * scale + origin[0];
+          positions[i + 1] = (x * sin + y * cos) * scale + origin[1];
+          break;
+      }
+    }
+  }
+
+  /**
+   * Rotates a position around the center of the block by the rotation of a
+   * block state variant. The X rotation is applied first.
+   *
+   * @param positions Positions in model units.
+   * @param offset    Offset of the position to rotate.
+   * @param rotationX Rotation around the X axis in degrees.
+   * @param rotationY Rotation around the Y axis in degrees.
+   */
+  private static void rotateBlock(float[] positions, int offset, int rotationX, int rotationY) {
+    for (int turn = 0; turn < Math.floorMod(rotationX / 90, 4); turn++) {
+      float y = positions[offset + 1];
+      positions[offset + 1] = positions[offset + 2];
+      positions[offset + 2] = UNITS_PER_BLOCK - y;
+    }
+
+    for (int turn = 0; turn < Math.floorMod(rotationY / 90, 4); turn++) {
+      float x = positions[offset];
+      positions[offset] = UNITS_PER_BLOCK - positions[offset + 2];
+      positions[offset + 2] = x;
+    }
+  }
+
+  /**
+   * Rotates a direction by the rotation of a block state variant.
+   *
+   * @param direction The direction.
+   * @param rotationX Rotation around the X axis in degrees.
+   * @param rotationY Rotation around the Y axis in degrees.
+   * @return The rotated direction.
+   */
+  private static int rotateDirection(int direction, int rotationX, int rotationY) {
+    int[] offset = DIRECTION_OFFSETS[direction];
+    float[] vector = { offset[0], offset[1], offset[2] };
+
+    for (int turn = 0; turn < Math.floorMod(rotationX / 90, 4); turn++) {
+      float y = vector[1];
+      vector[1] = vector[2];
+      vector[2] = -y;
+    }
+
+    for (int turn = 0; turn < Math.floorMod(rotationY / 90, 4); turn++) {
+      float x = vector[0];
+      vector[0] = -vector[2];
+      vector[2] = x;
+    }
+
+    for (int i = 0; i < DIRECTION_OFFSETS.length; i++) {
+      if (DIRECTION_OFFSETS[i][0] == vector[0] && DIRECTION_OFFSETS[i][1] == vector[1]
+          && DIRECTION_OFFSETS[i][2] == vector[2]) {
+        return i;
+      }
+    }
+
+    return direction;
+  }
+
+  /**
+   * Gets the default texture coordinates of a face from the position of its
+   * element.
+   *
+   * @param direction Direction of the face.
+   * @param from      Minimum corner of the element.
+   * @param to        Maximum corner of the element.
+   * @return Texture coordinates as [u0, v0, u1, v1] in model units.
+   */
+  private static float[] getDefaultUv(int direction, float[] from, float[] to) {
+    switch (direction) {
+      case DOWN:
+        return new float[] { from[0], 16 - to[2], to[0], 16 - from[2] };
+      case UP:
+        return new float[] { from[0], from[2], to[0], to[2] };
+      case NORTH:
+        return new float[] { 16 - to[0], 16 - to[1], 16 - from[0], 16 - from[1] };
+      case SOUTH:
+        return new float[] { from[0], 16 - to[1], to[0], 16 - from[1] };
+      case WEST:
+        return new float[] { from[2], 16 - to[1], to[2], 16 - from[1] };
+      default:
+        return new float[] { 16 - to[2], 16 - to[1], 16 - from[2], 16 - from[1] };
+    }
+  }
+
+  /**
+   * Computes the normal of a quad.
+   *
+   * @param positions Positions of the corners.
+   * @return The unit normal.
+   */
+  private static float[] computeNormal(float[] positions) {
+    float ax = positions[6] - positions[0];
+    float ay = positions[7] - positions[1];
+    float az = positions[8] - positions[2];
+    float bx = positions[3] - positions[0];
+    float by = positions[4] - positions[1];
+    float bz = positions[5] - positions[2];
+    float nx = ay * bz - az * by;
+    float ny = az * bx - ax * bz;
+    float nz = ax * by - ay * bx;
+    float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+    if (length == 0) {
+      return new float[] { 0, 1, 0 };
+    }
+
+    return new float[] { nx / length, ny / length, nz / length };
+  }
+
+  /**
+   * Gets a direction by name.
+   *
+   * @param name Name of the direction.
+   * @return The direction or -1 if the name is unknown.
+   */
+  private static int getDirection(String name) {
+    String direction = name.equals("bottom") ? "down" : name;
+
+    for (int i = 0; i < DIRECTION_NAMES.length; i++) {
+      if (DIRECTION_NAMES[i].equals(direction)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Reads a JSON array of numbers.
+   *
+   * @param array The JSON array.
+   * @return The numbers.
+   */
+  private static float[] toVector(JsonArray array) {
+    float[] vector = new float[array.size()];
+
+    for (int i = 0; i < vector.length; i++) {
+      vector[i] = array.get(i).getAsFloat();
+    }
+
+    return vector;
+  }
+
+  /**
+   * Removes the "minecraft:" namespace from a resource name.
+   *
+   * @param name The resource name.
+   * @return The name without the namespace.
+   */
+  private static String stripNamespace(String name) {
+    return name.startsWith("minecraft:") ? name.substring("minecraft:".length()) : name;
+  }
+
+  /**
+   * Reads a JSON file through a cache.
+   *
+   * @param cache    Cache of parsed files keyed by path.
+   * @param filePath Path of the file.
+   * @return The parsed file or null if it does not exist or cannot be parsed.
+   */
+  private static JsonObject readJson(Map<String, JsonObject> cache, Path filePath) {
+    String key = filePath.toString();
+    JsonObject json = cache.get(key);
+
+    if (json != null) {
+      return json;
+    }
+
+    if (!Files.exists(filePath)) {
+      return null;
+    }
+
+    try (Reader reader = Files.newBufferedReader(filePath, StandardCharsets.UTF_8)) {
+      json = new JsonParser().parse(reader).getAsJsonObject();
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+
+    cache.putIfAbsent(key, json);
+
+    return json;
+  }
+}
@@ -0,0 +1,175 @@
+package com.jonathanpotts.blockmaps;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.jonathanpotts.blockmaps.models.BlockStateModel;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns block states to small integer IDs. Each distinct block state is only
+ * converted to a string once, and chunks reference block states by ID. IDs are
+ * kept stable between refreshes by loading the previously saved table.
+ */
+public class BlockStateTable {
+  /**
+   * Name of the block state table file.
+   */
+  public static final String FILE_NAME = "blockstates.json";
+
+  /**
+   * Gson instance used to read and write the table.
+   */
+  private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+  /**
+   * IDs of the block states that were interned during this refresh.
+   */
+  private final Map<BlockData, Integer> ids = new ConcurrentHashMap<>();
+
+  /**
+   * IDs of all block states keyed by their full block state string.
+   */
+  private final Map<String, Integer> idsByName = new HashMap<>();
+
+  /**
+   * Block states indexed by ID. Grown while holding the lock on the table.
+   */
+  private volatile BlockStateModel[] states = new BlockStateModel[256];
+
+  /**
+   * Number of block states in the table.
+   */
+  private int size = 0;
+
+  /**
+   * Loads a saved table, replacing any interned block states.
+   *
+   * @param filePath Path of the table file.
+   * @throws IOException Thrown if there is an issue reading the table.
+   */
+  public synchronized void load(Path filePath) throws IOException {
+    ids.clear();
+    idsByName.clear();
+    states = new BlockStateModel[256];
+    size = 0;
+
+    if (!Files.exists(filePath)) {
+      return;
+    }
+
+    BlockStateModel[] models = gson.fromJson(new String(Files.readAllBytes(filePath), StandardCharsets.UTF_8),
+        BlockStateModel[].class);
+
+    if (models == null) {
+      return;
+    }
+
+    for (BlockStateModel model : models) {
+      if (model == null || model.name == null) {
+        model = new BlockStateModel();
+        model.name = "";
+      }
+
+      // Material ordinals can change between server versions.
+      int dataStartIndex = model.name.indexOf('[');
+      Material material = Material
+          .matchMaterial(dataStartIndex >= 0 ? model.name.substring(0, dataStartIndex) : model.name);
+      model.material = material != null ? material.ordinal() : null;
+
+      add(model);
+    }
+  }
+
+  /**
+   * Saves the table.
+   *
+   * @param filePath Path of the table file.
+   * @param manifest Manifest recording the table file.
+   * @throws IOException Thrown if there is an issue writing the table.
+   */
+  public synchronized void save(Path filePath, OutputManifest manifest) throws IOException {
+    String json = gson.toJson(Arrays.copyOf(states, size));
+    manifest.write(filePath, json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Gets the ID of a block state, adding it to the table if needed. Called
+   * concurrently by the worker threads.
+   *
+   * @param blockData The block state.
+   * @return ID of the block state.
+   */
+  public int getId(BlockData blockData) {
+    Integer id = ids.get(blockData);
+
+    if (id != null) {
+      return id;
+    }
+
+    String name = blockData.getAsString();
+
+    synchronized (this) {
+      id = idsByName.get(name);
+
+      if (id == null) {
+        BlockStateModel model = new BlockStateModel();
+        model.name = name;
+        model.material = blockData.getMaterial().ordinal();
+
+        int dataStartIndex = name.indexOf('[');
+        if (dataStartIndex > 0) {
+          int dataEndIndex = name.indexOf(']', dataStartIndex);
+
+          if (dataEndIndex > dataStartIndex) {
+            model.data = name.substring(dataStartIndex + 1, dataEndIndex);
+          }
+        }
+
+        id = add(model);
+      }
+    }
+
+    ids.put(blockData, id);
+
+    return id;
+  }
+
+  /**
+   * Gets a block state. The ID must have been returned by
+   * {@link #getId(BlockData)}.
+   *
+   * @param id ID of the block state.
+   * @return The block state.
+   */
+  public BlockStateModel getState(int id) {
+    return states[id];
+  }
+
+  /**
+   * Adds a block state to the table.
+   *
+   * @param model The block state.
+   * @return ID of the block state.
+   */
+  private int add(BlockStateModel model) {
+    if (size == states.length) {
+      states = Arrays.copyOf(states, size * 2);
+    }
+
+    int id = size++;
+    states[id] = model;
+    idsByName.put(model.name, id);
+
+    return id;
+  }
+}
@@ -0,0 +1,108 @@
+package com.jonathanpotts.blockmaps;
+
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+
+/**
+ * A snapshot of a chunk captured on the main server thread for processing on a
+ * worker thread, or a chunk to be read from its region file by the worker
+ * thread.
+ */
+public class CapturedChunk {
+  /**
+   * Batch of the region containing the chunk.
+   */
+  public final RegionBatch region;
+
+  /**
+   * World containing the chunk.
+   */
+  public final World world;
+
+  /**
+   * Coordinates of the chunk.
+   */
+  public final VectorXZ coordinates;
+
+  /**
+   * Snapshot of the chunk or null if the chunk has not been generated or has
+   * not been read from its region file.
+   */
+  public final ChunkSnapshot snapshot;
+
+  /**
+   * Region file to read the chunk from or null if the chunk was captured on the
+   * main server thread.
+   */
+  public final AnvilRegionFile regionFile;
+
+  /**
+   * Minimum height of the world.
+   */
+  public final int minHeight;
+
+  /**
+   * Maximum height of the world.
+   */
+  public final int maxHeight;
+
+  /**
+   * Estimated heap usage in bytes of the snapshot.
+   */
+  public final long estimatedBytes;
+
+  /**
+   * Creates a captured chunk.
+   *
+   * @param region         Batch of the region containing the chunk.
+   * @param coordinates    Coordinates of the chunk.
+   * @param snapshot       Snapshot of the chunk or null if the chunk has not been
+   *                       generated.
+   * @param minHeight      Minimum height of the world.
+   * @param maxHeight      Maximum height of the world.
+   * @param estimatedBytes Estimated heap usage in bytes of the snapshot.
+   */
+  public CapturedChunk(RegionBatch region, VectorXZ coordinates, ChunkSnapshot snapshot, int minHeight,
+      int maxHeight, long estimatedBytes) {
+    this(region, coordinates, snapshot, null, minHeight, maxHeight, estimatedBytes);
+  }
+
+  /**
+   * Creates a chunk to be read from its region file.
+   *
+   * @param region      Batch of the region containing the chunk.
+   * @param coordinates Coordinates of the chunk.
+   * @param regionFile  Region file containing the chunk.
+   * @param minHeight   Minimum height of the world.
+   * @param maxHeight   Maximum height of the world.
+   */
+  public CapturedChunk(RegionBatch region, VectorXZ coordinates, AnvilRegionFile regionFile, int minHeight,
+      int maxHeight) {
+    this(region, coordinates, null, regionFile, minHeight, maxHeight, 0);
+  }
+
+  private CapturedChunk(RegionBatch region, VectorXZ coordinates, ChunkSnapshot snapshot,
+      AnvilRegionFile regionFile, int minHeight, int maxHeight, long estimatedBytes) {
+    this.region = region;
+    this.world = region.world;
+    this.coordinates = coordinates;
+    this.snapshot = snapshot;
+    this.regionFile = regionFile;
+    this.minHeight = minHeight;
+    this.maxHeight = maxHeight;
+    this.estimatedBytes = estimatedBytes;
+  }
+
+  /**
+   * Estimates the heap usage in bytes of a snapshot of a chunk in a world.
+   *
+   * @param minHeight Minimum height of the world.
+   * @param maxHeight Maximum height of the world.
+   * @return The estimated heap usage in bytes.
+   */
+  public static long estimateBytes(int minHeight, int maxHeight) {
+    int sections = (maxHeight - minHeight + Constants.HEIGHT_OF_SECTION - 1) / Constants.HEIGHT_OF_SECTION;
+    return (long) sections * Constants.ESTIMATED_SECTION_SNAPSHOT_BYTES;
+  }
+}
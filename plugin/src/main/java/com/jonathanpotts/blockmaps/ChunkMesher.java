@@ -0,0 +1,559 @@
+package com.jonathanpotts.blockmaps;
+
+import com.jonathanpotts.blockmaps.BlockModelTable.BakedBlock;
+import com.jonathanpotts.blockmaps.BlockModelTable.CubeFace;
+import com.jonathanpotts.blockmaps.BlockModelTable.Quad;
+import com.jonathanpotts.blockmaps.BlockModelTable.WeightedQuads;
+import org.bukkit.block.data.BlockData;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the mesh of a chunk and writes it as vertex buffers that can be
+ * uploaded to the GPU without processing.
+ *
+ * <p>
+ * Faces hidden by an opaque full cube or by a full cube with the same block
+ * state are culled. Coplanar faces of blocks made
+ * of full cubes are merged into larger quads when they share a texture, tint and
+ * light level, with texture coordinates that repeat once per block. Faces of
+ * other blocks are written as they are baked.
+ *
+ * <p>
+ * All values are little-endian and every array starts on a 4 byte boundary. A
+ * mesh starts with the magic number {@link Constants#MESH_MAGIC}, the format
+ * version (u32) and the number of groups (u32). Each group contains the faces
+ * using one texture:
+ * <ul>
+ * <li>Length of the texture name (u32) followed by the UTF-8 name (e.g.
+ * "block/stone") padded to 4 bytes</li>
+ * <li>Number of vertices (u32) and number of indices (u32)</li>
+ * <li>Positions (f32 x, y, z) relative to the chunk origin</li>
+ * <li>Normals (f32 x, y, z)</li>
+ * <li>Texture coordinates (f32 u, v) in textures</li>
+ * <li>Colors (f32 r, g, b, a) containing the biome tint</li>
+ * <li>Light levels (f32 sky, emitted) from 0 to 15</li>
+ * <li>Indices (u32) of triangles that are counter-clockwise when seen from the
+ * front</li>
+ * </ul>
+ */
+public final class ChunkMesher {
+  /**
+   * Vertices of a quad.
+   */
+  private static final int VERTICES_PER_QUAD = 4;
+
+  /**
+   * Order of the corners of the two triangles of a quad.
+   */
+  private static final int[] QUAD_INDICES = { 0, 2, 1, 0, 3, 2 };
+
+  /**
+   * Texture axes (u, v) of the faces in each direction as indices of [x, y, z].
+   */
+  private static final int[][] FACE_AXES = { { 0, 2 }, { 0, 2 }, { 0, 1 }, { 0, 1 }, { 2, 1 }, { 2, 1 } };
+
+  /**
+   * Color of faces that are not tinted.
+   */
+  private static final int WHITE = 0xFFFFFF;
+
+  private ChunkMesher() {
+  }
+
+  /**
+   * Builds and writes the mesh of a chunk.
+   *
+   * @param chunk      The captured chunk.
+   * @param scan       Block data of the chunk.
+   * @param models     Baked models of the block states.
+   * @param biomes     Biomes of the chunk.
+   * @param biomeTints Tint colors of the biomes.
+   * @return Bytes of the mesh.
+   */
+  public static byte[] mesh(CapturedChunk chunk, ChunkScan scan, BlockModelTable models, BiomeGrid biomes,
+      BiomeTintTable biomeTints) {
+    Builder builder = new Builder(chunk, scan, biomes, biomeTints);
+    int height = chunk.maxHeight - chunk.minHeight;
+    BakedBlock[] cubes = new BakedBlock[height * Constants.DEPTH_OF_CHUNK * Constants.WIDTH_OF_CHUNK];
+    int maxCubeElements = 0;
+
+    for (int y = chunk.minHeight; y < chunk.maxHeight; y++) {
+      for (int z = 0; z < Constants.DEPTH_OF_CHUNK; z++) {
+        for (int x = 0; x < Constants.WIDTH_OF_CHUNK; x++) {
+          if (scan.isAir(x, y, z)) {
+            continue;
+          }
+
+          BakedBlock block = models.get(scan.getBlockData(x, y, z));
+
+          if (block.cubeFaces != null) {
+            cubes[builder.getIndex(x, y, z)] = block;
+            maxCubeElements = Math.max(maxCubeElements, block.cubeFaces.length);
+          } else {
+            builder.addBlock(block, x, y, z);
+          }
+        }
+      }
+    }
+
+    for (int direction = 0; direction < BlockModelTable.DIRECTION_OFFSETS.length; direction++) {
+      for (int element = 0; element < maxCubeElements; element++) {
+        builder.addCubeFaces(cubes, direction, element);
+      }
+    }
+
+    return builder.write();
+  }
+
+  /**
+   * Collects the faces of a chunk into groups.
+   */
+  private static class Builder {
+    /**
+     * The captured chunk.
+     */
+    private final CapturedChunk chunk;
+
+    /**
+     * Block data of the chunk.
+     */
+    private final ChunkScan scan;
+
+    /**
+     * Biomes of the chunk.
+     */
+    private final BiomeGrid biomes;
+
+    /**
+     * Tint colors of the biomes.
+     */
+    private final BiomeTintTable biomeTints;
+
+    /**
+     * Groups in the order they were first used.
+     */
+    private final List<Group> groups = new ArrayList<>();
+
+    /**
+     * Indices of the groups keyed by texture.
+     */
+    private final Map<String, Integer> groupIndices = new HashMap<>();
+
+    /**
+     * Identifiers of mergeable face appearances keyed by group, tint and light.
+     */
+    private final Map<Long, Integer> faceKeys = new HashMap<>();
+
+    /**
+     * Appearances of the faces indexed by identifier minus one as [group, tint,
+     * sky light, emitted light].
+     */
+    private final List<int[]> faceAppearances = new ArrayList<>();
+
+    Builder(CapturedChunk chunk, ChunkScan scan, BiomeGrid biomes, BiomeTintTable biomeTints) {
+      this.chunk = chunk;
+      this.scan = scan;
+      this.biomes = biomes;
+      this.biomeTints = biomeTints;
+    }
+
+    /**
+     * Adds the baked quads of a block that is not made of full cubes. One model
+     * of each part is picked by the position of the block.
+     */
+    void addBlock(BakedBlock block, int x, int y, int z) {
+      BlockData blockData = scan.getBlockData(x, y, z);
+      long seed = getPositionSeed(chunk.coordinates.x * Constants.WIDTH_OF_CHUNK + x, y,
+          chunk.coordinates.z * Constants.DEPTH_OF_CHUNK + z);
+
+      for (List<WeightedQuads> part : block.parts) {
+        for (Quad quad : pickModel(part, seed).quads) {
+          if (quad.cullFace >= 0 && isHiddenBy(x, y, z, quad.cullFace)) {
+            continue;
+          }
+
+          int tint = quad.tinted ? getTint(blockData, x, y, z) : WHITE;
+          int[] light = getLight(x, y, z, quad.lightFace);
+          float[] positions = quad.positions.clone();
+
+          for (int i = 0; i < positions.length; i += 3) {
+            positions[i] += x;
+            positions[i + 1] += y;
+            positions[i + 2] += z;
+          }
+
+          getGroup(quad.texture).addQuad(positions, quad.normal, quad.uvs, tint, light[0], light[1]);
+        }
+      }
+    }
+
+    /**
+     * Adds the faces of one element of the full cube blocks facing a direction,
+     * merging neighboring faces with the same appearance.
+     */
+    void addCubeFaces(BakedBlock[] cubes, int direction, int element) {
+      int axis = direction <= BlockModelTable.UP ? 1 : direction <= BlockModelTable.SOUTH ? 2 : 0;
+      int uAxis = FACE_AXES[direction][0];
+      int vAxis = FACE_AXES[direction][1];
+      int[] min = { 0, chunk.minHeight, 0 };
+      int[] max = { Constants.WIDTH_OF_CHUNK, chunk.maxHeight, Constants.DEPTH_OF_CHUNK };
+      int width = max[uAxis] - min[uAxis];
+      int depth = max[vAxis] - min[vAxis];
+      int[] mask = new int[width * depth];
+      int[] position = new int[3];
+
+      for (int layer = min[axis]; layer < max[axis]; layer++) {
+        boolean empty = true;
+        position[axis] = layer;
+
+        for (int v = 0; v < depth; v++) {
+          for (int u = 0; u < width; u++) {
+            position[uAxis] = min[uAxis] + u;
+            position[vAxis] = min[vAxis] + v;
+            mask[v * width + u] = getFaceKey(cubes, position[0], position[1], position[2], direction, element);
+            empty &= mask[v * width + u] == 0;
+          }
+        }
+
+        if (empty) {
+          continue;
+        }
+
+        for (int v = 0; v < depth; v++) {
+          for (int u = 0; u < width;) {
+            int key = mask[v * width + u];
+
+            if (key == 0) {
+              u++;
+              continue;
+            }
+
+            int quadWidth = 1;
+            while (u + quadWidth < width && mask[v * width + u + quadWidth] == key) {
+              quadWidth++;
+            }
+
+            int quadDepth = 1;
+            expand: while (v + quadDepth < depth) {
+              for (int k = 0; k < quadWidth; k++) {
+                if (mask[(v + quadDepth) * width + u + k] != key) {
+                  break expand;
+                }
+              }
+
+              quadDepth++;
+            }
+
+            for (int dv = 0; dv < quadDepth; dv++) {
+              Arrays.fill(mask, (v + dv) * width + u, (v + dv) * width + u + quadWidth, 0);
+            }
+
+            float[] from = new float[3];
+            float[] to = new float[3];
+            from[axis] = layer;
+            to[axis] = layer + 1;
+            from[uAxis] = min[uAxis] + u;
+            to[uAxis] = min[uAxis] + u + quadWidth;
+            from[vAxis] = min[vAxis] + v;
+            to[vAxis] = min[vAxis] + v + quadDepth;
+
+            int[] appearance = faceAppearances.get(key - 1);
+            float[] normal = new float[3];
+            normal[axis] = BlockModelTable.DIRECTION_OFFSETS[direction][axis];
+            float[] uvs = { 0, 0, quadWidth, 0, quadWidth, quadDepth, 0, quadDepth };
+
+            groups.get(appearance[0]).addQuad(BlockModelTable.getFaceCorners(direction, from, to), normal, uvs,
+                appearance[1], appearance[2], appearance[3]);
+
+            u += quadWidth;
+          }
+        }
+      }
+    }
+
+    /**
+     * Gets the identifier of the appearance of a full cube face.
+     *
+     * @return The identifier or 0 if the face is missing or hidden.
+     */
+    private int getFaceKey(BakedBlock[] cubes, int x, int y, int z, int direction, int element) {
+      BakedBlock cube = cubes[getIndex(x, y, z)];
+
+      if (cube == null || element >= cube.cubeFaces.length) {
+        return 0;
+      }
+
+      CubeFace face = cube.cubeFaces[element][direction];
+
+      if (face == null || isHiddenBy(x, y, z, direction) || isJoined(x, y, z, direction)) {
+        return 0;
+      }
+
+      int group = getGroupIndex(face.texture);
+      int tint = face.tinted ? getTint(scan.getBlockData(x, y, z), x, y, z) : WHITE;
+      int[] light = getLight(x, y, z, direction);
+      long key = (long) group << 32 | (long) tint << 8 | light[0] << 4 | light[1];
+
+      Integer id = faceKeys.get(key);
+
+      if (id == null) {
+        faceAppearances.add(new int[] { group, tint, light[0], light[1] });
+        id = faceAppearances.size();
+        faceKeys.put(key, id);
+      }
+
+      return id;
+    }
+
+    /**
+     * Checks if the neighbor of a block in a direction is an opaque full cube.
+     * Neighbors in other chunks are treated as not hiding the face.
+     */
+    private boolean isHiddenBy(int x, int y, int z, int direction) {
+      int[] offset = BlockModelTable.DIRECTION_OFFSETS[direction];
+      int nx = x + offset[0];
+      int ny = y + offset[1];
+      int nz = z + offset[2];
+
+      if (!isInChunk(nx, ny, nz)) {
+        return false;
+      }
+
+      return scan.isOccluding(nx, ny, nz);
+    }
+
+    /**
+     * Checks if the neighbor of a block in a direction has the same block state,
+     * like the inner faces of a group of glass blocks.
+     */
+    private boolean isJoined(int x, int y, int z, int direction) {
+      int[] offset = BlockModelTable.DIRECTION_OFFSETS[direction];
+      int nx = x + offset[0];
+      int ny = y + offset[1];
+      int nz = z + offset[2];
+
+      return isInChunk(nx, ny, nz) && scan.getBlockData(nx, ny, nz).equals(scan.getBlockData(x, y, z));
+    }
+
+    /**
+     * Gets the light levels of the neighbor of a block in a direction or of the
+     * block itself if the neighbor is in another chunk.
+     *
+     * @return Sky light and emitted light.
+     */
+    private int[] getLight(int x, int y, int z, int direction) {
+      int[] offset = BlockModelTable.DIRECTION_OFFSETS[direction];
+      int nx = x + offset[0];
+      int ny = y + offset[1];
+      int nz = z + offset[2];
+
+      if (!isInChunk(nx, ny, nz)) {
+        nx = x;
+        ny = y;
+        nz = z;
+      }
+
+      return new int[] { chunk.snapshot.getBlockSkyLight(nx, ny, nz),
+          chunk.snapshot.getBlockEmittedLight(nx, ny, nz) };
+    }
+
+    /**
+     * Gets the biome tint of a block.
+     */
+    private int getTint(BlockData blockData, int x, int y, int z) {
+      int tint = biomeTints.getTintColor(blockData.getMaterial(), biomes.getBiome(x, y, z));
+      return tint == BiomeTintTable.NO_TINT ? WHITE : tint;
+    }
+
+    private boolean isInChunk(int x, int y, int z) {
+      return x >= 0 && x < Constants.WIDTH_OF_CHUNK && z >= 0 && z < Constants.DEPTH_OF_CHUNK
+          && y >= chunk.minHeight && y < chunk.maxHeight;
+    }
+
+    int getIndex(int x, int y, int z) {
+      return ((y - chunk.minHeight) * Constants.DEPTH_OF_CHUNK + z) * Constants.WIDTH_OF_CHUNK + x;
+    }
+
+    private Group getGroup(String texture) {
+      return groups.get(getGroupIndex(texture));
+    }
+
+    private int getGroupIndex(String texture) {
+      Integer index = groupIndices.get(texture);
+
+      if (index == null) {
+        index = groups.size();
+        groups.add(new Group(texture));
+        groupIndices.put(texture, index);
+      }
+
+      return index;
+    }
+
+    /**
+     * Writes the groups in the mesh format.
+     */
+    byte[] write() {
+      int size = 12;
+      List<byte[]> names = new ArrayList<>();
+
+      for (Group group : groups) {
+        byte[] name = group.texture.getBytes(StandardCharsets.UTF_8);
+        names.add(name);
+        size += 4 + align(name.length) + 8 + group.vertexCount * (3 + 3 + 2 + 4 + 2) * 4 + group.indexCount * 4;
+      }
+
+      ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(Constants.MESH_MAGIC);
+      buffer.putInt(Constants.MESH_FORMAT_VERSION);
+      buffer.putInt(groups.size());
+
+      for (int i = 0; i < groups.size(); i++) {
+        Group group = groups.get(i);
+        byte[] name = names.get(i);
+
+        buffer.putInt(name.length);
+        buffer.put(name);
+        buffer.position(buffer.position() + align(name.length) - name.length);
+        buffer.putInt(group.vertexCount);
+        buffer.putInt(group.indexCount);
+
+        putFloats(buffer, group.positions, group.vertexCount * 3);
+        putFloats(buffer, group.normals, group.vertexCount * 3);
+        putFloats(buffer, group.uvs, group.vertexCount * 2);
+        putFloats(buffer, group.colors, group.vertexCount * 4);
+        putFloats(buffer, group.lights, group.vertexCount * 2);
+
+        for (int index = 0; index < group.indexCount; index++) {
+          buffer.putInt(group.indices[index]);
+        }
+      }
+
+      return buffer.array();
+    }
+  }
+
+  /**
+   * Vertex buffers of the faces using one texture.
+   */
+  private static class Group {
+    final String texture;
+    float[] positions = new float[3 * 64];
+    float[] normals = new float[3 * 64];
+    float[] uvs = new float[2 * 64];
+    float[] colors = new float[4 * 64];
+    float[] lights = new float[2 * 64];
+    int[] indices = new int[6 * 16];
+    int vertexCount = 0;
+    int indexCount = 0;
+
+    Group(String texture) {
+      this.texture = texture;
+    }
+
+    /**
+     * Adds a quad.
+     *
+     * @param positions    Positions of the 4 corners relative to the chunk.
+     * @param normal       Normal of the quad.
+     * @param uvs          Texture coordinates of the 4 corners.
+     * @param tint         Tint color as RGB.
+     * @param skyLight     Sky light level.
+     * @param emittedLight Emitted light level.
+     */
+    void addQuad(float[] positions, float[] normal, float[] uvs, int tint, int skyLight, int emittedLight) {
+      int capacity = vertexCount + VERTICES_PER_QUAD;
+
+      if (capacity * 3 > this.positions.length) {
+        int newCapacity = capacity * 2;
+        this.positions = Arrays.copyOf(this.positions, newCapacity * 3);
+        this.normals = Arrays.copyOf(this.normals, newCapacity * 3);
+        this.uvs = Arrays.copyOf(this.uvs, newCapacity * 2);
+        this.colors = Arrays.copyOf(this.colors, newCapacity * 4);
+        this.lights = Arrays.copyOf(this.lights, newCapacity * 2);
+        this.indices = Arrays.copyOf(this.indices, newCapacity / VERTICES_PER_QUAD * QUAD_INDICES.length);
+      }
+
+      float red = ((tint >> 16) & 0xFF) / 255f;
+      float green = ((tint >> 8) & 0xFF) / 255f;
+      float blue = (tint & 0xFF) / 255f;
+
+      for (int i = 0; i < VERTICES_PER_QUAD; i++) {
+        int vertex = vertexCount + i;
+        System.arraycopy(positions, i * 3, this.positions, vertex * 3, 3);
+        System.arraycopy(normal, 0, this.normals, vertex * 3, 3);
+        System.arraycopy(uvs, i * 2, this.uvs, vertex * 2, 2);
+        this.colors[vertex * 4] = red;
+        this.colors[vertex * 4 + 1] = green;
+        this.colors[vertex * 4 + 2] = blue;
+        this.colors[vertex * 4 + 3] = 1;
+        this.lights[vertex * 2] = skyLight;
+        this.lights[vertex * 2 + 1] = emittedLight;
+      }
+
+      for (int index : QUAD_INDICES) {
+        indices[indexCount++] = vertexCount + index;
+      }
+
+      vertexCount += VERTICES_PER_QUAD;
+    }
+  }
+
+  /**
+   * Picks a weighted model using the seed of a block position.
+   */
+  private static WeightedQuads pickModel(List<WeightedQuads> models, long seed) {
+    if (models.size() == 1) {
+      return models.get(0);
+    }
+
+    int totalWeight = 0;
+
+    for (WeightedQuads model : models) {
+      totalWeight += model.weight;
+    }
+
+    long pick = Math.floorMod(seed, (long) Math.max(totalWeight, 1));
+
+    for (WeightedQuads model : models) {
+      pick -= model.weight;
+
+      if (pick < 0) {
+        return model;
+      }
+    }
+
+    return models.get(0);
+  }
+
+  /**
+   * Gets a seed from a block position the same way Minecraft picks random
+   * models.
+   */
+  private static long getPositionSeed(int x, int y, int z) {
+    long seed = (long) (x * 3129871) ^ (long) z * 116129781L ^ (long) y;
+    seed = seed * seed * 42317861L + seed * 11L;
+    return seed >> 16;
+  }
+
+  /**
+   * Rounds a length up to a multiple of 4.
+   */
+  private static int align(int length) {
+    return (length + 3) & ~3;
+  }
+
+  private static void putFloats(ByteBuffer buffer, float[] values, int count) {
+    for (int i = 0; i < count; i++) {
+      buffer.putFloat(values[i]);
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package com.jonathanpotts.blockmaps;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.type.Piston;
+
+/**
+ * The block data of a captured chunk read once from its snapshot, along with
+ * flags used to cull blocks that do not need to be rendered.
+ */
+public class ChunkScan {
+  /**
+   * Flag for air blocks.
+   */
+  private static final byte AIR = 1;
+
+  /**
+   * Flag for opaque full-cube blocks.
+   */
+  private static final byte OCCLUDING = 2;
+
+  /**
+   * Number of blocks in a layer of a chunk.
+   */
+  private static final int LAYER_SIZE = Constants.WIDTH_OF_CHUNK * Constants.DEPTH_OF_CHUNK;
+
+  /**
+   * Status of each material being an opaque full cube indexed by ordinal.
+   */
+  private static final boolean[] OCCLUDING_MATERIALS = createOccludingMaterials();
+
+  /**
+   * Minimum height of the world.
+   */
+  private final int minHeight;
+
+  /**
+   * Maximum height of the world.
+   */
+  private final int maxHeight;
+
+  /**
+   * Block data indexed in YZX order starting at the minimum height.
+   */
+  private final BlockData[] blockData;
+
+  /**
+   * Flags of the blocks indexed in YZX order starting at the minimum height.
+   */
+  private final byte[] flags;
+
+  /**
+   * Scans a captured chunk.
+   *
+   * @param chunk The captured chunk.
+   */
+  public ChunkScan(CapturedChunk chunk) {
+    ChunkSnapshot snapshot = chunk.snapshot;
+
+    minHeight = chunk.minHeight;
+    maxHeight = chunk.maxHeight;
+    blockData = new BlockData[(maxHeight - minHeight) * LAYER_SIZE];
+    flags = new byte[blockData.length];
+
+    int index = 0;
+
+    for (int y = minHeight; y < maxHeight; y++) {
+      for (int z = 0; z < Constants.DEPTH_OF_CHUNK; z++) {
+        for (int x = 0; x < Constants.WIDTH_OF_CHUNK; x++) {
+          BlockData data = snapshot.getBlockData(x, y, z);
+          Material material = data.getMaterial();
+
+          blockData[index] = data;
+
+          if (material.isAir()) {
+            flags[index] = AIR;
+          } else if (OCCLUDING_MATERIALS[material.ordinal()] && isFullCube(data)) {
+            flags[index] = OCCLUDING;
+          }
+
+          index++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the block data of a block.
+   *
+   * @param x X coordinate of the block within the chunk.
+   * @param y Y coordinate of the block.
+   * @param z Z coordinate of the block within the chunk.
+   * @return The block data.
+   */
+  public BlockData getBlockData(int x, int y, int z) {
+    return blockData[getIndex(x, y, z)];
+  }
+
+  /**
+   * Checks if a block is air.
+   *
+   * @param x X coordinate of the block within the chunk.
+   * @param y Y coordinate of the block.
+   * @param z Z coordinate of the block within the chunk.
+   * @return True if the block is air.
+   */
+  public boolean isAir(int x, int y, int z) {
+    return flags[getIndex(x, y, z)] == AIR;
+  }
+
+  /**
+   * Checks if a block is an opaque full cube.
+   *
+   * @param x X coordinate of the block within the chunk.
+   * @param y Y coordinate of the block.
+   * @param z Z coordinate of the block within the chunk.
+   * @return True if the block hides the faces of its neighbors.
+   */
+  public boolean isOccluding(int x, int y, int z) {
+    return flags[getIndex(x, y, z)] == OCCLUDING;
+  }
+
+  /**
+   * Checks if an air block is surrounded by air. Blocks on the X and Z edges of
+   * the chunk are never considered surrounded in case their light information is
+   * needed by a neighboring chunk.
+   *
+   * @param x X coordinate of the block within the chunk.
+   * @param y Y coordinate of the block.
+   * @param z Z coordinate of the block within the chunk.
+   * @return True if the block and all of its neighbors are air.
+   */
+  public boolean isSurroundedByAir(int x, int y, int z) {
+    return isSurroundedBy(x, y, z, AIR, true);
+  }
+
+  /**
+   * Checks if a block is an opaque full cube hidden by opaque full cubes on all
+   * six sides. Blocks on the X and Z edges of the chunk are never considered
+   * hidden since their neighbors are in a different chunk, and blocks at the
+   * bottom and top of the world are never considered hidden.
+   *
+   * @param x X coordinate of the block within the chunk.
+   * @param y Y coordinate of the block.
+   * @param z Z coordinate of the block within the chunk.
+   * @return True if the block cannot be seen.
+   */
+  public boolean isHidden(int x, int y, int z) {
+    return isSurroundedBy(x, y, z, OCCLUDING, false);
+  }
+
+  /**
+   * Checks if a block and its neighbors all have a flag.
+   *
+   * @param x              X coordinate of the block within the chunk.
+   * @param y              Y coordinate of the block.
+   * @param z              Z coordinate of the block within the chunk.
+   * @param flag           The flag to check.
+   * @param outsideMatches Status of blocks below and above the world matching.
+   * @return True if the block and all of its neighbors have the flag.
+   */
+  private boolean isSurroundedBy(int x, int y, int z, byte flag, boolean outsideMatches) {
+    if (x == 0 || x == Constants.WIDTH_OF_CHUNK - 1 || z == 0 || z == Constants.DEPTH_OF_CHUNK - 1) {
+      return false;
+    }
+
+    int index = getIndex(x, y, z);
+
+    if (flags[index] != flag || flags[index - 1] != flag || flags[index + 1] != flag
+        || flags[index - Constants.WIDTH_OF_CHUNK] != flag || flags[index + Constants.WIDTH_OF_CHUNK] != flag) {
+      return false;
+    }
+
+    boolean below = y > minHeight ? flags[index - LAYER_SIZE] == flag : outsideMatches;
+    boolean above = y < maxHeight - 1 ? flags[index + LAYER_SIZE] == flag : outsideMatches;
+
+    return below && above;
+  }
+
+  /**
+   * Gets the index of a block.
+   *
+   * @param x X coordinate of the block within the chunk.
+   * @param y Y coordinate of the block.
+   * @param z Z coordinate of the block within the chunk.
+   * @return Index of the block in YZX order starting at the minimum height.
+   */
+  private int getIndex(int x, int y, int z) {
+    return ((y - minHeight) * Constants.DEPTH_OF_CHUNK + z) * Constants.WIDTH_OF_CHUNK + x;
+  }
+
+  /**
+   * Checks if the block state of an occluding material is a full cube.
+   *
+   * @param data The block data.
+   * @return False for block states that change the shape of an occluding
+   *         material.
+   */
+  private static boolean isFullCube(BlockData data) {
+    return !(data instanceof Piston) || !((Piston) data).isExtended();
+  }
+
+  /**
+   * Creates the lookup of materials that are opaque full cubes.
+   *
+   * @return Status of each material being an opaque full cube indexed by
+   *         ordinal.
+   */
+  private static boolean[] createOccludingMaterials() {
+    Material[] materials = Material.values();
+    boolean[] occluding = new boolean[materials.length];
+
+    for (Material material : materials) {
+      occluding[material.ordinal()] = !material.isLegacy() && material.isBlock() && material.isOccluding();
+    }
+
+    return occluding;
+  }
+}
@@ -0,0 +1,276 @@
+package com.jonathanpotts.blockmaps;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed pool of worker threads that process captured chunks from a snapshot
+ * queue.
+ */
+public class ChunkWorkerPool {
+  /**
+   * Number of worker threads.
+   */
+  private final int threads;
+
+  /**
+   * Statistics for each worker of the last run.
+   */
+  private final List<WorkerStats> stats = new ArrayList<>();
+
+  /**
+   * Executor running the workers started by {@link #start} or null if no
+   * workers are running.
+   */
+  private ExecutorService executor;
+
+  /**
+   * Results of the running workers.
+   */
+  private final List<Future<?>> futures = new ArrayList<>();
+
+  /**
+   * Snapshot queue of the running workers.
+   */
+  private SnapshotQueue snapshots;
+
+  /**
+   * Creates a chunk worker pool.
+   *
+   * @param threads Number of worker threads.
+   */
+  public ChunkWorkerPool(int threads) {
+    this.threads = threads;
+  }
+
+  /**
+   * Processes captured chunks until the snapshot queue is closed and empty. If a
+   * worker fails, the queue is aborted and the failure is rethrown once all
+   * workers have stopped.
+   *
+   * @param snapshots Queue containing the captured chunks.
+   * @param loader    Loader run for each captured chunk before it is
+   *                  processed.
+   * @param processor Processor run for each captured chunk.
+   * @throws InterruptedException Thrown if interrupted while waiting for the
+   *                              workers.
+   * @throws ExecutionException   Thrown if a worker failed.
+   */
+  public void run(SnapshotQueue snapshots, ChunkLoader loader, ChunkProcessor processor)
+      throws InterruptedException, ExecutionException {
+    start(snapshots, loader, processor);
+    join();
+  }
+
+  /**
+   * Starts processing captured chunks on the worker threads without waiting for
+   * them. {@link #join()} must be called once the snapshot queue is closed or
+   * aborted.
+   *
+   * @param snapshots Queue containing the captured chunks.
+   * @param loader    Loader run for each captured chunk before it is
+   *                  processed.
+   * @param processor Processor run for each captured chunk.
+   */
+  public void start(SnapshotQueue snapshots, ChunkLoader loader, ChunkProcessor processor) {
+    stats.clear();
+    futures.clear();
+    this.snapshots = snapshots;
+
+    AtomicInteger threadCount = new AtomicInteger();
+    executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "BlockMaps Worker #" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    for (int i = 0; i < threads; i++) {
+      WorkerStats workerStats = new WorkerStats(i + 1);
+      stats.add(workerStats);
+
+      futures.add(executor.submit(() -> {
+        try {
+          work(snapshots, loader, processor, workerStats);
+        } catch (Exception e) {
+          snapshots.abort();
+          throw e;
+        }
+
+        return null;
+      }));
+    }
+  }
+
+  /**
+   * Waits for the workers started by {@link #start} to process the remaining
+   * chunks of the snapshot queue. If a worker fails, the queue is aborted and
+   * the failure is rethrown once all workers have stopped.
+   *
+   * @throws InterruptedException Thrown if interrupted while waiting for the
+   *                              workers.
+   * @throws ExecutionException   Thrown if a worker failed.
+   */
+  public void join() throws InterruptedException, ExecutionException {
+    try {
+      ExecutionException failure = null;
+
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e;
+          }
+        }
+      }
+
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      snapshots.abort();
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Gets the statistics for each worker of the last run.
+   *
+   * @return The worker statistics.
+   */
+  public List<WorkerStats> getStats() {
+    return Collections.unmodifiableList(stats);
+  }
+
+  /**
+   * Processes captured chunks on a worker thread.
+   *
+   * @param snapshots   Queue containing the captured chunks.
+   * @param loader      Loader run for each captured chunk before it is
+   *                    processed.
+   * @param processor   Processor run for each captured chunk.
+   * @param workerStats Statistics for the worker.
+   */
+  private static void work(SnapshotQueue snapshots, ChunkLoader loader, ChunkProcessor processor,
+      WorkerStats workerStats)
+      throws InterruptedException, ExecutionException, IOException {
+    long startTime = System.nanoTime();
+
+    CapturedChunk chunk;
+    while ((chunk = snapshots.take()) != null) {
+      long chunkStartTime = System.nanoTime();
+      chunk = loader.load(chunk);
+      long bytes = processor.process(chunk);
+
+      workerStats.busyNanos += System.nanoTime() - chunkStartTime;
+      if (chunk.snapshot != null) {
+        workerStats.chunks++;
+      }
+      workerStats.bytes += bytes;
+    }
+
+    workerStats.elapsedNanos = System.nanoTime() - startTime;
+  }
+
+  /**
+   * Loads the snapshot of a captured chunk that was not captured on the main
+   * server thread.
+   */
+  @FunctionalInterface
+  public interface ChunkLoader {
+    /**
+     * Loads the snapshot of a captured chunk.
+     *
+     * @param chunk The captured chunk.
+     * @return The captured chunk with its snapshot loaded.
+     */
+    CapturedChunk load(CapturedChunk chunk) throws InterruptedException, ExecutionException, IOException;
+  }
+
+  /**
+   * Processes a captured chunk.
+   */
+  @FunctionalInterface
+  public interface ChunkProcessor {
+    /**
+     * Processes a captured chunk and saves data.
+     *
+     * @param chunk The captured chunk.
+     * @return Number of bytes written.
+     */
+    long process(CapturedChunk chunk) throws InterruptedException, ExecutionException, IOException;
+  }
+
+  /**
+   * Throughput statistics for a worker.
+   */
+  public static class WorkerStats {
+    /**
+     * Number of the worker.
+     */
+    public final int worker;
+
+    /**
+     * Number of chunks processed.
+     */
+    public long chunks;
+
+    /**
+     * Number of bytes written.
+     */
+    public long bytes;
+
+    /**
+     * Time in nanoseconds spent processing chunks.
+     */
+    public long busyNanos;
+
+    /**
+     * Time in nanoseconds the worker was running.
+     */
+    public long elapsedNanos;
+
+    /**
+     * Creates worker statistics.
+     *
+     * @param worker Number of the worker.
+     */
+    WorkerStats(int worker) {
+      this.worker = worker;
+    }
+
+    /**
+     * Gets the number of chunks processed per second while the worker was
+     * running.
+     *
+     * @return The throughput in chunks per second.
+     */
+    public double getChunksPerSecond() {
+      return elapsedNanos > 0 ? chunks / (elapsedNanos / 1_000_000_000.0) : 0;
+    }
+
+    /**
+     * Gets the fraction of the time the worker was running that was spent
+     * processing chunks.
+     *
+     * @return The utilization of the worker between 0 and 1.
+     */
+    public double getUtilization() {
+      return elapsedNanos > 0 ? (double) busyNanos / elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Worker #%d processed %d chunks (%.1f chunks/s, %.0f%% busy, %.1f MiB written)", worker,
+          chunks, getChunksPerSecond(), getUtilization() * 100, bytes / (1024.0 * 1024.0));
+    }
+  }
+}
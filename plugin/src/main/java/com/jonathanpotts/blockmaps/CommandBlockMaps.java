@@ -0,0 +1,37 @@
+package com.jonathanpotts.blockmaps;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Executes the "blockmaps" command.
+ */
+public class CommandBlockMaps implements CommandExecutor {
+  /**
+   * Metrics of the current or last refresh.
+   */
+  private final RenderMetrics metrics;
+
+  /**
+   * Creates an instance of the command executor.
+   *
+   * @param metrics Metrics of the current or last refresh.
+   */
+  public CommandBlockMaps(RenderMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+    if (args.length != 1 || !args[0].equalsIgnoreCase("status")) {
+      return false;
+    }
+
+    for (String line : metrics.getStatusLines()) {
+      sender.sendMessage(line);
+    }
+
+    return true;
+  }
+}
@@ -1,10 +1,9 @@
 package com.jonathanpotts.blockmaps;
 
 import com.google.gson.*;
-import com.google.gson.stream.JsonReader;
 import com.jonathanpotts.blockmaps.models.*;
-import org.bukkit.Chunk;
 import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Biome;
@@ -12,25 +11,30 @@ import org.bukkit.block.data.BlockData;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 
 import net.sf.image4j.codec.ico.ICOEncoder;
 
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPOutputStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import javax.imageio.ImageIO;
 
@@ -38,6 +42,16 @@ import javax.imageio.ImageIO;
  * Executes the "refresh-map-data" command.
  */
 public class CommandRefreshMapData implements CommandExecutor {
+  /**
+   * Name of the file storing when the worlds were last fully rendered.
+   */
+  private static final String RENDER_STATE_FILE_NAME = "render-state.json";
+
+  /**
+   * Name of the file the metrics are written to.
+   */
+  private static final String METRICS_FILE_NAME = "metrics.prom";
+
   /**
    * The server plugin associated to this command.
    */
@@ -59,522 +73,2222 @@ public class CommandRefreshMapData implements CommandExecutor {
 
   private final Path webDataPath;
 
+  /**
+   * Manifest of the files generated for the web app.
+   */
+  private final OutputManifest manifest;
+
+  /**
+   * Tracker of chunks that changed since they were last rendered.
+   */
+  private final DirtyChunkTracker dirtyChunkTracker;
+
+  /**
+   * Metrics of the current or last refresh.
+   */
+  private final RenderMetrics metrics;
+
   /**
    * Status of the command execution.
    */
-  private boolean isExecuting = false;
+  private volatile boolean isExecuting = false;
+
+  /**
+   * Settings used by the current command execution.
+   */
+  private Settings settings;
+
+  /**
+   * Cache of humidity values for biomes. Humidity is constant within a biome so
+   * it only has to be looked up on the main thread once.
+   */
+  private final Map<Biome, Double> biomeHumidity = new ConcurrentHashMap<>();
+
+  /**
+   * Table interning the block states of rendered blocks.
+   */
+  private final BlockStateTable blockStates = new BlockStateTable();
+
+  /**
+   * Table of the climate and tint colors of rendered biomes.
+   */
+  private final BiomeTintTable biomeTints = new BiomeTintTable();
+
+  /**
+   * Surface tiles of the current render or null if they are disabled.
+   */
+  private volatile SurfaceTiles surfaceTiles;
+
+  /**
+   * Baked block models of the current render or null if meshes are disabled.
+   */
+  private volatile BlockModelTable blockModels;
+
+  /**
+   * Writer of the GZIP-compressed chunk files of the current render.
+   */
+  private volatile GzipFileWriter gzipWriter;
+
+  /**
+   * Budget of the main server thread work of the current refresh.
+   */
+  private volatile TickBudget tickBudget;
+
+  /**
+   * Reader of chunks from region files of the current render or null if chunks
+   * are only captured on the main server thread.
+   */
+  private volatile AnvilChunkReader anvilReader;
+
+  /**
+   * Number of chunks of the current render that could not be read from their
+   * region files and were captured on the main server thread instead.
+   */
+  private final AtomicInteger regionFileFallbacks = new AtomicInteger();
+
+  /**
+   * Journal of the current full refresh or null if no full refresh is running.
+   */
+  private volatile RefreshJournal journal;
+
+  /**
+   * Queue of the chunks of the current render or null if no chunks are being
+   * rendered.
+   */
+  private volatile RenderQueue renderQueue;
+
+  /**
+   * Status of the current refresh being paused.
+   */
+  private volatile boolean paused = false;
+
+  /**
+   * Status of the current refresh being cancelled.
+   */
+  private volatile boolean cancelled = false;
+
+  /**
+   * Targeted refreshes waiting to be started or to join the running targeted
+   * refresh. Also guards starting and finishing command executions so that
+   * waiting targets are never left behind.
+   */
+  private final Queue<RenderTarget> pendingTargets = new ArrayDeque<>();
+
+  /**
+   * Status of the current command execution being a targeted refresh that
+   * waiting targets join.
+   */
+  private volatile boolean renderingTargets = false;
+
+  /**
+   * Locks of the regions of the current render by world name and region
+   * coordinates. Targeted refreshes can request the same region more than
+   * once, so writing the files shared by the chunks of a region is serialized.
+   */
+  private final Map<String, Object> regionLocks = new ConcurrentHashMap<>();
 
   /**
-   * Collection of materials that are tinted.
+   * Number of regions of each world that have not finished by world name, plus
+   * one while the regions of the world are being requested.
    */
-  Set<Material> tintedMaterials;
+  private final Map<String, AtomicInteger> unfinishedRegions = new ConcurrentHashMap<>();
 
   /**
    * Creates an instance of the command executor.
    *
-   * @param plugin The server plugin associated to this command.
+   * @param plugin            The server plugin associated to this command.
+   * @param dirtyChunkTracker Tracker of chunks that changed since they were last
+   *                          rendered.
+   * @param metrics           Metrics of the current or last refresh.
    */
-  public CommandRefreshMapData(JavaPlugin plugin) {
+  public CommandRefreshMapData(JavaPlugin plugin, DirtyChunkTracker dirtyChunkTracker, RenderMetrics metrics) {
     this.plugin = plugin;
+    this.dirtyChunkTracker = dirtyChunkTracker;
+    this.metrics = metrics;
     gson = new GsonBuilder().disableHtmlEscaping().create();
 
     pluginDataPath = plugin.getDataFolder().toPath();
     Path webPath = pluginDataPath.resolve("web");
     webDataPath = webPath.resolve("data");
-
-    tintedMaterials = new HashSet<Material>();
-    tintedMaterials.add(Material.GRASS_BLOCK);
-    tintedMaterials.add(Material.GRASS);
-    tintedMaterials.add(Material.TALL_GRASS);
-    tintedMaterials.add(Material.FERN);
-    tintedMaterials.add(Material.LARGE_FERN);
-    tintedMaterials.add(Material.POTTED_FERN);
-    tintedMaterials.add(Material.SUGAR_CANE);
-    tintedMaterials.add(Material.OAK_LEAVES);
-    tintedMaterials.add(Material.DARK_OAK_LEAVES);
-    tintedMaterials.add(Material.JUNGLE_LEAVES);
-    tintedMaterials.add(Material.ACACIA_LEAVES);
-    tintedMaterials.add(Material.VINE);
-    tintedMaterials.add(Material.WATER);
+    manifest = new OutputManifest(webPath);
   }
 
   @Override
   public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+    if (args.length > 0 && args[0].equalsIgnoreCase("dirty")) {
+      if (!refreshDirtyChunks()) {
+        plugin.getLogger().info("Map data is already being refreshed or no chunks have changed");
+      }
+
+      return true;
+    }
+
+    if (args.length > 0 && args[0].equalsIgnoreCase("delta")) {
+      if (args.length != 2) {
+        return false;
+      }
+
+      long sinceGeneration;
+
+      try {
+        sinceGeneration = Long.parseLong(args[1]);
+      } catch (NumberFormatException e) {
+        return false;
+      }
+
+      if (!writeDeltaBundle(sinceGeneration)) {
+        plugin.getLogger().info("Map data is already being refreshed");
+      }
+
+      return true;
+    }
+
+    if (args.length > 0 && args[0].equalsIgnoreCase("pause")) {
+      if (args.length != 1) {
+        return false;
+      }
+
+      if (pauseRefresh()) {
+        plugin.getLogger().info("The map data refresh is paused once the chunks being processed are finished."
+            + " Run \"refresh-map-data resume\" to continue it.");
+      } else {
+        plugin.getLogger().info("Map data is not being refreshed");
+      }
+
+      return true;
+    }
+
+    if (args.length > 0 && args[0].equalsIgnoreCase("cancel")) {
+      if (args.length != 1) {
+        return false;
+      }
+
+      if (cancelRefresh()) {
+        plugin.getLogger().info("The map data refresh is cancelled once the chunks being processed are finished");
+      } else {
+        plugin.getLogger().info("Map data is not being refreshed");
+      }
+
+      return true;
+    }
+
+    if (args.length > 0 && args[0].equalsIgnoreCase("resume")) {
+      if (args.length != 1) {
+        return false;
+      }
+
+      if (unpauseRefresh()) {
+        plugin.getLogger().info("The map data refresh has been resumed");
+      } else if (!resumeRefresh()) {
+        plugin.getLogger().info("Map data is already being refreshed or no refresh was interrupted");
+      }
+
+      return true;
+    }
+
+    if (args.length > 0 && (args[0].equalsIgnoreCase("world") || args[0].equalsIgnoreCase("blocks")
+        || args[0].equalsIgnoreCase("chunks") || args[0].equalsIgnoreCase("radius"))) {
+      RenderTarget target = parseTarget(args);
+
+      if (target == null) {
+        return false;
+      }
+
+      if (plugin.getServer().getWorld(target.worldName) == null) {
+        plugin.getLogger().info("There is no world named " + target.worldName);
+        return true;
+      }
+
+      if (refreshTarget(target)) {
+        plugin.getLogger().info("Refreshing the map data of " + target);
+      } else if (renderingTargets) {
+        plugin.getLogger().info("The map data of " + target + " is refreshed along with the running refresh");
+      } else {
+        plugin.getLogger().info("The map data of " + target + " is refreshed once the running refresh finishes");
+      }
+
+      return true;
+    }
+
+    boolean force = args.length > 0 && args[0].equalsIgnoreCase("force");
+
+    if (args.length > (force ? 1 : 0)) {
+      return false;
+    }
+
     if (isExecuting) {
       plugin.getLogger().info("Map data is already being refreshed");
       return true;
     }
 
-    isExecuting = true;
+    refreshAll(force, null);
+
+    return true;
+  }
+
+  /**
+   * Parses the arguments of a targeted refresh.
+   *
+   * @param args Arguments of the command.
+   * @return The render target or null if the arguments are invalid.
+   */
+  private static RenderTarget parseTarget(String[] args) {
+    try {
+      switch (args[0].toLowerCase(Locale.ROOT)) {
+        case "world":
+          return args.length == 2 ? RenderTarget.world(args[1]) : null;
+        case "blocks":
+          return args.length == 6
+              ? RenderTarget.blocks(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                  Integer.parseInt(args[4]), Integer.parseInt(args[5]))
+              : null;
+        case "chunks":
+          return args.length == 6
+              ? RenderTarget.chunks(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                  Integer.parseInt(args[4]), Integer.parseInt(args[5]))
+              : null;
+        case "radius":
+          return args.length == 5
+              ? RenderTarget.radius(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                  Integer.parseInt(args[4]))
+              : null;
+        default:
+          return null;
+      }
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Refreshes the map data of an area. Targeted refreshes requested while
+   * another targeted refresh is rendering join its render, so they run
+   * concurrently on the same worker threads. Targeted refreshes requested
+   * during any other refresh start once it finishes. Must be called on the main
+   * thread.
+   *
+   * @param target Area to refresh.
+   * @return True if a refresh was started or false if the area is refreshed
+   *         along with or after the running refresh.
+   */
+  public boolean refreshTarget(RenderTarget target) {
+    synchronized (pendingTargets) {
+      pendingTargets.add(target);
+      pendingTargets.notifyAll();
+
+      if (isExecuting) {
+        return false;
+      }
+
+      isExecuting = true;
+    }
+
+    refreshTargets();
+
+    return true;
+  }
+
+  /**
+   * Starts a targeted refresh of the waiting targets if no command is
+   * executing. Must be called on the main thread.
+   */
+  private void refreshPendingTargets() {
+    synchronized (pendingTargets) {
+      if (isExecuting || pendingTargets.isEmpty()) {
+        return;
+      }
+
+      isExecuting = true;
+    }
+
+    refreshTargets();
+  }
+
+  /**
+   * Refreshes the map data of the waiting targets and the targets requested
+   * while they are rendered. The command execution must have been started.
+   * Must be called on the main thread.
+   */
+  private void refreshTargets() {
+    renderingTargets = true;
+    paused = false;
+    cancelled = false;
+
+    plugin.reloadConfig();
+    settings = new Settings(plugin.getConfig());
 
     plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+      List<RenderTarget> targets = new ArrayList<>();
+
       try {
-        copyWebApp();
-        generateServerData();
-        generateMaterialData();
-        generateBiomeData();
-        downloadMaterialTexturesAndModels();
-        processWorlds();
+        int[] chunkCount = new int[1];
+        generateOutput("targeted", () -> chunkCount[0] = processTargets(targets));
 
         plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
-          plugin.getLogger().info("The map has been refreshed");
+          plugin.getLogger().info("The map has been refreshed for " + chunkCount[0] + " chunks of "
+              + targets.stream().map(RenderTarget::toString).collect(Collectors.joining(", ")));
+
+          return null;
+        });
+      } catch (CancellationException e) {
+        plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+          plugin.getLogger().info("The targeted map data refresh has been cancelled");
 
           return null;
         });
       } catch (URISyntaxException | IOException | InterruptedException | ExecutionException e) {
         plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
-          plugin.getLogger().severe("Unable to save map data");
+          plugin.getLogger().severe("Unable to save map data of "
+              + targets.stream().map(RenderTarget::toString).collect(Collectors.joining(", ")));
           e.printStackTrace();
 
           return null;
         });
+      } finally {
+        renderingTargets = false;
       }
 
-      isExecuting = false;
+      finishExecution();
     });
+  }
+
+  /**
+   * Marks the command execution as finished and starts a targeted refresh of
+   * the targets requested while it was running.
+   */
+  private void finishExecution() {
+    synchronized (pendingTargets) {
+      isExecuting = false;
+
+      if (pendingTargets.isEmpty()) {
+        return;
+      }
+    }
+
+    plugin.getServer().getScheduler().runTask(plugin, this::refreshPendingTargets);
+  }
+
+  /**
+   * Pauses taking chunks from the render queue. Chunks that have been taken are
+   * still processed.
+   *
+   * @return True if the refresh was paused or false if map data is not being
+   *         refreshed.
+   */
+  public boolean pauseRefresh() {
+    if (!isExecuting || cancelled) {
+      return false;
+    }
+
+    paused = true;
+    applyRenderControls();
+
+    return true;
+  }
+
+  /**
+   * Continues a paused refresh.
+   *
+   * @return True if the refresh was continued or false if map data is not
+   *         being refreshed or the refresh is not paused.
+   */
+  public boolean unpauseRefresh() {
+    if (!isExecuting || !paused) {
+      return false;
+    }
+
+    paused = false;
+    applyRenderControls();
+
+    return true;
+  }
+
+  /**
+   * Cancels the running refresh. The chunks waiting in the render queue are
+   * discarded and the refresh stops once the chunks that have been taken are
+   * processed.
+   *
+   * @return True if the refresh is being cancelled or false if map data is not
+   *         being refreshed.
+   */
+  public boolean cancelRefresh() {
+    if (!isExecuting) {
+      return false;
+    }
+
+    cancelled = true;
+    paused = false;
+    applyRenderControls();
+
+    synchronized (pendingTargets) {
+      pendingTargets.clear();
+    }
+
+    return true;
+  }
+
+  /**
+   * Applies the paused and cancelled status to the render queue of the current
+   * render.
+   */
+  private void applyRenderControls() {
+    RenderQueue queue = renderQueue;
+    metrics.setPaused(paused);
+
+    if (queue == null) {
+      return;
+    }
+
+    queue.setPaused(paused);
+
+    if (cancelled) {
+      queue.cancel();
+    }
+  }
+
+  /**
+   * Resumes a full refresh that was interrupted, skipping the phases, regions
+   * and worlds it finished. Must be called on the main thread.
+   *
+   * @return True if the refresh was resumed or false if map data is already
+   *         being refreshed or no refresh was interrupted.
+   */
+  public boolean resumeRefresh() {
+    if (isExecuting) {
+      return false;
+    }
+
+    RefreshJournal interrupted;
+
+    try {
+      interrupted = RefreshJournal.load(pluginDataPath.resolve(RefreshJournal.FILE_NAME));
+    } catch (IOException e) {
+      plugin.getLogger().warning("Unable to read the journal of the interrupted refresh");
+      e.printStackTrace();
+
+      return false;
+    }
+
+    if (interrupted == null) {
+      return false;
+    }
+
+    refreshAll(interrupted.isForced(), interrupted);
+
+    return true;
+  }
+
+  /**
+   * Checks if a full refresh was interrupted and can be resumed.
+   *
+   * @return True if the journal of an interrupted refresh exists.
+   */
+  public boolean hasInterruptedRefresh() {
+    return !isExecuting && Files.exists(pluginDataPath.resolve(RefreshJournal.FILE_NAME));
+  }
+
+  /**
+   * Refreshes the map data of all worlds. Progress is recorded in a journal so
+   * the refresh can be resumed if it is interrupted. Must be called on the main
+   * thread.
+   *
+   * @param force       Status of rendering every chunk.
+   * @param interrupted Journal of the interrupted refresh to resume or null to
+   *                    start a new refresh.
+   */
+  private void refreshAll(boolean force, RefreshJournal interrupted) {
+    isExecuting = true;
+    paused = false;
+    cancelled = false;
+
+    plugin.reloadConfig();
+    settings = new Settings(plugin.getConfig());
+
+    plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+      // Every chunk changed since the last full refresh is rendered by a full
+      // refresh so the changed chunks do not have to be rendered again.
+      Map<String, List<VectorXZ>> dirtyChunks = dirtyChunkTracker.drain();
+
+      try {
+        journal = beginJournal(force, interrupted);
+
+        generateOutput(journal == interrupted ? "resumed full" : force ? "forced full" : "full", () -> {
+          runPhase("copy-web-app", this::copyWebApp);
+          runPhase("server-data", this::generateServerData);
+          runPhase("material-data", this::generateMaterialData);
+          runPhase("biome-data", this::generateBiomeData);
+          runPhase("assets", this::downloadMaterialTexturesAndModels);
+          runPhase("texture-atlas", this::buildTextureAtlas);
+          processWorlds(force);
+
+          // Only a full refresh has to check every content-addressed chunk file.
+          if (settings.writeContentAddressedChunks) {
+            runPhase("remove-unreferenced-blobs", this::removeUnreferencedBlobs);
+          }
+        });
+
+        journal.delete();
+
+        plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+          plugin.getLogger().info("The map has been refreshed");
+
+          return null;
+        });
+      } catch (CancellationException e) {
+        // The changed chunks may not have been rendered before the refresh was
+        // cancelled.
+        dirtyChunkTracker.markChunks(dirtyChunks);
+
+        try {
+          journal.delete();
+        } catch (IOException deleteException) {
+          deleteException.printStackTrace();
+        }
+
+        plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+          plugin.getLogger().info("The map data refresh has been cancelled");
+
+          return null;
+        });
+      } catch (URISyntaxException | IOException | InterruptedException | ExecutionException e) {
+        // Keep the chunks dirty so they are rendered by the next refresh.
+        dirtyChunkTracker.markChunks(dirtyChunks);
+        boolean resumable = journal != null;
+
+        plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+          plugin.getLogger().severe("Unable to save map data");
+          e.printStackTrace();
+
+          if (resumable) {
+            plugin.getLogger().info("Run \"refresh-map-data resume\" to continue the refresh");
+          }
+
+          return null;
+        });
+      } finally {
+        journal = null;
+        unfinishedRegions.clear();
+      }
+
+      finishExecution();
+    });
+  }
+
+  /**
+   * Starts the journal of a full refresh. An interrupted refresh is only
+   * resumed if the plugin version and the settings affecting the output have
+   * not changed since it started.
+   *
+   * @param force       Status of rendering every chunk.
+   * @param interrupted Journal of the interrupted refresh or null.
+   * @return The journal of the interrupted refresh or a new journal.
+   * @throws IOException Thrown if there is an issue writing the journal.
+   */
+  private RefreshJournal beginJournal(boolean force, RefreshJournal interrupted) throws IOException {
+    String fingerprint = getRenderFingerprint();
+
+    if (interrupted != null && interrupted.getFingerprint().equals(fingerprint)) {
+      int finishedRegions = interrupted.countFinishedRegions();
+
+      plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+        plugin.getLogger().info("Resuming the interrupted refresh with " + finishedRegions + " finished regions");
+
+        return null;
+      });
+
+      return interrupted;
+    }
+
+    if (interrupted != null) {
+      plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+        plugin.getLogger().info("The plugin or its settings changed since the refresh was interrupted, so it is"
+            + " started over");
+
+        return null;
+      });
+    }
+
+    return RefreshJournal.begin(pluginDataPath.resolve(RefreshJournal.FILE_NAME), force, fingerprint);
+  }
+
+  /**
+   * Refreshes the map data of the chunks that changed since they were last
+   * rendered. Must be called on the main thread.
+   *
+   * @return True if the refresh was started or false if map data is already
+   *         being refreshed or no chunks have changed.
+   */
+  public boolean refreshDirtyChunks() {
+    if (isExecuting || dirtyChunkTracker.size() == 0) {
+      return false;
+    }
+
+    isExecuting = true;
+    paused = false;
+    cancelled = false;
+
+    plugin.reloadConfig();
+    settings = new Settings(plugin.getConfig());
+
+    plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+      Map<String, List<VectorXZ>> dirtyChunks = dirtyChunkTracker.drain();
+
+      try {
+        int[] chunkCount = new int[1];
+        generateOutput("dirty", () -> chunkCount[0] = processDirtyChunks(dirtyChunks));
+        dirtyChunkTracker.save();
+
+        plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+          plugin.getLogger().info("The map has been refreshed for " + chunkCount[0] + " changed chunks");
+
+          return null;
+        });
+      } catch (CancellationException e) {
+        // Chunks processed before the refresh was cancelled are rendered again
+        // by the next refresh.
+        dirtyChunkTracker.markChunks(dirtyChunks);
+
+        plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+          plugin.getLogger().info("The map data refresh for changed chunks has been cancelled");
+
+          return null;
+        });
+      } catch (URISyntaxException | IOException | InterruptedException | ExecutionException e) {
+        // Keep the chunks dirty so they are rendered by the next refresh.
+        dirtyChunkTracker.markChunks(dirtyChunks);
+
+        plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+          plugin.getLogger().severe("Unable to save map data for changed chunks");
+          e.printStackTrace();
+
+          return null;
+        });
+      }
+
+      finishExecution();
+    });
+
+    return true;
+  }
+
+  /**
+   * Writes a delta bundle containing the files changed after a generation. Must
+   * be called on the main thread.
+   *
+   * @param sinceGeneration Generation the changes are relative to.
+   * @return True if the bundle is being written or false if map data is already
+   *         being refreshed.
+   */
+  public boolean writeDeltaBundle(long sinceGeneration) {
+    if (isExecuting) {
+      return false;
+    }
+
+    isExecuting = true;
+
+    plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+      try {
+        manifest.load();
+        writeDeltaBundleFile(sinceGeneration);
+      } catch (IOException e) {
+        plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+          plugin.getLogger().severe("Unable to write delta bundle");
+          e.printStackTrace();
+
+          return null;
+        });
+      }
+
+      finishExecution();
+    });
+
+    return true;
+  }
+
+  /**
+   * Generates output for the web app as a new manifest generation. The manifest
+   * is saved even if generating fails so it matches the files on disk. Metrics
+   * of the refresh are collected and periodically written to the metrics file
+   * while it runs.
+   *
+   * @param kind Kind of the refresh shown by the status command.
+   * @param task Task generating the output.
+   */
+  private void generateOutput(String kind, RefreshTask task)
+      throws URISyntaxException, IOException, InterruptedException, ExecutionException {
+    metrics.begin(kind);
+
+    long metricsInterval = settings.metricsWriteIntervalSeconds * 20L;
+    BukkitTask metricsTask = metricsInterval > 0
+        ? plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::writeMetrics, 0,
+            metricsInterval)
+        : null;
+    boolean success = false;
+
+    try {
+      generateOutputFiles(task);
+      success = true;
+    } finally {
+      if (metricsTask != null) {
+        metricsTask.cancel();
+      }
+
+      metrics.finish(success);
+
+      if (metricsTask != null) {
+        writeMetrics();
+      }
+    }
+  }
+
+  /**
+   * Generates the files of a new manifest generation.
+   *
+   * @param task Task generating the output.
+   */
+  private void generateOutputFiles(RefreshTask task)
+      throws URISyntaxException, IOException, InterruptedException, ExecutionException {
+    manifest.load();
+    long previousGeneration = manifest.getGeneration();
+    manifest.pruneRemoved(Math.min(previousGeneration, getOldestDeltaGeneration()));
+    manifest.beginGeneration();
+
+    Path blockStatesPath = webDataPath.resolve(BlockStateTable.FILE_NAME);
+    blockStates.load(blockStatesPath);
+
+    Path biomeTintsPath = webDataPath.resolve(BiomeTintTable.FILE_NAME);
+    biomeTints.load(biomeTintsPath, webDataPath.resolve("textures").resolve("colormap"),
+        settings.computeBiomeTints);
+
+    tickBudget = new TickBudget(plugin, settings, metrics);
+    tickBudget.start();
+    metrics.setTickBudget(() -> (long) (tickBudget.getBudgetMillis() * 1000));
+
+    try {
+      task.run();
+    } finally {
+      tickBudget.cancel();
+
+      // Checkpoints save the same files from another thread.
+      synchronized (this) {
+        try {
+          blockStates.save(blockStatesPath, manifest);
+          biomeTints.save(biomeTintsPath, manifest);
+        } finally {
+          manifest.save();
+        }
+      }
+    }
+
+    if (settings.writeDeltaBundles && manifest.countChanges(previousGeneration) > 0) {
+      runPhase("delta-bundle", () -> writeDeltaBundleFile(previousGeneration));
+    }
+  }
+
+  /**
+   * Runs a phase of a refresh, recording its duration in the metrics. Phases
+   * of a full refresh are recorded in the journal once they finish and are
+   * skipped when the refresh is resumed.
+   *
+   * @param name Name of the phase.
+   * @param task Task running the phase.
+   */
+  private void runPhase(String name, RefreshTask task)
+      throws URISyntaxException, IOException, InterruptedException, ExecutionException {
+    RefreshJournal currentJournal = journal;
+
+    if (cancelled) {
+      throw new CancellationException("The refresh was cancelled");
+    }
+
+    if (currentJournal != null && currentJournal.isPhaseFinished(name)) {
+      return;
+    }
+
+    metrics.beginPhase(name);
+
+    try {
+      task.run();
+    } finally {
+      metrics.endPhase();
+    }
+
+    if (currentJournal != null) {
+      currentJournal.finishPhase(name);
+      checkpoint();
+    }
+  }
+
+  /**
+   * Saves the block state table, the biome tint table and the manifest and then
+   * records the work finished since the last checkpoint in the journal, so the
+   * journal never refers to chunk files whose block states or manifest entries
+   * were not saved.
+   */
+  private synchronized void checkpoint() {
+    RefreshJournal currentJournal = journal;
+
+    if (currentJournal == null) {
+      return;
+    }
+
+    try {
+      currentJournal.checkpoint(() -> {
+        blockStates.save(webDataPath.resolve(BlockStateTable.FILE_NAME), manifest);
+        biomeTints.save(webDataPath.resolve(BiomeTintTable.FILE_NAME), manifest);
+        manifest.save();
+      });
+    } catch (IOException e) {
+      plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+        plugin.getLogger().warning("Unable to save the refresh checkpoint");
+        e.printStackTrace();
+
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Writes the metrics of the current or last refresh to the metrics file.
+   */
+  private void writeMetrics() {
+    try {
+      metrics.writePrometheus(pluginDataPath.resolve(METRICS_FILE_NAME));
+    } catch (IOException e) {
+      plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+        plugin.getLogger().warning("Unable to write metrics");
+        e.printStackTrace();
+
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Writes a delta bundle containing the files changed after a generation into
+   * the deltas folder.
+   *
+   * @param sinceGeneration Generation the changes are relative to.
+   * @throws IOException Thrown if there is an issue writing the bundle.
+   */
+  private void writeDeltaBundleFile(long sinceGeneration) throws IOException {
+    Path deltaPath = pluginDataPath.resolve("deltas")
+        .resolve("delta-" + sinceGeneration + "-" + manifest.getGeneration() + ".zip");
+    int changes = manifest.writeDelta(sinceGeneration, deltaPath);
+
+    plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+      plugin.getLogger().info("Wrote " + changes + " changes to " + pluginDataPath.relativize(deltaPath));
+
+      return null;
+    });
+  }
+
+  /**
+   * Gets the generation the oldest delta bundle in the deltas folder is
+   * relative to.
+   *
+   * @return The generation or {@link Long#MAX_VALUE} if there are no delta
+   *         bundles.
+   * @throws IOException Thrown if there is an issue listing the deltas folder.
+   */
+  private long getOldestDeltaGeneration() throws IOException {
+    Path deltasPath = pluginDataPath.resolve("deltas");
+    long oldest = Long.MAX_VALUE;
+
+    if (!Files.isDirectory(deltasPath)) {
+      return oldest;
+    }
+
+    try (DirectoryStream<Path> deltaPaths = Files.newDirectoryStream(deltasPath, "delta-*-*.zip")) {
+      for (Path deltaPath : deltaPaths) {
+        String name = deltaPath.getFileName().toString();
+        int start = "delta-".length();
+
+        try {
+          oldest = Math.min(oldest, Long.parseLong(name.substring(start, name.indexOf('-', start))));
+        } catch (NumberFormatException e) {
+          // Files not named by the plugin do not hold back pruning.
+        }
+      }
+    }
+
+    return oldest;
+  }
+
+  /**
+   * Copies the web app into the plugin data folder. Only files that changed
+   * since the last copy are written and files removed from the web app are
+   * deleted.
+   * 
+   * @throws URISyntaxException   Thrown if there is an issue with the executable
+   *                              path.
+   * @throws IOException          Thrown if there is an issue copying the files.
+   * @throws InterruptedException Thrown if interrupted while copying the files.
+   */
+  private void copyWebApp() throws URISyntaxException, IOException, InterruptedException {
+    Files.createDirectories(pluginDataPath);
+
+    URI jarFilePath = getClass().getProtectionDomain().getCodeSource().getLocation().toURI();
+
+    try (ZipFile jarFile = new ZipFile(Paths.get(jarFilePath).toFile())) {
+      createAssetSync().sync("web-app", jarFile, Collections.singletonMap("data/", pluginDataPath));
+    }
+  }
+
+  /**
+   * Creates an asset sync copying files into the plugin data folder on the
+   * worker threads.
+   *
+   * @return The asset sync.
+   */
+  private AssetSync createAssetSync() {
+    return new AssetSync(pluginDataPath, pluginDataPath.resolve("cache"), manifest, settings.renderWorkerThreads);
+  }
+
+  /**
+   * Generates server data and saves it.
+   *
+   * @throws IOException Thrown if there an issue when saving the data.
+   */
+  private void generateServerData() throws InterruptedException, ExecutionException, IOException {
+    ServerModel serverModel = tickBudget.callSync(() -> {
+      ServerModel model = new ServerModel();
+      model.motd = plugin.getServer().getMotd();
+      model.chunkFormat = settings.writeBinaryChunks ? "binary" : "json";
+      model.chunkLayout = settings.writeRegionPacks ? "region-pack"
+          : settings.writeContentAddressedChunks ? "content-addressed" : "files";
+      model.meshes = settings.writeMeshes;
+
+      for (World world : plugin.getServer().getWorlds()) {
+        WorldModel worldModel = new WorldModel();
+        worldModel.name = world.getName();
+        worldModel.spawn = new VectorXYZ(world.getSpawnLocation().getBlockX(), world.getSpawnLocation().getBlockY(),
+            world.getSpawnLocation().getBlockZ());
+
+        worldModel.minHeight = world.getMinHeight();
+        worldModel.maxHeight = world.getMaxHeight();
+
+        if (model.worlds == null) {
+          model.worlds = new ArrayList<>();
+        }
+
+        model.worlds.add(worldModel);
+      }
+
+      return model;
+    }).get();
+
+    Files.createDirectories(webDataPath);
+
+    Path licensePath = webDataPath.resolve("LICENSE.txt");
+    manifest.write(licensePath, Constants.MINECRAFT_LICENSE_NOTICE.getBytes(StandardCharsets.UTF_8));
+
+    String serverJson = gson.toJson(serverModel);
+    Path serverPath = webDataPath.resolve("server.json");
+    manifest.write(serverPath, serverJson.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Generates material data and saves it.
+   *
+   * @throws IOException Thrown if there an issue when saving the data.
+   */
+  private void generateMaterialData() throws InterruptedException, ExecutionException, IOException {
+    Map<Integer, String> materials = tickBudget.callSync(() -> {
+      Map<Integer, String> map = new HashMap<>();
+
+      for (Material material : Material.values()) {
+        if (material.isLegacy() || !material.isBlock()) {
+          continue;
+        }
+
+        map.put(material.ordinal(), material.getKey().toString());
+      }
+
+      return map;
+    }).get();
+
+    Files.createDirectories(webDataPath);
+
+    String materialsJson = gson.toJson(materials);
+    Path materialsPath = webDataPath.resolve("materials.json");
+    manifest.write(materialsPath, materialsJson.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Generates biome data and saves it.
+   *
+   * @throws IOException Thrown if there an issue when saving the data.
+   */
+  private void generateBiomeData() throws InterruptedException, ExecutionException, IOException {
+    Map<Integer, String> biomes = tickBudget.callSync(() -> {
+      Map<Integer, String> map = new HashMap<>();
+
+      for (Biome biome : Biome.values()) {
+        map.put(biome.ordinal(), biome.toString());
+      }
+
+      return map;
+    }).get();
+
+    Files.createDirectories(webDataPath);
+
+    String biomesJson = gson.toJson(biomes);
+    Path biomesPath = webDataPath.resolve("biomes.json");
+    manifest.write(biomesPath, biomesJson.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Downloads material textures and models. The client jar is cached and its
+   * assets are only extracted when the client jar changed or extracted files are
+   * missing, in which case only changed files are written and files no longer in
+   * the client jar are deleted. The block states and models used by the
+   * materials are then bundled for the web app.
+   *
+   * @throws IOException          Thrown if there an issue while downloading
+   *                              textures and models.
+   * @throws InterruptedException Thrown if interrupted while extracting the
+   *                              assets.
+   */
+  private void downloadMaterialTexturesAndModels() throws IOException, InterruptedException {
+    Path webPath = pluginDataPath.resolve("web");
+    AssetCache assetCache = new AssetCache(pluginDataPath.resolve("cache"), settings);
+    Path clientJar = assetCache.getClientJar();
+
+    Map<String, Path> assetPaths = new LinkedHashMap<>();
+    assetPaths.put("assets/minecraft/textures/block/", webDataPath.resolve("textures").resolve("block"));
+    assetPaths.put("assets/minecraft/textures/colormap/", webDataPath.resolve("textures").resolve("colormap"));
+    assetPaths.put("assets/minecraft/blockstates/", webDataPath.resolve("blockstates"));
+    assetPaths.put("assets/minecraft/models/block/", webDataPath.resolve("models").resolve("block"));
+
+    Path iconDestination = webPath.resolve("apple-touch-icon.png");
+
+    try (ZipFile zipFile = new ZipFile(clientJar.toFile())) {
+      if (!assetCache.isExtracted(webPath)) {
+        List<String> extractedFiles = new ArrayList<>();
+
+        for (Path destination : createAssetSync().sync("client-assets", zipFile, assetPaths)) {
+          extractedFiles.add(webPath.relativize(destination).toString().replace('\\', '/'));
+        }
+
+        assetCache.setExtracted(extractedFiles);
+      }
+
+      Path serverPath = plugin.getServer().getWorldContainer().toPath();
+      Path serverIconPath = serverPath.resolve("server-icon.png");
+
+      if (Files.exists(serverIconPath)) {
+        manifest.copy(serverIconPath, iconDestination);
+      } else {
+        ZipEntry defaultIcon = zipFile.getEntry("assets/minecraft/textures/misc/unknown_server.png");
+        manifest.write(iconDestination, AssetSync.readEntry(zipFile, defaultIcon));
+      }
+    }
+
+    Path favicon = webPath.resolve("favicon.ico");
+
+    BufferedImage serverIcon = ImageIO.read(iconDestination.toFile());
+    ByteArrayOutputStream faviconOS = new ByteArrayOutputStream();
+    ICOEncoder.write(serverIcon, faviconOS);
+    manifest.write(favicon, faviconOS.toByteArray());
+
+    writeBlockModelBundle();
+  }
+
+  /**
+   * Writes the bundle of the block states and resolved models of the blocks in
+   * the materials map.
+   *
+   * @throws IOException Thrown if there is an issue reading the materials map or
+   *                     writing the bundle.
+   */
+  private void writeBlockModelBundle() throws IOException {
+    Path materialsPath = webDataPath.resolve("materials.json");
+    List<String> blockNames = new ArrayList<>();
+
+    if (Files.exists(materialsPath)) {
+      JsonObject materials = gson.fromJson(new String(Files.readAllBytes(materialsPath), StandardCharsets.UTF_8),
+          JsonObject.class);
+
+      if (materials != null) {
+        for (Map.Entry<String, JsonElement> material : materials.entrySet()) {
+          blockNames.add(material.getValue().getAsString());
+        }
+      }
+    }
+
+    BlockModelBundle.write(webDataPath, blockNames, manifest);
+  }
+
+  /**
+   * Packs the block textures into the texture atlas used by the web app unless
+   * the textures did not change since it was built.
+   *
+   * @throws IOException Thrown if there is an issue reading the textures or
+   *                     writing the atlas.
+   */
+  private void buildTextureAtlas() throws IOException {
+    TextureAtlasBuilder.build(webDataPath.resolve("textures"), manifest);
+  }
+
+  /**
+   * Processes worlds and saves data. Chunks that are not loaded and were not
+   * saved since the last full render of their world are skipped unless the
+   * render is forced, the map data was generated from scratch or the settings
+   * affecting the output changed. Regions and worlds finished by an interrupted
+   * render are skipped when it is resumed.
+   *
+   * @param force Status of rendering every chunk.
+   */
+  private void processWorlds(boolean force) throws InterruptedException, ExecutionException, IOException {
+    List<World> worlds = tickBudget.callSync(() -> plugin.getServer().getWorlds()).get();
+
+    String fingerprint = getRenderFingerprint();
+    RenderStateModel renderState = loadRenderState();
+    RefreshJournal currentJournal = journal;
+
+    // A resumed render keeps the start time and chunk selection of the
+    // interrupted render since the render state is only saved at the end.
+    long renderTime = currentJournal.getRenderTime();
+
+    if (renderTime == 0) {
+      renderTime = System.currentTimeMillis() / 1000;
+
+      // The first generation has no existing output to keep for skipped chunks.
+      currentJournal.beginRender(renderTime, force || manifest.getGeneration() <= 1
+          || !fingerprint.equals(renderState.fingerprint) || renderState.renderTimes == null);
+      checkpoint();
+    }
+
+    if (currentJournal.isRenderingAll() || renderState.renderTimes == null) {
+      renderState.fingerprint = fingerprint;
+      renderState.renderTimes = new HashMap<>();
+    }
+
+    Map<String, Long> renderTimes = renderState.renderTimes;
+    long checkpointInterval = settings.checkpointIntervalSeconds * 20L;
+    BukkitTask checkpointTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin,
+        this::checkpoint, checkpointInterval, checkpointInterval);
+
+    try {
+      renderChunks(queue -> {
+        for (World world : worlds) {
+          if (queue.isCancelled()) {
+            break;
+          }
+
+          Long renderedAt = renderTimes.get(world.getName());
+          processWorld(world, renderedAt != null ? renderedAt : 0, queue);
+        }
+      }, null);
+    } finally {
+      checkpointTask.cancel();
+      checkpoint();
+    }
+
+    for (World world : worlds) {
+      renderTimes.put(world.getName(), renderTime);
+    }
+
+    saveRenderState(renderState);
+  }
+
+  /**
+   * Gets a fingerprint of the plugin version and the settings affecting the
+   * output of a render. Chunks rendered with a different fingerprint have to be
+   * rendered again.
+   *
+   * @return The fingerprint.
+   */
+  private String getRenderFingerprint() {
+    return String.join("|", plugin.getDescription().getVersion(), String.valueOf(settings.cullHiddenBlocks),
+        String.valueOf(settings.computeBiomeTints), String.valueOf(settings.writeMeshes),
+        String.valueOf(settings.writeJsonChunks), String.valueOf(settings.writeBinaryChunks),
+        String.valueOf(settings.writeRegionPacks), String.valueOf(settings.writeContentAddressedChunks),
+        String.valueOf(settings.renderSurfaceTiles), String.valueOf(settings.surfaceTileZoomLevels),
+        String.valueOf(settings.compressionLevel), settings.assetVersion, String.valueOf(settings.assetClientJar));
+  }
+
+  /**
+   * Loads when the worlds were last fully rendered.
+   *
+   * @return The render state.
+   * @throws IOException Thrown if there is an issue reading the render state.
+   */
+  private RenderStateModel loadRenderState() throws IOException {
+    Path statePath = pluginDataPath.resolve(RENDER_STATE_FILE_NAME);
+
+    if (Files.exists(statePath)) {
+      RenderStateModel model = gson.fromJson(new String(Files.readAllBytes(statePath), StandardCharsets.UTF_8),
+          RenderStateModel.class);
+
+      if (model != null) {
+        return model;
+      }
+    }
+
+    return new RenderStateModel();
+  }
+
+  /**
+   * Saves when the worlds were last fully rendered.
+   *
+   * @param renderState The render state.
+   * @throws IOException Thrown if there is an issue writing the render state.
+   */
+  private void saveRenderState(RenderStateModel renderState) throws IOException {
+    Files.createDirectories(pluginDataPath);
+
+    Path statePath = pluginDataPath.resolve(RENDER_STATE_FILE_NAME);
+    Path tempPath = pluginDataPath.resolve(RENDER_STATE_FILE_NAME + ".tmp");
+
+    Files.write(tempPath, gson.toJson(renderState).getBytes(StandardCharsets.UTF_8));
+    Files.move(tempPath, statePath, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Processes chunks that changed since they were last rendered and saves data.
+   *
+   * @param dirtyChunks Coordinates of the changed chunks by world name.
+   * @return Number of chunks requested.
+   */
+  private int processDirtyChunks(Map<String, List<VectorXZ>> dirtyChunks)
+      throws InterruptedException, ExecutionException, IOException {
+    List<String> worldNames = new ArrayList<>(dirtyChunks.keySet());
+    Collections.sort(worldNames);
+
+    int[] chunkCount = new int[1];
+
+    renderChunks(queue -> {
+      for (String worldName : worldNames) {
+        if (queue.isCancelled()) {
+          break;
+        }
+
+        World world = tickBudget.callSync(() -> plugin.getServer().getWorld(worldName)).get();
+
+        if (world == null) {
+          continue;
+        }
+
+        Path regionPath = tickBudget.callSync(() -> world.getWorldFolder().toPath().resolve("region")).get();
+
+        Map<String, List<VectorXZ>> regionChunks = new TreeMap<>();
+
+        for (VectorXZ coordinates : dirtyChunks.get(worldName)) {
+          VectorXZ regionCoordinates = RegionBatch.getRegionCoordinates(coordinates);
+          regionChunks.computeIfAbsent(regionCoordinates.x + "." + regionCoordinates.z, k -> new ArrayList<>())
+              .add(coordinates);
+        }
+
+        for (List<VectorXZ> chunks : regionChunks.values()) {
+          chunks.sort(Comparator.comparingInt((VectorXZ c) -> c.x).thenComparingInt(c -> c.z));
+
+          RegionBatch region = new RegionBatch(world, RegionBatch.getRegionCoordinates(chunks.get(0)));
+          requestChunks(region, chunks, regionPath, 0, false, queue);
+          chunkCount[0] += chunks.size();
+        }
+      }
+    }, null);
+
+    return chunkCount[0];
+  }
+
+  /**
+   * Processes the waiting targets and the targets requested while they are
+   * rendered and saves data. Chunks are rendered even if they have not been
+   * saved since the last full render, and chunks that are part of more than one
+   * target are only rendered once.
+   *
+   * @param targets Receives the processed targets.
+   * @return Number of chunks requested.
+   */
+  private int processTargets(List<RenderTarget> targets)
+      throws InterruptedException, ExecutionException, IOException {
+    Set<String> requestedChunks = new HashSet<>();
+    int[] chunkCount = new int[1];
+
+    renderChunks(queue -> {
+      RenderTarget target;
+
+      while (!queue.isCancelled() && (target = takePendingTarget(queue, false)) != null) {
+        targets.add(target);
+        chunkCount[0] += processTarget(target, requestedChunks, queue);
+      }
+    }, queue -> {
+      RenderTarget target;
+
+      while (!queue.isCancelled() && (target = takePendingTarget(queue, true)) != null) {
+        targets.add(target);
+        chunkCount[0] += processTarget(target, requestedChunks, queue);
+      }
+    });
+
+    return chunkCount[0];
+  }
+
+  /**
+   * Takes the next waiting target.
+   *
+   * @param queue Render queue of the targeted refresh.
+   * @param wait  Status of waiting for a target to be requested while the render
+   *              queue still has chunks waiting.
+   * @return The target or null if there are no more targets for this refresh.
+   */
+  private RenderTarget takePendingTarget(RenderQueue queue, boolean wait) throws InterruptedException {
+    synchronized (pendingTargets) {
+      RenderTarget target;
+
+      while ((target = pendingTargets.poll()) == null && wait && !queue.isCancelled() && queue.size() > 0) {
+        pendingTargets.wait(1000);
+      }
+
+      return target;
+    }
+  }
+
+  /**
+   * Requests the chunks of a target that have not been requested by an earlier
+   * target of the same refresh.
+   *
+   * @param target          The target.
+   * @param requestedChunks Keys of the chunks that have been requested.
+   * @param queue           Queue receiving the chunks.
+   * @return Number of chunks requested.
+   */
+  private int processTarget(RenderTarget target, Set<String> requestedChunks, RenderQueue queue)
+      throws InterruptedException, ExecutionException, IOException {
+    World world = tickBudget.callSync(() -> plugin.getServer().getWorld(target.worldName)).get();
+
+    if (world == null) {
+      return 0;
+    }
+
+    Path regionPath = tickBudget.callSync(() -> world.getWorldFolder().toPath().resolve("region")).get();
+    List<VectorXZ> regionCoordinates = listRegions(regionPath);
+    regionCoordinates.removeIf(c -> !target.intersectsRegion(c));
+    regionCoordinates.sort(Comparator.comparingDouble((VectorXZ c) -> queue.getPriority(target.worldName, c))
+        .thenComparingInt(c -> c.x).thenComparingInt(c -> c.z));
+
+    int chunkCount = 0;
+
+    for (VectorXZ coordinates : regionCoordinates) {
+      if (queue.isCancelled()) {
+        break;
+      }
+
+      List<VectorXZ> chunks = target.getChunks(coordinates);
+      chunks.removeIf(c -> !requestedChunks.add(target.worldName + "/" + c.x + "." + c.z));
+
+      if (chunks.isEmpty()) {
+        continue;
+      }
+
+      RegionBatch region = new RegionBatch(world, coordinates);
+
+      if (requestChunks(region, chunks, regionPath, 0, true, queue)) {
+        chunkCount += chunks.size();
+      }
+    }
+
+    return chunkCount;
+  }
+
+  /**
+   * Renders chunks and saves data. Requested chunks are added to a render queue
+   * that orders them by their distance to the spawn points and online players,
+   * which is updated as players move. Chunks are taken from the queue on the
+   * main thread within the tick budget, capturing their snapshots if needed,
+   * and processed by a pool of worker threads as they arrive.
+   *
+   * @param requester Requests the chunks to render.
+   * @param followUp  Requests more chunks while the requested chunks are
+   *                  rendered or null if all chunks are requested up front.
+   * @throws CancellationException Thrown if the refresh was cancelled.
+   */
+  private void renderChunks(ChunkRequester requester, ChunkRequester followUp)
+      throws InterruptedException, ExecutionException, IOException {
+    RenderQueue queue = new RenderQueue();
+    queue.setFocusPoints(tickBudget.callSync(this::getFocusPoints).get());
+    renderQueue = queue;
+    applyRenderControls();
+
+    SnapshotQueue snapshots = SnapshotQueue.fromSettings(settings);
+    SnapshotCaptureTask captureTask = new SnapshotCaptureTask(plugin, snapshots, tickBudget, queue);
+    captureTask.start();
+
+    long focusInterval = settings.priorityUpdateIntervalSeconds * 20L;
+    BukkitTask focusTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin,
+        () -> updateFocusPoints(queue), focusInterval, focusInterval);
+
+    surfaceTiles = settings.renderSurfaceTiles
+        ? new SurfaceTiles(webDataPath.resolve("tiles"), webDataPath.resolve("textures").resolve("block"), manifest,
+            biomeTints, settings.surfaceTileZoomLevels)
+        : null;
+    blockModels = settings.writeMeshes ? new BlockModelTable(webDataPath) : null;
+    gzipWriter = new GzipFileWriter(manifest, settings.compressionLevel, settings.syncMode, metrics);
+    anvilReader = settings.readRegionFiles ? new AnvilChunkReader() : null;
+    regionFileFallbacks.set(0);
+    metrics.setQueues(snapshots::size, queue::size);
+
+    try {
+      metrics.beginPhase("request-chunks");
+      requester.requestChunks(queue);
+
+      ChunkWorkerPool workerPool = new ChunkWorkerPool(settings.renderWorkerThreads);
+      metrics.beginPhase("render-chunks");
+      metrics.beginRendering();
+      workerPool.start(snapshots, this::loadChunk, this::processChunk);
+      boolean requested = false;
+
+      try {
+        if (followUp != null) {
+          followUp.requestChunks(queue);
+        }
+
+        requested = true;
+      } finally {
+        if (requested) {
+          captureTask.finish();
+        } else {
+          captureTask.cancel();
+        }
+
+        workerPool.join();
+      }
+
+      if (surfaceTiles != null) {
+        metrics.beginPhase("surface-zoom-levels");
+        surfaceTiles.writeZoomLevels();
+      }
+
+      plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+        for (ChunkWorkerPool.WorkerStats workerStats : workerPool.getStats()) {
+          plugin.getLogger().info(workerStats.toString());
+        }
+
+        if (regionFileFallbacks.get() > 0) {
+          plugin.getLogger().info(regionFileFallbacks.get()
+              + " chunks could not be read from region files and were captured from the server instead.");
+        }
+
+        if (metrics.getChunksSkipped() > 0) {
+          plugin.getLogger().info(metrics.getChunksSkipped()
+              + " chunks were skipped since they have not been saved since the last full refresh.");
+        }
+
+        return null;
+      });
+    } finally {
+      metrics.endPhase();
+      focusTask.cancel();
+      renderQueue = null;
+      regionLocks.clear();
+
+      try {
+        gzipWriter.close();
+      } finally {
+        captureTask.cancel();
+      }
+    }
+
+    if (queue.isCancelled()) {
+      throw new CancellationException("The refresh was cancelled");
+    }
+  }
+
+  /**
+   * Gets the points chunks are rendered outward from, which are the spawn point
+   * of each world and the positions of the online players. Must be called on
+   * the main thread.
+   *
+   * @return Focus points in chunk coordinates by world name.
+   */
+  private Map<String, List<VectorXZ>> getFocusPoints() {
+    Map<String, List<VectorXZ>> points = new HashMap<>();
+
+    for (World world : plugin.getServer().getWorlds()) {
+      List<VectorXZ> worldPoints = new ArrayList<>();
+
+      Location spawn = world.getSpawnLocation();
+      worldPoints.add(new VectorXZ(spawn.getBlockX() >> 4, spawn.getBlockZ() >> 4));
+
+      for (Player player : world.getPlayers()) {
+        Location location = player.getLocation();
+        worldPoints.add(new VectorXZ(location.getBlockX() >> 4, location.getBlockZ() >> 4));
+      }
+
+      points.put(world.getName(), worldPoints);
+    }
+
+    return points;
+  }
+
+  /**
+   * Updates the focus points of a render queue from the current positions of
+   * the online players.
+   *
+   * @param queue The render queue.
+   */
+  private void updateFocusPoints(RenderQueue queue) {
+    try {
+      queue.setFocusPoints(tickBudget.callSync(this::getFocusPoints).get());
+    } catch (CancellationException e) {
+      // The render finished while waiting for the main thread.
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+        plugin.getLogger().warning("Unable to update the render order");
+        e.printStackTrace();
+
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Processes a world and saves data.
+   *
+   * @param world       The world to process.
+   * @param renderedAt Time in seconds since the epoch the world was last fully
+   *                   rendered at or 0 to render every chunk.
+   * @param queue      Queue receiving the chunks of the world.
+   */
+  private void processWorld(World world, long renderedAt, RenderQueue queue)
+      throws InterruptedException, ExecutionException, IOException {
+    String worldName = world.getName();
+
+    if (journal.isWorldFinished(worldName)) {
+      for (VectorXZ coordinates : journal.getFinishedRegions(worldName)) {
+        skipFinishedRegion(worldName, coordinates);
+      }
+
+      return;
+    }
 
-    return true;
-  }
+    Path worldPath = tickBudget.callSync(() -> world.getWorldFolder().toPath()).get();
+    Path regionPath = worldPath.resolve("region");
+    if (!Files.exists(regionPath)) {
+      journal.finishWorld(worldName);
+      return;
+    }
 
-  /**
-   * Copies the web app into the plugin data folder.
-   * 
-   * @throws URISyntaxException Thrown if there is an issue with the executable
-   *                            path.
-   * @throws IOException        Thrown if there is an issue copying the files.
-   */
-  private void copyWebApp() throws URISyntaxException, IOException {
-    Files.createDirectories(pluginDataPath);
+    List<VectorXZ> regionCoordinates = listRegions(regionPath);
 
-    URI jarFilePath = getClass().getProtectionDomain().getCodeSource().getLocation().toURI();
-    Path jarFile = Paths.get(jarFilePath);
+    // Request the regions closest to the spawn point and players first so
+    // they can be rendered while the rest are requested.
+    regionCoordinates.sort(Comparator.comparingDouble((VectorXZ c) -> queue.getPriority(worldName, c))
+        .thenComparingInt(c -> c.x).thenComparingInt(c -> c.z));
 
-    try (FileSystem fs = FileSystems.newFileSystem(jarFile, (ClassLoader)null)) {
-      Path dataPath = fs.getRootDirectories().iterator().next().resolve("data");
+    unfinishedRegions.put(worldName, new AtomicInteger(1));
 
-      if (!Files.exists(dataPath)) {
-        return;
+    for (VectorXZ coordinates : regionCoordinates) {
+      if (queue.isCancelled()) {
+        break;
       }
 
-      for (Path source : Files.walk(dataPath).collect(Collectors.toSet())) {
-        Path relativePath = dataPath.relativize(source);
-        Path destination = pluginDataPath.resolve(relativePath.toString());
-        if (Files.isDirectory(destination)) {
-          continue;
-        }
-
-        Files.createDirectories(destination.getParent());
-        Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
+      if (journal.isRegionFinished(worldName, coordinates)) {
+        skipFinishedRegion(worldName, coordinates);
+        continue;
       }
+
+      processRegion(world, coordinates, regionPath, renderedAt, queue);
     }
+
+    finishWorldRegion(worldName);
   }
 
   /**
-   * Generates server data and saves it.
+   * Lists the regions that have a region file.
    *
-   * @throws IOException Thrown if there an issue when saving the data.
+   * @param regionPath Folder containing the region files of a world.
+   * @return Coordinates of the regions.
+   * @throws IOException Thrown if there is an issue listing the folder.
    */
-  private void generateServerData() throws InterruptedException, ExecutionException, IOException {
-    ServerModel serverModel = plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
-      ServerModel model = new ServerModel();
-      model.motd = plugin.getServer().getMotd();
+  private static List<VectorXZ> listRegions(Path regionPath) throws IOException {
+    List<VectorXZ> regionCoordinates = new ArrayList<>();
 
-      for (World world : plugin.getServer().getWorlds()) {
-        WorldModel worldModel = new WorldModel();
-        worldModel.name = world.getName();
-        worldModel.spawn = new VectorXYZ(world.getSpawnLocation().getBlockX(), world.getSpawnLocation().getBlockY(),
-            world.getSpawnLocation().getBlockZ());
+    if (!Files.exists(regionPath)) {
+      return regionCoordinates;
+    }
 
-        worldModel.minHeight = world.getMinHeight();
-        worldModel.maxHeight = world.getMaxHeight();
+    Set<String> files;
 
-        if (model.worlds == null) {
-          model.worlds = new ArrayList<>();
-        }
+    try (Stream<Path> paths = Files.list(regionPath)) {
+      files = paths.filter(p -> !Files.isDirectory(p)).map(Path::getFileName).map(Path::toString)
+          .collect(Collectors.toSet());
+    }
 
-        model.worlds.add(worldModel);
+    for (String file : files) {
+      String[] splitName = file.split("\\.");
+
+      if (!splitName[0].equals("r") || splitName.length != 4 || !splitName[3].equals("mca")) {
+        continue;
       }
 
-      return model;
-    }).get();
+      int x = Integer.parseInt(splitName[1]);
+      int z = Integer.parseInt(splitName[2]);
 
-    Files.createDirectories(webDataPath);
+      regionCoordinates.add(new VectorXZ(x, z));
+    }
 
-    Path licensePath = webDataPath.resolve("LICENSE.txt");
-    Files.write(licensePath, Constants.MINECRAFT_LICENSE_NOTICE.getBytes(StandardCharsets.UTF_8));
+    return regionCoordinates;
+  }
 
-    String serverJson = gson.toJson(serverModel);
-    Path serverPath = webDataPath.resolve("server.json");
-    Files.write(serverPath, serverJson.getBytes(StandardCharsets.UTF_8));
+  /**
+   * Skips a region finished before the refresh was interrupted. Its surface
+   * tile is still included when rebuilding the zoom levels.
+   *
+   * @param worldName   Name of the world containing the region.
+   * @param coordinates Coordinates of the region.
+   */
+  private void skipFinishedRegion(String worldName, VectorXZ coordinates) {
+    if (surfaceTiles != null) {
+      surfaceTiles.markRegionUpdated(worldName, coordinates);
+    }
   }
 
   /**
-   * Generates material data and saves it.
+   * Records that a region of a world has finished or that all regions of the
+   * world have been requested, recording the world as finished in the journal
+   * once both are true for all of its regions.
    *
-   * @throws IOException Thrown if there an issue when saving the data.
+   * @param worldName Name of the world.
    */
-  private void generateMaterialData() throws InterruptedException, ExecutionException, IOException {
-    Map<Integer, String> materials = plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
-      Map<Integer, String> map = new HashMap<>();
+  private void finishWorldRegion(String worldName) {
+    AtomicInteger unfinished = unfinishedRegions.get(worldName);
 
-      for (Material material : Material.values()) {
-        if (!material.isBlock()) {
-          continue;
-        }
+    if (unfinished != null && unfinished.decrementAndGet() == 0) {
+      journal.finishWorld(worldName);
+    }
+  }
 
-        map.put(material.ordinal(), material.createBlockData().getAsString().split("\\[")[0]);
-      }
+  /**
+   * Processes a region by requesting its chunks to be rendered.
+   * 
+   * @param world       World containing the region.
+   * @param coordinates Coordinates of the region.
+   * @param regionPath  Folder containing the region files of the world.
+   * @param renderedAt  Time in seconds since the epoch the world was last fully
+   *                    rendered at or 0 to render every chunk.
+   * @param queue       Queue receiving the chunks of the region.
+   */
+  private void processRegion(World world, VectorXZ coordinates, Path regionPath, long renderedAt,
+      RenderQueue queue) throws InterruptedException, ExecutionException {
+    String worldName = world.getName();
+    int startX = coordinates.x * Constants.WIDTH_OF_REGION;
+    int startZ = coordinates.z * Constants.DEPTH_OF_REGION;
 
-      return map;
-    }).get();
+    RegionBatch region = new RegionBatch(world, coordinates);
+    List<VectorXZ> chunks = new ArrayList<>();
 
-    Files.createDirectories(webDataPath);
+    for (int x = startX; x < startX + Constants.WIDTH_OF_REGION; x++) {
+      for (int z = startZ; z < startZ + Constants.DEPTH_OF_REGION; z++) {
+        chunks.add(new VectorXZ(x, z));
+      }
+    }
 
-    String materialsJson = gson.toJson(materials);
-    Path materialsPath = webDataPath.resolve("materials.json");
-    Files.write(materialsPath, materialsJson.getBytes(StandardCharsets.UTF_8));
+    // Count the region before requesting its chunks since it may finish before
+    // they have all been requested.
+    unfinishedRegions.get(worldName).incrementAndGet();
+
+    if (!requestChunks(region, chunks, regionPath, renderedAt, true, queue)) {
+      // None of the chunks changed, so the region will not be completed by a
+      // worker thread.
+      journal.finishRegion(worldName, coordinates);
+      finishWorldRegion(worldName);
+    }
   }
 
   /**
-   * Generates biome data and saves it.
+   * Adds chunks to an empty region batch and adds them to the render queue. The
+   * header of the region file is scanned first so that chunks that have not
+   * been saved are completed without a snapshot and chunks that were not saved
+   * since the last full render are not added to the batch, keeping their
+   * existing output. Chunks that changed recently may not have been saved yet,
+   * so they are only completed without a snapshot when skipping missing chunks.
+   * Chunks that are loaded are captured on the main server thread since they
+   * may have changed since they were last saved. Other chunks are read from the
+   * region file by the worker threads when reading region files is enabled.
    *
-   * @throws IOException Thrown if there an issue when saving the data.
+   * @param region      Empty batch of the region containing the chunks.
+   * @param chunks      Coordinates of the chunks.
+   * @param regionPath  Folder containing the region files of the world.
+   * @param renderedAt  Time in seconds since the epoch the world was last fully
+   *                    rendered at or 0 to render every chunk.
+   * @param skipMissing Status of completing chunks missing from the region file
+   *                    without asking the server.
+   * @param queue       Queue receiving the chunks.
+   * @return True if any chunks were requested or false if the region batch is
+   *         empty and will never be completed.
    */
-  private void generateBiomeData() throws InterruptedException, ExecutionException, IOException {
-    Map<Integer, String> biomes = plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
-      Map<Integer, String> map = new HashMap<>();
-
-      for (Biome biome : Biome.values()) {
-        map.put(biome.ordinal(), biome.toString());
+  private boolean requestChunks(RegionBatch region, List<VectorXZ> chunks, Path regionPath, long renderedAt,
+      boolean skipMissing, RenderQueue queue) throws InterruptedException, ExecutionException {
+    AnvilRegionFile regionFile = new AnvilRegionFile(
+        regionPath.resolve("r." + region.coordinates.x + "." + region.coordinates.z + ".mca"));
+    AnvilRegionFile.Header header;
+
+    try {
+      header = regionFile.readHeader();
+    } catch (IOException e) {
+      // Fall back to capturing every chunk from the server.
+      for (VectorXZ chunkCoordinates : chunks) {
+        region.addChunk(chunkCoordinates);
       }
 
-      return map;
-    }).get();
+      metrics.recordRegionRequested(chunks.size());
 
-    Files.createDirectories(webDataPath);
+      List<RenderQueue.ChunkRequest> requests = new ArrayList<>();
 
-    String biomesJson = gson.toJson(biomes);
-    Path biomesPath = webDataPath.resolve("biomes.json");
-    Files.write(biomesPath, biomesJson.getBytes(StandardCharsets.UTF_8));
-  }
+      for (VectorXZ chunkCoordinates : chunks) {
+        requests.add(new RenderQueue.ChunkRequest(region, chunkCoordinates, RenderQueue.Source.CAPTURE, null));
+      }
 
-  /**
-   * Downloads material textures and models.
-   *
-   * @throws IOException Thrown if there an issue while downloading textures and
-   *                     models.
-   */
-  private void downloadMaterialTexturesAndModels() throws IOException {
-    JsonObject jsonObject;
+      queue.add(region, requests);
 
-    try (JsonReader jsonReader = new JsonReader(
-        new InputStreamReader(new URL(Constants.LAUNCHER_VERSION_MANIFEST).openStream()))) {
-      jsonObject = new JsonParser().parse(jsonReader).getAsJsonObject();
+      return !chunks.isEmpty();
     }
 
-    String latestReleaseManifest = null;
+    // Only the chunks of the region are looked up so the time spent on the main
+    // thread does not grow with the number of chunks loaded in the world.
+    boolean[] loadedChunks = tickBudget.callSync(() -> {
+      boolean[] loaded = new boolean[RegionBatch.CHUNKS_PER_REGION];
+
+      for (VectorXZ chunkCoordinates : chunks) {
+        loaded[RegionBatch.getChunkIndex(chunkCoordinates)] = region.world.isChunkLoaded(chunkCoordinates.x,
+            chunkCoordinates.z);
+      }
+
+      return loaded;
+    }).get();
+
+    List<VectorXZ> requestedChunks = new ArrayList<>();
+
+    for (VectorXZ chunkCoordinates : chunks) {
+      int index = RegionBatch.getChunkIndex(chunkCoordinates);
 
-    String latestRelease = jsonObject.get("latest").getAsJsonObject().get("release").getAsString();
-    for (JsonElement version : jsonObject.get("versions").getAsJsonArray()) {
-      if (!version.getAsJsonObject().get("id").getAsString().equals(latestRelease)) {
+      if (!loadedChunks[index] && header.isPresent(index) && header.getTimestamp(index) < renderedAt) {
+        metrics.recordChunksSkipped(1);
         continue;
       }
 
-      latestReleaseManifest = version.getAsJsonObject().get("url").getAsString();
-      break;
+      // All chunks have to be added before any are requested so the batch is not
+      // completed early.
+      region.addChunk(chunkCoordinates);
+      requestedChunks.add(chunkCoordinates);
     }
 
-    if (latestReleaseManifest == null) {
-      throw new JsonParseException("Unable to find latest release in Minecraft version manifest");
+    if (!requestedChunks.isEmpty()) {
+      metrics.recordRegionRequested(requestedChunks.size());
     }
 
-    try (JsonReader jsonReader = new JsonReader(new InputStreamReader(new URL(latestReleaseManifest).openStream()))) {
-      jsonObject = new JsonParser().parse(jsonReader).getAsJsonObject();
-    }
+    List<RenderQueue.ChunkRequest> requests = new ArrayList<>();
 
-    String client = jsonObject.get("downloads").getAsJsonObject().get("client").getAsJsonObject().get("url")
-        .getAsString();
+    for (VectorXZ chunkCoordinates : requestedChunks) {
+      int index = RegionBatch.getChunkIndex(chunkCoordinates);
+      RenderQueue.Source source;
 
-    Path clientTempFile = Files.createTempFile("BlockMaps", ".jar");
+      if (loadedChunks[index]) {
+        source = RenderQueue.Source.CAPTURE;
+      } else if (!header.isPresent(index)) {
+        source = skipMissing ? RenderQueue.Source.MISSING : RenderQueue.Source.CAPTURE;
+      } else if (anvilReader != null) {
+        source = RenderQueue.Source.REGION_FILE;
+      } else {
+        source = RenderQueue.Source.CAPTURE;
+      }
 
-    try (InputStream clientStream = new URL(client).openStream()) {
-      Files.copy(clientStream, clientTempFile, StandardCopyOption.REPLACE_EXISTING);
+      requests.add(new RenderQueue.ChunkRequest(region, chunkCoordinates, source,
+          source == RenderQueue.Source.REGION_FILE ? regionFile : null));
     }
 
-    Path iconDestination = pluginDataPath.resolve("web").resolve("apple-touch-icon.png");
+    queue.add(region, requests);
+
+    return !requestedChunks.isEmpty();
+  }
 
-    try (FileSystem fs = FileSystems.newFileSystem(clientTempFile, (ClassLoader)null)) {
-      Path texturesPath = webDataPath.resolve("textures").resolve("block");
+  /**
+   * Reads a chunk requested from its region file. Chunks that cannot be read
+   * are captured on the main server thread instead. Called concurrently by the
+   * worker threads.
+   *
+   * @param chunk The requested chunk.
+   * @return The chunk with its snapshot.
+   */
+  private CapturedChunk loadChunk(CapturedChunk chunk) throws InterruptedException, ExecutionException {
+    if (chunk.regionFile == null) {
+      return chunk;
+    }
 
-      Files.createDirectories(texturesPath);
+    ChunkSnapshot snapshot;
 
-      Path zipTexturesPath = fs.getRootDirectories().iterator().next().resolve("assets").resolve("minecraft")
-          .resolve("textures").resolve("block");
+    try {
+      snapshot = anvilReader.read(chunk.regionFile, chunk);
+    } catch (IOException e) {
+      regionFileFallbacks.incrementAndGet();
+      snapshot = tickBudget.callSync(() -> SnapshotCaptureTask.capture(chunk.world, chunk.coordinates)).get();
+    }
 
-      for (Path source : Files.walk(zipTexturesPath).collect(Collectors.toSet())) {
-        Path relativePath = zipTexturesPath.relativize(source);
-        Path destination = texturesPath.resolve(relativePath.toString());
-        if (Files.isDirectory(destination)) {
-          continue;
-        }
+    return new CapturedChunk(chunk.region, chunk.coordinates, snapshot, chunk.minHeight, chunk.maxHeight, 0);
+  }
 
-        Files.createDirectories(destination.getParent());
-        Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
-      }
+  /**
+   * Processes a captured chunk and saves data. Called concurrently by the worker
+   * threads. The region packs and surface tile of the region are written once
+   * all of its chunks have been processed.
+   *
+   * @param chunk The captured chunk.
+   * @return Number of bytes written.
+   */
+  private long processChunk(CapturedChunk chunk) throws InterruptedException, ExecutionException, IOException {
+    long startTime = System.nanoTime();
+    long bytesWritten = 0;
 
-      Path colorMapsPath = webDataPath.resolve("textures").resolve("colormap");
+    if (chunk.snapshot != null) {
+      bytesWritten += renderChunk(chunk);
+    }
 
-      Files.createDirectories(colorMapsPath);
+    if (chunk.region.completeChunk()) {
+      VectorXZ regionCoordinates = chunk.region.coordinates;
+      Object regionLock = regionLocks.computeIfAbsent(
+          chunk.world.getName() + "/" + regionCoordinates.x + "." + regionCoordinates.z, k -> new Object());
 
-      Path zipColorMapsPath = fs.getRootDirectories().iterator().next().resolve("assets").resolve("minecraft")
-          .resolve("textures").resolve("colormap");
+      // The files of a region are updated from their existing contents.
+      synchronized (regionLock) {
+        if (settings.writeRegionPacks) {
+          bytesWritten += writeRegionPacks(chunk.region);
+        }
 
-      for (Path source : Files.walk(zipColorMapsPath).collect(Collectors.toSet())) {
-        Path relativePath = zipColorMapsPath.relativize(source);
-        Path destination = colorMapsPath.resolve(relativePath.toString());
-        if (Files.isDirectory(destination)) {
-          continue;
+        if (settings.writeContentAddressedChunks) {
+          bytesWritten += writeRegionIndex(chunk.region);
         }
 
-        Files.createDirectories(destination.getParent());
-        Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
+        if (surfaceTiles != null) {
+          bytesWritten += surfaceTiles.writeRegion(chunk.region);
+        }
       }
 
-      Path blockStatesPath = webDataPath.resolve("blockstates");
-
-      Files.createDirectories(blockStatesPath);
+      metrics.recordRegionCompleted();
 
-      Path zipBlockStatesPath = fs.getRootDirectories().iterator().next().resolve("assets").resolve("minecraft")
-          .resolve("blockstates");
-
-      for (Path source : Files.walk(zipBlockStatesPath).collect(Collectors.toSet())) {
-        Path relativePath = zipBlockStatesPath.relativize(source);
-        Path destination = blockStatesPath.resolve(relativePath.toString());
-        if (Files.isDirectory(destination)) {
-          continue;
-        }
+      RefreshJournal currentJournal = journal;
 
-        Files.createDirectories(destination.getParent());
-        Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
+      if (currentJournal != null) {
+        String worldName = chunk.world.getName();
+        currentJournal.finishRegion(worldName, chunk.region.coordinates);
+        finishWorldRegion(worldName);
       }
+    }
 
-      Path modelsPath = webDataPath.resolve("models").resolve("block");
+    metrics.recordChunk(chunk.snapshot != null, System.nanoTime() - startTime, bytesWritten);
 
-      Files.createDirectories(modelsPath);
+    return bytesWritten;
+  }
 
-      Path zipModelsPath = fs.getRootDirectories().iterator().next().resolve("assets").resolve("minecraft")
-          .resolve("models").resolve("block");
+  /**
+   * Renders a captured chunk and saves data.
+   *
+   * @param chunk The captured chunk.
+   * @return Number of bytes written.
+   */
+  private long renderChunk(CapturedChunk chunk) throws InterruptedException, ExecutionException, IOException {
+    ChunkScan scan = new ChunkScan(chunk);
+    BlockDataModel[] blocks = scanBlocks(chunk, scan, blockStates, settings.cullHiddenBlocks);
 
-      for (Path source : Files.walk(zipModelsPath).collect(Collectors.toSet())) {
-        Path relativePath = zipModelsPath.relativize(source);
-        Path destination = modelsPath.resolve(relativePath.toString());
-        if (Files.isDirectory(destination)) {
-          continue;
-        }
+    if (blocks == null) {
+      return 0;
+    }
 
-        Files.createDirectories(destination.getParent());
-        Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
-      }
+    BiomeGrid biomes = new BiomeGrid(chunk);
+    recordBiomes(chunk, biomes);
 
-      Path serverPath = plugin.getServer().getWorldContainer().toPath();
-      Path serverIconPath = serverPath.resolve("server-icon.png");
+    if (surfaceTiles != null) {
+      chunk.region.setSurface(chunk.coordinates, surfaceTiles.renderChunk(chunk, scan, biomes));
+    }
 
-      Files.createDirectories(iconDestination.getParent());
+    Path worldPath = webDataPath.resolve("worlds").resolve(chunk.world.getName());
+    String chunkName = chunk.coordinates.x + "." + chunk.coordinates.z;
+    long bytesWritten = 0;
 
-      if (Files.exists(serverIconPath)) {
-        Files.copy(serverIconPath, iconDestination, StandardCopyOption.REPLACE_EXISTING);
-      } else {
-        Path defaultIconPath = fs.getRootDirectories().iterator().next().resolve("assets").resolve("minecraft")
-            .resolve("textures").resolve("misc").resolve("unknown_server.png");
-        Files.copy(defaultIconPath, iconDestination, StandardCopyOption.REPLACE_EXISTING);
-      }
+    if (settings.writeJsonChunks) {
+      ChunkModel chunkModel = new ChunkModel();
+      chunkModel.blocks = toNestedMap(blocks, chunk.minHeight);
+      chunkModel.biomes = biomes.toModel();
+
+      bytesWritten += writeChunk(chunk, stream -> {
+        Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        gson.toJson(chunkModel, ChunkModel.class, gson.newJsonWriter(writer));
+        writer.flush();
+      }, worldPath.resolve(chunkName + Constants.JSON_CHUNK_EXTENSION), Constants.JSON_CHUNK_EXTENSION);
     }
 
-    Files.delete(clientTempFile);
+    if (settings.writeBinaryChunks) {
+      byte[] chunkBinary = BinaryChunkWriter.write(blocks, chunk.minHeight, chunk.maxHeight, blockStates,
+          biomes);
+      bytesWritten += writeChunk(chunk, stream -> stream.write(chunkBinary),
+          worldPath.resolve(chunkName + Constants.BINARY_CHUNK_EXTENSION), Constants.BINARY_CHUNK_EXTENSION);
+    }
 
-    Path favicon = pluginDataPath.resolve("web").resolve("favicon.ico");
-    Files.createDirectories(favicon.getParent());
+    if (blockModels != null) {
+      byte[] chunkMesh = ChunkMesher.mesh(chunk, scan, blockModels, biomes, biomeTints);
+      bytesWritten += writeChunk(chunk, stream -> stream.write(chunkMesh),
+          worldPath.resolve(chunkName + Constants.MESH_EXTENSION), Constants.MESH_EXTENSION);
+    }
 
-    BufferedImage serverIcon = ImageIO.read(iconDestination.toFile());
-    ICOEncoder.write(serverIcon, favicon.toFile());
+    return bytesWritten;
   }
 
   /**
-   * Processes worlds and saves data.
+   * Writes the data of a chunk to a GZIP-compressed chunk file or adds it to the
+   * region batch when writing region packs. Content-addressed chunk files are
+   * written to the blobs folder next to the chunk file path and their hash is
+   * added to the region batch.
+   *
+   * @param chunk     The captured chunk.
+   * @param body      Writes the data of the chunk.
+   * @param filePath  Path of the chunk file.
+   * @param extension File extension of the chunk format.
+   * @return Number of bytes written.
+   * @throws IOException Thrown if there is an issue while writing the file.
    */
-  private void processWorlds() throws InterruptedException, ExecutionException, IOException {
-    List<World> worlds = plugin.getServer().getScheduler().callSyncMethod(plugin, () -> plugin.getServer().getWorlds())
-        .get();
+  private long writeChunk(CapturedChunk chunk, GzipFileWriter.Body body, Path filePath, String extension)
+      throws IOException {
+    if (settings.writeRegionPacks) {
+      chunk.region.setPackedChunk(extension, chunk.coordinates, gzipWriter.compress(body));
+      return 0;
+    }
 
-    for (World world : worlds) {
-      processWorld(world);
+    if (settings.writeContentAddressedChunks) {
+      GzipFileWriter.Blob blob = gzipWriter.writeBlob(filePath.resolveSibling(Constants.BLOBS_FOLDER_NAME),
+          extension, body);
+      chunk.region.setChunkHash(extension, chunk.coordinates, blob.hash);
+      return blob.bytesWritten;
     }
+
+    return gzipWriter.write(filePath, body);
   }
 
   /**
-   * Processes a world and saves data.
+   * Writes the region packs of a region batch.
    *
-   * @param world The world to process.
+   * @param region The region batch.
+   * @return Number of bytes written.
+   * @throws IOException Thrown if there is an issue while writing the region
+   *                     packs.
    */
-  private void processWorld(World world) throws InterruptedException, ExecutionException, IOException {
-    Path worldPath = plugin.getServer().getScheduler().callSyncMethod(plugin, () -> world.getWorldFolder().toPath())
-        .get();
-    Path regionPath = worldPath.resolve("region");
-    if (!Files.exists(regionPath)) {
-      return;
+  private long writeRegionPacks(RegionBatch region) throws IOException {
+    Path worldPath = webDataPath.resolve("worlds").resolve(region.world.getName());
+    String regionName = "r." + region.coordinates.x + "." + region.coordinates.z;
+    boolean sync = settings.syncMode != GzipFileWriter.SyncMode.NONE;
+    long bytesWritten = 0;
+
+    if (settings.writeJsonChunks) {
+      bytesWritten += RegionPackWriter.write(worldPath.resolve(regionName + Constants.JSON_REGION_PACK_EXTENSION),
+          region, region.getPackedChunks(Constants.JSON_CHUNK_EXTENSION), manifest, sync);
     }
 
-    Set<String> files = Files.list(regionPath).filter(p -> !Files.isDirectory(p)).map(Path::getFileName)
-        .map(Path::toString).collect(Collectors.toSet());
+    if (settings.writeBinaryChunks) {
+      bytesWritten += RegionPackWriter.write(worldPath.resolve(regionName + Constants.BINARY_REGION_PACK_EXTENSION),
+          region, region.getPackedChunks(Constants.BINARY_CHUNK_EXTENSION), manifest, sync);
+    }
 
-    Set<VectorXZ> regionCoordinates = new HashSet<>();
+    if (settings.writeMeshes) {
+      bytesWritten += RegionPackWriter.write(worldPath.resolve(regionName + Constants.MESH_REGION_PACK_EXTENSION),
+          region, region.getPackedChunks(Constants.MESH_EXTENSION), manifest, sync);
+    }
 
-    for (String file : files) {
-      String[] splitName = file.split("\\.");
+    return bytesWritten;
+  }
 
-      if (!splitName[0].equals("r") || splitName.length != 4 || !splitName[3].equals("mca")) {
-        continue;
-      }
+  /**
+   * Writes the index of the content-addressed chunk files of a region batch.
+   *
+   * @param region The region batch.
+   * @return Number of bytes written.
+   * @throws IOException Thrown if there is an issue while writing the region
+   *                     index.
+   */
+  private long writeRegionIndex(RegionBatch region) throws IOException {
+    Path worldPath = webDataPath.resolve("worlds").resolve(region.world.getName());
+    String regionName = "r." + region.coordinates.x + "." + region.coordinates.z;
+    List<String> extensions = new ArrayList<>();
 
-      int x = Integer.parseInt(splitName[1]);
-      int z = Integer.parseInt(splitName[2]);
+    if (settings.writeJsonChunks) {
+      extensions.add(Constants.JSON_CHUNK_EXTENSION);
+    }
 
-      regionCoordinates.add(new VectorXZ(x, z));
+    if (settings.writeBinaryChunks) {
+      extensions.add(Constants.BINARY_CHUNK_EXTENSION);
     }
 
-    for (VectorXZ coordinates : regionCoordinates) {
-      processRegion(world, coordinates);
+    if (settings.writeMeshes) {
+      extensions.add(Constants.MESH_EXTENSION);
     }
+
+    return RegionIndexWriter.write(worldPath.resolve(regionName + Constants.REGION_INDEX_EXTENSION), region,
+        extensions, manifest);
   }
 
   /**
-   * Processes a region and saves data.
-   * 
-   * @param world       World containing the region.
-   * @param coordinates Coordinates of the region.
+   * Deletes the content-addressed chunk files of all worlds that are no longer
+   * referenced by a region index once they have been kept for the grace period.
+   *
+   * @throws IOException Thrown if there is an issue while deleting the files.
    */
-  private void processRegion(World world, VectorXZ coordinates)
-      throws InterruptedException, ExecutionException, IOException {
-    int startX = coordinates.x * Constants.WIDTH_OF_REGION;
-    int startZ = coordinates.z * Constants.DEPTH_OF_REGION;
+  private void removeUnreferencedBlobs() throws IOException {
+    Path worldsPath = webDataPath.resolve("worlds");
 
-    for (int x = startX; x < startX + Constants.WIDTH_OF_REGION; x++) {
-      for (int z = startZ; z < startZ + Constants.DEPTH_OF_REGION; z++) {
-        processChunk(world, new VectorXZ(x, z));
-      }
+    if (!Files.isDirectory(worldsPath)) {
+      return;
+    }
+
+    List<Path> worldPaths;
+
+    try (Stream<Path> paths = Files.list(worldsPath)) {
+      worldPaths = paths.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+    }
+
+    long now = System.currentTimeMillis() / 1000;
+
+    for (Path worldPath : worldPaths) {
+      RegionIndexWriter.removeUnreferencedBlobs(worldPath, now);
     }
   }
 
   /**
-   * Processes a chunk and saves data.
+   * Records the climate of biomes in a chunk that are not in the biome tint
+   * table. Biomes are sampled below the height where the temperature is adjusted
+   * when possible so the recorded temperature does not depend on which chunk is
+   * processed first.
    *
-   * @param world       World containing the chunk.
-   * @param coordinates Coordinates of the chunk.
+   * @param chunk  The captured chunk.
+   * @param biomes Biomes of the chunk.
    */
-  private void processChunk(World world, VectorXZ coordinates)
-      throws InterruptedException, ExecutionException, IOException {
-    Map<Integer, Map<Integer, Map<Integer, BlockDataModel>>> chunkBlocks = plugin.getServer().getScheduler()
-        .callSyncMethod(plugin, () -> {
-          if (!world.isChunkGenerated(coordinates.x, coordinates.z)) {
-            return null;
-          }
+  private void recordBiomes(CapturedChunk chunk, BiomeGrid biomes) throws InterruptedException, ExecutionException {
+    for (int i = 0; i < biomes.palette.size(); i++) {
+      Biome biome = biomes.palette.get(i);
+
+      if (biomeTints.contains(biome)) {
+        continue;
+      }
 
-          Chunk chunk = world.getChunkAt(coordinates.x, coordinates.z);
-          ChunkSnapshot snapshot = chunk.getChunkSnapshot();
-          Map<Integer, Map<Integer, Map<Integer, BlockDataModel>>> blocks = null;
+      int[] sample = biomes.getSampleCoordinates(i);
+      int x = sample[0];
+      int y = sample[1];
+      int z = sample[2];
 
-          for (int y = world.getMinHeight(); y < world.getMaxHeight(); y++) {
-            for (int x = 0; x < Constants.WIDTH_OF_CHUNK; x++) {
-              for (int z = 0; z < Constants.DEPTH_OF_CHUNK; z++) {
-                BlockDataModel blockModel = processBlock(world.getMinHeight(), world.getMaxHeight(), snapshot, world, x,
-                    y, z);
+      if (y > Constants.BIOME_SAMPLE_HEIGHT && Constants.BIOME_SAMPLE_HEIGHT >= chunk.minHeight
+          && chunk.snapshot.getBiome(x, Constants.BIOME_SAMPLE_HEIGHT, z) == biome) {
+        y = Constants.BIOME_SAMPLE_HEIGHT;
+      }
 
-                if (blockModel == null) {
-                  continue;
-                }
+      biomeTints.record(biome, getTemperature(chunk, x, y, z), getHumidity(chunk, biome, x, y, z));
+    }
+  }
 
-                if (blocks == null) {
-                  blocks = new HashMap<>();
-                }
+  /**
+   * Converts the blocks of a chunk to the nested map used by the JSON chunk
+   * format.
+   *
+   * @param blocks    Blocks of the chunk indexed in YZX order starting at the
+   *                  minimum height. Omitted blocks are null.
+   * @param minHeight Minimum height of the world.
+   * @return Map of blocks keyed by Y, X and Z coordinates.
+   */
+  static Map<Integer, Map<Integer, Map<Integer, BlockDataModel>>> toNestedMap(BlockDataModel[] blocks,
+      int minHeight) {
+    Map<Integer, Map<Integer, Map<Integer, BlockDataModel>>> chunkBlocks = new HashMap<>();
+    int layerSize = Constants.WIDTH_OF_CHUNK * Constants.DEPTH_OF_CHUNK;
 
-                blocks.computeIfAbsent(y, k -> new HashMap<>());
-                blocks.get(y).computeIfAbsent(x, k -> new HashMap<>());
+    for (int i = 0; i < blocks.length; i++) {
+      if (blocks[i] == null) {
+        continue;
+      }
 
-                blocks.get(y).get(x).put(z, blockModel);
-              }
-            }
-          }
+      int y = minHeight + i / layerSize;
+      int z = (i % layerSize) / Constants.WIDTH_OF_CHUNK;
+      int x = i % Constants.WIDTH_OF_CHUNK;
 
-          return blocks;
-        }).get();
+      chunkBlocks.computeIfAbsent(y, k -> new HashMap<>());
+      chunkBlocks.get(y).computeIfAbsent(x, k -> new HashMap<>());
 
-    if (chunkBlocks == null) {
-      return;
+      chunkBlocks.get(y).get(x).put(z, blocks[i]);
     }
 
-    String chunkJson = gson.toJson(chunkBlocks);
-    Path worldPath = webDataPath.resolve("worlds").resolve(world.getName());
-    Path chunkPath = worldPath.resolve(coordinates.x + "." + coordinates.z + ".json.gz");
-    writeStringToGzipFile(chunkJson, chunkPath);
+    return chunkBlocks;
   }
 
   /**
-   * Processes a block.
+   * Processes the blocks of a chunk.
    *
-   * @param minHeight     Minimum height of the world.
-   * @param maxHeight     Maximum height of the world.
-   * @param chunkSnapshot Snapshot of the chunk containing the block.
-   * @param world         World containing the block.
-   * @param x             X coordinate of the block in the chunk.
-   * @param y             Y coordinate of the block in the chunk.
-   * @param z             Z coordinate of the block in the chunk.
-   * @return The processes block data.
+   * @param chunk            The captured chunk.
+   * @param scan             The scanned blocks of the chunk.
+   * @param blockStates      Table interning the block states of rendered blocks.
+   * @param cullHiddenBlocks Status of blocks hidden by opaque blocks being left
+   *                         out.
+   * @return Blocks of the chunk indexed in YZX order starting at the minimum
+   *         height with omitted blocks set to null, or null if all blocks are
+   *         omitted.
    */
-  private BlockDataModel processBlock(int minHeight, int maxHeight, ChunkSnapshot chunkSnapshot, World world, int x,
-      int y, int z) {
-    BlockData blockData = chunkSnapshot.getBlockData(x, y, z);
+  static BlockDataModel[] scanBlocks(CapturedChunk chunk, ChunkScan scan, BlockStateTable blockStates,
+      boolean cullHiddenBlocks) {
+    int layerSize = Constants.WIDTH_OF_CHUNK * Constants.DEPTH_OF_CHUNK;
+    BlockDataModel[] blocks = null;
+
+    for (int y = chunk.minHeight; y < chunk.maxHeight; y++) {
+      for (int z = 0; z < Constants.DEPTH_OF_CHUNK; z++) {
+        for (int x = 0; x < Constants.WIDTH_OF_CHUNK; x++) {
+          BlockDataModel blockModel = processBlock(chunk, scan, blockStates, cullHiddenBlocks, x, y, z);
+
+          if (blockModel == null) {
+            continue;
+          }
 
-    if (blockData.getMaterial().isAir()) {
-      boolean surroundedByAir = true;
+          if (blocks == null) {
+            blocks = new BlockDataModel[(chunk.maxHeight - chunk.minHeight) * layerSize];
+          }
 
-      if (y > minHeight) {
-        surroundedByAir = chunkSnapshot.getBlockData(x, y - 1, z).getMaterial().isAir();
+          blocks[((y - chunk.minHeight) * Constants.DEPTH_OF_CHUNK + z) * Constants.WIDTH_OF_CHUNK + x] = blockModel;
+        }
       }
+    }
 
-      if (y < maxHeight - 1) {
-        surroundedByAir = surroundedByAir && chunkSnapshot.getBlockData(x, y + 1, z).getMaterial().isAir();
-      }
+    return blocks;
+  }
 
-      // Keep edge blocks on X and Z axes in case of needing light information in a
-      // different chunk.
+  /**
+   * Processes a block.
+   *
+   * @param chunk            The captured chunk containing the block.
+   * @param scan             The scanned blocks of the chunk.
+   * @param blockStates      Table interning the block states of rendered blocks.
+   * @param cullHiddenBlocks Status of blocks hidden by opaque blocks being left
+   *                         out.
+   * @param x                X coordinate of the block in the chunk.
+   * @param y                Y coordinate of the block in the chunk.
+   * @param z                Z coordinate of the block in the chunk.
+   * @return The processes block data.
+   */
+  private static BlockDataModel processBlock(CapturedChunk chunk, ChunkScan scan, BlockStateTable blockStates,
+      boolean cullHiddenBlocks, int x, int y, int z) {
+    ChunkSnapshot chunkSnapshot = chunk.snapshot;
 
-      surroundedByAir = x > 0 && surroundedByAir && chunkSnapshot.getBlockData(x - 1, y, z).getMaterial().isAir();
-      surroundedByAir = x < Constants.WIDTH_OF_CHUNK - 1 && surroundedByAir
-          && chunkSnapshot.getBlockData(x + 1, y, z).getMaterial().isAir();
-      surroundedByAir = z > 0 && surroundedByAir && chunkSnapshot.getBlockData(x, y, z - 1).getMaterial().isAir();
-      surroundedByAir = z < Constants.DEPTH_OF_CHUNK - 1 && surroundedByAir
-          && chunkSnapshot.getBlockData(x, y, z + 1).getMaterial().isAir();
+    BlockData blockData = scan.getBlockData(x, y, z);
 
-      if (surroundedByAir) {
+    if (scan.isAir(x, y, z)) {
+      if (scan.isSurroundedByAir(x, y, z)) {
         // If an air block is surrounded by air, the lighting data for that block is not
         // needed.
         return null;
       }
+    } else if (cullHiddenBlocks && scan.isHidden(x, y, z)) {
+      // If an opaque block is surrounded by opaque blocks, none of its faces can be
+      // seen.
+      return null;
     }
 
     BlockDataModel blockModel = new BlockDataModel();
-    blockModel.material = blockData.getMaterial().ordinal();
-
-    String data = blockData.getAsString();
-    int dataStartIndex = data.indexOf("[");
-
-    if (dataStartIndex > 0) {
-      int dataEndIndex = data.indexOf("]", dataStartIndex);
-
-      if (dataEndIndex > dataStartIndex) {
-        blockModel.data = data.substring(dataStartIndex + 1, dataEndIndex);
-      }
-    }
+    blockModel.state = blockStates.getId(blockData);
 
     int defaultLightValue = blockData.getMaterial() == Material.AIR ? Constants.MAX_LIGHT_LEVEL
         : Constants.MIN_LIGHT_LEVEL;
@@ -590,12 +2304,6 @@ public class CommandRefreshMapData implements CommandExecutor {
       blockModel.emittedLight = emittedLight;
     }
 
-    if (tintedMaterials.contains(blockData.getMaterial())) {
-      blockModel.biome = world.getBiome(x, y, z).ordinal();
-      blockModel.temperature = world.getTemperature(x, y, z);
-      blockModel.humidity = world.getHumidity(x, y, z);
-    }
-
     if (blockData.getMaterial().isAir() && blockModel.skyLight == null && blockModel.emittedLight == null) {
       return null;
     }
@@ -604,24 +2312,77 @@ public class CommandRefreshMapData implements CommandExecutor {
   }
 
   /**
-   * Writes a string to a GZIP-compressed file.
-   * 
-   * @param string   String to write.
-   * @param filePath Path to write to.
-   * @throws IOException Thrown if there is an issue while writing the file.
+   * Gets the temperature of a block. Snapshots read from region files do not
+   * contain temperatures, so the temperature of their blocks is looked up on the
+   * main thread.
+   *
+   * @param chunk The captured chunk containing the block.
+   * @param x     X coordinate of the block in the chunk.
+   * @param y     Y coordinate of the block in the chunk.
+   * @param z     Z coordinate of the block in the chunk.
+   * @return The temperature of the block.
+   */
+  private double getTemperature(CapturedChunk chunk, int x, int y, int z)
+      throws InterruptedException, ExecutionException {
+    if (!(chunk.snapshot instanceof AnvilChunkSnapshot)) {
+      return chunk.snapshot.getRawBiomeTemperature(x, y, z);
+    }
+
+    int blockX = chunk.coordinates.x * Constants.WIDTH_OF_CHUNK + x;
+    int blockZ = chunk.coordinates.z * Constants.DEPTH_OF_CHUNK + z;
+
+    return tickBudget.callSync(() -> chunk.world.getTemperature(blockX, y, blockZ)).get();
+  }
+
+  /**
+   * Gets the humidity of a biome. The humidity is looked up on the main thread
+   * the first time the biome is encountered.
+   *
+   * @param chunk The captured chunk containing the block.
+   * @param biome Biome containing the block.
+   * @param x     X coordinate of the block in the chunk.
+   * @param y     Y coordinate of the block in the chunk.
+   * @param z     Z coordinate of the block in the chunk.
+   * @return The humidity of the biome.
    */
-  private void writeStringToGzipFile(String string, Path filePath) throws IOException {
-    byte[] bytes;
+  private double getHumidity(CapturedChunk chunk, Biome biome, int x, int y, int z)
+      throws InterruptedException, ExecutionException {
+    Double humidity = biomeHumidity.get(biome);
 
-    try (ByteArrayOutputStream byteArrayOS = new ByteArrayOutputStream();
-        GZIPOutputStream gzipOS = new GZIPOutputStream(byteArrayOS);
-        OutputStreamWriter osWriter = new OutputStreamWriter(gzipOS, StandardCharsets.UTF_8);) {
-      osWriter.write(string);
-      osWriter.close();
-      bytes = byteArrayOS.toByteArray();
+    if (humidity != null) {
+      return humidity;
     }
 
-    Files.createDirectories(filePath.getParent());
-    Files.write(filePath, bytes);
+    int blockX = chunk.coordinates.x * Constants.WIDTH_OF_CHUNK + x;
+    int blockZ = chunk.coordinates.z * Constants.DEPTH_OF_CHUNK + z;
+
+    humidity = tickBudget.callSync(() -> chunk.world.getHumidity(blockX, y, blockZ)).get();
+    biomeHumidity.put(biome, humidity);
+
+    return humidity;
+  }
+
+  /**
+   * Requests chunks to be rendered.
+   */
+  @FunctionalInterface
+  private interface ChunkRequester {
+    /**
+     * Requests chunks to be rendered.
+     *
+     * @param queue Queue receiving the chunks.
+     */
+    void requestChunks(RenderQueue queue) throws InterruptedException, ExecutionException, IOException;
+  }
+
+  /**
+   * A task that is part of refreshing map data.
+   */
+  @FunctionalInterface
+  private interface RefreshTask {
+    /**
+     * Runs the task.
+     */
+    void run() throws URISyntaxException, IOException, InterruptedException, ExecutionException;
   }
 }
@@ -24,6 +24,18 @@ public final class Constants {
    */
   public static final int DEPTH_OF_CHUNK = 16;
 
+  /**
+   * The height (y-axis) in blocks of a chunk section.
+   */
+  public static final int HEIGHT_OF_SECTION = 16;
+
+  /**
+   * The estimated heap usage in bytes of a chunk section in a chunk snapshot.
+   * Covers the copied block palette container and the sky and emitted light
+   * arrays.
+   */
+  public static final int ESTIMATED_SECTION_SNAPSHOT_BYTES = 12 * 1024;
+
   /**
    * The minimum value for a stored lighting level.
    */
@@ -34,6 +46,81 @@ public final class Constants {
    */
   public static final int MAX_LIGHT_LEVEL = 15;
 
+  /**
+   * The height below which the temperature of a biome is not adjusted for
+   * height.
+   */
+  public static final int BIOME_SAMPLE_HEIGHT = 64;
+
+  /**
+   * The magic number at the start of a binary chunk ("BMCK").
+   */
+  public static final int BINARY_CHUNK_MAGIC = 0x424D434B;
+
+  /**
+   * The version of the binary chunk format.
+   */
+  public static final int BINARY_CHUNK_FORMAT_VERSION = 3;
+
+  /**
+   * The magic number at the start of a chunk mesh ("BMMS").
+   */
+  public static final int MESH_MAGIC = 0x424D4D53;
+
+  /**
+   * The version of the chunk mesh format.
+   */
+  public static final int MESH_FORMAT_VERSION = 1;
+
+  /**
+   * The file extension of a chunk in the JSON chunk format.
+   */
+  public static final String JSON_CHUNK_EXTENSION = ".json.gz";
+
+  /**
+   * The file extension of a chunk in the binary chunk format.
+   */
+  public static final String BINARY_CHUNK_EXTENSION = ".bin.gz";
+
+  /**
+   * The file extension of a chunk mesh.
+   */
+  public static final String MESH_EXTENSION = ".mesh.gz";
+
+  /**
+   * The file extension of a region pack of chunks in the JSON chunk format.
+   */
+  public static final String JSON_REGION_PACK_EXTENSION = ".json.pack";
+
+  /**
+   * The file extension of a region pack of chunks in the binary chunk format.
+   */
+  public static final String BINARY_REGION_PACK_EXTENSION = ".bin.pack";
+
+  /**
+   * The file extension of a region pack of chunk meshes.
+   */
+  public static final String MESH_REGION_PACK_EXTENSION = ".mesh.pack";
+
+  /**
+   * The file extension of the index of the content-addressed chunk files of a
+   * region.
+   */
+  public static final String REGION_INDEX_EXTENSION = ".index.json";
+
+  /**
+   * The name of the folder containing the content-addressed chunk files of a
+   * world.
+   */
+  public static final String BLOBS_FOLDER_NAME = "blobs";
+
+  /**
+   * The number of seconds a content-addressed chunk file is kept after it is
+   * no longer referenced by a region index so clients holding an older region
+   * index can still download it.
+   */
+  public static final long BLOB_GRACE_PERIOD_SECONDS = 24 * 60 * 60;
+
   /**
    * The location of the Minecraft launcher version manifest file.
    */
@@ -0,0 +1,279 @@
+package com.jonathanpotts.blockmaps;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockPhysicsEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.StructureGrowEvent;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks chunks that have changed since they were last rendered.
+ */
+public class DirtyChunkTracker implements Listener {
+  /**
+   * File used to persist the dirty chunks.
+   */
+  private final Path filePath;
+
+  /**
+   * The gson object used to process JSON.
+   */
+  private final Gson gson = new Gson();
+
+  /**
+   * Keys of dirty chunks by world name.
+   */
+  private final Map<String, Set<Long>> dirtyChunks = new HashMap<>();
+
+  /**
+   * Lock held while saving so saves from different threads do not share the
+   * temporary file or replace a newer file with an older copy.
+   */
+  private final Object saveLock = new Object();
+
+  /**
+   * Status of the dirty chunks having changed since they were last saved.
+   */
+  private boolean modified = false;
+
+  /**
+   * Creates a dirty chunk tracker.
+   *
+   * @param filePath File used to persist the dirty chunks.
+   */
+  public DirtyChunkTracker(Path filePath) {
+    this.filePath = filePath;
+  }
+
+  /**
+   * Marks a chunk as dirty.
+   *
+   * @param worldName Name of the world containing the chunk.
+   * @param x         X coordinate of the chunk.
+   * @param z         Z coordinate of the chunk.
+   */
+  public synchronized void markChunk(String worldName, int x, int z) {
+    if (dirtyChunks.computeIfAbsent(worldName, k -> new HashSet<>()).add(getChunkKey(x, z))) {
+      modified = true;
+    }
+  }
+
+  /**
+   * Marks the chunk containing a block as dirty.
+   *
+   * @param world World containing the block.
+   * @param x     X coordinate of the block.
+   * @param z     Z coordinate of the block.
+   */
+  public void markBlock(World world, int x, int z) {
+    markChunk(world.getName(), Math.floorDiv(x, Constants.WIDTH_OF_CHUNK), Math.floorDiv(z, Constants.DEPTH_OF_CHUNK));
+  }
+
+  /**
+   * Marks the chunk containing a block as dirty.
+   *
+   * @param block The block.
+   */
+  public void markBlock(Block block) {
+    markBlock(block.getWorld(), block.getX(), block.getZ());
+  }
+
+  /**
+   * Marks the chunks containing blocks as dirty.
+   *
+   * @param blocks The blocks.
+   */
+  public void markBlocks(List<Block> blocks) {
+    for (Block block : blocks) {
+      markBlock(block);
+    }
+  }
+
+  /**
+   * Removes and returns all dirty chunks.
+   *
+   * @return Coordinates of the dirty chunks by world name.
+   */
+  public synchronized Map<String, List<VectorXZ>> drain() {
+    Map<String, List<VectorXZ>> chunks = copyDirtyChunks();
+
+    if (!dirtyChunks.isEmpty()) {
+      modified = true;
+    }
+
+    dirtyChunks.clear();
+    return chunks;
+  }
+
+  /**
+   * Marks chunks as dirty.
+   *
+   * @param chunks Coordinates of the chunks by world name.
+   */
+  public void markChunks(Map<String, List<VectorXZ>> chunks) {
+    for (Map.Entry<String, List<VectorXZ>> entry : chunks.entrySet()) {
+      for (VectorXZ coordinates : entry.getValue()) {
+        markChunk(entry.getKey(), coordinates.x, coordinates.z);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of dirty chunks.
+   *
+   * @return The number of dirty chunks.
+   */
+  public synchronized int size() {
+    int size = 0;
+
+    for (Set<Long> chunks : dirtyChunks.values()) {
+      size += chunks.size();
+    }
+
+    return size;
+  }
+
+  /**
+   * Loads the persisted dirty chunks.
+   *
+   * @throws IOException Thrown if there is an issue reading the file.
+   */
+  public void load() throws IOException {
+    if (!Files.exists(filePath)) {
+      return;
+    }
+
+    Type type = new TypeToken<Map<String, List<VectorXZ>>>() {
+    }.getType();
+    Map<String, List<VectorXZ>> chunks = gson.fromJson(new String(Files.readAllBytes(filePath),
+        StandardCharsets.UTF_8), type);
+
+    if (chunks != null) {
+      markChunks(chunks);
+    }
+  }
+
+  /**
+   * Persists the dirty chunks if they changed since they were last saved. Safe
+   * to call from multiple threads.
+   *
+   * @throws IOException Thrown if there is an issue writing the file.
+   */
+  public void save() throws IOException {
+    synchronized (saveLock) {
+      Map<String, List<VectorXZ>> chunks;
+
+      synchronized (this) {
+        if (!modified) {
+          return;
+        }
+
+        modified = false;
+        chunks = copyDirtyChunks();
+      }
+
+      try {
+        Files.createDirectories(filePath.getParent());
+
+        Path tempPath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+        Files.write(tempPath, gson.toJson(chunks).getBytes(StandardCharsets.UTF_8));
+        Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException e) {
+        // Save again next time since the file does not contain the changes.
+        synchronized (this) {
+          modified = true;
+        }
+
+        throw e;
+      }
+    }
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onBlockPlace(BlockPlaceEvent event) {
+    markBlock(event.getBlock());
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onBlockBreak(BlockBreakEvent event) {
+    markBlock(event.getBlock());
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onBlockExplode(BlockExplodeEvent event) {
+    markBlock(event.getBlock());
+    markBlocks(event.blockList());
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onEntityExplode(EntityExplodeEvent event) {
+    markBlocks(event.blockList());
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onBlockPhysics(BlockPhysicsEvent event) {
+    markBlock(event.getBlock());
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onStructureGrow(StructureGrowEvent event) {
+    for (BlockState state : event.getBlocks()) {
+      markBlock(event.getWorld(), state.getX(), state.getZ());
+    }
+  }
+
+  /**
+   * Copies the dirty chunks. Must be called while synchronized on the tracker.
+   *
+   * @return Coordinates of the dirty chunks by world name.
+   */
+  private Map<String, List<VectorXZ>> copyDirtyChunks() {
+    Map<String, List<VectorXZ>> chunks = new HashMap<>();
+
+    for (Map.Entry<String, Set<Long>> entry : dirtyChunks.entrySet()) {
+      List<VectorXZ> coordinates = new ArrayList<>();
+
+      for (long key : entry.getValue()) {
+        coordinates.add(new VectorXZ((int) (key >> 32), (int) key));
+      }
+
+      chunks.put(entry.getKey(), coordinates);
+    }
+
+    return chunks;
+  }
+
+  /**
+   * Gets the key used to store a chunk.
+   *
+   * @param x X coordinate of the chunk.
+   * @param z Z coordinate of the chunk.
+   * @return The key.
+   */
+  private static long getChunkKey(int x, int z) {
+    return ((long) x << 32) | (z & 0xFFFFFFFFL);
+  }
+}
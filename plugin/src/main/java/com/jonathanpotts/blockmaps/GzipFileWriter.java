@@ -0,0 +1,525 @@
+package com.jonathanpotts.blockmaps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streams data through a GZIP compressor without holding the uncompressed data
+ * in memory. Each thread reuses its own {@link Deflater} and buffers. The
+ * compressed bytes are hashed while they are buffered, so files that are
+ * unchanged according to the output manifest are skipped without touching the
+ * disk. Other files are written to a temporary file that replaces the
+ * destination once complete.
+ */
+public class GzipFileWriter implements AutoCloseable {
+  /**
+   * Size in bytes of the compressed output buffer of each thread.
+   */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Size in bytes above which the compressed output buffer of a thread is
+   * replaced once it is no longer needed, so a large file does not keep its
+   * memory allocated for the life of the thread.
+   */
+  private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+  /**
+   * GZIP header with no file name and a modification time of 0 so the same data
+   * always produces the same bytes. It matches the header written by
+   * {@link java.util.zip.GZIPOutputStream} on Java 16 and later so previously
+   * written files are recognized as unchanged.
+   */
+  private static final byte[] HEADER = { 0x1F, (byte) 0x8B, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xFF };
+
+  /**
+   * Number of files to write between each batched sync.
+   */
+  private static final int SYNC_BATCH_SIZE = 256;
+
+  /**
+   * Writes the uncompressed data of a file.
+   */
+  @FunctionalInterface
+  public interface Body {
+    /**
+     * Writes the data.
+     *
+     * @param stream Stream compressing the data.
+     * @throws IOException Thrown if there is an issue writing the data.
+     */
+    void writeTo(OutputStream stream) throws IOException;
+  }
+
+  /**
+   * How written files are synced to storage.
+   */
+  public enum SyncMode {
+    /**
+     * Files are not synced.
+     */
+    NONE,
+
+    /**
+     * Files are synced in batches after they are written.
+     */
+    BATCH,
+
+    /**
+     * Each file is synced before it replaces the destination.
+     */
+    ALWAYS
+  }
+
+  /**
+   * Manifest used to skip rewriting unchanged files.
+   */
+  private final OutputManifest manifest;
+
+  /**
+   * Compression level of the deflaters.
+   */
+  private final int level;
+
+  /**
+   * How written files are synced to storage.
+   */
+  private final SyncMode syncMode;
+
+  /**
+   * Metrics recording the compressed data.
+   */
+  private final RenderMetrics metrics;
+
+  /**
+   * Compressor of each thread.
+   */
+  private final ThreadLocal<GzipStream> streams;
+
+  /**
+   * Compressors created by all threads so their native memory can be released.
+   */
+  private final Queue<GzipStream> createdStreams = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Files written since the last batched sync.
+   */
+  private final Queue<Path> unsyncedFiles = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Creates a GZIP file writer.
+   *
+   * @param manifest Manifest used to skip rewriting unchanged files.
+   * @param level    Compression level from 0 to 9 or -1 for the default.
+   * @param syncMode How written files are synced to storage.
+   * @param metrics  Metrics recording the compressed data.
+   */
+  public GzipFileWriter(OutputManifest manifest, int level, SyncMode syncMode, RenderMetrics metrics) {
+    this.manifest = manifest;
+    this.level = level;
+    this.syncMode = syncMode;
+    this.metrics = metrics;
+    this.streams = ThreadLocal.withInitial(() -> {
+      GzipStream stream = new GzipStream(new Deflater(this.level, true));
+      createdStreams.add(stream);
+      return stream;
+    });
+  }
+
+  /**
+   * Writes a GZIP-compressed file unless it already contains the same bytes.
+   *
+   * @param filePath Path of the file.
+   * @param body     Writes the uncompressed data.
+   * @return Number of bytes written.
+   * @throws IOException Thrown if there is an issue writing the file.
+   */
+  public long write(Path filePath, Body body) throws IOException {
+    GzipStream stream = compressToBuffer(body);
+
+    try {
+      String hash = OutputManifest.toHex(stream.digest.digest());
+
+      if (manifest.isUnchanged(filePath, hash, stream.size)) {
+        return 0;
+      }
+
+      Files.createDirectories(filePath.getParent());
+      Path tempPath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+      writeTemp(tempPath, stream.compressed);
+
+      return replace(tempPath, filePath, hash, stream.size);
+    } finally {
+      stream.compressed.reset();
+    }
+  }
+
+  /**
+   * Writes a GZIP-compressed file named by the SHA-1 hash of its contents
+   * unless it already exists.
+   *
+   * @param blobsPath Folder containing the content-addressed files.
+   * @param extension File extension of the file.
+   * @param body      Writes the uncompressed data.
+   * @return The hash of the file and the number of bytes written.
+   * @throws IOException Thrown if there is an issue writing the file.
+   * @see RegionIndexWriter#getBlobPath(Path, String, String)
+   */
+  public Blob writeBlob(Path blobsPath, String extension, Body body) throws IOException {
+    GzipStream stream = compressToBuffer(body);
+
+    try {
+      String hash = OutputManifest.toHex(stream.digest.digest());
+      Path blobPath = RegionIndexWriter.getBlobPath(blobsPath, hash, extension);
+
+      if (manifest.isUnchanged(blobPath, hash, stream.size)) {
+        return new Blob(hash, 0);
+      }
+
+      Files.createDirectories(blobPath.getParent());
+      Path tempPath = Files.createTempFile(blobPath.getParent(), null, ".tmp");
+      writeTemp(tempPath, stream.compressed);
+
+      return new Blob(hash, replace(tempPath, blobPath, hash, stream.size));
+    } finally {
+      stream.compressed.reset();
+    }
+  }
+
+  /**
+   * Compresses data into the buffer of the current thread.
+   *
+   * @param body Writes the uncompressed data.
+   * @return The stream of the current thread holding the compressed bytes and
+   *         their hash and size.
+   * @throws IOException Thrown if there is an issue writing the data.
+   */
+  private GzipStream compressToBuffer(Body body) throws IOException {
+    GzipStream stream = streams.get();
+
+    stream.compressed.reset();
+    stream.begin(Channels.newChannel(stream.compressed));
+    body.writeTo(stream);
+    metrics.recordCompression(stream.finish(), stream.size);
+
+    return stream;
+  }
+
+  /**
+   * Writes compressed bytes to a temporary file.
+   *
+   * @param tempPath   Path of the temporary file.
+   * @param compressed The compressed bytes.
+   * @throws IOException Thrown if there is an issue writing the file.
+   */
+  private void writeTemp(Path tempPath, CompressedBuffer compressed) throws IOException {
+    try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer byteBuffer = compressed.toByteBuffer();
+
+      while (byteBuffer.hasRemaining()) {
+        channel.write(byteBuffer);
+      }
+
+      if (syncMode == SyncMode.ALWAYS) {
+        channel.force(true);
+      }
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(tempPath);
+      throw e;
+    }
+  }
+
+  /**
+   * Replaces a file with a temporary file.
+   *
+   * @param tempPath Path of the temporary file.
+   * @param filePath Path of the file.
+   * @param hash     SHA-1 hash of the temporary file as a hexadecimal string.
+   * @param size     Size of the temporary file in bytes.
+   * @return Number of bytes written.
+   * @throws IOException Thrown if there is an issue replacing the file.
+   */
+  private long replace(Path tempPath, Path filePath, String hash, long size) throws IOException {
+    try {
+      Files.move(tempPath, filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    manifest.record(filePath, hash, size);
+
+    if (syncMode == SyncMode.BATCH) {
+      unsyncedFiles.add(filePath);
+
+      if (unsyncedFiles.size() >= SYNC_BATCH_SIZE) {
+        sync();
+      }
+    }
+
+    return size;
+  }
+
+  /**
+   * Compresses data with GZIP into memory.
+   *
+   * @param body Writes the uncompressed data.
+   * @return The compressed bytes.
+   * @throws IOException Thrown if there is an issue writing the data.
+   */
+  public byte[] compress(Body body) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GzipStream stream = streams.get();
+
+    stream.begin(Channels.newChannel(bytes));
+    body.writeTo(stream);
+    metrics.recordCompression(stream.finish(), stream.size);
+
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Syncs the files written since the last batched sync to storage.
+   *
+   * @throws IOException Thrown if there is an issue syncing a file.
+   */
+  public void sync() throws IOException {
+    List<Path> files = new ArrayList<>();
+    Path filePath;
+
+    while ((filePath = unsyncedFiles.poll()) != null) {
+      files.add(filePath);
+    }
+
+    for (Path file : files) {
+      if (!Files.exists(file)) {
+        continue;
+      }
+
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        channel.force(true);
+      }
+    }
+  }
+
+  /**
+   * Syncs the remaining batched files and releases the deflaters.
+   *
+   * @throws IOException Thrown if there is an issue syncing a file.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      sync();
+    } finally {
+      GzipStream stream;
+
+      while ((stream = createdStreams.poll()) != null) {
+        stream.deflater.end();
+      }
+    }
+  }
+
+  /**
+   * A content-addressed file written by {@link #writeBlob(Path, String, Body)}.
+   */
+  public static class Blob {
+    /**
+     * SHA-1 hash of the file as a hexadecimal string.
+     */
+    public final String hash;
+
+    /**
+     * Number of bytes written or 0 if the file already existed.
+     */
+    public final long bytesWritten;
+
+    Blob(String hash, long bytesWritten) {
+      this.hash = hash;
+      this.bytesWritten = bytesWritten;
+    }
+  }
+
+  /**
+   * Stream compressing data into a channel in the GZIP format while hashing the
+   * compressed bytes.
+   */
+  private static class GzipStream extends OutputStream {
+    /**
+     * Deflater producing raw deflate data.
+     */
+    private final Deflater deflater;
+
+    /**
+     * Checksum of the uncompressed data.
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Hash of the compressed bytes.
+     */
+    private final MessageDigest digest = OutputManifest.createDigest();
+
+    /**
+     * Buffer of compressed bytes.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Compressed bytes of the last file compressed into memory, reused by the
+     * files compressed by the thread.
+     */
+    private final CompressedBuffer compressed = new CompressedBuffer();
+
+    /**
+     * Channel receiving the compressed bytes.
+     */
+    private WritableByteChannel channel;
+
+    /**
+     * Number of compressed bytes written.
+     */
+    private long size;
+
+    GzipStream(Deflater deflater) {
+      this.deflater = deflater;
+    }
+
+    /**
+     * Starts compressing into a channel.
+     *
+     * @param target Channel receiving the compressed bytes.
+     * @throws IOException Thrown if there is an issue writing the header.
+     */
+    void begin(WritableByteChannel target) throws IOException {
+      channel = target;
+      size = 0;
+      deflater.reset();
+      crc.reset();
+      digest.reset();
+      emit(HEADER, HEADER.length);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return;
+      }
+
+      crc.update(b, off, len);
+      deflater.setInput(b, off, len);
+
+      while (!deflater.needsInput()) {
+        deflate();
+      }
+    }
+
+    /**
+     * Finishes compressing and writes the GZIP trailer.
+     *
+     * @return Number of uncompressed bytes.
+     * @throws IOException Thrown if there is an issue writing the data.
+     */
+    long finish() throws IOException {
+      deflater.finish();
+
+      while (!deflater.finished()) {
+        deflate();
+      }
+
+      long crcValue = crc.getValue();
+      long inputSize = deflater.getBytesRead();
+      byte[] trailer = { (byte) crcValue, (byte) (crcValue >> 8), (byte) (crcValue >> 16), (byte) (crcValue >> 24),
+          (byte) inputSize, (byte) (inputSize >> 8), (byte) (inputSize >> 16), (byte) (inputSize >> 24) };
+      emit(trailer, trailer.length);
+
+      channel = null;
+
+      return inputSize;
+    }
+
+    /**
+     * Compresses the pending input into the buffer and writes it.
+     *
+     * @throws IOException Thrown if there is an issue writing the data.
+     */
+    private void deflate() throws IOException {
+      int length = deflater.deflate(buffer, 0, buffer.length);
+
+      if (length > 0) {
+        emit(buffer, length);
+      }
+    }
+
+    /**
+     * Writes compressed bytes to the channel and the hash.
+     *
+     * @param bytes  The bytes.
+     * @param length Number of bytes to write.
+     * @throws IOException Thrown if there is an issue writing the data.
+     */
+    private void emit(byte[] bytes, int length) throws IOException {
+      digest.update(bytes, 0, length);
+      size += length;
+
+      ByteBuffer byteBuffer = ByteBuffer.wrap(bytes, 0, length);
+
+      while (byteBuffer.hasRemaining()) {
+        channel.write(byteBuffer);
+      }
+    }
+  }
+
+  /**
+   * Growable buffer of compressed bytes that can be written without copying.
+   */
+  private static class CompressedBuffer extends ByteArrayOutputStream {
+    CompressedBuffer() {
+      super(BUFFER_SIZE);
+    }
+
+    /**
+     * Wraps the buffered bytes.
+     *
+     * @return Buffer containing the bytes.
+     */
+    ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+
+    /**
+     * Discards the buffered bytes and shrinks the buffer back to its initial
+     * size if it grew too large.
+     */
+    @Override
+    public synchronized void reset() {
+      super.reset();
+
+      if (buf.length > MAX_RETAINED_BUFFER_SIZE) {
+        buf = new byte[BUFFER_SIZE];
+      }
+    }
+  }
+}
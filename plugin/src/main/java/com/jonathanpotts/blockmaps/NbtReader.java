@@ -0,0 +1,211 @@
+package com.jonathanpotts.blockmaps;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads data in Minecraft's Named Binary Tag (NBT) format.
+ *
+ * <p>
+ * Compounds are read as maps, lists as lists, arrays as primitive arrays and
+ * all other tags as their boxed value.
+ */
+public final class NbtReader {
+  /**
+   * Type ID of a tag marking the end of a compound.
+   */
+  private static final byte TAG_END = 0;
+
+  /**
+   * Type ID of a byte tag.
+   */
+  private static final byte TAG_BYTE = 1;
+
+  /**
+   * Type ID of a short tag.
+   */
+  private static final byte TAG_SHORT = 2;
+
+  /**
+   * Type ID of an int tag.
+   */
+  private static final byte TAG_INT = 3;
+
+  /**
+   * Type ID of a long tag.
+   */
+  private static final byte TAG_LONG = 4;
+
+  /**
+   * Type ID of a float tag.
+   */
+  private static final byte TAG_FLOAT = 5;
+
+  /**
+   * Type ID of a double tag.
+   */
+  private static final byte TAG_DOUBLE = 6;
+
+  /**
+   * Type ID of a byte array tag.
+   */
+  private static final byte TAG_BYTE_ARRAY = 7;
+
+  /**
+   * Type ID of a string tag.
+   */
+  private static final byte TAG_STRING = 8;
+
+  /**
+   * Type ID of a list tag.
+   */
+  private static final byte TAG_LIST = 9;
+
+  /**
+   * Type ID of a compound tag.
+   */
+  private static final byte TAG_COMPOUND = 10;
+
+  /**
+   * Type ID of an int array tag.
+   */
+  private static final byte TAG_INT_ARRAY = 11;
+
+  /**
+   * Type ID of a long array tag.
+   */
+  private static final byte TAG_LONG_ARRAY = 12;
+
+  /**
+   * Maximum depth of nested compounds and lists.
+   */
+  private static final int MAX_DEPTH = 512;
+
+  private NbtReader() {
+  }
+
+  /**
+   * Reads a named root compound.
+   *
+   * @param input Input containing the NBT data.
+   * @return The root compound.
+   * @throws IOException Thrown if the data is not a valid root compound.
+   */
+  public static Map<String, Object> readRoot(DataInput input) throws IOException {
+    byte type = input.readByte();
+
+    if (type != TAG_COMPOUND) {
+      throw new IOException("NBT data does not start with a compound tag");
+    }
+
+    input.readUTF();
+    return readCompound(input, 0);
+  }
+
+  /**
+   * Reads the payload of a compound tag.
+   *
+   * @param input Input containing the NBT data.
+   * @param depth Depth of the compound.
+   * @return The tags of the compound keyed by name.
+   * @throws IOException Thrown if the data is not valid.
+   */
+  private static Map<String, Object> readCompound(DataInput input, int depth) throws IOException {
+    Map<String, Object> compound = new HashMap<>();
+    byte type;
+
+    while ((type = input.readByte()) != TAG_END) {
+      String name = input.readUTF();
+      compound.put(name, readPayload(input, type, depth + 1));
+    }
+
+    return compound;
+  }
+
+  /**
+   * Reads the payload of a tag.
+   *
+   * @param input Input containing the NBT data.
+   * @param type  Type of the tag.
+   * @param depth Depth of the tag.
+   * @return The value of the tag.
+   * @throws IOException Thrown if the data is not valid.
+   */
+  private static Object readPayload(DataInput input, byte type, int depth) throws IOException {
+    if (depth > MAX_DEPTH) {
+      throw new IOException("NBT data is nested too deeply");
+    }
+
+    switch (type) {
+      case TAG_BYTE:
+        return input.readByte();
+      case TAG_SHORT:
+        return input.readShort();
+      case TAG_INT:
+        return input.readInt();
+      case TAG_LONG:
+        return input.readLong();
+      case TAG_FLOAT:
+        return input.readFloat();
+      case TAG_DOUBLE:
+        return input.readDouble();
+      case TAG_BYTE_ARRAY: {
+        byte[] array = new byte[readLength(input)];
+        input.readFully(array);
+        return array;
+      }
+      case TAG_STRING:
+        return input.readUTF();
+      case TAG_LIST: {
+        byte elementType = input.readByte();
+        int length = input.readInt();
+        List<Object> list = new ArrayList<>(Math.max(0, Math.min(length, 1024)));
+
+        for (int i = 0; i < length; i++) {
+          list.add(readPayload(input, elementType, depth + 1));
+        }
+
+        return list;
+      }
+      case TAG_COMPOUND:
+        return readCompound(input, depth);
+      case TAG_INT_ARRAY: {
+        int[] array = new int[readLength(input)];
+        for (int i = 0; i < array.length; i++) {
+          array[i] = input.readInt();
+        }
+        return array;
+      }
+      case TAG_LONG_ARRAY: {
+        long[] array = new long[readLength(input)];
+        for (int i = 0; i < array.length; i++) {
+          array[i] = input.readLong();
+        }
+        return array;
+      }
+      default:
+        throw new IOException("Unknown NBT tag type " + type);
+    }
+  }
+
+  /**
+   * Reads the length of an array tag.
+   *
+   * @param input Input containing the NBT data.
+   * @return The length.
+   * @throws IOException Thrown if the length is negative.
+   */
+  private static int readLength(DataInput input) throws IOException {
+    int length = input.readInt();
+
+    if (length < 0) {
+      throw new IOException("NBT array has a negative length");
+    }
+
+    return length;
+  }
+}
@@ -0,0 +1,397 @@
+package com.jonathanpotts.blockmaps;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.jonathanpotts.blockmaps.models.DeltaModel;
+import com.jonathanpotts.blockmaps.models.ManifestEntryModel;
+import com.jonathanpotts.blockmaps.models.ManifestModel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Tracks the content hashes of the files generated for the web app so
+ * unchanged files are not rewritten and changed files can be bundled into
+ * deltas.
+ */
+public class OutputManifest {
+  /**
+   * Name of the manifest file in the web app folder.
+   */
+  public static final String FILE_NAME = "manifest.json";
+
+  /**
+   * Name of the file describing the changes in a delta bundle.
+   */
+  public static final String DELTA_FILE_NAME = "delta.json";
+
+  /**
+   * Digits used to format hashes.
+   */
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   * Folder containing the web app.
+   */
+  private final Path rootPath;
+
+  /**
+   * The gson object used to process JSON.
+   */
+  private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+  /**
+   * Files keyed by their path relative to the web app folder.
+   */
+  private final Map<String, ManifestEntryModel> files = new ConcurrentHashMap<>();
+
+  /**
+   * Generation each removed file was removed in.
+   */
+  private final Map<String, Long> removed = new ConcurrentHashMap<>();
+
+  /**
+   * Latest generation whose removed files are no longer recorded.
+   */
+  private long removedPrunedGeneration = 0;
+
+  /**
+   * Generation of the current refresh.
+   */
+  private volatile long generation = 0;
+
+  /**
+   * Creates an output manifest.
+   *
+   * @param rootPath Folder containing the web app.
+   */
+  public OutputManifest(Path rootPath) {
+    this.rootPath = rootPath;
+  }
+
+  /**
+   * Loads the manifest from the web app folder, replacing any loaded data.
+   *
+   * @throws IOException Thrown if there is an issue reading the manifest.
+   */
+  public synchronized void load() throws IOException {
+    files.clear();
+    removed.clear();
+    removedPrunedGeneration = 0;
+    generation = 0;
+
+    Path manifestPath = rootPath.resolve(FILE_NAME);
+    if (!Files.exists(manifestPath)) {
+      return;
+    }
+
+    ManifestModel model = gson.fromJson(new String(Files.readAllBytes(manifestPath), StandardCharsets.UTF_8),
+        ManifestModel.class);
+
+    if (model == null) {
+      return;
+    }
+
+    if (model.generation != null) {
+      generation = model.generation;
+    }
+
+    if (model.files != null) {
+      files.putAll(model.files);
+    }
+
+    if (model.removed != null) {
+      removed.putAll(model.removed);
+    }
+
+    if (model.removedPrunedGeneration != null) {
+      removedPrunedGeneration = model.removedPrunedGeneration;
+    }
+  }
+
+  /**
+   * Forgets the files removed in or before a generation so the manifest does
+   * not grow with every removed file. Deltas relative to an earlier generation
+   * can no longer be written afterwards.
+   *
+   * @param throughGeneration Latest generation whose removed files are
+   *                          forgotten.
+   */
+  public synchronized void pruneRemoved(long throughGeneration) {
+    if (throughGeneration <= removedPrunedGeneration) {
+      return;
+    }
+
+    removed.values().removeIf(removedGeneration -> removedGeneration <= throughGeneration);
+    removedPrunedGeneration = throughGeneration;
+  }
+
+  /**
+   * Starts a new generation. Files written afterwards are recorded as changed
+   * in the new generation.
+   *
+   * @return The new generation.
+   */
+  public synchronized long beginGeneration() {
+    return ++generation;
+  }
+
+  /**
+   * Gets the current generation.
+   *
+   * @return The current generation.
+   */
+  public long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Writes a file unless it already contains the same bytes. Files outside of
+   * the web app folder are always written and are not recorded.
+   *
+   * @param filePath Path to write to.
+   * @param bytes    Bytes to write.
+   * @return True if the file was written or false if it was unchanged.
+   * @throws IOException Thrown if there is an issue writing the file.
+   */
+  public boolean write(Path filePath, byte[] bytes) throws IOException {
+    Files.createDirectories(filePath.getParent());
+
+    if (!filePath.startsWith(rootPath)) {
+      Files.write(filePath, bytes);
+      return true;
+    }
+
+    String hash = toHex(createDigest().digest(bytes));
+
+    if (isUnchanged(filePath, hash, bytes.length)) {
+      return false;
+    }
+
+    Files.write(filePath, bytes);
+    record(filePath, hash, bytes.length);
+
+    return true;
+  }
+
+  /**
+   * Checks if a file already contains the bytes with a hash and size.
+   *
+   * @param filePath Path of the file.
+   * @param hash     SHA-1 hash of the bytes as a hexadecimal string.
+   * @param size     Number of bytes.
+   * @return True if the file is recorded with the same hash and still has the
+   *         same size.
+   * @throws IOException Thrown if there is an issue reading the file size.
+   */
+  public boolean isUnchanged(Path filePath, String hash, long size) throws IOException {
+    if (!filePath.startsWith(rootPath)) {
+      return false;
+    }
+
+    ManifestEntryModel existing = files.get(getRelativePath(filePath));
+    return existing != null && hash.equals(existing.hash) && Files.exists(filePath) && Files.size(filePath) == size;
+  }
+
+  /**
+   * Records a file that was written in the current generation.
+   *
+   * @param filePath Path of the file.
+   * @param hash     SHA-1 hash of the file contents as a hexadecimal string.
+   * @param size     Size of the file in bytes.
+   */
+  public void record(Path filePath, String hash, long size) {
+    if (!filePath.startsWith(rootPath)) {
+      return;
+    }
+
+    String relativePath = getRelativePath(filePath);
+
+    ManifestEntryModel entry = new ManifestEntryModel();
+    entry.hash = hash;
+    entry.size = size;
+    entry.generation = generation;
+
+    files.put(relativePath, entry);
+    removed.remove(relativePath);
+  }
+
+  /**
+   * Copies a file unless the destination already contains the same bytes.
+   *
+   * @param source      Path to copy from.
+   * @param destination Path to copy to.
+   * @return True if the file was written or false if it was unchanged.
+   * @throws IOException Thrown if there is an issue copying the file.
+   */
+  public boolean copy(Path source, Path destination) throws IOException {
+    return write(destination, Files.readAllBytes(source));
+  }
+
+  /**
+   * Saves the manifest to the web app folder. Recorded files that no longer
+   * exist are recorded as removed in the current generation.
+   *
+   * @throws IOException Thrown if there is an issue writing the manifest.
+   */
+  public synchronized void save() throws IOException {
+    Iterator<Map.Entry<String, ManifestEntryModel>> iterator = files.entrySet().iterator();
+
+    while (iterator.hasNext()) {
+      String relativePath = iterator.next().getKey();
+
+      if (!Files.exists(rootPath.resolve(relativePath))) {
+        iterator.remove();
+        removed.put(relativePath, generation);
+      }
+    }
+
+    ManifestModel model = new ManifestModel();
+    model.generation = generation;
+    model.files = new TreeMap<>(files);
+    model.removed = new TreeMap<>(removed);
+    model.removedPrunedGeneration = removedPrunedGeneration;
+
+    Files.createDirectories(rootPath);
+
+    Path manifestPath = rootPath.resolve(FILE_NAME);
+    Path tempPath = rootPath.resolve(FILE_NAME + ".tmp");
+    Files.write(tempPath, gson.toJson(model).getBytes(StandardCharsets.UTF_8));
+    Files.move(tempPath, manifestPath, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Counts the files changed or removed after a generation.
+   *
+   * @param sinceGeneration Generation the changes are relative to.
+   * @return Number of changed and removed files.
+   */
+  public synchronized int countChanges(long sinceGeneration) {
+    int changes = 0;
+
+    for (ManifestEntryModel entry : files.values()) {
+      if (entry.generation > sinceGeneration) {
+        changes++;
+      }
+    }
+
+    for (long removedGeneration : removed.values()) {
+      if (removedGeneration > sinceGeneration) {
+        changes++;
+      }
+    }
+
+    return changes;
+  }
+
+  /**
+   * Writes a ZIP archive containing the files changed after a generation, the
+   * manifest and a description of the changes.
+   *
+   * @param sinceGeneration Generation the changes are relative to.
+   * @param zipPath         Path to write the archive to.
+   * @return Number of changed and removed files in the archive.
+   * @throws IOException Thrown if there is an issue writing the archive or the
+   *                     files removed after the generation are no longer
+   *                     recorded.
+   */
+  public synchronized int writeDelta(long sinceGeneration, Path zipPath) throws IOException {
+    if (sinceGeneration < removedPrunedGeneration) {
+      throw new IOException("Files removed before generation " + removedPrunedGeneration
+          + " are no longer recorded");
+    }
+
+    DeltaModel delta = new DeltaModel();
+    delta.fromGeneration = sinceGeneration;
+    delta.toGeneration = generation;
+    delta.changed = new ArrayList<>();
+    delta.removed = new ArrayList<>();
+
+    for (Map.Entry<String, ManifestEntryModel> entry : new TreeMap<>(files).entrySet()) {
+      if (entry.getValue().generation > sinceGeneration) {
+        delta.changed.add(entry.getKey());
+      }
+    }
+
+    for (Map.Entry<String, Long> entry : new TreeMap<>(removed).entrySet()) {
+      if (entry.getValue() > sinceGeneration) {
+        delta.removed.add(entry.getKey());
+      }
+    }
+
+    Files.createDirectories(zipPath.getParent());
+
+    try (OutputStream fileOS = Files.newOutputStream(zipPath); ZipOutputStream zipOS = new ZipOutputStream(fileOS)) {
+      for (String relativePath : delta.changed) {
+        zipOS.putNextEntry(new ZipEntry(relativePath));
+        Files.copy(rootPath.resolve(relativePath), zipOS);
+        zipOS.closeEntry();
+      }
+
+      zipOS.putNextEntry(new ZipEntry(FILE_NAME));
+      Files.copy(rootPath.resolve(FILE_NAME), zipOS);
+      zipOS.closeEntry();
+
+      zipOS.putNextEntry(new ZipEntry(DELTA_FILE_NAME));
+      zipOS.write(gson.toJson(delta).getBytes(StandardCharsets.UTF_8));
+      zipOS.closeEntry();
+    }
+
+    return delta.changed.size() + delta.removed.size();
+  }
+
+  /**
+   * Gets the path of a file relative to the web app folder using forward
+   * slashes.
+   *
+   * @param filePath Path of the file.
+   * @return The relative path.
+   */
+  private String getRelativePath(Path filePath) {
+    return rootPath.relativize(filePath).toString().replace('\\', '/');
+  }
+
+  /**
+   * Creates a digest used to hash file contents.
+   *
+   * @return A SHA-1 message digest.
+   */
+  public static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not supported", e);
+    }
+  }
+
+  /**
+   * Formats a hash as a hexadecimal string.
+   *
+   * @param hash Hash to format.
+   * @return The hash as a hexadecimal string.
+   */
+  public static String toHex(byte[] hash) {
+    char[] hex = new char[hash.length * 2];
+
+    for (int i = 0; i < hash.length; i++) {
+      hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+      hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xF];
+    }
+
+    return new String(hex);
+  }
+}
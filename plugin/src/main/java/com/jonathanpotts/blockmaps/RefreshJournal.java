@@ -0,0 +1,466 @@
+package com.jonathanpotts.blockmaps;
+
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Journal of the work finished by a full refresh so a refresh interrupted by a
+ * crash or restart can be resumed instead of starting over.
+ *
+ * <p>
+ * The journal is a text file with one tab-separated record per line. The first
+ * record describes the refresh and is followed by a record for each finished
+ * phase, the start of the render, each finished region and each finished
+ * world. Records are queued and only appended by {@link #checkpoint(State)}
+ * once the tables and manifest the finished work depends on are saved.
+ * A last line without a line break was only partially written, so it is
+ * discarded when the journal is loaded. The journal is deleted once the
+ * refresh finishes.
+ */
+public class RefreshJournal {
+  /**
+   * Name of the journal file.
+   */
+  public static final String FILE_NAME = "refresh-journal.log";
+
+  /**
+   * Separator of the fields of a record.
+   */
+  private static final String SEPARATOR = "\t";
+
+  /**
+   * Type of the record describing the refresh.
+   */
+  private static final String REFRESH = "refresh";
+
+  /**
+   * Type of the records of finished phases.
+   */
+  private static final String PHASE = "phase";
+
+  /**
+   * Type of the record of the start of the render.
+   */
+  private static final String RENDER = "render";
+
+  /**
+   * Type of the records of finished regions.
+   */
+  private static final String REGION = "region";
+
+  /**
+   * Type of the records of finished worlds.
+   */
+  private static final String WORLD = "world";
+
+  /**
+   * Path of the journal file.
+   */
+  private final Path path;
+
+  /**
+   * Status of every chunk being rendered.
+   */
+  private final boolean force;
+
+  /**
+   * Plugin version and settings affecting the output of the refresh.
+   */
+  private final String fingerprint;
+
+  /**
+   * Names of the finished phases.
+   */
+  private final Set<String> phases = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Coordinates of the finished regions keyed by region key by world name.
+   */
+  private final Map<String, Map<String, VectorXZ>> regions = new ConcurrentHashMap<>();
+
+  /**
+   * Names of the finished worlds.
+   */
+  private final Set<String> worlds = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Records waiting to be appended.
+   */
+  private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Time in seconds since the epoch the render started at or 0 if it has not
+   * started.
+   */
+  private volatile long renderTime;
+
+  /**
+   * Status of the render ignoring when the worlds were last fully rendered.
+   */
+  private volatile boolean renderAll;
+
+  /**
+   * Creates a journal.
+   *
+   * @param path        Path of the journal file.
+   * @param force       Status of every chunk being rendered.
+   * @param fingerprint Plugin version and settings affecting the output of the
+   *                    refresh.
+   */
+  private RefreshJournal(Path path, boolean force, String fingerprint) {
+    this.path = path;
+    this.force = force;
+    this.fingerprint = fingerprint;
+  }
+
+  /**
+   * Starts a journal for a new refresh, replacing any existing journal.
+   *
+   * @param path        Path of the journal file.
+   * @param force       Status of every chunk being rendered.
+   * @param fingerprint Plugin version and settings affecting the output of the
+   *                    refresh.
+   * @return The journal.
+   * @throws IOException Thrown if there is an issue writing the journal.
+   */
+  public static RefreshJournal begin(Path path, boolean force, String fingerprint) throws IOException {
+    Files.createDirectories(path.getParent());
+
+    RefreshJournal journal = new RefreshJournal(path, force, fingerprint);
+    Files.write(path, new byte[0]);
+    journal.pending.add(String.join(SEPARATOR, REFRESH, String.valueOf(force), fingerprint));
+    journal.checkpoint(() -> {
+    });
+
+    return journal;
+  }
+
+  /**
+   * Loads the journal of an interrupted refresh.
+   *
+   * @param path Path of the journal file.
+   * @return The journal or null if no refresh was interrupted.
+   * @throws IOException Thrown if there is an issue reading the journal.
+   */
+  public static RefreshJournal load(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return null;
+    }
+
+    byte[] bytes = Files.readAllBytes(path);
+    int complete = bytes.length;
+
+    while (complete > 0 && bytes[complete - 1] != '\n') {
+      complete--;
+    }
+
+    if (complete < bytes.length) {
+      // Discard the partially written last line so it is neither applied nor
+      // joined with the records appended when the refresh resumes.
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        channel.truncate(complete);
+      }
+    }
+
+    RefreshJournal journal = null;
+
+    for (String line : new String(bytes, 0, complete, StandardCharsets.UTF_8).split("\n")) {
+      String[] fields = line.split(SEPARATOR, -1);
+
+      if (journal == null) {
+        if (fields.length != 3 || !fields[0].equals(REFRESH)) {
+          return null;
+        }
+
+        journal = new RefreshJournal(path, Boolean.parseBoolean(fields[1]), fields[2]);
+        continue;
+      }
+
+      try {
+        journal.apply(fields);
+      } catch (NumberFormatException e) {
+        // Ignore records that cannot be parsed.
+      }
+    }
+
+    return journal;
+  }
+
+  /**
+   * Deletes the journal once the refresh has finished.
+   *
+   * @throws IOException Thrown if there is an issue deleting the journal.
+   */
+  public void delete() throws IOException {
+    pending.clear();
+    Files.deleteIfExists(path);
+  }
+
+  /**
+   * Gets the status of every chunk being rendered.
+   *
+   * @return True if the refresh was forced.
+   */
+  public boolean isForced() {
+    return force;
+  }
+
+  /**
+   * Gets the plugin version and settings affecting the output of the refresh.
+   * A refresh with a different fingerprint cannot be resumed.
+   *
+   * @return The fingerprint.
+   */
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Checks if a phase has finished.
+   *
+   * @param name Name of the phase.
+   * @return True if the phase has finished.
+   */
+  public boolean isPhaseFinished(String name) {
+    return phases.contains(name);
+  }
+
+  /**
+   * Records that a phase has finished.
+   *
+   * @param name Name of the phase.
+   */
+  public void finishPhase(String name) {
+    phases.add(name);
+    pending.add(String.join(SEPARATOR, PHASE, name));
+  }
+
+  /**
+   * Gets when the render started.
+   *
+   * @return Time in seconds since the epoch or 0 if it has not started.
+   */
+  public long getRenderTime() {
+    return renderTime;
+  }
+
+  /**
+   * Gets the status of the render ignoring when the worlds were last fully
+   * rendered. Only valid once the render has started.
+   *
+   * @return True if every chunk is rendered.
+   */
+  public boolean isRenderingAll() {
+    return renderAll;
+  }
+
+  /**
+   * Records that the render has started.
+   *
+   * @param renderTime Time in seconds since the epoch the render started at.
+   * @param renderAll  Status of the render ignoring when the worlds were last
+   *                   fully rendered.
+   */
+  public void beginRender(long renderTime, boolean renderAll) {
+    this.renderTime = renderTime;
+    this.renderAll = renderAll;
+    pending.add(String.join(SEPARATOR, RENDER, String.valueOf(renderTime), String.valueOf(renderAll)));
+  }
+
+  /**
+   * Gets the regions of a world that have finished.
+   *
+   * @param worldName Name of the world.
+   * @return Coordinates of the regions.
+   */
+  public List<VectorXZ> getFinishedRegions(String worldName) {
+    Map<String, VectorXZ> finished = regions.get(worldName);
+    return finished != null ? new ArrayList<>(finished.values()) : Collections.emptyList();
+  }
+
+  /**
+   * Checks if a region has finished.
+   *
+   * @param worldName   Name of the world containing the region.
+   * @param coordinates Coordinates of the region.
+   * @return True if the region has finished.
+   */
+  public boolean isRegionFinished(String worldName, VectorXZ coordinates) {
+    Map<String, VectorXZ> finished = regions.get(worldName);
+    return finished != null && finished.containsKey(getRegionKey(coordinates));
+  }
+
+  /**
+   * Records that a region has finished. Called concurrently by the worker
+   * threads.
+   *
+   * @param worldName   Name of the world containing the region.
+   * @param coordinates Coordinates of the region.
+   */
+  public void finishRegion(String worldName, VectorXZ coordinates) {
+    addRegion(worldName, coordinates);
+    pending.add(String.join(SEPARATOR, REGION, worldName, String.valueOf(coordinates.x),
+        String.valueOf(coordinates.z)));
+  }
+
+  /**
+   * Checks if a world has finished.
+   *
+   * @param worldName Name of the world.
+   * @return True if all regions of the world have finished.
+   */
+  public boolean isWorldFinished(String worldName) {
+    return worlds.contains(worldName);
+  }
+
+  /**
+   * Records that a world has finished.
+   *
+   * @param worldName Name of the world.
+   */
+  public void finishWorld(String worldName) {
+    worlds.add(worldName);
+    pending.add(String.join(SEPARATOR, WORLD, worldName));
+  }
+
+  /**
+   * Gets the number of regions that have finished.
+   *
+   * @return Number of regions.
+   */
+  public int countFinishedRegions() {
+    int count = 0;
+
+    for (Map<String, VectorXZ> finished : regions.values()) {
+      count += finished.size();
+    }
+
+    return count;
+  }
+
+  /**
+   * Saves the state the finished work depends on and then appends the records
+   * queued before saving to the journal and syncs it to storage. Records queued
+   * while saving are left for the next checkpoint.
+   *
+   * @param state Saves the state the finished work depends on.
+   * @throws IOException Thrown if there is an issue saving the state or writing
+   *                     the journal.
+   */
+  public synchronized void checkpoint(State state) throws IOException {
+    List<String> taken = new ArrayList<>();
+    String record;
+
+    while ((record = pending.poll()) != null) {
+      taken.add(record);
+    }
+
+    try {
+      state.save();
+    } catch (IOException e) {
+      // Keep the records for the next checkpoint.
+      pending.addAll(taken);
+      throw e;
+    }
+
+    if (taken.isEmpty()) {
+      return;
+    }
+
+    StringBuilder records = new StringBuilder();
+
+    for (String takenRecord : taken) {
+      records.append(takenRecord).append('\n');
+    }
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+
+      channel.force(false);
+    }
+  }
+
+  /**
+   * Saves the state finished work depends on.
+   */
+  public interface State {
+    /**
+     * Saves the state.
+     *
+     * @throws IOException Thrown if there is an issue saving the state.
+     */
+    void save() throws IOException;
+  }
+
+  /**
+   * Applies a loaded record.
+   *
+   * @param fields Fields of the record.
+   */
+  private void apply(String[] fields) {
+    switch (fields[0]) {
+      case PHASE:
+        if (fields.length == 2) {
+          phases.add(fields[1]);
+        }
+        break;
+      case RENDER:
+        if (fields.length == 3) {
+          renderTime = Long.parseLong(fields[1]);
+          renderAll = Boolean.parseBoolean(fields[2]);
+        }
+        break;
+      case REGION:
+        if (fields.length == 4) {
+          addRegion(fields[1], new VectorXZ(Integer.parseInt(fields[2]), Integer.parseInt(fields[3])));
+        }
+        break;
+      case WORLD:
+        if (fields.length == 2) {
+          worlds.add(fields[1]);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Adds a finished region.
+   *
+   * @param worldName   Name of the world containing the region.
+   * @param coordinates Coordinates of the region.
+   */
+  private void addRegion(String worldName, VectorXZ coordinates) {
+    regions.computeIfAbsent(worldName, k -> new ConcurrentHashMap<>()).put(getRegionKey(coordinates), coordinates);
+  }
+
+  /**
+   * Gets the key of a region.
+   *
+   * @param coordinates Coordinates of the region.
+   * @return The key.
+   */
+  private static String getRegionKey(VectorXZ coordinates) {
+    return coordinates.x + "." + coordinates.z;
+  }
+}
@@ -0,0 +1,192 @@
+package com.jonathanpotts.blockmaps;
+
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+import org.bukkit.World;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A batch of chunks requested from a region. Tracks the chunks that are still
+ * being processed and collects the chunk data written to region packs and the
+ * hashes written to region indexes.
+ */
+public class RegionBatch {
+  /**
+   * Number of chunks in a region.
+   */
+  public static final int CHUNKS_PER_REGION = Constants.WIDTH_OF_REGION * Constants.DEPTH_OF_REGION;
+
+  /**
+   * World containing the region.
+   */
+  public final World world;
+
+  /**
+   * Coordinates of the region.
+   */
+  public final VectorXZ coordinates;
+
+  /**
+   * Status of each chunk in the region having been requested.
+   */
+  private final boolean[] requestedChunks = new boolean[CHUNKS_PER_REGION];
+
+  /**
+   * Number of requested chunks that have not been processed.
+   */
+  private final AtomicInteger pendingChunks = new AtomicInteger();
+
+  /**
+   * Compressed chunk data for region packs keyed by chunk file extension.
+   */
+  private final Map<String, byte[][]> packedChunks = new ConcurrentHashMap<>();
+
+  /**
+   * Hashes of content-addressed chunk files keyed by chunk file extension.
+   */
+  private final Map<String, String[]> chunkHashes = new ConcurrentHashMap<>();
+
+  /**
+   * Surface images of the chunks for surface tiles indexed by chunk index.
+   */
+  private final int[][] surfaces = new int[CHUNKS_PER_REGION][];
+
+  /**
+   * Creates a region batch.
+   *
+   * @param world       World containing the region.
+   * @param coordinates Coordinates of the region.
+   */
+  public RegionBatch(World world, VectorXZ coordinates) {
+    this.world = world;
+    this.coordinates = coordinates;
+  }
+
+  /**
+   * Gets the coordinates of the region containing a chunk.
+   *
+   * @param chunkCoordinates Coordinates of the chunk.
+   * @return Coordinates of the region.
+   */
+  public static VectorXZ getRegionCoordinates(VectorXZ chunkCoordinates) {
+    return new VectorXZ(Math.floorDiv(chunkCoordinates.x, Constants.WIDTH_OF_REGION),
+        Math.floorDiv(chunkCoordinates.z, Constants.DEPTH_OF_REGION));
+  }
+
+  /**
+   * Gets the index of a chunk within its region.
+   *
+   * @param chunkCoordinates Coordinates of the chunk.
+   * @return Index of the chunk.
+   */
+  public static int getChunkIndex(VectorXZ chunkCoordinates) {
+    return Math.floorMod(chunkCoordinates.z, Constants.DEPTH_OF_REGION) * Constants.WIDTH_OF_REGION
+        + Math.floorMod(chunkCoordinates.x, Constants.WIDTH_OF_REGION);
+  }
+
+  /**
+   * Adds a chunk to the batch. All chunks must be added before any of them are
+   * requested.
+   *
+   * @param chunkCoordinates Coordinates of the chunk.
+   */
+  public void addChunk(VectorXZ chunkCoordinates) {
+    int index = getChunkIndex(chunkCoordinates);
+
+    if (!requestedChunks[index]) {
+      requestedChunks[index] = true;
+      pendingChunks.incrementAndGet();
+    }
+  }
+
+  /**
+   * Checks if a chunk was added to the batch.
+   *
+   * @param index Index of the chunk within the region.
+   * @return True if the chunk was added.
+   */
+  public boolean isRequested(int index) {
+    return requestedChunks[index];
+  }
+
+  /**
+   * Marks a chunk as processed.
+   *
+   * @return True if all chunks in the batch have been processed.
+   */
+  public boolean completeChunk() {
+    return pendingChunks.decrementAndGet() == 0;
+  }
+
+  /**
+   * Sets the compressed data of a chunk for a region pack.
+   *
+   * @param extension        File extension of the chunk format.
+   * @param chunkCoordinates Coordinates of the chunk.
+   * @param data             Compressed chunk data.
+   */
+  public void setPackedChunk(String extension, VectorXZ chunkCoordinates, byte[] data) {
+    packedChunks.computeIfAbsent(extension, k -> new byte[CHUNKS_PER_REGION][])[getChunkIndex(
+        chunkCoordinates)] = data;
+  }
+
+  /**
+   * Gets the compressed data of the chunks for a region pack.
+   *
+   * @param extension File extension of the chunk format.
+   * @return Compressed chunk data indexed by chunk index. Chunks without data are
+   *         null.
+   */
+  public byte[][] getPackedChunks(String extension) {
+    byte[][] chunks = packedChunks.get(extension);
+    return chunks != null ? chunks : new byte[CHUNKS_PER_REGION][];
+  }
+
+  /**
+   * Sets the hash of the content-addressed chunk file of a chunk for the region
+   * index.
+   *
+   * @param extension        File extension of the chunk format.
+   * @param chunkCoordinates Coordinates of the chunk.
+   * @param hash             SHA-1 hash of the chunk file.
+   */
+  public void setChunkHash(String extension, VectorXZ chunkCoordinates, String hash) {
+    chunkHashes.computeIfAbsent(extension, k -> new String[CHUNKS_PER_REGION])[getChunkIndex(
+        chunkCoordinates)] = hash;
+  }
+
+  /**
+   * Gets the hashes of the content-addressed chunk files for the region index.
+   *
+   * @param extension File extension of the chunk format.
+   * @return Hashes indexed by chunk index. Chunks without a chunk file are null.
+   */
+  public String[] getChunkHashes(String extension) {
+    String[] hashes = chunkHashes.get(extension);
+    return hashes != null ? hashes : new String[CHUNKS_PER_REGION];
+  }
+
+  /**
+   * Sets the surface image of a chunk for surface tiles.
+   *
+   * @param chunkCoordinates Coordinates of the chunk.
+   * @param surface          ARGB pixels of the surface in ZX order or null if
+   *                         the chunk has no surface.
+   */
+  public void setSurface(VectorXZ chunkCoordinates, int[] surface) {
+    surfaces[getChunkIndex(chunkCoordinates)] = surface;
+  }
+
+  /**
+   * Gets the surface image of a chunk for surface tiles.
+   *
+   * @param index Index of the chunk within the region.
+   * @return ARGB pixels of the surface in ZX order or null if the chunk has no
+   *         surface.
+   */
+  public int[] getSurface(int index) {
+    return surfaces[index];
+  }
+}
@@ -0,0 +1,252 @@
+package com.jonathanpotts.blockmaps;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.jonathanpotts.blockmaps.models.RegionIndexModel;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes region indexes of content-addressed chunk files. A content-addressed
+ * chunk file is named by the SHA-1 hash of its contents, so its URL changes
+ * whenever it changes and it can be cached indefinitely. The index of each
+ * region maps the coordinates of its chunks to the hashes of their chunk
+ * files.
+ *
+ * <p>
+ * Chunk files are stored in the blobs folder of their world as
+ * {@code blobs/<first two digits of hash>/<hash><extension>}.
+ */
+public final class RegionIndexWriter {
+  /**
+   * The gson object used to process JSON.
+   */
+  private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+  /**
+   * The name of the list of chunk files waiting to be deleted in the blobs
+   * folder of a world.
+   */
+  private static final String PENDING_REMOVAL_FILE_NAME = "pending-removal.json";
+
+  /**
+   * The type of the list of chunk files waiting to be deleted.
+   */
+  private static final Type PENDING_REMOVAL_TYPE = new TypeToken<Map<String, Long>>() {
+  }.getType();
+
+  private RegionIndexWriter() {
+  }
+
+  /**
+   * Gets the path of a content-addressed chunk file.
+   *
+   * @param blobsPath Folder containing the content-addressed chunk files.
+   * @param hash      SHA-1 hash of the chunk file as a hexadecimal string.
+   * @param extension File extension of the chunk format.
+   * @return Path of the chunk file.
+   */
+  public static Path getBlobPath(Path blobsPath, String hash, String extension) {
+    return blobsPath.resolve(hash.substring(0, 2)).resolve(hash + extension);
+  }
+
+  /**
+   * Writes the index of a region. Chunks that were not requested keep the
+   * hashes from the existing index.
+   *
+   * @param indexPath  Path of the region index.
+   * @param batch      Batch containing the requested chunks.
+   * @param extensions File extensions of the chunk formats to index.
+   * @param manifest   Manifest recording the region index.
+   * @return Number of bytes written or 0 if the region index was unchanged.
+   * @throws IOException Thrown if there is an issue writing the region index.
+   */
+  public static long write(Path indexPath, RegionBatch batch, List<String> extensions, OutputManifest manifest)
+      throws IOException {
+    Map<String, Map<String, String>> chunks = new TreeMap<>();
+    RegionIndexModel existing = read(indexPath);
+
+    if (existing != null && existing.chunks != null) {
+      for (Map.Entry<String, Map<String, String>> entry : existing.chunks.entrySet()) {
+        chunks.put(entry.getKey(), new TreeMap<>(entry.getValue()));
+      }
+    }
+
+    int startX = batch.coordinates.x * Constants.WIDTH_OF_REGION;
+    int startZ = batch.coordinates.z * Constants.DEPTH_OF_REGION;
+
+    for (String extension : extensions) {
+      Map<String, String> hashes = chunks.computeIfAbsent(extension.substring(1), k -> new TreeMap<>());
+      String[] batchHashes = batch.getChunkHashes(extension);
+
+      for (int i = 0; i < RegionBatch.CHUNKS_PER_REGION; i++) {
+        if (!batch.isRequested(i)) {
+          continue;
+        }
+
+        String chunkName = (startX + i % Constants.WIDTH_OF_REGION) + "."
+            + (startZ + i / Constants.WIDTH_OF_REGION);
+
+        if (batchHashes[i] != null) {
+          hashes.put(chunkName, batchHashes[i]);
+        } else {
+          hashes.remove(chunkName);
+        }
+      }
+    }
+
+    chunks.values().removeIf(Map::isEmpty);
+
+    if (chunks.isEmpty()) {
+      Files.deleteIfExists(indexPath);
+      return 0;
+    }
+
+    RegionIndexModel model = new RegionIndexModel();
+    model.chunks = chunks;
+
+    byte[] bytes = GSON.toJson(model).getBytes(StandardCharsets.UTF_8);
+    return manifest.write(indexPath, bytes) ? bytes.length : 0;
+  }
+
+  /**
+   * Deletes the content-addressed chunk files of a world that are not
+   * referenced by any of its region indexes along with leftover temporary
+   * files and empty folders. Clients may still hold an older region index, so
+   * an unreferenced chunk file is only deleted once it was already unreferenced
+   * when this last ran and at least the grace period has passed since then.
+   * The chunk files waiting to be deleted are listed in the blobs folder.
+   *
+   * @param worldPath Folder containing the chunk files of the world.
+   * @param now       Current time in seconds since the epoch.
+   * @return Number of files deleted.
+   * @throws IOException Thrown if there is an issue reading an index or deleting
+   *                     a file.
+   */
+  public static int removeUnreferencedBlobs(Path worldPath, long now) throws IOException {
+    Path blobsPath = worldPath.resolve(Constants.BLOBS_FOLDER_NAME);
+
+    if (!Files.isDirectory(blobsPath)) {
+      return 0;
+    }
+
+    Set<Path> referenced = new HashSet<>();
+
+    try (DirectoryStream<Path> indexPaths = Files.newDirectoryStream(worldPath,
+        "r.*" + Constants.REGION_INDEX_EXTENSION)) {
+      for (Path indexPath : indexPaths) {
+        RegionIndexModel index = read(indexPath);
+
+        if (index == null || index.chunks == null) {
+          continue;
+        }
+
+        for (Map.Entry<String, Map<String, String>> entry : index.chunks.entrySet()) {
+          for (String hash : entry.getValue().values()) {
+            referenced.add(getBlobPath(blobsPath, hash, "." + entry.getKey()));
+          }
+        }
+      }
+    }
+
+    Path pendingPath = blobsPath.resolve(PENDING_REMOVAL_FILE_NAME);
+    Map<String, Long> pending = readPendingRemoval(pendingPath);
+    Map<String, Long> stillPending = new TreeMap<>();
+    List<Path> paths;
+
+    try (Stream<Path> walk = Files.walk(blobsPath)) {
+      paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+    }
+
+    int removed = 0;
+
+    for (Path path : paths) {
+      if (Files.isDirectory(path)) {
+        if (!path.equals(blobsPath) && isEmptyDirectory(path)) {
+          Files.delete(path);
+        }
+      } else if (!referenced.contains(path) && !path.equals(pendingPath)) {
+        String name = blobsPath.relativize(path).toString().replace('\\', '/');
+        Long unreferencedSince = pending.get(name);
+
+        if (name.endsWith(".tmp")
+            || (unreferencedSince != null && now - unreferencedSince >= Constants.BLOB_GRACE_PERIOD_SECONDS)) {
+          Files.delete(path);
+          removed++;
+        } else {
+          stillPending.put(name, unreferencedSince != null ? unreferencedSince : now);
+        }
+      }
+    }
+
+    if (stillPending.isEmpty()) {
+      Files.deleteIfExists(pendingPath);
+    } else {
+      Files.write(pendingPath, GSON.toJson(stillPending).getBytes(StandardCharsets.UTF_8));
+    }
+
+    return removed;
+  }
+
+  /**
+   * Reads the chunk files waiting to be deleted.
+   *
+   * @param pendingPath Path of the list of chunk files waiting to be deleted.
+   * @return Times in seconds since the epoch when the chunk files were first
+   *         found to be unreferenced keyed by their paths in the blobs folder.
+   * @throws IOException Thrown if there is an issue reading the list.
+   */
+  private static Map<String, Long> readPendingRemoval(Path pendingPath) throws IOException {
+    if (!Files.exists(pendingPath)) {
+      return new HashMap<>();
+    }
+
+    Map<String, Long> pending = GSON.fromJson(new String(Files.readAllBytes(pendingPath), StandardCharsets.UTF_8),
+        PENDING_REMOVAL_TYPE);
+    return pending != null ? pending : new HashMap<>();
+  }
+
+  /**
+   * Reads an existing region index.
+   *
+   * @param indexPath Path of the region index.
+   * @return The region index or null if it does not exist.
+   * @throws IOException Thrown if there is an issue reading the region index.
+   */
+  private static RegionIndexModel read(Path indexPath) throws IOException {
+    if (!Files.exists(indexPath)) {
+      return null;
+    }
+
+    return GSON.fromJson(new String(Files.readAllBytes(indexPath), StandardCharsets.UTF_8),
+        RegionIndexModel.class);
+  }
+
+  /**
+   * Checks if a folder is empty.
+   *
+   * @param path Path of the folder.
+   * @return True if the folder contains no files or folders.
+   * @throws IOException Thrown if there is an issue listing the folder.
+   */
+  private static boolean isEmptyDirectory(Path path) throws IOException {
+    try (Stream<Path> entries = Files.list(path)) {
+      return !entries.findAny().isPresent();
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package com.jonathanpotts.blockmaps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Writes region packs. A region pack stores the compressed chunk files of a
+ * region in a single file.
+ *
+ * <p>
+ * A region pack starts with a header of {@link RegionBatch#CHUNKS_PER_REGION}
+ * entries, one for each chunk ordered by Z and then X within the region. Each
+ * entry is the offset (u32) and length (u32) of the chunk data in big-endian.
+ * Chunks without data have an offset and length of 0. The chunk data follows
+ * the header in the same order.
+ */
+public final class RegionPackWriter {
+  /**
+   * Size in bytes of a header entry.
+   */
+  private static final int HEADER_ENTRY_BYTES = 8;
+
+  /**
+   * Size in bytes of the header.
+   */
+  public static final int HEADER_BYTES = RegionBatch.CHUNKS_PER_REGION * HEADER_ENTRY_BYTES;
+
+  private RegionPackWriter() {
+  }
+
+  /**
+   * Writes a region pack. Chunks that were not requested keep the data from the
+   * existing region pack.
+   *
+   * @param packPath Path of the region pack.
+   * @param batch    Batch containing the requested chunks.
+   * @param chunks   Compressed chunk data indexed by chunk index.
+   * @param manifest Manifest recording the region pack.
+   * @param sync     Status of the region pack being synced to storage before it
+   *                 replaces the previous one.
+   * @return Number of bytes written or 0 if the region pack was unchanged.
+   * @throws IOException Thrown if there is an issue writing the region pack.
+   */
+  public static long write(Path packPath, RegionBatch batch, byte[][] chunks, OutputManifest manifest,
+      boolean sync) throws IOException {
+    byte[][] entries = Files.exists(packPath) ? read(packPath) : new byte[RegionBatch.CHUNKS_PER_REGION][];
+    boolean empty = true;
+
+    for (int i = 0; i < entries.length; i++) {
+      if (batch.isRequested(i)) {
+        entries[i] = chunks[i];
+      }
+
+      empty = empty && entries[i] == null;
+    }
+
+    if (empty) {
+      Files.deleteIfExists(packPath);
+      return 0;
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    long offset = HEADER_BYTES;
+
+    for (byte[] entry : entries) {
+      if (entry == null) {
+        header.putInt(0).putInt(0);
+        continue;
+      }
+
+      header.putInt((int) offset).putInt(entry.length);
+      offset += entry.length;
+    }
+
+    header.flip();
+
+    MessageDigest digest = OutputManifest.createDigest();
+    digest.update(header.duplicate());
+    for (byte[] entry : entries) {
+      if (entry != null) {
+        digest.update(entry);
+      }
+    }
+
+    String hash = OutputManifest.toHex(digest.digest());
+    long size = offset;
+
+    if (manifest.isUnchanged(packPath, hash, size)) {
+      return 0;
+    }
+
+    Files.createDirectories(packPath.getParent());
+    Path tempPath = packPath.resolveSibling(packPath.getFileName() + ".tmp");
+
+    // The chunks are written through the channel instead of a memory-mapped
+    // buffer since a mapped file cannot be replaced on Windows until the
+    // mapping is garbage collected.
+    try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      writeFully(channel, header);
+
+      for (byte[] entry : entries) {
+        if (entry != null) {
+          writeFully(channel, ByteBuffer.wrap(entry));
+        }
+      }
+
+      if (sync) {
+        channel.force(true);
+      }
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(tempPath);
+      throw e;
+    }
+
+    Files.move(tempPath, packPath, StandardCopyOption.REPLACE_EXISTING);
+    manifest.record(packPath, hash, size);
+
+    return size;
+  }
+
+  /**
+   * Reads the chunk data of an existing region pack.
+   *
+   * @param packPath Path of the region pack.
+   * @return Compressed chunk data indexed by chunk index.
+   * @throws IOException Thrown if there is an issue reading the region pack.
+   */
+  private static byte[][] read(Path packPath) throws IOException {
+    ByteBuffer pack = ByteBuffer.wrap(Files.readAllBytes(packPath));
+    byte[][] entries = new byte[RegionBatch.CHUNKS_PER_REGION][];
+
+    if (pack.limit() < HEADER_BYTES) {
+      return entries;
+    }
+
+    for (int i = 0; i < entries.length; i++) {
+      long offset = pack.getInt(i * HEADER_ENTRY_BYTES) & 0xFFFFFFFFL;
+      int length = pack.getInt(i * HEADER_ENTRY_BYTES + 4);
+
+      if (length <= 0 || offset < HEADER_BYTES || offset + length > pack.limit()) {
+        continue;
+      }
+
+      entries[i] = new byte[length];
+      pack.position((int) offset);
+      pack.get(entries[i]);
+    }
+
+    return entries;
+  }
+
+  /**
+   * Writes all remaining bytes of a buffer to a channel.
+   *
+   * @param channel Channel to write to.
+   * @param buffer  Buffer to write.
+   * @throws IOException Thrown if there is an issue writing to the channel.
+   */
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,569 @@
+package com.jonathanpotts.blockmaps;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects metrics of the current or last refresh of the map data. Counters
+ * are updated concurrently by the worker threads and read by the status
+ * command and the metrics file.
+ */
+public class RenderMetrics {
+  /**
+   * Nanoseconds in a second.
+   */
+  private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+  /**
+   * Bytes in a mebibyte.
+   */
+  private static final double BYTES_PER_MEBIBYTE = 1024.0 * 1024.0;
+
+  /**
+   * Kind of the current or last refresh or null if no refresh has run.
+   */
+  private volatile String kind;
+
+  /**
+   * Status of a refresh running.
+   */
+  private volatile boolean running;
+
+  /**
+   * Status of the last refresh having succeeded.
+   */
+  private volatile boolean succeeded;
+
+  /**
+   * Time in nanoseconds the refresh started at.
+   */
+  private volatile long startNanos;
+
+  /**
+   * Time in nanoseconds the refresh finished at.
+   */
+  private volatile long finishNanos;
+
+  /**
+   * Time in milliseconds since the epoch the refresh finished at.
+   */
+  private volatile long finishMillis;
+
+  /**
+   * Duration in nanoseconds of each finished phase by name in the order they
+   * ran.
+   */
+  private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+  /**
+   * Name of the running phase or null if no phase is running.
+   */
+  private String phase;
+
+  /**
+   * Time in nanoseconds the running phase started at.
+   */
+  private long phaseStartNanos;
+
+  /**
+   * Time in nanoseconds the chunks started being rendered at or 0 if they have
+   * not started.
+   */
+  private volatile long renderStartNanos;
+
+  /**
+   * Number of regions with chunks to render.
+   */
+  private final AtomicLong regionsRequested = new AtomicLong();
+
+  /**
+   * Number of regions whose chunks have all been processed.
+   */
+  private final AtomicLong regionsCompleted = new AtomicLong();
+
+  /**
+   * Number of chunks requested to be rendered.
+   */
+  private final AtomicLong chunksRequested = new AtomicLong();
+
+  /**
+   * Number of requested chunks that have been processed.
+   */
+  private final AtomicLong chunksProcessed = new AtomicLong();
+
+  /**
+   * Number of processed chunks that have been generated and were rendered.
+   */
+  private final AtomicLong chunksRendered = new AtomicLong();
+
+  /**
+   * Number of chunks skipped because they did not change since the last full
+   * refresh.
+   */
+  private final AtomicLong chunksSkipped = new AtomicLong();
+
+  /**
+   * Time in nanoseconds the worker threads spent processing chunks.
+   */
+  private final AtomicLong chunkNanos = new AtomicLong();
+
+  /**
+   * Number of bytes written to files that changed.
+   */
+  private final AtomicLong bytesWritten = new AtomicLong();
+
+  /**
+   * Number of bytes compressed, including files that were unchanged.
+   */
+  private final AtomicLong bytesUncompressed = new AtomicLong();
+
+  /**
+   * Number of compressed bytes produced, including files that were unchanged.
+   */
+  private final AtomicLong bytesCompressed = new AtomicLong();
+
+  /**
+   * Time in nanoseconds spent on the main server thread.
+   */
+  private final AtomicLong mainThreadNanos = new AtomicLong();
+
+  /**
+   * Number of captured chunks waiting to be processed.
+   */
+  private volatile LongSupplier snapshotQueueDepth = () -> 0;
+
+  /**
+   * Number of chunks waiting in the render queue.
+   */
+  private volatile LongSupplier renderQueueDepth = () -> 0;
+
+  /**
+   * Status of the render being paused.
+   */
+  private volatile boolean paused;
+
+  /**
+   * Budget in microseconds of the main server thread work of the current tick.
+   */
+  private volatile LongSupplier tickBudgetMicros = () -> 0;
+
+  /**
+   * Starts collecting metrics of a refresh, replacing the metrics of the last
+   * refresh.
+   *
+   * @param refreshKind Kind of the refresh.
+   */
+  public synchronized void begin(String refreshKind) {
+    kind = refreshKind;
+    running = true;
+    succeeded = false;
+    startNanos = System.nanoTime();
+    finishNanos = 0;
+    finishMillis = 0;
+    phaseNanos.clear();
+    phase = null;
+    renderStartNanos = 0;
+    paused = false;
+
+    for (AtomicLong counter : new AtomicLong[] { regionsRequested, regionsCompleted, chunksRequested, chunksProcessed,
+        chunksRendered, chunksSkipped, chunkNanos, bytesWritten, bytesUncompressed, bytesCompressed,
+        mainThreadNanos }) {
+      counter.set(0);
+    }
+
+    snapshotQueueDepth = () -> 0;
+    renderQueueDepth = () -> 0;
+    tickBudgetMicros = () -> 0;
+  }
+
+  /**
+   * Stops collecting metrics of the refresh.
+   *
+   * @param success Status of the refresh having succeeded.
+   */
+  public synchronized void finish(boolean success) {
+    endPhase();
+    running = false;
+    succeeded = success;
+    finishNanos = System.nanoTime();
+    finishMillis = System.currentTimeMillis();
+    snapshotQueueDepth = () -> 0;
+    renderQueueDepth = () -> 0;
+    tickBudgetMicros = () -> 0;
+  }
+
+  /**
+   * Starts a phase, ending the running phase.
+   *
+   * @param name Name of the phase.
+   */
+  public synchronized void beginPhase(String name) {
+    endPhase();
+    phase = name;
+    phaseStartNanos = System.nanoTime();
+  }
+
+  /**
+   * Ends the running phase. Phases that run more than once add up.
+   */
+  public synchronized void endPhase() {
+    if (phase == null) {
+      return;
+    }
+
+    phaseNanos.merge(phase, System.nanoTime() - phaseStartNanos, Long::sum);
+    phase = null;
+  }
+
+  /**
+   * Marks that the requested chunks started being rendered.
+   */
+  public void beginRendering() {
+    renderStartNanos = System.nanoTime();
+  }
+
+  /**
+   * Sets the sources of the depths of the queues of the current render.
+   *
+   * @param snapshotQueue Number of captured chunks waiting to be processed.
+   * @param renderQueue   Number of chunks waiting in the render queue.
+   */
+  public void setQueues(LongSupplier snapshotQueue, LongSupplier renderQueue) {
+    snapshotQueueDepth = snapshotQueue;
+    renderQueueDepth = renderQueue;
+  }
+
+  /**
+   * Records that the render was paused or unpaused.
+   *
+   * @param paused Status of the render being paused.
+   */
+  public void setPaused(boolean paused) {
+    this.paused = paused;
+  }
+
+  /**
+   * Sets the source of the tick budget of the current refresh.
+   *
+   * @param budgetMicros Budget in microseconds of the current tick.
+   */
+  public void setTickBudget(LongSupplier budgetMicros) {
+    tickBudgetMicros = budgetMicros;
+  }
+
+  /**
+   * Records a region with chunks to render.
+   *
+   * @param chunks Number of chunks of the region to render.
+   */
+  public void recordRegionRequested(int chunks) {
+    regionsRequested.incrementAndGet();
+    chunksRequested.addAndGet(chunks);
+  }
+
+  /**
+   * Records a region whose chunks have all been processed.
+   */
+  public void recordRegionCompleted() {
+    regionsCompleted.incrementAndGet();
+  }
+
+  /**
+   * Records chunks skipped because they did not change since the last full
+   * refresh.
+   *
+   * @param chunks Number of chunks.
+   */
+  public void recordChunksSkipped(int chunks) {
+    chunksSkipped.addAndGet(chunks);
+  }
+
+  /**
+   * Records a processed chunk.
+   *
+   * @param rendered Status of the chunk having been generated and rendered.
+   * @param nanos    Time in nanoseconds spent processing the chunk.
+   * @param bytes    Number of bytes written.
+   */
+  public void recordChunk(boolean rendered, long nanos, long bytes) {
+    chunksProcessed.incrementAndGet();
+
+    if (rendered) {
+      chunksRendered.incrementAndGet();
+    }
+
+    chunkNanos.addAndGet(nanos);
+    bytesWritten.addAndGet(bytes);
+  }
+
+  /**
+   * Records data that was compressed.
+   *
+   * @param uncompressed Number of bytes before compression.
+   * @param compressed   Number of bytes after compression.
+   */
+  public void recordCompression(long uncompressed, long compressed) {
+    bytesUncompressed.addAndGet(uncompressed);
+    bytesCompressed.addAndGet(compressed);
+  }
+
+  /**
+   * Records time spent on the main server thread.
+   *
+   * @param nanos Time in nanoseconds.
+   */
+  public void recordMainThread(long nanos) {
+    mainThreadNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Gets the number of chunks skipped because they did not change since the
+   * last full refresh.
+   *
+   * @return Number of chunks.
+   */
+  public long getChunksSkipped() {
+    return chunksSkipped.get();
+  }
+
+  /**
+   * Describes the current or last refresh for the status command.
+   *
+   * @return Lines of the description.
+   */
+  public synchronized List<String> getStatusLines() {
+    List<String> lines = new ArrayList<>();
+
+    if (kind == null) {
+      lines.add("The map data has not been refreshed since the server started");
+      return lines;
+    }
+
+    long now = System.nanoTime();
+
+    if (running) {
+      lines.add("Refreshing map data (" + kind + ") for " + formatDuration(now - startNanos)
+          + (phase != null ? ", currently " + phase + " for " + formatDuration(now - phaseStartNanos) : "")
+          + (paused ? ", paused" : ""));
+    } else {
+      lines.add("Last refresh (" + kind + ") " + (succeeded ? "finished" : "failed") + " after "
+          + formatDuration(finishNanos - startNanos) + ", "
+          + formatDuration((System.currentTimeMillis() - finishMillis) * 1_000_000L) + " ago");
+    }
+
+    long eta = getEtaNanos(now);
+    lines.add(String.format(Locale.ROOT, "Chunks: %d of %d processed (%d rendered, %d skipped), %.1f chunks/s%s",
+        chunksProcessed.get(), chunksRequested.get(), chunksRendered.get(), chunksSkipped.get(),
+        getChunksPerSecond(now), eta >= 0 ? ", ETA " + formatDuration(eta) : ""));
+    lines.add(String.format(Locale.ROOT, "Regions: %d of %d completed", regionsCompleted.get(),
+        regionsRequested.get()));
+    lines.add(String.format(Locale.ROOT,
+        "Output: %.1f MiB written (%.1f MiB/s), %.1f MiB compressed to %.1f MiB", bytesWritten.get()
+            / BYTES_PER_MEBIBYTE, getBytesPerSecond(now) / BYTES_PER_MEBIBYTE,
+        bytesUncompressed.get() / BYTES_PER_MEBIBYTE, bytesCompressed.get() / BYTES_PER_MEBIBYTE));
+    lines.add(String.format(Locale.ROOT, "Queues: %d waiting to be rendered, %d captured waiting to be processed",
+        renderQueueDepth.getAsLong(), snapshotQueueDepth.getAsLong()));
+    lines.add(String.format(Locale.ROOT, "Main thread: %.0f ms used%s", mainThreadNanos.get() / 1_000_000.0,
+        running ? String.format(Locale.ROOT, ", budget %.2f ms/tick", tickBudgetMicros.getAsLong() / 1000.0) : ""));
+
+    if (!phaseNanos.isEmpty()) {
+      StringBuilder phases = new StringBuilder("Phases:");
+
+      for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+        phases.append(' ').append(entry.getKey()).append(' ').append(formatDuration(entry.getValue())).append(',');
+      }
+
+      phases.setLength(phases.length() - 1);
+      lines.add(phases.toString());
+    }
+
+    return lines;
+  }
+
+  /**
+   * Writes the metrics to a file in the Prometheus text exposition format, for
+   * example for the textfile collector of the node exporter.
+   *
+   * @param filePath Path of the metrics file.
+   * @throws IOException Thrown if there is an issue writing the file.
+   */
+  public void writePrometheus(Path filePath) throws IOException {
+    StringBuilder text = new StringBuilder();
+
+    synchronized (this) {
+      long now = System.nanoTime();
+      long elapsed = kind == null ? 0 : (running ? now : finishNanos) - startNanos;
+
+      appendMetric(text, "blockmaps_refresh_running", "Whether the map data is being refreshed.", running ? 1 : 0);
+      appendMetric(text, "blockmaps_refresh_paused", "Whether the running refresh is paused.", paused ? 1 : 0);
+      appendMetric(text, "blockmaps_refresh_succeeded", "Whether the last finished refresh succeeded.",
+          succeeded ? 1 : 0);
+      appendMetric(text, "blockmaps_refresh_duration_seconds", "Duration of the current or last refresh.",
+          elapsed / NANOS_PER_SECOND);
+
+      text.append("# HELP blockmaps_phase_duration_seconds Duration of each phase of the current or last refresh.\n");
+      text.append("# TYPE blockmaps_phase_duration_seconds gauge\n");
+
+      for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+        text.append("blockmaps_phase_duration_seconds{phase=\"").append(entry.getKey()).append("\"} ")
+            .append(formatValue(entry.getValue() / NANOS_PER_SECOND)).append('\n');
+      }
+
+      if (phase != null) {
+        text.append("blockmaps_phase_duration_seconds{phase=\"").append(phase).append("\"} ")
+            .append(formatValue((now - phaseStartNanos) / NANOS_PER_SECOND)).append('\n');
+      }
+
+      appendMetric(text, "blockmaps_regions_requested", "Regions with chunks to render.", regionsRequested.get());
+      appendMetric(text, "blockmaps_regions_completed", "Regions whose chunks have all been processed.",
+          regionsCompleted.get());
+      appendMetric(text, "blockmaps_chunks_requested", "Chunks requested to be rendered.", chunksRequested.get());
+      appendMetric(text, "blockmaps_chunks_processed", "Requested chunks that have been processed.",
+          chunksProcessed.get());
+      appendMetric(text, "blockmaps_chunks_rendered", "Processed chunks that were generated and rendered.",
+          chunksRendered.get());
+      appendMetric(text, "blockmaps_chunks_skipped", "Chunks skipped because they did not change.",
+          chunksSkipped.get());
+      appendMetric(text, "blockmaps_chunks_per_second", "Chunks processed per second.", getChunksPerSecond(now));
+      appendMetric(text, "blockmaps_chunk_worker_seconds", "Time the worker threads spent on chunks.",
+          chunkNanos.get() / NANOS_PER_SECOND);
+      appendMetric(text, "blockmaps_eta_seconds", "Estimated time until all requested chunks are processed.",
+          Math.max(0, getEtaNanos(now)) / NANOS_PER_SECOND);
+      appendMetric(text, "blockmaps_output_written_bytes", "Bytes written to files that changed.",
+          bytesWritten.get());
+      appendMetric(text, "blockmaps_output_written_bytes_per_second", "Bytes written per second.",
+          getBytesPerSecond(now));
+      appendMetric(text, "blockmaps_output_uncompressed_bytes", "Bytes before compression.",
+          bytesUncompressed.get());
+      appendMetric(text, "blockmaps_output_compressed_bytes", "Bytes after compression.", bytesCompressed.get());
+      appendMetric(text, "blockmaps_render_queue_depth", "Chunks waiting in the render queue.",
+          renderQueueDepth.getAsLong());
+      appendMetric(text, "blockmaps_snapshot_queue_depth", "Captured chunks waiting to be processed.",
+          snapshotQueueDepth.getAsLong());
+      appendMetric(text, "blockmaps_main_thread_seconds", "Time spent on the main server thread.",
+          mainThreadNanos.get() / NANOS_PER_SECOND);
+      appendMetric(text, "blockmaps_tick_budget_seconds", "Budget of the main server thread work of each tick.",
+          tickBudgetMicros.getAsLong() / 1_000_000.0);
+    }
+
+    Files.createDirectories(filePath.getParent());
+
+    Path tempPath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+    Files.write(tempPath, text.toString().getBytes(StandardCharsets.UTF_8));
+    Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Gets the number of chunks processed per second since rendering started.
+   *
+   * @param now Current time in nanoseconds.
+   * @return Chunks per second.
+   */
+  private double getChunksPerSecond(long now) {
+    long elapsed = getRenderNanos(now);
+    return elapsed > 0 ? chunksProcessed.get() * NANOS_PER_SECOND / elapsed : 0;
+  }
+
+  /**
+   * Gets the number of bytes written per second since rendering started.
+   *
+   * @param now Current time in nanoseconds.
+   * @return Bytes per second.
+   */
+  private double getBytesPerSecond(long now) {
+    long elapsed = getRenderNanos(now);
+    return elapsed > 0 ? bytesWritten.get() * NANOS_PER_SECOND / elapsed : 0;
+  }
+
+  /**
+   * Estimates the time until all requested chunks are processed.
+   *
+   * @param now Current time in nanoseconds.
+   * @return Time in nanoseconds or -1 if it cannot be estimated yet.
+   */
+  private long getEtaNanos(long now) {
+    if (!running) {
+      return -1;
+    }
+
+    double chunksPerSecond = getChunksPerSecond(now);
+
+    if (chunksPerSecond <= 0) {
+      return -1;
+    }
+
+    long remaining = Math.max(0, chunksRequested.get() - chunksProcessed.get());
+    return (long) (remaining / chunksPerSecond * NANOS_PER_SECOND);
+  }
+
+  /**
+   * Gets the time spent rendering chunks.
+   *
+   * @param now Current time in nanoseconds.
+   * @return Time in nanoseconds or 0 if rendering has not started.
+   */
+  private long getRenderNanos(long now) {
+    long start = renderStartNanos;
+
+    if (start == 0) {
+      return 0;
+    }
+
+    return (running ? now : finishNanos) - start;
+  }
+
+  /**
+   * Appends a gauge in the Prometheus text exposition format.
+   *
+   * @param text  Text receiving the gauge.
+   * @param name  Name of the gauge.
+   * @param help  Description of the gauge.
+   * @param value Value of the gauge.
+   */
+  private static void appendMetric(StringBuilder text, String name, String help, double value) {
+    text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    text.append("# TYPE ").append(name).append(" gauge\n");
+    text.append(name).append(' ').append(formatValue(value)).append('\n');
+  }
+
+  /**
+   * Formats a value of a metric.
+   *
+   * @param value The value.
+   * @return The formatted value.
+   */
+  private static String formatValue(double value) {
+    return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value)
+        : String.format(Locale.ROOT, "%.6f", value);
+  }
+
+  /**
+   * Formats a duration for people to read.
+   *
+   * @param nanos Duration in nanoseconds.
+   * @return The formatted duration, such as "1h 02m 03s".
+   */
+  private static String formatDuration(long nanos) {
+    long seconds = Math.max(0, nanos) / 1_000_000_000L;
+
+    if (seconds < 60) {
+      return String.format(Locale.ROOT, "%.1fs", Math.max(0, nanos) / NANOS_PER_SECOND);
+    }
+
+    if (seconds < 3600) {
+      return String.format(Locale.ROOT, "%dm %02ds", seconds / 60, seconds % 60);
+    }
+
+    return String.format(Locale.ROOT, "%dh %02dm %02ds", seconds / 3600, seconds / 60 % 60, seconds % 60);
+  }
+}
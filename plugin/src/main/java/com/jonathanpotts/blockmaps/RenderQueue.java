@@ -0,0 +1,347 @@
+package com.jonathanpotts.blockmaps;
+
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Queue of the chunks waiting to be rendered, ordered so the areas people look
+ * at are rendered first.
+ *
+ * <p>
+ * Chunks are queued by region. The region closest to a focus point of its
+ * world, which are the spawn point and the positions of online players, is
+ * started next and all of its chunks are taken before the next region is
+ * started, nearest chunks first, so region batches complete quickly. The
+ * order of the regions that have not been started is updated when the focus
+ * points change. Taking chunks stops while the queue is paused and the queued
+ * chunks are discarded when it is cancelled.
+ */
+public class RenderQueue {
+  /**
+   * Regions that have not been started, closest to a focus point first.
+   */
+  private final PriorityQueue<QueuedRegion> regions = new PriorityQueue<>(
+      Comparator.comparingDouble((QueuedRegion r) -> r.priority).thenComparingLong(r -> r.sequence));
+
+  /**
+   * Chunks of the region being taken.
+   */
+  private final Deque<ChunkRequest> current = new ArrayDeque<>();
+
+  /**
+   * Focus points in chunk coordinates by world name.
+   */
+  private Map<String, List<VectorXZ>> focusPoints = Collections.emptyMap();
+
+  /**
+   * Number of queued chunks.
+   */
+  private int size = 0;
+
+  /**
+   * Number of regions that have been queued, used to keep regions with the same
+   * priority in the order they were queued.
+   */
+  private long sequence = 0;
+
+  /**
+   * Status of taking chunks being paused.
+   */
+  private boolean paused = false;
+
+  /**
+   * Status of the render being cancelled.
+   */
+  private boolean cancelled = false;
+
+  /**
+   * Queues the chunks of a region. All chunks of the region batch must have
+   * been added to it.
+   *
+   * @param region   Batch of the region containing the chunks.
+   * @param requests Requests of the chunks.
+   */
+  public synchronized void add(RegionBatch region, List<ChunkRequest> requests) {
+    if (cancelled || requests.isEmpty()) {
+      return;
+    }
+
+    QueuedRegion queued = new QueuedRegion(region.world.getName(), region.coordinates, requests, sequence++);
+    queued.priority = getPriority(queued.worldName, queued.coordinates);
+    regions.add(queued);
+    size += requests.size();
+  }
+
+  /**
+   * Gets the next chunk without taking it.
+   *
+   * @return The next chunk or null if the queue is empty, paused or cancelled.
+   */
+  public synchronized ChunkRequest peek() {
+    if (paused || cancelled) {
+      return null;
+    }
+
+    if (current.isEmpty()) {
+      QueuedRegion next = regions.poll();
+
+      if (next == null) {
+        return null;
+      }
+
+      List<VectorXZ> points = focusPoints.get(next.worldName);
+
+      if (points != null && !points.isEmpty()) {
+        next.requests.sort(Comparator.comparingLong(request -> getDistanceSquared(request.coordinates, points)));
+      }
+
+      current.addAll(next.requests);
+    }
+
+    return current.peek();
+  }
+
+  /**
+   * Takes the next chunk, which is the chunk returned by {@link #peek()} when
+   * called by the same thread.
+   *
+   * @return The next chunk or null if the queue is empty, paused or cancelled.
+   */
+  public synchronized ChunkRequest poll() {
+    if (peek() == null) {
+      return null;
+    }
+
+    size--;
+    return current.poll();
+  }
+
+  /**
+   * Updates the focus points and the order of the regions that have not been
+   * started.
+   *
+   * @param points Focus points in chunk coordinates by world name.
+   */
+  public synchronized void setFocusPoints(Map<String, List<VectorXZ>> points) {
+    focusPoints = points;
+
+    List<QueuedRegion> queued = new ArrayList<>(regions);
+    regions.clear();
+
+    for (QueuedRegion region : queued) {
+      region.priority = getPriority(region.worldName, region.coordinates);
+    }
+
+    regions.addAll(queued);
+  }
+
+  /**
+   * Gets the priority of a region, which is the squared distance in chunks from
+   * its center to the closest focus point of its world.
+   *
+   * @param worldName   Name of the world containing the region.
+   * @param coordinates Coordinates of the region.
+   * @return The priority, lower first.
+   */
+  public synchronized double getPriority(String worldName, VectorXZ coordinates) {
+    List<VectorXZ> points = focusPoints.get(worldName);
+
+    if (points == null || points.isEmpty()) {
+      return Double.MAX_VALUE;
+    }
+
+    double centerX = (coordinates.x + 0.5) * Constants.WIDTH_OF_REGION;
+    double centerZ = (coordinates.z + 0.5) * Constants.DEPTH_OF_REGION;
+    double closest = Double.MAX_VALUE;
+
+    for (VectorXZ point : points) {
+      double dx = centerX - point.x;
+      double dz = centerZ - point.z;
+      closest = Math.min(closest, dx * dx + dz * dz);
+    }
+
+    return closest;
+  }
+
+  /**
+   * Pauses or unpauses taking chunks. Chunks already taken are still
+   * processed.
+   *
+   * @param paused Status of taking chunks being paused.
+   */
+  public synchronized void setPaused(boolean paused) {
+    this.paused = paused;
+  }
+
+  /**
+   * Checks if taking chunks is paused.
+   *
+   * @return True if paused.
+   */
+  public synchronized boolean isPaused() {
+    return paused;
+  }
+
+  /**
+   * Cancels the render, discarding the queued chunks. Chunks already taken are
+   * still processed.
+   */
+  public synchronized void cancel() {
+    cancelled = true;
+    regions.clear();
+    current.clear();
+    size = 0;
+  }
+
+  /**
+   * Checks if the render was cancelled.
+   *
+   * @return True if cancelled.
+   */
+  public synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Gets the number of queued chunks.
+   *
+   * @return Number of chunks.
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Gets the squared distance in chunks from a chunk to the closest focus point.
+   *
+   * @param coordinates Coordinates of the chunk.
+   * @param points      Focus points in chunk coordinates.
+   * @return The squared distance.
+   */
+  private static long getDistanceSquared(VectorXZ coordinates, List<VectorXZ> points) {
+    long closest = Long.MAX_VALUE;
+
+    for (VectorXZ point : points) {
+      long dx = coordinates.x - point.x;
+      long dz = coordinates.z - point.z;
+      closest = Math.min(closest, dx * dx + dz * dz);
+    }
+
+    return closest;
+  }
+
+  /**
+   * How a queued chunk is loaded.
+   */
+  public enum Source {
+    /**
+     * Captured from the server on the main server thread.
+     */
+    CAPTURE,
+
+    /**
+     * Read from its region file by a worker thread.
+     */
+    REGION_FILE,
+
+    /**
+     * Known not to have been generated, so it is completed without a snapshot.
+     */
+    MISSING
+  }
+
+  /**
+   * A queued chunk.
+   */
+  public static class ChunkRequest {
+    /**
+     * Batch of the region containing the chunk.
+     */
+    public final RegionBatch region;
+
+    /**
+     * Coordinates of the chunk.
+     */
+    public final VectorXZ coordinates;
+
+    /**
+     * How the chunk is loaded.
+     */
+    public final Source source;
+
+    /**
+     * Region file containing the chunk when it is read from its region file.
+     */
+    public final AnvilRegionFile regionFile;
+
+    /**
+     * Creates a queued chunk.
+     *
+     * @param region      Batch of the region containing the chunk.
+     * @param coordinates Coordinates of the chunk.
+     * @param source      How the chunk is loaded.
+     * @param regionFile  Region file containing the chunk when it is read from
+     *                    its region file.
+     */
+    public ChunkRequest(RegionBatch region, VectorXZ coordinates, Source source, AnvilRegionFile regionFile) {
+      this.region = region;
+      this.coordinates = coordinates;
+      this.source = source;
+      this.regionFile = regionFile;
+    }
+  }
+
+  /**
+   * A queued region that has not been started.
+   */
+  private static class QueuedRegion {
+    /**
+     * Name of the world containing the region.
+     */
+    final String worldName;
+
+    /**
+     * Coordinates of the region.
+     */
+    final VectorXZ coordinates;
+
+    /**
+     * Queued chunks of the region.
+     */
+    final List<ChunkRequest> requests;
+
+    /**
+     * Position of the region in the order regions were queued.
+     */
+    final long sequence;
+
+    /**
+     * Squared distance in chunks to the closest focus point.
+     */
+    double priority;
+
+    /**
+     * Creates a queued region.
+     *
+     * @param worldName   Name of the world containing the region.
+     * @param coordinates Coordinates of the region.
+     * @param requests    Queued chunks of the region.
+     * @param sequence    Position of the region in the order regions were
+     *                    queued.
+     */
+    QueuedRegion(String worldName, VectorXZ coordinates, List<ChunkRequest> requests, long sequence) {
+      this.worldName = worldName;
+      this.coordinates = coordinates;
+      this.requests = requests;
+      this.sequence = sequence;
+    }
+  }
+}
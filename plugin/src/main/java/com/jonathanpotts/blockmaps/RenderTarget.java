@@ -0,0 +1,229 @@
+package com.jonathanpotts.blockmaps;
+
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Area of a world rendered by a targeted refresh: the whole world, a bounding
+ * box or the area within a radius of a point.
+ */
+public class RenderTarget {
+  /**
+   * Name of the world containing the area.
+   */
+  public final String worldName;
+
+  /**
+   * Status of the area being limited to the bounding box.
+   */
+  private final boolean bounded;
+
+  /**
+   * Minimum X block coordinate of the bounding box.
+   */
+  private final long minX;
+
+  /**
+   * Minimum Z block coordinate of the bounding box.
+   */
+  private final long minZ;
+
+  /**
+   * Maximum X block coordinate of the bounding box.
+   */
+  private final long maxX;
+
+  /**
+   * Maximum Z block coordinate of the bounding box.
+   */
+  private final long maxZ;
+
+  /**
+   * Radius in blocks around the center of the bounding box or -1 if the whole
+   * bounding box is included.
+   */
+  private final long radius;
+
+  /**
+   * Description of the area used in messages.
+   */
+  private final String description;
+
+  /**
+   * Creates a render target.
+   *
+   * @param worldName   Name of the world containing the area.
+   * @param bounded     Status of the area being limited to the bounding box.
+   * @param minX        Minimum X block coordinate of the bounding box.
+   * @param minZ        Minimum Z block coordinate of the bounding box.
+   * @param maxX        Maximum X block coordinate of the bounding box.
+   * @param maxZ        Maximum Z block coordinate of the bounding box.
+   * @param radius      Radius in blocks around the center of the bounding box or
+   *                    -1 if the whole bounding box is included.
+   * @param description Description of the area used in messages.
+   */
+  private RenderTarget(String worldName, boolean bounded, long minX, long minZ, long maxX, long maxZ, long radius,
+      String description) {
+    this.worldName = worldName;
+    this.bounded = bounded;
+    this.minX = minX;
+    this.minZ = minZ;
+    this.maxX = maxX;
+    this.maxZ = maxZ;
+    this.radius = radius;
+    this.description = description;
+  }
+
+  /**
+   * Creates a target covering a whole world.
+   *
+   * @param worldName Name of the world.
+   * @return The render target.
+   */
+  public static RenderTarget world(String worldName) {
+    return new RenderTarget(worldName, false, 0, 0, 0, 0, -1, "world " + worldName);
+  }
+
+  /**
+   * Creates a target covering the chunks intersecting a bounding box of blocks.
+   * The corners may be given in any order.
+   *
+   * @param worldName Name of the world.
+   * @param x1        X block coordinate of a corner.
+   * @param z1        Z block coordinate of a corner.
+   * @param x2        X block coordinate of the opposite corner.
+   * @param z2        Z block coordinate of the opposite corner.
+   * @return The render target.
+   */
+  public static RenderTarget blocks(String worldName, int x1, int z1, int x2, int z2) {
+    return new RenderTarget(worldName, true, Math.min(x1, x2), Math.min(z1, z2), Math.max(x1, x2),
+        Math.max(z1, z2), -1, "blocks (" + x1 + ", " + z1 + ") to (" + x2 + ", " + z2 + ") in " + worldName);
+  }
+
+  /**
+   * Creates a target covering a bounding box of chunks. The corners may be
+   * given in any order.
+   *
+   * @param worldName Name of the world.
+   * @param x1        X coordinate of a corner chunk.
+   * @param z1        Z coordinate of a corner chunk.
+   * @param x2        X coordinate of the opposite corner chunk.
+   * @param z2        Z coordinate of the opposite corner chunk.
+   * @return The render target.
+   */
+  public static RenderTarget chunks(String worldName, int x1, int z1, int x2, int z2) {
+    return new RenderTarget(worldName, true, (long) Math.min(x1, x2) * Constants.WIDTH_OF_CHUNK,
+        (long) Math.min(z1, z2) * Constants.DEPTH_OF_CHUNK,
+        (long) Math.max(x1, x2) * Constants.WIDTH_OF_CHUNK + Constants.WIDTH_OF_CHUNK - 1,
+        (long) Math.max(z1, z2) * Constants.DEPTH_OF_CHUNK + Constants.DEPTH_OF_CHUNK - 1, -1,
+        "chunks (" + x1 + ", " + z1 + ") to (" + x2 + ", " + z2 + ") in " + worldName);
+  }
+
+  /**
+   * Creates a target covering the chunks within a radius of a block.
+   *
+   * @param worldName Name of the world.
+   * @param x         X block coordinate of the center.
+   * @param z         Z block coordinate of the center.
+   * @param radius    Radius in blocks.
+   * @return The render target.
+   * @throws IllegalArgumentException Thrown if the radius is negative.
+   */
+  public static RenderTarget radius(String worldName, int x, int z, int radius) {
+    if (radius < 0) {
+      throw new IllegalArgumentException("The radius cannot be negative");
+    }
+
+    return new RenderTarget(worldName, true, (long) x - radius, (long) z - radius, (long) x + radius,
+        (long) z + radius, radius, radius + " blocks around (" + x + ", " + z + ") in " + worldName);
+  }
+
+  /**
+   * Checks if a region intersects the area.
+   *
+   * @param coordinates Coordinates of the region.
+   * @return True if any chunk of the region intersects the area.
+   */
+  public boolean intersectsRegion(VectorXZ coordinates) {
+    long width = (long) Constants.WIDTH_OF_REGION * Constants.WIDTH_OF_CHUNK;
+    long depth = (long) Constants.DEPTH_OF_REGION * Constants.DEPTH_OF_CHUNK;
+
+    return intersects(coordinates.x * width, coordinates.z * depth, coordinates.x * width + width - 1,
+        coordinates.z * depth + depth - 1);
+  }
+
+  /**
+   * Checks if a chunk intersects the area.
+   *
+   * @param coordinates Coordinates of the chunk.
+   * @return True if any block of the chunk is in the area.
+   */
+  public boolean intersectsChunk(VectorXZ coordinates) {
+    long startX = (long) coordinates.x * Constants.WIDTH_OF_CHUNK;
+    long startZ = (long) coordinates.z * Constants.DEPTH_OF_CHUNK;
+
+    return intersects(startX, startZ, startX + Constants.WIDTH_OF_CHUNK - 1, startZ + Constants.DEPTH_OF_CHUNK - 1);
+  }
+
+  /**
+   * Gets the chunks of a region that intersect the area.
+   *
+   * @param coordinates Coordinates of the region.
+   * @return Coordinates of the chunks.
+   */
+  public List<VectorXZ> getChunks(VectorXZ coordinates) {
+    List<VectorXZ> chunks = new ArrayList<>();
+    int startX = coordinates.x * Constants.WIDTH_OF_REGION;
+    int startZ = coordinates.z * Constants.DEPTH_OF_REGION;
+
+    for (int x = startX; x < startX + Constants.WIDTH_OF_REGION; x++) {
+      for (int z = startZ; z < startZ + Constants.DEPTH_OF_REGION; z++) {
+        VectorXZ chunkCoordinates = new VectorXZ(x, z);
+
+        if (intersectsChunk(chunkCoordinates)) {
+          chunks.add(chunkCoordinates);
+        }
+      }
+    }
+
+    return chunks;
+  }
+
+  /**
+   * Checks if a rectangle of blocks intersects the area.
+   *
+   * @param startX Minimum X block coordinate of the rectangle.
+   * @param startZ Minimum Z block coordinate of the rectangle.
+   * @param endX   Maximum X block coordinate of the rectangle.
+   * @param endZ   Maximum Z block coordinate of the rectangle.
+   * @return True if the rectangle intersects the area.
+   */
+  private boolean intersects(long startX, long startZ, long endX, long endZ) {
+    if (!bounded) {
+      return true;
+    }
+
+    if (endX < minX || startX > maxX || endZ < minZ || startZ > maxZ) {
+      return false;
+    }
+
+    if (radius < 0) {
+      return true;
+    }
+
+    // Distance from the center to the closest block of the rectangle.
+    long centerX = minX + radius;
+    long centerZ = minZ + radius;
+    long dx = Math.max(startX, Math.min(centerX, endX)) - centerX;
+    long dz = Math.max(startZ, Math.min(centerZ, endZ)) - centerZ;
+
+    return dx * dx + dz * dz <= radius * radius;
+  }
+
+  @Override
+  public String toString() {
+    return description;
+  }
+}
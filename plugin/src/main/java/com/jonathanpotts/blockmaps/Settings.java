@@ -0,0 +1,203 @@
+package com.jonathanpotts.blockmaps;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Locale;
+
+/**
+ * Settings loaded from the plugin configuration.
+ */
+public class Settings {
+  /**
+   * Minimum time in milliseconds spent on the main server thread work of a
+   * refresh each server tick.
+   */
+  public final double minTickBudgetMillis;
+
+  /**
+   * Maximum time in milliseconds spent on the main server thread work of a
+   * refresh each server tick.
+   */
+  public final double maxTickBudgetMillis;
+
+  /**
+   * Tick duration in milliseconds the main server thread work of a refresh is
+   * scaled to stay under.
+   */
+  public final double targetTickMillis;
+
+  /**
+   * Maximum number of captured chunk snapshots waiting to be processed.
+   */
+  public final int maxQueuedSnapshots;
+
+  /**
+   * Maximum fraction of the maximum heap size used by captured chunk snapshots
+   * waiting to be processed.
+   */
+  public final double maxQueuedHeapFraction;
+
+  /**
+   * Status of chunks that are not loaded being read from their region files by
+   * the worker threads instead of being loaded on the main server thread.
+   */
+  public final boolean readRegionFiles;
+
+  /**
+   * Number of worker threads that scan, encode, compress and write chunks.
+   */
+  public final int renderWorkerThreads;
+
+  /**
+   * Status of opaque blocks surrounded by opaque blocks being left out of
+   * chunks.
+   */
+  public final boolean cullHiddenBlocks;
+
+  /**
+   * Status of the grass, foliage and water tint colors of biomes being computed.
+   */
+  public final boolean computeBiomeTints;
+
+  /**
+   * Status of chunk meshes being built and written alongside the chunk files.
+   */
+  public final boolean writeMeshes;
+
+  /**
+   * Status of chunks being written in the JSON chunk format.
+   */
+  public final boolean writeJsonChunks;
+
+  /**
+   * Status of chunks being written in the binary chunk format.
+   */
+  public final boolean writeBinaryChunks;
+
+  /**
+   * Status of a delta bundle being written after each refresh.
+   */
+  public final boolean writeDeltaBundles;
+
+  /**
+   * Compression level of GZIP-compressed chunk files from 0 to 9.
+   */
+  public final int compressionLevel;
+
+  /**
+   * How written chunk files are synced to storage.
+   */
+  public final GzipFileWriter.SyncMode syncMode;
+
+  /**
+   * Status of chunks being written to region packs instead of individual chunk
+   * files.
+   */
+  public final boolean writeRegionPacks;
+
+  /**
+   * Status of chunks being written to files named by their content hash with
+   * an index for each region instead of files named by their coordinates.
+   */
+  public final boolean writeContentAddressedChunks;
+
+  /**
+   * Status of top-down surface tiles being rendered.
+   */
+  public final boolean renderSurfaceTiles;
+
+  /**
+   * Number of zoom levels of surface tiles generated after the full resolution
+   * level.
+   */
+  public final int surfaceTileZoomLevels;
+
+  /**
+   * Interval in seconds between writing the metrics file during a refresh or 0
+   * if the metrics file is not written.
+   */
+  public final int metricsWriteIntervalSeconds;
+
+  /**
+   * Interval in seconds between checkpoints of the progress of a full refresh.
+   */
+  public final int checkpointIntervalSeconds;
+
+  /**
+   * Interval in seconds between updating the render order from the positions of
+   * the online players.
+   */
+  public final int priorityUpdateIntervalSeconds;
+
+  /**
+   * Location of the Minecraft version manifest. May be a URL or a local file
+   * path.
+   */
+  public final String assetVersionManifest;
+
+  /**
+   * ID of the Minecraft version to use assets from or "latest" for the latest
+   * release.
+   */
+  public final String assetVersion;
+
+  /**
+   * Path of a local Minecraft client jar to use assets from instead of
+   * downloading one or an empty string.
+   */
+  public final String assetClientJar;
+
+  /**
+   * Loads the settings from the plugin configuration.
+   *
+   * @param config The plugin configuration.
+   */
+  public Settings(ConfigurationSection config) {
+    minTickBudgetMillis = Math.max(0.1, config.getDouble("capture.min-tick-budget-ms", 1));
+    maxTickBudgetMillis = Math.max(minTickBudgetMillis,
+        config.getDouble("capture.max-tick-budget-ms", config.getDouble("capture.tick-budget-ms", 20)));
+    targetTickMillis = Math.min(50, Math.max(1, config.getDouble("capture.target-mspt", 40)));
+    maxQueuedSnapshots = Math.max(1, config.getInt("capture.max-queued-snapshots", 256));
+    maxQueuedHeapFraction = Math.min(1, Math.max(0, config.getDouble("capture.max-queued-heap-fraction", 0.1)));
+    readRegionFiles = config.getBoolean("capture.read-region-files", true);
+
+    int workerThreads = config.getInt("render.worker-threads", 0);
+    if (workerThreads <= 0) {
+      workerThreads = Runtime.getRuntime().availableProcessors() - 1;
+    }
+    renderWorkerThreads = Math.max(1, workerThreads);
+
+    cullHiddenBlocks = config.getBoolean("render.cull-hidden-blocks", true);
+
+    computeBiomeTints = config.getBoolean("render.biome-tints", true);
+
+    writeMeshes = config.getBoolean("render.meshes", false);
+
+    String chunkFormat = config.getString("render.chunk-format", "json").toLowerCase(Locale.ROOT);
+    writeJsonChunks = !chunkFormat.equals("binary");
+    writeBinaryChunks = chunkFormat.equals("binary") || chunkFormat.equals("both");
+
+    writeDeltaBundles = config.getBoolean("output.write-delta-bundles", false);
+    compressionLevel = Math.min(9, Math.max(0, config.getInt("output.compression-level", 6)));
+
+    String sync = config.getString("output.fsync", "none").toUpperCase(Locale.ROOT);
+    syncMode = sync.equals("BATCH") ? GzipFileWriter.SyncMode.BATCH
+        : sync.equals("ALWAYS") ? GzipFileWriter.SyncMode.ALWAYS : GzipFileWriter.SyncMode.NONE;
+
+    String chunkLayout = config.getString("output.layout", "files").toLowerCase(Locale.ROOT);
+    writeRegionPacks = chunkLayout.equals("region-pack");
+    writeContentAddressedChunks = chunkLayout.equals("content-addressed");
+
+    renderSurfaceTiles = config.getBoolean("tiles.enabled", true);
+    surfaceTileZoomLevels = Math.max(0, config.getInt("tiles.zoom-levels", 5));
+
+    metricsWriteIntervalSeconds = Math.max(0, config.getInt("metrics.write-interval-seconds", 15));
+
+    checkpointIntervalSeconds = Math.max(1, config.getInt("checkpoint.interval-seconds", 30));
+    priorityUpdateIntervalSeconds = Math.max(1, config.getInt("priority.update-interval-seconds", 5));
+
+    assetVersionManifest = config.getString("assets.version-manifest", Constants.LAUNCHER_VERSION_MANIFEST);
+    assetVersion = config.getString("assets.version", "latest");
+    assetClientJar = config.getString("assets.client-jar", "");
+  }
+}
@@ -0,0 +1,179 @@
+package com.jonathanpotts.blockmaps;
+
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Takes chunks from the render queue on the main server thread and adds them
+ * to the snapshot queue, capturing the snapshots of chunks that are not read
+ * from their region files. Each tick takes as many chunks as fit in the
+ * remaining tick budget and the snapshot queue.
+ */
+public class SnapshotCaptureTask implements Runnable {
+  /**
+   * The server plugin running the task.
+   */
+  private final JavaPlugin plugin;
+
+  /**
+   * Queue receiving the captured snapshots.
+   */
+  private final SnapshotQueue snapshots;
+
+  /**
+   * Budget shared with other work on the main server thread each tick.
+   */
+  private final TickBudget tickBudget;
+
+  /**
+   * Chunks waiting to be rendered.
+   */
+  private final RenderQueue renderQueue;
+
+  /**
+   * Status of all chunks having been requested.
+   */
+  private volatile boolean finished = false;
+
+  /**
+   * The scheduled task.
+   */
+  private BukkitTask task;
+
+  /**
+   * Creates a snapshot capture task.
+   *
+   * @param plugin      The server plugin running the task.
+   * @param snapshots   Queue receiving the captured snapshots.
+   * @param tickBudget  Budget shared with other work on the main server thread
+   *                    each tick.
+   * @param renderQueue Chunks waiting to be rendered.
+   */
+  public SnapshotCaptureTask(JavaPlugin plugin, SnapshotQueue snapshots, TickBudget tickBudget,
+      RenderQueue renderQueue) {
+    this.plugin = plugin;
+    this.snapshots = snapshots;
+    this.tickBudget = tickBudget;
+    this.renderQueue = renderQueue;
+  }
+
+  /**
+   * Schedules the task to run every tick.
+   */
+  public void start() {
+    task = plugin.getServer().getScheduler().runTaskTimer(plugin, this, 1, 1);
+  }
+
+  /**
+   * Marks that all chunks have been added to the render queue. The snapshot
+   * queue is closed once the render queue is empty.
+   */
+  public void finish() {
+    finished = true;
+  }
+
+  /**
+   * Stops capturing snapshots and closes the snapshot queue.
+   */
+  public void cancel() {
+    if (task != null) {
+      task.cancel();
+    }
+
+    snapshots.close();
+  }
+
+  @Override
+  public void run() {
+    long start = System.nanoTime();
+    long deadline = start + tickBudget.getRemainingNanos();
+
+    try {
+      captureSnapshots(deadline);
+    } finally {
+      tickBudget.use(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Takes chunks from the render queue until the deadline. At least one chunk
+   * is taken if there is room in the snapshot queue so rendering is never
+   * starved.
+   *
+   * @param deadline Time in nanoseconds to stop taking chunks at.
+   */
+  private void captureSnapshots(long deadline) {
+    do {
+      RenderQueue.ChunkRequest request = renderQueue.peek();
+
+      if (request == null) {
+        // A paused queue still has chunks waiting.
+        if (finished && renderQueue.size() == 0) {
+          cancel();
+        }
+
+        return;
+      }
+
+      World world = request.region.world;
+      int minHeight = world.getMinHeight();
+      int maxHeight = world.getMaxHeight();
+      long estimatedBytes = request.source == RenderQueue.Source.CAPTURE
+          ? CapturedChunk.estimateBytes(minHeight, maxHeight)
+          : 0;
+
+      if (!snapshots.hasCapacity(estimatedBytes)) {
+        return;
+      }
+
+      renderQueue.poll();
+
+      switch (request.source) {
+        case REGION_FILE:
+          // The snapshot is read by a worker thread.
+          snapshots.add(new CapturedChunk(request.region, request.coordinates, request.regionFile, minHeight,
+              maxHeight));
+          break;
+        case MISSING:
+          snapshots.add(new CapturedChunk(request.region, request.coordinates, (ChunkSnapshot) null, minHeight,
+              maxHeight, 0));
+          break;
+        default:
+          ChunkSnapshot snapshot = capture(world, request.coordinates);
+          snapshots.add(new CapturedChunk(request.region, request.coordinates, snapshot, minHeight, maxHeight,
+              snapshot != null ? estimatedBytes : 0));
+          break;
+      }
+    } while (System.nanoTime() < deadline);
+  }
+
+  /**
+   * Captures a snapshot of a chunk. Chunks that were not already loaded are
+   * allowed to unload after being captured. Must be called on the main server
+   * thread.
+   *
+   * @param world       World containing the chunk.
+   * @param coordinates Coordinates of the chunk.
+   * @return The snapshot or null if the chunk has not been generated.
+   */
+  public static ChunkSnapshot capture(World world, VectorXZ coordinates) {
+    if (!world.isChunkGenerated(coordinates.x, coordinates.z)) {
+      return null;
+    }
+
+    boolean loaded = world.isChunkLoaded(coordinates.x, coordinates.z);
+
+    Chunk chunk = world.getChunkAt(coordinates.x, coordinates.z);
+    ChunkSnapshot snapshot = chunk.getChunkSnapshot(true, true, false);
+
+    if (!loaded) {
+      world.unloadChunkRequest(coordinates.x, coordinates.z);
+    }
+
+    return snapshot;
+  }
+}
@@ -0,0 +1,139 @@
+package com.jonathanpotts.blockmaps;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A bounded queue of captured chunks that limits both the number of queued
+ * snapshots and their estimated heap usage.
+ */
+public class SnapshotQueue {
+  /**
+   * Captured chunks waiting to be processed.
+   */
+  private final Deque<CapturedChunk> queue = new ArrayDeque<>();
+
+  /**
+   * Maximum number of queued snapshots.
+   */
+  private final int maxCount;
+
+  /**
+   * Maximum estimated heap usage in bytes of queued snapshots.
+   */
+  private final long maxBytes;
+
+  /**
+   * Estimated heap usage in bytes of queued snapshots.
+   */
+  private long queuedBytes = 0;
+
+  /**
+   * Status of the queue accepting more snapshots.
+   */
+  private boolean closed = false;
+
+  /**
+   * Creates a snapshot queue.
+   *
+   * @param maxCount Maximum number of queued snapshots.
+   * @param maxBytes Maximum estimated heap usage in bytes of queued snapshots.
+   */
+  public SnapshotQueue(int maxCount, long maxBytes) {
+    this.maxCount = maxCount;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Creates a snapshot queue bounded by the settings and the maximum heap size.
+   *
+   * @param settings Settings used to bound the queue.
+   * @return The created snapshot queue.
+   */
+  public static SnapshotQueue fromSettings(Settings settings) {
+    long maxBytes = (long) (Runtime.getRuntime().maxMemory() * settings.maxQueuedHeapFraction);
+    return new SnapshotQueue(settings.maxQueuedSnapshots, maxBytes);
+  }
+
+  /**
+   * Checks if a snapshot can be added without exceeding the bounds of the queue.
+   * An empty queue always has capacity so processing can make progress.
+   *
+   * @param bytes Estimated heap usage in bytes of the snapshot.
+   * @return True if the snapshot can be added.
+   */
+  public synchronized boolean hasCapacity(long bytes) {
+    if (closed) {
+      return false;
+    }
+
+    if (queue.isEmpty()) {
+      return true;
+    }
+
+    return queue.size() < maxCount && queuedBytes + bytes <= maxBytes;
+  }
+
+  /**
+   * Adds a captured chunk to the queue.
+   *
+   * @param chunk Captured chunk to add.
+   */
+  public synchronized void add(CapturedChunk chunk) {
+    if (closed) {
+      return;
+    }
+
+    queue.add(chunk);
+    queuedBytes += chunk.estimatedBytes;
+    notifyAll();
+  }
+
+  /**
+   * Takes a captured chunk from the queue, waiting until one is available.
+   *
+   * @return The captured chunk or null if the queue is closed and empty.
+   * @throws InterruptedException Thrown if interrupted while waiting.
+   */
+  public synchronized CapturedChunk take() throws InterruptedException {
+    while (queue.isEmpty() && !closed) {
+      wait();
+    }
+
+    CapturedChunk chunk = queue.poll();
+
+    if (chunk != null) {
+      queuedBytes -= chunk.estimatedBytes;
+    }
+
+    return chunk;
+  }
+
+  /**
+   * Closes the queue so no more snapshots are accepted. Queued snapshots can
+   * still be taken.
+   */
+  public synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+
+  /**
+   * Closes the queue and discards the queued snapshots so processing stops as
+   * soon as possible.
+   */
+  public synchronized void abort() {
+    queue.clear();
+    queuedBytes = 0;
+    close();
+  }
+
+  /**
+   * Gets the number of queued snapshots.
+   *
+   * @return The number of queued snapshots.
+   */
+  public synchronized int size() {
+    return queue.size();
+  }
+}
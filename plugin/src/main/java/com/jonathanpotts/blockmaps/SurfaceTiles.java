@@ -0,0 +1,475 @@
+package com.jonathanpotts.blockmaps;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.jonathanpotts.blockmaps.models.TileIndexModel;
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+import org.bukkit.Material;
+import org.bukkit.block.Biome;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders top-down images of the surface of chunks and combines them into
+ * tiles. Zoom level 0 has one pixel per block and one tile per region. Each
+ * following level halves the resolution so one tile covers four tiles of the
+ * level before it. Only the tiles covering updated regions are rebuilt.
+ */
+public class SurfaceTiles {
+  /**
+   * Width and height of a tile in pixels.
+   */
+  public static final int TILE_SIZE = Constants.WIDTH_OF_REGION * Constants.WIDTH_OF_CHUNK;
+
+  /**
+   * Name of the file listing the tiles of a world.
+   */
+  public static final String INDEX_FILE_NAME = "tiles.json";
+
+  /**
+   * Folder containing the tiles of all worlds.
+   */
+  private final Path tilesPath;
+
+  /**
+   * Manifest used to skip rewriting unchanged tiles.
+   */
+  private final OutputManifest manifest;
+
+  /**
+   * Colors of the materials.
+   */
+  private final BlockColorTable blockColors;
+
+  /**
+   * Tint colors of the biomes.
+   */
+  private final BiomeTintTable biomeTints;
+
+  /**
+   * Number of zoom levels generated after level 0.
+   */
+  private final int zoomLevels;
+
+  /**
+   * Coordinates of the level 0 tiles written during this render keyed by the
+   * name of their world.
+   */
+  private final Map<String, Set<Long>> updatedTiles = new ConcurrentHashMap<>();
+
+  /**
+   * The gson object used to process JSON.
+   */
+  private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+  /**
+   * Creates surface tiles.
+   *
+   * @param tilesPath    Folder containing the tiles of all worlds.
+   * @param texturesPath Folder containing the block textures.
+   * @param manifest     Manifest used to skip rewriting unchanged tiles.
+   * @param biomeTints   Tint colors of the biomes.
+   * @param zoomLevels   Number of zoom levels generated after level 0.
+   */
+  public SurfaceTiles(Path tilesPath, Path texturesPath, OutputManifest manifest, BiomeTintTable biomeTints,
+      int zoomLevels) {
+    this.tilesPath = tilesPath;
+    this.manifest = manifest;
+    this.blockColors = new BlockColorTable(texturesPath);
+    this.biomeTints = biomeTints;
+    this.zoomLevels = zoomLevels;
+  }
+
+  /**
+   * Renders the surface of a chunk. Each column is colored by its highest block
+   * with a texture and shaded by comparing its height with the column to the
+   * north.
+   *
+   * @param chunk  The captured chunk.
+   * @param scan   Block data of the chunk.
+   * @param biomes Biomes of the chunk.
+   * @return ARGB pixels of the surface in ZX order or null if the chunk has no
+   *         visible blocks.
+   */
+  public int[] renderChunk(CapturedChunk chunk, ChunkScan scan, BiomeGrid biomes) {
+    int[] pixels = new int[Constants.WIDTH_OF_CHUNK * Constants.DEPTH_OF_CHUNK];
+    int[] heights = new int[pixels.length];
+    boolean empty = true;
+
+    for (int z = 0; z < Constants.DEPTH_OF_CHUNK; z++) {
+      for (int x = 0; x < Constants.WIDTH_OF_CHUNK; x++) {
+        int index = z * Constants.WIDTH_OF_CHUNK + x;
+        int top = Math.min(chunk.snapshot.getHighestBlockYAt(x, z) + 1, chunk.maxHeight - 1);
+        heights[index] = Integer.MIN_VALUE;
+
+        for (int y = top; y >= chunk.minHeight; y--) {
+          if (scan.isAir(x, y, z)) {
+            continue;
+          }
+
+          Material material = scan.getBlockData(x, y, z).getMaterial();
+          int color = blockColors.getColor(material);
+
+          if (color == BlockColorTable.NO_COLOR) {
+            continue;
+          }
+
+          pixels[index] = tint(material, color, biomes.getBiome(x, y, z));
+          heights[index] = y;
+          empty = false;
+          break;
+        }
+      }
+    }
+
+    if (empty) {
+      return null;
+    }
+
+    for (int z = Constants.DEPTH_OF_CHUNK - 1; z > 0; z--) {
+      for (int x = 0; x < Constants.WIDTH_OF_CHUNK; x++) {
+        int index = z * Constants.WIDTH_OF_CHUNK + x;
+        int north = index - Constants.WIDTH_OF_CHUNK;
+
+        if (heights[index] == Integer.MIN_VALUE || heights[north] == Integer.MIN_VALUE) {
+          continue;
+        }
+
+        if (heights[index] > heights[north]) {
+          pixels[index] = scale(pixels[index], 1.1);
+        } else if (heights[index] < heights[north]) {
+          pixels[index] = scale(pixels[index], 0.85);
+        }
+      }
+    }
+
+    return pixels;
+  }
+
+  /**
+   * Writes the level 0 tile of a region once all of its chunks have been
+   * processed. Chunks of the region that were not requested keep the pixels of
+   * the existing tile.
+   *
+   * @param region The completed region.
+   * @return Number of bytes written.
+   * @throws IOException Thrown if there is an issue reading or writing the tile.
+   */
+  public long writeRegion(RegionBatch region) throws IOException {
+    Path tilePath = getTilePath(region.world.getName(), 0, region.coordinates.x, region.coordinates.z);
+    int[] pixels = readTile(tilePath);
+
+    for (int index = 0; index < RegionBatch.CHUNKS_PER_REGION; index++) {
+      if (!region.isRequested(index)) {
+        continue;
+      }
+
+      int[] surface = region.getSurface(index);
+      int startX = (index % Constants.WIDTH_OF_REGION) * Constants.WIDTH_OF_CHUNK;
+      int startZ = (index / Constants.WIDTH_OF_REGION) * Constants.DEPTH_OF_CHUNK;
+
+      for (int z = 0; z < Constants.DEPTH_OF_CHUNK; z++) {
+        for (int x = 0; x < Constants.WIDTH_OF_CHUNK; x++) {
+          pixels[(startZ + z) * TILE_SIZE + startX + x] = surface != null
+              ? surface[z * Constants.WIDTH_OF_CHUNK + x]
+              : 0;
+        }
+      }
+    }
+
+    updatedTiles.computeIfAbsent(region.world.getName(), k -> ConcurrentHashMap.newKeySet())
+        .add(toKey(region.coordinates.x, region.coordinates.z));
+
+    return writeTile(tilePath, pixels);
+  }
+
+  /**
+   * Marks the level 0 tile of a region written by an earlier, interrupted
+   * render as updated so the zoom levels covering it are rebuilt.
+   *
+   * @param worldName   Name of the world containing the region.
+   * @param coordinates Coordinates of the region.
+   */
+  public void markRegionUpdated(String worldName, VectorXZ coordinates) {
+    updatedTiles.computeIfAbsent(worldName, k -> ConcurrentHashMap.newKeySet())
+        .add(toKey(coordinates.x, coordinates.z));
+  }
+
+  /**
+   * Rebuilds the tiles of the zoom levels covering the regions written during
+   * this render and updates the tile index of each world. Must be called after
+   * all regions have been written.
+   *
+   * @return Number of bytes written.
+   * @throws IOException Thrown if there is an issue reading or writing the tiles.
+   */
+  public long writeZoomLevels() throws IOException {
+    long bytesWritten = 0;
+
+    for (Map.Entry<String, Set<Long>> world : updatedTiles.entrySet()) {
+      String worldName = world.getKey();
+      Set<Long> children = new TreeSet<>(world.getValue());
+
+      for (int level = 1; level <= zoomLevels; level++) {
+        Set<Long> parents = new TreeSet<>();
+
+        for (long child : children) {
+          parents.add(toKey(getX(child) >> 1, getZ(child) >> 1));
+        }
+
+        for (long parent : parents) {
+          bytesWritten += writeParentTile(worldName, level, getX(parent), getZ(parent));
+        }
+
+        children = parents;
+      }
+
+      bytesWritten += writeIndex(worldName);
+    }
+
+    updatedTiles.clear();
+
+    return bytesWritten;
+  }
+
+  /**
+   * Writes a tile by downsampling the four tiles it covers in the level before
+   * it.
+   *
+   * @param worldName Name of the world.
+   * @param level     Zoom level of the tile.
+   * @param tileX     X coordinate of the tile.
+   * @param tileZ     Z coordinate of the tile.
+   * @return Number of bytes written.
+   * @throws IOException Thrown if there is an issue reading or writing the tiles.
+   */
+  private long writeParentTile(String worldName, int level, int tileX, int tileZ) throws IOException {
+    int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+    int half = TILE_SIZE / 2;
+
+    for (int childZ = 0; childZ < 2; childZ++) {
+      for (int childX = 0; childX < 2; childX++) {
+        Path childPath = getTilePath(worldName, level - 1, tileX * 2 + childX, tileZ * 2 + childZ);
+
+        if (!Files.exists(childPath)) {
+          continue;
+        }
+
+        int[] child = readTile(childPath);
+
+        for (int z = 0; z < half; z++) {
+          for (int x = 0; x < half; x++) {
+            int source = z * 2 * TILE_SIZE + x * 2;
+            pixels[(childZ * half + z) * TILE_SIZE + childX * half + x] = average(child[source],
+                child[source + 1], child[source + TILE_SIZE], child[source + TILE_SIZE + 1]);
+          }
+        }
+      }
+    }
+
+    return writeTile(getTilePath(worldName, level, tileX, tileZ), pixels);
+  }
+
+  /**
+   * Writes the index listing the tiles of each zoom level of a world.
+   *
+   * @param worldName Name of the world.
+   * @return Number of bytes written.
+   * @throws IOException Thrown if there is an issue listing the tiles or writing
+   *                     the index.
+   */
+  private long writeIndex(String worldName) throws IOException {
+    Path worldPath = tilesPath.resolve(worldName);
+
+    TileIndexModel model = new TileIndexModel();
+    model.tileSize = TILE_SIZE;
+    model.levels = new ArrayList<>();
+
+    for (int level = 0; level <= zoomLevels; level++) {
+      Path levelPath = worldPath.resolve(Integer.toString(level));
+      List<String> tiles = new ArrayList<>();
+
+      if (Files.isDirectory(levelPath)) {
+        try (Stream<Path> files = Files.list(levelPath)) {
+          tiles = files.map(p -> p.getFileName().toString()).filter(n -> n.endsWith(".png"))
+              .map(n -> n.substring(0, n.length() - ".png".length())).sorted().collect(Collectors.toList());
+        }
+      }
+
+      model.levels.add(tiles);
+    }
+
+    byte[] bytes = gson.toJson(model).getBytes(StandardCharsets.UTF_8);
+    return manifest.write(worldPath.resolve(INDEX_FILE_NAME), bytes) ? bytes.length : 0;
+  }
+
+  /**
+   * Writes a tile as a PNG image. Tiles without any visible pixels are deleted.
+   *
+   * @param tilePath Path of the tile.
+   * @param pixels   ARGB pixels of the tile.
+   * @return Number of bytes written.
+   * @throws IOException Thrown if there is an issue writing the tile.
+   */
+  private long writeTile(Path tilePath, int[] pixels) throws IOException {
+    boolean empty = true;
+
+    for (int pixel : pixels) {
+      if (pixel != 0) {
+        empty = false;
+        break;
+      }
+    }
+
+    if (empty) {
+      Files.deleteIfExists(tilePath);
+      return 0;
+    }
+
+    BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+    image.setRGB(0, 0, TILE_SIZE, TILE_SIZE, pixels, 0, TILE_SIZE);
+
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", stream);
+    byte[] bytes = stream.toByteArray();
+
+    return manifest.write(tilePath, bytes) ? bytes.length : 0;
+  }
+
+  /**
+   * Reads the pixels of a tile.
+   *
+   * @param tilePath Path of the tile.
+   * @return ARGB pixels of the tile or transparent pixels if the tile does not
+   *         exist.
+   * @throws IOException Thrown if there is an issue reading the tile.
+   */
+  private static int[] readTile(Path tilePath) throws IOException {
+    int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+
+    if (!Files.exists(tilePath)) {
+      return pixels;
+    }
+
+    BufferedImage image = ImageIO.read(tilePath.toFile());
+
+    if (image != null && image.getWidth() == TILE_SIZE && image.getHeight() == TILE_SIZE) {
+      image.getRGB(0, 0, TILE_SIZE, TILE_SIZE, pixels, 0, TILE_SIZE);
+    }
+
+    return pixels;
+  }
+
+  /**
+   * Gets the path of a tile.
+   *
+   * @param worldName Name of the world.
+   * @param level     Zoom level of the tile.
+   * @param tileX     X coordinate of the tile.
+   * @param tileZ     Z coordinate of the tile.
+   * @return Path of the tile.
+   */
+  private Path getTilePath(String worldName, int level, int tileX, int tileZ) {
+    return tilesPath.resolve(worldName).resolve(Integer.toString(level)).resolve(tileX + "." + tileZ + ".png");
+  }
+
+  /**
+   * Applies the biome tint of a material to its color.
+   *
+   * @param material The material.
+   * @param color    Color of the material.
+   * @param biome    Biome of the block.
+   * @return The tinted color.
+   */
+  private int tint(Material material, int color, Biome biome) {
+    int tint = biomeTints.getTintColor(material, biome);
+
+    if (tint == BiomeTintTable.NO_TINT) {
+      return color;
+    }
+
+    int red = ((color >> 16) & 0xFF) * ((tint >> 16) & 0xFF) / 0xFF;
+    int green = ((color >> 8) & 0xFF) * ((tint >> 8) & 0xFF) / 0xFF;
+    int blue = (color & 0xFF) * (tint & 0xFF) / 0xFF;
+
+    return (color & 0xFF000000) | red << 16 | green << 8 | blue;
+  }
+
+  /**
+   * Scales the brightness of a color.
+   *
+   * @param color  The color.
+   * @param factor Factor to multiply each channel by.
+   * @return The scaled color.
+   */
+  private static int scale(int color, double factor) {
+    int red = Math.min((int) (((color >> 16) & 0xFF) * factor), 0xFF);
+    int green = Math.min((int) (((color >> 8) & 0xFF) * factor), 0xFF);
+    int blue = Math.min((int) ((color & 0xFF) * factor), 0xFF);
+
+    return (color & 0xFF000000) | red << 16 | green << 8 | blue;
+  }
+
+  /**
+   * Averages four colors weighted by their alpha.
+   *
+   * @return The average color.
+   */
+  private static int average(int a, int b, int c, int d) {
+    int[] colors = { a, b, c, d };
+    int alpha = 0;
+    int red = 0;
+    int green = 0;
+    int blue = 0;
+
+    for (int color : colors) {
+      int weight = color >>> 24;
+      alpha += weight;
+      red += ((color >> 16) & 0xFF) * weight;
+      green += ((color >> 8) & 0xFF) * weight;
+      blue += (color & 0xFF) * weight;
+    }
+
+    if (alpha == 0) {
+      return 0;
+    }
+
+    return (alpha / 4) << 24 | (red / alpha) << 16 | (green / alpha) << 8 | blue / alpha;
+  }
+
+  /**
+   * Packs tile coordinates into a key.
+   */
+  private static long toKey(int x, int z) {
+    return (long) x << 32 | (z & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Gets the X coordinate packed into a key.
+   */
+  private static int getX(long key) {
+    return (int) (key >> 32);
+  }
+
+  /**
+   * Gets the Z coordinate packed into a key.
+   */
+  private static int getZ(long key) {
+    return (int) key;
+  }
+}
@@ -0,0 +1,355 @@
+package com.jonathanpotts.blockmaps;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.jonathanpotts.blockmaps.models.AtlasPageModel;
+import com.jonathanpotts.blockmaps.models.AtlasTextureModel;
+import com.jonathanpotts.blockmaps.models.TextureAtlasModel;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Packs the block textures into a few power of two atlas pages so the web app
+ * loads them with a few requests and renders blocks with one material per
+ * page. Textures are packed on shelves sorted by height. Only the first frame
+ * of animated textures is packed; the number of frames and the frame time
+ * from the animation metadata are recorded in the atlas index.
+ */
+public final class TextureAtlasBuilder {
+  /**
+   * Name of the atlas index file in the textures folder.
+   */
+  public static final String FILE_NAME = "atlas.json";
+
+  /**
+   * Maximum width and height of an atlas page in pixels.
+   */
+  public static final int MAX_PAGE_SIZE = 1024;
+
+  /**
+   * Prefix of the file names of the atlas pages.
+   */
+  private static final String PAGE_FILE_PREFIX = "atlas-";
+
+  /**
+   * Prevents creating instances.
+   */
+  private TextureAtlasBuilder() {
+  }
+
+  /**
+   * Builds the atlas of the textures in the block folder of a textures folder
+   * unless it was already built from the same textures.
+   *
+   * @param texturesPath Folder containing the block textures folder.
+   * @param manifest     Manifest recording the written files.
+   * @return True if the atlas was built or false if it was up to date.
+   * @throws IOException Thrown if there is an issue reading the textures or
+   *                     writing the atlas.
+   */
+  public static boolean build(Path texturesPath, OutputManifest manifest) throws IOException {
+    Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    Path blockPath = texturesPath.resolve("block");
+    Path indexPath = texturesPath.resolve(FILE_NAME);
+
+    List<Path> files;
+
+    if (Files.exists(blockPath)) {
+      try (Stream<Path> paths = Files.list(blockPath)) {
+        files = paths.filter(p -> p.getFileName().toString().endsWith(".png")).sorted()
+            .collect(Collectors.toList());
+      }
+    } else {
+      files = new ArrayList<>();
+    }
+
+    String source = hashSources(files);
+    TextureAtlasModel existing = readIndex(gson, indexPath);
+
+    if (existing != null && source.equals(existing.source) && existing.pages != null
+        && existing.pages.stream().allMatch(page -> Files.exists(texturesPath.resolve(page.file)))) {
+      return false;
+    }
+
+    List<PackedTexture> textures = new ArrayList<>();
+
+    for (Path file : files) {
+      PackedTexture texture = readTexture(gson, file);
+
+      if (texture != null) {
+        textures.add(texture);
+      }
+    }
+
+    textures.sort(Comparator.comparingInt((PackedTexture t) -> -t.height).thenComparingInt(t -> -t.width)
+        .thenComparing(t -> t.name));
+
+    TextureAtlasModel atlas = new TextureAtlasModel();
+    atlas.source = source;
+    atlas.pages = new ArrayList<>();
+    atlas.textures = new TreeMap<>();
+
+    List<List<PackedTexture>> pages = pack(textures);
+
+    for (int pageIndex = 0; pageIndex < pages.size(); pageIndex++) {
+      List<PackedTexture> pageTextures = pages.get(pageIndex);
+      int usedWidth = 1;
+      int usedHeight = 1;
+
+      for (PackedTexture texture : pageTextures) {
+        usedWidth = Math.max(usedWidth, texture.x + texture.width);
+        usedHeight = Math.max(usedHeight, texture.y + texture.height);
+      }
+
+      int width = nextPowerOfTwo(usedWidth);
+      int height = nextPowerOfTwo(usedHeight);
+      BufferedImage page = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+      for (PackedTexture texture : pageTextures) {
+        page.setRGB(texture.x, texture.y, texture.width, texture.height, texture.pixels, 0, texture.width);
+
+        AtlasTextureModel model = new AtlasTextureModel();
+        model.page = pageIndex;
+        model.x = texture.x;
+        model.y = texture.y;
+        model.width = texture.width;
+        model.height = texture.height;
+        model.frames = texture.frames;
+        model.frametime = texture.frametime;
+        atlas.textures.put("block/" + texture.name, model);
+      }
+
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      ImageIO.write(page, "png", stream);
+
+      AtlasPageModel pageModel = new AtlasPageModel();
+      pageModel.file = PAGE_FILE_PREFIX + pageIndex + ".png";
+      pageModel.width = width;
+      pageModel.height = height;
+      atlas.pages.add(pageModel);
+
+      manifest.write(texturesPath.resolve(pageModel.file), stream.toByteArray());
+    }
+
+    // Remove pages left over from an atlas with more pages.
+    for (int pageIndex = pages.size(); Files.exists(texturesPath.resolve(PAGE_FILE_PREFIX + pageIndex + ".png"));
+        pageIndex++) {
+      Files.delete(texturesPath.resolve(PAGE_FILE_PREFIX + pageIndex + ".png"));
+    }
+
+    manifest.write(indexPath, gson.toJson(atlas).getBytes(StandardCharsets.UTF_8));
+
+    return true;
+  }
+
+  /**
+   * Places textures on shelves of pages. Textures must be sorted by height,
+   * tallest first.
+   *
+   * @param textures The textures.
+   * @return The textures of each page.
+   */
+  private static List<List<PackedTexture>> pack(List<PackedTexture> textures) {
+    List<List<PackedTexture>> pages = new ArrayList<>();
+    List<PackedTexture> page = new ArrayList<>();
+    int x = 0;
+    int y = 0;
+    int shelfHeight = 0;
+
+    for (PackedTexture texture : textures) {
+      if (x + texture.width > MAX_PAGE_SIZE) {
+        x = 0;
+        y += shelfHeight;
+        shelfHeight = 0;
+      }
+
+      if (y + texture.height > MAX_PAGE_SIZE) {
+        pages.add(page);
+        page = new ArrayList<>();
+        x = 0;
+        y = 0;
+        shelfHeight = 0;
+      }
+
+      texture.x = x;
+      texture.y = y;
+      page.add(texture);
+
+      x += texture.width;
+      shelfHeight = Math.max(shelfHeight, texture.height);
+    }
+
+    if (!page.isEmpty()) {
+      pages.add(page);
+    }
+
+    return pages;
+  }
+
+  /**
+   * Reads the first frame of a texture and its animation metadata.
+   *
+   * @param gson Gson instance used to read the animation metadata.
+   * @param file Path of the texture.
+   * @return The texture or null if it cannot be read or does not fit on a page.
+   * @throws IOException Thrown if there is an issue reading the texture.
+   */
+  private static PackedTexture readTexture(Gson gson, Path file) throws IOException {
+    BufferedImage image = ImageIO.read(file.toFile());
+
+    if (image == null || image.getWidth() > MAX_PAGE_SIZE) {
+      return null;
+    }
+
+    // Animated textures stack square frames vertically.
+    int width = image.getWidth();
+    int height = image.getHeight() > width ? width : image.getHeight();
+
+    if (height > MAX_PAGE_SIZE) {
+      return null;
+    }
+
+    PackedTexture texture = new PackedTexture();
+    String fileName = file.getFileName().toString();
+    texture.name = fileName.substring(0, fileName.length() - ".png".length());
+    texture.width = width;
+    texture.height = height;
+    texture.frames = Math.max(1, image.getHeight() / height);
+    texture.frametime = 1;
+    texture.pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+    Path metadataPath = file.resolveSibling(fileName + ".mcmeta");
+
+    if (Files.exists(metadataPath)) {
+      try {
+        JsonObject metadata = gson.fromJson(new String(Files.readAllBytes(metadataPath), StandardCharsets.UTF_8),
+            JsonObject.class);
+        JsonObject animation = metadata != null && metadata.has("animation")
+            ? metadata.getAsJsonObject("animation")
+            : null;
+
+        if (animation != null && animation.has("frametime")) {
+          texture.frametime = Math.max(1, animation.get("frametime").getAsInt());
+        }
+      } catch (JsonParseException | IllegalStateException | ClassCastException e) {
+        // Keep the default frame time for malformed metadata.
+      }
+    }
+
+    return texture;
+  }
+
+  /**
+   * Reads the existing atlas index.
+   *
+   * @param gson      Gson instance used to read the index.
+   * @param indexPath Path of the index.
+   * @return The index or null if it does not exist or cannot be read.
+   * @throws IOException Thrown if there is an issue reading the index.
+   */
+  private static TextureAtlasModel readIndex(Gson gson, Path indexPath) throws IOException {
+    if (!Files.exists(indexPath)) {
+      return null;
+    }
+
+    try {
+      return gson.fromJson(new String(Files.readAllBytes(indexPath), StandardCharsets.UTF_8),
+          TextureAtlasModel.class);
+    } catch (JsonParseException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Hashes the names, sizes and modification times of the textures and their
+   * animation metadata.
+   *
+   * @param files Paths of the textures.
+   * @return The hash as a hexadecimal string.
+   * @throws IOException Thrown if there is an issue reading the file attributes.
+   */
+  private static String hashSources(List<Path> files) throws IOException {
+    MessageDigest digest = OutputManifest.createDigest();
+    digest.update(String.valueOf(MAX_PAGE_SIZE).getBytes(StandardCharsets.UTF_8));
+
+    for (Path file : files) {
+      Path metadataPath = file.resolveSibling(file.getFileName() + ".mcmeta");
+      String signature = file.getFileName() + ":" + Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis()
+          + (Files.exists(metadataPath) ? ":" + Files.getLastModifiedTime(metadataPath).toMillis() : "") + "\n";
+      digest.update(signature.getBytes(StandardCharsets.UTF_8));
+    }
+
+    return OutputManifest.toHex(digest.digest());
+  }
+
+  /**
+   * Gets the smallest power of two that is at least a value.
+   *
+   * @param value The value.
+   * @return The power of two.
+   */
+  private static int nextPowerOfTwo(int value) {
+    return Integer.highestOneBit(value - 1) << 1;
+  }
+
+  /**
+   * A texture being packed.
+   */
+  private static class PackedTexture {
+    /**
+     * Name of the texture without its extension.
+     */
+    String name;
+
+    /**
+     * Width in pixels.
+     */
+    int width;
+
+    /**
+     * Height of a frame in pixels.
+     */
+    int height;
+
+    /**
+     * Number of animation frames.
+     */
+    int frames;
+
+    /**
+     * Number of game ticks each animation frame is shown for.
+     */
+    int frametime;
+
+    /**
+     * ARGB pixels of the first frame.
+     */
+    int[] pixels;
+
+    /**
+     * X coordinate of the texture on its page.
+     */
+    int x;
+
+    /**
+     * Y coordinate of the texture on its page.
+     */
+    int y;
+  }
+}
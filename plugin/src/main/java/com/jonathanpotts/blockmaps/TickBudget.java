@@ -0,0 +1,275 @@
+package com.jonathanpotts.blockmaps;
+
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Adapts the time spent on map data each server tick to the load of the server
+ * and runs work that has to be done on the main server thread within it.
+ *
+ * <p>
+ * The budget is the target tick duration minus the time the server spends on
+ * everything else, clamped between the minimum and maximum budget. The tick
+ * duration is read from the server on servers that report it (such as Paper).
+ * Otherwise only the interval between ticks can be measured, which rises above
+ * 50 ms once the server falls behind. In both cases the budget is halved after
+ * each late tick and grows back while ticks are on time, so it drops to the
+ * minimum within a few ticks when the server is close to being overloaded.
+ */
+public class TickBudget implements Runnable {
+  /**
+   * Nanoseconds in a millisecond.
+   */
+  private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+  /**
+   * Interval in nanoseconds between ticks after which a tick is considered
+   * late.
+   */
+  private static final long LATE_TICK_NANOS = 55_000_000L;
+
+  /**
+   * Fraction of the maximum budget the budget grows by each tick that is on
+   * time.
+   */
+  private static final double GROWTH_PER_TICK = 0.05;
+
+  /**
+   * Weight of the latest tick in the average time spent on map data each tick.
+   */
+  private static final double WORK_SMOOTHING = 0.1;
+
+  /**
+   * The server plugin running the task.
+   */
+  private final JavaPlugin plugin;
+
+  /**
+   * Minimum budget in nanoseconds.
+   */
+  private final long minBudgetNanos;
+
+  /**
+   * Maximum budget in nanoseconds.
+   */
+  private final long maxBudgetNanos;
+
+  /**
+   * Target duration of a tick in milliseconds.
+   */
+  private final double targetTickMillis;
+
+  /**
+   * Metrics recording the time spent on the main server thread.
+   */
+  private final RenderMetrics metrics;
+
+  /**
+   * Method reporting the average tick duration in milliseconds or null if the
+   * server does not report it.
+   */
+  private final Method averageTickTimeMethod;
+
+  /**
+   * Calls waiting to be run on the main server thread.
+   */
+  private final Queue<FutureTask<?>> calls = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Budget in nanoseconds that grows while ticks are on time and is halved after
+   * late ticks.
+   */
+  private double loadBudgetNanos;
+
+  /**
+   * Budget in nanoseconds of the current tick.
+   */
+  private volatile long budgetNanos;
+
+  /**
+   * Time in nanoseconds spent on map data in the current tick.
+   */
+  private volatile long usedNanos;
+
+  /**
+   * Average time in nanoseconds spent on map data each tick.
+   */
+  private double averageUsedNanos;
+
+  /**
+   * Time in nanoseconds the previous tick started at or 0 before the first tick.
+   */
+  private long lastTickNanos;
+
+  /**
+   * The scheduled task.
+   */
+  private BukkitTask task;
+
+  /**
+   * Creates a tick budget.
+   *
+   * @param plugin   The server plugin running the task.
+   * @param settings Settings containing the minimum and maximum budget and the
+   *                 target tick duration.
+   * @param metrics  Metrics recording the time spent on the main server thread.
+   */
+  public TickBudget(JavaPlugin plugin, Settings settings, RenderMetrics metrics) {
+    this.plugin = plugin;
+    this.metrics = metrics;
+    minBudgetNanos = (long) (settings.minTickBudgetMillis * NANOS_PER_MILLI);
+    maxBudgetNanos = (long) (settings.maxTickBudgetMillis * NANOS_PER_MILLI);
+    targetTickMillis = settings.targetTickMillis;
+    averageTickTimeMethod = findAverageTickTimeMethod(plugin);
+    loadBudgetNanos = minBudgetNanos;
+    budgetNanos = minBudgetNanos;
+  }
+
+  /**
+   * Schedules the task to run every tick.
+   */
+  public void start() {
+    task = plugin.getServer().getScheduler().runTaskTimer(plugin, this, 0, 1);
+  }
+
+  /**
+   * Stops the task. Calls that have not been run are cancelled.
+   */
+  public void cancel() {
+    if (task != null) {
+      task.cancel();
+    }
+
+    FutureTask<?> call;
+
+    while ((call = calls.poll()) != null) {
+      call.cancel(false);
+    }
+  }
+
+  /**
+   * Requests a call to be run on the main server thread within the budget.
+   *
+   * @param <T>      Type of the result.
+   * @param callable The call.
+   * @return Future receiving the result.
+   */
+  public <T> Future<T> callSync(Callable<T> callable) {
+    FutureTask<T> call = new FutureTask<>(callable);
+    calls.add(call);
+    return call;
+  }
+
+  /**
+   * Gets the time left in the budget of the current tick. Must be called on the
+   * main server thread.
+   *
+   * @return Time in nanoseconds, which may be negative if the budget was
+   *         exceeded.
+   */
+  public long getRemainingNanos() {
+    return budgetNanos - usedNanos;
+  }
+
+  /**
+   * Records time spent on map data in the current tick. Must be called on the
+   * main server thread.
+   *
+   * @param nanos Time in nanoseconds.
+   */
+  public void use(long nanos) {
+    usedNanos += nanos;
+  }
+
+  /**
+   * Gets the budget of the current tick.
+   *
+   * @return Budget in milliseconds.
+   */
+  public double getBudgetMillis() {
+    return budgetNanos / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public void run() {
+    long now = System.nanoTime();
+
+    if (lastTickNanos != 0) {
+      metrics.recordMainThread(usedNanos);
+      averageUsedNanos += (usedNanos - averageUsedNanos) * WORK_SMOOTHING;
+
+      if (now - lastTickNanos > LATE_TICK_NANOS) {
+        loadBudgetNanos /= 2;
+      } else {
+        loadBudgetNanos += maxBudgetNanos * GROWTH_PER_TICK;
+      }
+    }
+
+    loadBudgetNanos = Math.min(Math.max(loadBudgetNanos, minBudgetNanos), maxBudgetNanos);
+    lastTickNanos = now;
+
+    long budget = (long) loadBudgetNanos;
+    double tickMillis = getAverageTickMillis();
+
+    if (tickMillis > 0) {
+      double otherMillis = tickMillis - averageUsedNanos / NANOS_PER_MILLI;
+      budget = Math.min(budget, (long) ((targetTickMillis - otherMillis) * NANOS_PER_MILLI));
+    }
+
+    budgetNanos = Math.min(Math.max(budget, minBudgetNanos), maxBudgetNanos);
+    usedNanos = 0;
+
+    // Run at least one call each tick so calls are never starved.
+    FutureTask<?> call;
+
+    do {
+      call = calls.poll();
+
+      if (call == null) {
+        break;
+      }
+
+      call.run();
+      usedNanos = System.nanoTime() - now;
+    } while (usedNanos < budgetNanos);
+  }
+
+  /**
+   * Gets the average duration of recent ticks reported by the server.
+   *
+   * @return Duration in milliseconds or 0 if the server does not report it.
+   */
+  private double getAverageTickMillis() {
+    if (averageTickTimeMethod == null) {
+      return 0;
+    }
+
+    try {
+      return ((Number) averageTickTimeMethod.invoke(plugin.getServer())).doubleValue();
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Finds the method reporting the average tick duration, which is not part of
+   * the Bukkit API.
+   *
+   * @param plugin The server plugin running the task.
+   * @return The method or null if the server does not have it.
+   */
+  private static Method findAverageTickTimeMethod(JavaPlugin plugin) {
+    try {
+      return plugin.getServer().getClass().getMethod("getAverageTickTime");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package com.jonathanpotts.blockmaps.models;
+
+import java.util.List;
+
+/**
+ * Stores the state of the Minecraft client asset cache.
+ */
+public class AssetCacheModel {
+  /**
+   * ID of the cached Minecraft version.
+   */
+  public String versionId;
+
+  /**
+   * Location of the cached release manifest.
+   */
+  public String releaseManifestUrl;
+
+  /**
+   * SHA-1 hash of the cached client jar.
+   */
+  public String clientSha1;
+
+  /**
+   * SHA-1 hash of the client jar the assets were last extracted from.
+   */
+  public String extractedSha1;
+
+  /**
+   * Extracted files relative to the web app folder.
+   */
+  public List<String> extractedFiles;
+}
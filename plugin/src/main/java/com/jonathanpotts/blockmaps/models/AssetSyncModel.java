@@ -0,0 +1,15 @@
+package com.jonathanpotts.blockmaps.models;
+
+import java.util.Map;
+
+/**
+ * Stores the files written by each asset sync and the entries they were
+ * copied from.
+ */
+public class AssetSyncModel {
+  /**
+   * Signatures of the source entries (CRC-32 and size) of the synced files by
+   * path relative to the plugin data folder by sync name.
+   */
+  public Map<String, Map<String, String>> syncs;
+}
@@ -0,0 +1,21 @@
+package com.jonathanpotts.blockmaps.models;
+
+/**
+ * Stores a page of the block texture atlas.
+ */
+public class AtlasPageModel {
+  /**
+   * File name of the page image relative to the textures folder.
+   */
+  public String file;
+
+  /**
+   * Width of the page in pixels.
+   */
+  public Integer width;
+
+  /**
+   * Height of the page in pixels.
+   */
+  public Integer height;
+}
@@ -0,0 +1,42 @@
+package com.jonathanpotts.blockmaps.models;
+
+/**
+ * Stores where a texture is packed in the block texture atlas. Only the first
+ * frame of animated textures is packed.
+ */
+public class AtlasTextureModel {
+  /**
+   * Index of the page containing the texture.
+   */
+  public Integer page;
+
+  /**
+   * X coordinate of the left edge of the texture in pixels.
+   */
+  public Integer x;
+
+  /**
+   * Y coordinate of the top edge of the texture in pixels.
+   */
+  public Integer y;
+
+  /**
+   * Width of the texture in pixels.
+   */
+  public Integer width;
+
+  /**
+   * Height of a frame of the texture in pixels.
+   */
+  public Integer height;
+
+  /**
+   * Number of animation frames stacked vertically in the texture file.
+   */
+  public Integer frames;
+
+  /**
+   * Number of game ticks each animation frame is shown for.
+   */
+  public Integer frametime;
+}
@@ -0,0 +1,23 @@
+package com.jonathanpotts.blockmaps.models;
+
+import java.util.List;
+
+/**
+ * Stores the biomes of a chunk sampled in cells of 4x4x4 blocks.
+ */
+public class BiomeGridModel {
+  /**
+   * Y coordinate of the bottom of the lowest cell.
+   */
+  public Integer minY;
+
+  /**
+   * Biome ordinals referenced by the cells.
+   */
+  public List<Integer> palette;
+
+  /**
+   * Palette indices of the cells in YZX order.
+   */
+  public int[] cells;
+}
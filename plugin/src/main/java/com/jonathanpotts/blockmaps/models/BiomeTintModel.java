@@ -0,0 +1,36 @@
+package com.jonathanpotts.blockmaps.models;
+
+/**
+ * Stores the climate and tint colors of a biome.
+ */
+public class BiomeTintModel {
+  /**
+   * Name of the biome.
+   */
+  public String name;
+
+  /**
+   * Temperature of the biome.
+   */
+  public Double temperature;
+
+  /**
+   * Humidity of the biome.
+   */
+  public Double humidity;
+
+  /**
+   * Grass tint color as RGB.
+   */
+  public Integer grass;
+
+  /**
+   * Foliage tint color as RGB.
+   */
+  public Integer foliage;
+
+  /**
+   * Water tint color as RGB.
+   */
+  public Integer water;
+}
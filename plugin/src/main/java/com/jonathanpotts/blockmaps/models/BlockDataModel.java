@@ -5,14 +5,9 @@ package com.jonathanpotts.blockmaps.models;
  */
 public class BlockDataModel {
   /**
-   * Material ID ordinal.
+   * Block state ID in the block state table.
    */
-  public Integer material;
-
-  /**
-   * Additional block data.
-   */
-  public String data;
+  public Integer state;
 
   /**
    * Sky light value.
@@ -23,19 +18,4 @@ public class BlockDataModel {
    * Emitted light value.
    */
   public Integer emittedLight;
-
-  /**
-   * Biome containing the block.
-   */
-  public Integer biome;
-
-  /**
-   * Temperature at the block.
-   */
-  public Double temperature;
-
-  /**
-   * Humidity at the block.
-   */
-  public Double humidity;
 }
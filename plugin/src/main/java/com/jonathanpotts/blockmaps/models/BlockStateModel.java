@@ -0,0 +1,21 @@
+package com.jonathanpotts.blockmaps.models;
+
+/**
+ * Stores data used to process a block state.
+ */
+public class BlockStateModel {
+  /**
+   * Full block state string used to match block states between refreshes.
+   */
+  public String name;
+
+  /**
+   * Material ID ordinal.
+   */
+  public Integer material;
+
+  /**
+   * Additional block data.
+   */
+  public String data;
+}
@@ -0,0 +1,18 @@
+package com.jonathanpotts.blockmaps.models;
+
+import java.util.Map;
+
+/**
+ * Stores data used to process a chunk.
+ */
+public class ChunkModel {
+  /**
+   * Blocks keyed by Y, X and Z coordinates.
+   */
+  public Map<Integer, Map<Integer, Map<Integer, BlockDataModel>>> blocks;
+
+  /**
+   * Biomes of the chunk.
+   */
+  public BiomeGridModel biomes;
+}
@@ -0,0 +1,28 @@
+package com.jonathanpotts.blockmaps.models;
+
+import java.util.List;
+
+/**
+ * Describes the changes contained in a delta bundle.
+ */
+public class DeltaModel {
+  /**
+   * Generation the changes are relative to.
+   */
+  public Long fromGeneration;
+
+  /**
+   * Generation the changes lead to.
+   */
+  public Long toGeneration;
+
+  /**
+   * Paths relative to the web app folder of the files that were changed.
+   */
+  public List<String> changed;
+
+  /**
+   * Paths relative to the web app folder of the files that were removed.
+   */
+  public List<String> removed;
+}
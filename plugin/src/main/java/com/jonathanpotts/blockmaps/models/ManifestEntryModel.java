@@ -0,0 +1,21 @@
+package com.jonathanpotts.blockmaps.models;
+
+/**
+ * Stores the content hash of a file generated for the web app.
+ */
+public class ManifestEntryModel {
+  /**
+   * SHA-1 hash of the file contents.
+   */
+  public String hash;
+
+  /**
+   * Size of the file in bytes.
+   */
+  public Long size;
+
+  /**
+   * Generation the file last changed in.
+   */
+  public Long generation;
+}
@@ -0,0 +1,29 @@
+package com.jonathanpotts.blockmaps.models;
+
+import java.util.Map;
+
+/**
+ * Stores the content hashes of the files generated for the web app.
+ */
+public class ManifestModel {
+  /**
+   * Generation of the last refresh.
+   */
+  public Long generation;
+
+  /**
+   * Files keyed by their path relative to the web app folder.
+   */
+  public Map<String, ManifestEntryModel> files;
+
+  /**
+   * Generation each removed file was removed in keyed by its path relative to
+   * the web app folder.
+   */
+  public Map<String, Long> removed;
+
+  /**
+   * Latest generation whose removed files are no longer recorded.
+   */
+  public Long removedPrunedGeneration;
+}
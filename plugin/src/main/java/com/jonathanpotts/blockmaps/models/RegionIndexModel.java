@@ -0,0 +1,15 @@
+package com.jonathanpotts.blockmaps.models;
+
+import java.util.Map;
+
+/**
+ * Maps the chunks of a region to their content-addressed chunk files.
+ */
+public class RegionIndexModel {
+  /**
+   * SHA-1 hashes of the chunk files keyed by chunk file extension without the
+   * leading dot (such as "json.gz") and then by chunk coordinates formatted as
+   * "x.z".
+   */
+  public Map<String, Map<String, String>> chunks;
+}
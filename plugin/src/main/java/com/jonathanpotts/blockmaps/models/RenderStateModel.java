@@ -0,0 +1,19 @@
+package com.jonathanpotts.blockmaps.models;
+
+import java.util.Map;
+
+/**
+ * Stores when the worlds were last fully rendered.
+ */
+public class RenderStateModel {
+  /**
+   * Plugin version and settings affecting the output of the last full render.
+   */
+  public String fingerprint;
+
+  /**
+   * Time in seconds since the epoch the last full render of each world started
+   * at by world name.
+   */
+  public Map<String, Long> renderTimes;
+}
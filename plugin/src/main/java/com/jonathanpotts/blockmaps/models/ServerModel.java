@@ -11,6 +11,22 @@ public class ServerModel {
    */
   public String motd;
 
+  /**
+   * Format of the chunk files ("json" or "binary").
+   */
+  public String chunkFormat;
+
+  /**
+   * Layout of the chunk files ("files", "region-pack" or
+   * "content-addressed").
+   */
+  public String chunkLayout;
+
+  /**
+   * Status of chunk meshes being written alongside the chunk files.
+   */
+  public Boolean meshes;
+
   /**
    * Worlds on the server.
    */
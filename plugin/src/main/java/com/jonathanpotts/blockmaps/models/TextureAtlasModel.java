@@ -0,0 +1,26 @@
+package com.jonathanpotts.blockmaps.models;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the pages of the block texture atlas and where each texture is
+ * packed.
+ */
+public class TextureAtlasModel {
+  /**
+   * SHA-1 hash of the names, sizes and modification times of the textures the
+   * atlas was built from.
+   */
+  public String source;
+
+  /**
+   * Pages of the atlas.
+   */
+  public List<AtlasPageModel> pages;
+
+  /**
+   * Packed textures by texture name (e.g. "block/stone").
+   */
+  public Map<String, AtlasTextureModel> textures;
+}
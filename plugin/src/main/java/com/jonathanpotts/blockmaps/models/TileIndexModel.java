@@ -0,0 +1,18 @@
+package com.jonathanpotts.blockmaps.models;
+
+import java.util.List;
+
+/**
+ * Lists the surface tiles of a world.
+ */
+public class TileIndexModel {
+  /**
+   * Width and height of a tile in pixels.
+   */
+  public Integer tileSize;
+
+  /**
+   * Coordinates of the tiles of each zoom level formatted as "x.z".
+   */
+  public List<List<String>> levels;
+}
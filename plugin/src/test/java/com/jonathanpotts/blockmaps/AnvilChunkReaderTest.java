@@ -0,0 +1,345 @@
+package com.jonathanpotts.blockmaps;
+
+import static com.jonathanpotts.blockmaps.SyntheticRegionFiles.compound;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link AnvilChunkReader}.
+ */
+public class AnvilChunkReaderTest {
+  /**
+   * Coordinates of the chunk in the test region files.
+   */
+  private static final VectorXZ CHUNK = new VectorXZ(3, 5);
+
+  /**
+   * Number of bytes of packed light levels of a section.
+   */
+  private static final int LIGHT_BYTES = AnvilChunkSnapshot.BLOCKS_PER_SECTION / 2;
+
+  /**
+   * Folder containing the test region files.
+   */
+  @TempDir
+  Path folder;
+
+  @BeforeAll
+  public static void installServer() {
+    SyntheticRegionFiles.installServer();
+  }
+
+  @Test
+  public void readsLegacyChunk() throws IOException {
+    int[] indices = new int[AnvilChunkSnapshot.BLOCKS_PER_SECTION];
+    indices[blockIndex(0, 0, 0)] = 1;
+    indices[blockIndex(1, 0, 0)] = 2;
+
+    byte[] blockLight = new byte[LIGHT_BYTES];
+    blockLight[0] = 0x7F;
+
+    int[] biomes = new int[1024];
+    Arrays.fill(biomes, 1);
+    biomes[0] = 2;
+
+    Map<String, Object> section = compound(
+        "Y", (byte) 0,
+        "Palette", Arrays.asList(block("minecraft:air"), block("minecraft:stone"),
+            block("minecraft:oak_log", compound("axis", "y"))),
+        "BlockStates", SyntheticRegionFiles.pack(indices, 4),
+        "BlockLight", blockLight,
+        "SkyLight", filled(0x33));
+
+    Map<String, Object> root = compound("Level", compound(
+        "Status", "full",
+        "isLightOn", (byte) 1,
+        "Sections", Collections.singletonList(section),
+        "Biomes", biomes,
+        "LastUpdate", 1234L));
+
+    AnvilChunkSnapshot snapshot = read(root, World.Environment.NORMAL, 0, 256);
+
+    assertEquals(Material.STONE, snapshot.getBlockType(0, 0, 0));
+    assertEquals("minecraft:oak_log[axis=y]", snapshot.getBlockData(1, 0, 0).getAsString());
+    assertEquals(Material.AIR, snapshot.getBlockType(2, 0, 0));
+    assertEquals(Material.AIR, snapshot.getBlockType(0, 100, 0));
+    assertEquals(15, snapshot.getBlockEmittedLight(0, 0, 0));
+    assertEquals(7, snapshot.getBlockEmittedLight(1, 0, 0));
+    assertEquals(0, snapshot.getBlockEmittedLight(0, 100, 0));
+    assertEquals(3, snapshot.getBlockSkyLight(5, 5, 5));
+    assertEquals(15, snapshot.getBlockSkyLight(5, 100, 5));
+    assertEquals(Biome.DESERT, snapshot.getBiome(0, 0, 0));
+    assertEquals(Biome.PLAINS, snapshot.getBiome(4, 0, 0));
+    assertEquals(0, snapshot.getHighestBlockYAt(0, 0));
+    assertFalse(snapshot.isSectionEmpty(0));
+    assertTrue(snapshot.isSectionEmpty(1));
+    assertEquals(1234L, snapshot.getCaptureFullTime());
+  }
+
+  @Test
+  public void readsChunkWithSectionPalettes() throws IOException {
+    int[] indices = new int[AnvilChunkSnapshot.BLOCKS_PER_SECTION];
+    indices[blockIndex(0, 0, 0)] = 1;
+    indices[blockIndex(1, 0, 0)] = 2;
+    indices[blockIndex(0, 1, 0)] = 1;
+
+    int[] biomeIndices = new int[64];
+    biomeIndices[0] = 1;
+
+    byte[] skyLight = filled(0xFF);
+    Arrays.fill(skyLight, 0, 128, (byte) 0x99);
+
+    List<Object> sections = new ArrayList<>();
+    sections.add(compound("Y", (byte) -5, "SkyLight", filled(0x00)));
+    sections.add(compound(
+        "Y", (byte) -4,
+        "block_states", compound("palette", Collections.singletonList(block("minecraft:stone"))),
+        "biomes", compound("palette", Collections.singletonList("minecraft:plains"))));
+    sections.add(compound(
+        "Y", (byte) -3,
+        "block_states", compound(
+            "palette", Arrays.asList(block("minecraft:air"), block("minecraft:stone"),
+                block("minecraft:oak_log", compound("axis", "x"))),
+            "data", SyntheticRegionFiles.pack(indices, 4)),
+        "biomes", compound(
+            "palette", Arrays.asList("minecraft:plains", "minecraft:desert"),
+            "data", SyntheticRegionFiles.pack(biomeIndices, 1))));
+
+    for (int y = -2; y < 20; y++) {
+      Map<String, Object> section = emptySection(y);
+
+      if (y == 0) {
+        section.put("SkyLight", skyLight);
+      }
+
+      sections.add(section);
+    }
+
+    Map<String, Object> root = compound(
+        "Status", "minecraft:full",
+        "isLightOn", (byte) 1,
+        "sections", sections,
+        "LastUpdate", 99L);
+
+    AnvilChunkSnapshot snapshot = read(root, World.Environment.NORMAL, -64, 320);
+
+    assertEquals(Material.STONE, snapshot.getBlockType(7, -64, 7));
+    assertEquals(Material.STONE, snapshot.getBlockType(0, -48, 0));
+    assertEquals(Material.STONE, snapshot.getBlockType(0, -47, 0));
+    assertEquals("minecraft:oak_log[axis=x]", snapshot.getBlockData(1, -48, 0).getAsString());
+    assertEquals(Material.AIR, snapshot.getBlockType(5, -48, 5));
+    assertEquals(Material.AIR, snapshot.getBlockType(5, 319, 5));
+    assertEquals(-49, snapshot.getHighestBlockYAt(5, 5));
+    assertEquals(-47, snapshot.getHighestBlockYAt(0, 0));
+    assertEquals(Biome.PLAINS, snapshot.getBiome(0, -64, 0));
+    assertEquals(Biome.DESERT, snapshot.getBiome(0, -48, 0));
+    assertEquals(Biome.PLAINS, snapshot.getBiome(4, -48, 0));
+    assertEquals(99L, snapshot.getCaptureFullTime());
+
+    assertEquals(9, snapshot.getBlockSkyLight(3, 0, 3));
+    assertEquals(15, snapshot.getBlockSkyLight(3, 1, 3));
+    assertEquals(9, snapshot.getBlockSkyLight(3, -1, 3));
+    assertEquals(9, snapshot.getBlockSkyLight(3, -64, 3));
+    assertEquals(15, snapshot.getBlockSkyLight(3, 100, 3));
+  }
+
+  @Test
+  public void missingSkyLightIsDarkWithoutSky() throws IOException {
+    Map<String, Object> root = compound(
+        "Status", "full",
+        "isLightOn", (byte) 1,
+        "sections", Collections.singletonList(emptySection(0)));
+
+    AnvilChunkSnapshot snapshot = read(root, World.Environment.NETHER, 0, 16);
+
+    assertEquals(0, snapshot.getBlockSkyLight(0, 0, 0));
+  }
+
+  @Test
+  public void partiallyGeneratedChunkIsMissing() throws IOException {
+    Map<String, Object> root = compound(
+        "Status", "minecraft:features",
+        "isLightOn", (byte) 1,
+        "sections", Collections.singletonList(emptySection(0)));
+
+    assertNull(read(root, World.Environment.NORMAL, 0, 16));
+  }
+
+  @Test
+  public void unsavedChunkIsMissing() throws IOException {
+    Path path = folder.resolve("r.0.0.mca");
+    SyntheticRegionFiles.writeRegion(path, Collections.emptyMap(), 0);
+
+    assertNull(new AnvilChunkReader().read(new AnvilRegionFile(path), capture(path, World.Environment.NORMAL, 0,
+        16)));
+  }
+
+  @Test
+  public void rejectsChunkWithoutLight() throws IOException {
+    Map<String, Object> root = compound(
+        "Status", "full",
+        "isLightOn", (byte) 0,
+        "sections", Collections.singletonList(emptySection(0)));
+
+    assertThrows(IOException.class, () -> read(root, World.Environment.NORMAL, 0, 16));
+  }
+
+  @Test
+  public void rejectsChunkWithoutBiomes() throws IOException {
+    Map<String, Object> root = compound(
+        "Status", "full",
+        "isLightOn", (byte) 1,
+        "sections", Collections.singletonList(compound(
+            "Y", (byte) 0,
+            "block_states", compound("palette", Collections.singletonList(block("minecraft:air"))))));
+
+    assertThrows(IOException.class, () -> read(root, World.Environment.NORMAL, 0, 16));
+  }
+
+  @Test
+  public void rejectsPaletteIndexOutOfRange() throws IOException {
+    int[] indices = new int[AnvilChunkSnapshot.BLOCKS_PER_SECTION];
+    indices[100] = 3;
+
+    assertThrows(IOException.class, () -> read(sectionWithBlockData(SyntheticRegionFiles.pack(indices, 4)),
+        World.Environment.NORMAL, 0, 16));
+  }
+
+  @Test
+  public void rejectsBlockDataOfWrongLength() throws IOException {
+    assertThrows(IOException.class, () -> read(sectionWithBlockData(new long[3]), World.Environment.NORMAL, 0,
+        16));
+  }
+
+  /**
+   * Writes a chunk to a region file and reads it back.
+   *
+   * @param root        The root compound of the chunk.
+   * @param environment Environment of the world containing the chunk.
+   * @param minHeight   Minimum height of the world.
+   * @param maxHeight   Maximum height of the world.
+   * @return A snapshot of the chunk or null if the chunk is missing.
+   * @throws IOException Thrown if the chunk could not be written, read or
+   *                     decoded.
+   */
+  private AnvilChunkSnapshot read(Map<String, Object> root, World.Environment environment, int minHeight,
+      int maxHeight) throws IOException {
+    Path path = folder.resolve("r.0.0.mca");
+    SyntheticRegionFiles.writeRegion(path,
+        Collections.singletonMap(CHUNK, SyntheticRegionFiles.storeChunk(root, SyntheticRegionFiles.ZLIB)), 0);
+
+    return new AnvilChunkReader().read(new AnvilRegionFile(path), capture(path, environment, minHeight,
+        maxHeight));
+  }
+
+  /**
+   * Creates a request to read the test chunk from a region file.
+   *
+   * @param path        Path of the region file.
+   * @param environment Environment of the world containing the chunk.
+   * @param minHeight   Minimum height of the world.
+   * @param maxHeight   Maximum height of the world.
+   * @return The requested chunk.
+   */
+  private static CapturedChunk capture(Path path, World.Environment environment, int minHeight, int maxHeight) {
+    RegionBatch region = new RegionBatch(SyntheticRegionFiles.createWorld("world", environment),
+        RegionBatch.getRegionCoordinates(CHUNK));
+    return new CapturedChunk(region, CHUNK, new AnvilRegionFile(path), minHeight, maxHeight);
+  }
+
+  /**
+   * Creates a chunk with one section using a three block palette.
+   *
+   * @param data Packed palette indices of the section.
+   * @return The root compound of the chunk.
+   */
+  private static Map<String, Object> sectionWithBlockData(long[] data) {
+    return compound(
+        "Status", "full",
+        "isLightOn", (byte) 1,
+        "sections", Collections.singletonList(compound(
+            "Y", (byte) 0,
+            "block_states", compound(
+                "palette", Arrays.asList(block("minecraft:air"), block("minecraft:stone"),
+                    block("minecraft:dirt")),
+                "data", data),
+            "biomes", compound("palette", Collections.singletonList("minecraft:plains")))));
+  }
+
+  /**
+   * Creates a section containing only air in the plains biome.
+   *
+   * @param y Y coordinate of the section.
+   * @return The section.
+   */
+  private static Map<String, Object> emptySection(int y) {
+    return compound(
+        "Y", (byte) y,
+        "block_states", compound("palette", Collections.singletonList(block("minecraft:air"))),
+        "biomes", compound("palette", Collections.singletonList("minecraft:plains")));
+  }
+
+  /**
+   * Creates a block palette entry.
+   *
+   * @param name Name of the block.
+   * @return The palette entry.
+   */
+  private static Map<String, Object> block(String name) {
+    return compound("Name", name);
+  }
+
+  /**
+   * Creates a block palette entry with properties.
+   *
+   * @param name       Name of the block.
+   * @param properties Properties of the block.
+   * @return The palette entry.
+   */
+  private static Map<String, Object> block(String name, Map<String, Object> properties) {
+    return compound("Name", name, "Properties", properties);
+  }
+
+  /**
+   * Creates packed light levels of a section where every byte has a value.
+   *
+   * @param value Value of every byte.
+   * @return The packed light levels.
+   */
+  private static byte[] filled(int value) {
+    byte[] light = new byte[LIGHT_BYTES];
+    Arrays.fill(light, (byte) value);
+    return light;
+  }
+
+  /**
+   * Gets the index of a block within its section.
+   *
+   * @param x X coordinate of the block in the chunk.
+   * @param y Y coordinate of the block in the section.
+   * @param z Z coordinate of the block in the chunk.
+   * @return Index of the block in YZX order.
+   */
+  private static int blockIndex(int x, int y, int z) {
+    return (y * Constants.DEPTH_OF_CHUNK + z) * Constants.WIDTH_OF_CHUNK + x;
+  }
+}
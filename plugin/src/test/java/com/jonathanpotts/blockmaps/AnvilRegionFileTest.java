@@ -0,0 +1,189 @@
+package com.jonathanpotts.blockmaps;
+
+import static com.jonathanpotts.blockmaps.SyntheticRegionFiles.compound;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tests for {@link AnvilRegionFile}.
+ */
+public class AnvilRegionFileTest {
+  /**
+   * Timestamp stored for the chunks of the test region files.
+   */
+  private static final int TIMESTAMP = 1_600_000_000;
+
+  /**
+   * Folder containing the test region files.
+   */
+  @TempDir
+  Path folder;
+
+  @Test
+  public void missingFileHasNoChunks() throws IOException {
+    AnvilRegionFile regionFile = new AnvilRegionFile(folder.resolve("r.0.0.mca"));
+    AnvilRegionFile.Header header = regionFile.readHeader();
+
+    for (int i = 0; i < RegionBatch.CHUNKS_PER_REGION; i++) {
+      assertFalse(header.isPresent(i));
+    }
+
+    assertNull(regionFile.readChunk(new VectorXZ(0, 0)));
+  }
+
+  @Test
+  public void fileSmallerThanHeaderHasNoChunks() throws IOException {
+    Path path = folder.resolve("r.0.0.mca");
+    Files.write(path, new byte[100]);
+
+    assertFalse(new AnvilRegionFile(path).readHeader().isPresent(0));
+  }
+
+  @Test
+  public void readsSectorTable() throws IOException {
+    VectorXZ first = new VectorXZ(-1, -1);
+    VectorXZ second = new VectorXZ(-32, -31);
+    Map<VectorXZ, byte[]> chunks = new LinkedHashMap<>();
+    chunks.put(first, SyntheticRegionFiles.storeChunk(compound("id", 1), SyntheticRegionFiles.ZLIB));
+    chunks.put(second, SyntheticRegionFiles.storeChunk(compound("id", 2), SyntheticRegionFiles.ZLIB));
+
+    Path path = folder.resolve("r.-1.-1.mca");
+    SyntheticRegionFiles.writeRegion(path, chunks, TIMESTAMP);
+
+    AnvilRegionFile regionFile = new AnvilRegionFile(path);
+    AnvilRegionFile.Header header = regionFile.readHeader();
+
+    assertTrue(header.isPresent(RegionBatch.getChunkIndex(first)));
+    assertTrue(header.isPresent(RegionBatch.getChunkIndex(second)));
+    assertFalse(header.isPresent(0));
+    assertEquals(TIMESTAMP, header.getTimestamp(RegionBatch.getChunkIndex(first)));
+    assertEquals(0, header.getTimestamp(0));
+
+    assertEquals(1, regionFile.readChunk(first).get("id"));
+    assertEquals(2, regionFile.readChunk(second).get("id"));
+    assertNull(regionFile.readChunk(new VectorXZ(-2, -1)));
+  }
+
+  @Test
+  public void readsChunksSpanningSeveralSectors() throws IOException {
+    long[] data = new long[2048];
+    Arrays.fill(data, 0x0123456789ABCDEFL);
+    Path path = writeSingleChunk(SyntheticRegionFiles.storeChunk(compound("data", data), SyntheticRegionFiles.NONE));
+
+    assertTrue(Arrays.equals(data, (long[]) new AnvilRegionFile(path).readChunk(new VectorXZ(0, 0)).get("data")));
+  }
+
+  @Test
+  public void readsGzipChunks() throws IOException {
+    assertReadsCompression(SyntheticRegionFiles.GZIP);
+  }
+
+  @Test
+  public void readsZlibChunks() throws IOException {
+    assertReadsCompression(SyntheticRegionFiles.ZLIB);
+  }
+
+  @Test
+  public void readsUncompressedChunks() throws IOException {
+    assertReadsCompression(SyntheticRegionFiles.NONE);
+  }
+
+  @Test
+  public void readsExternalChunks() throws IOException {
+    Path path = writeSingleChunk(new byte[] { (byte) (SyntheticRegionFiles.EXTERNAL | SyntheticRegionFiles.ZLIB) });
+    Files.write(folder.resolve("c.0.0.mcc"), SyntheticRegionFiles.compress(
+        NbtWriter.writeRoot(compound("Status", "full")), SyntheticRegionFiles.ZLIB));
+
+    assertEquals("full", new AnvilRegionFile(path).readChunk(new VectorXZ(0, 0)).get("Status"));
+  }
+
+  @Test
+  public void rejectsInvalidLength() throws IOException {
+    Path path = writeSingleChunk(SyntheticRegionFiles.storeChunk(compound("id", 1), SyntheticRegionFiles.ZLIB));
+    overwriteInt(path, 2 * 4096, 5 * 4096);
+
+    assertThrows(IOException.class, () -> new AnvilRegionFile(path).readChunk(new VectorXZ(0, 0)));
+  }
+
+  @Test
+  public void rejectsUnsupportedCompression() throws IOException {
+    Path path = writeSingleChunk(SyntheticRegionFiles.storeChunk(compound("id", 1), 4));
+
+    assertThrows(IOException.class, () -> new AnvilRegionFile(path).readChunk(new VectorXZ(0, 0)));
+  }
+
+  @Test
+  public void rejectsCorruptCompressedData() throws IOException {
+    byte[] stored = SyntheticRegionFiles.storeChunk(compound("id", 1), SyntheticRegionFiles.GZIP);
+    Arrays.fill(stored, 1, stored.length, (byte) 0x55);
+    Path path = writeSingleChunk(stored);
+
+    assertThrows(IOException.class, () -> new AnvilRegionFile(path).readChunk(new VectorXZ(0, 0)));
+  }
+
+  @Test
+  public void rejectsTruncatedFile() throws IOException {
+    Path path = writeSingleChunk(SyntheticRegionFiles.storeChunk(compound("id", 1), SyntheticRegionFiles.ZLIB));
+    byte[] contents = Files.readAllBytes(path);
+    Files.write(path, Arrays.copyOf(contents, 2 * 4096 + 2));
+
+    assertThrows(IOException.class, () -> new AnvilRegionFile(path).readChunk(new VectorXZ(0, 0)));
+  }
+
+  /**
+   * Writes a region file containing a chunk, reads it back and checks its
+   * contents.
+   *
+   * @param compression Compression type of the chunk.
+   * @throws IOException Thrown if the region file could not be written or read.
+   */
+  private void assertReadsCompression(int compression) throws IOException {
+    Map<String, Object> root = compound("Level", compound("Status", "full", "LastUpdate", 42L));
+    Path path = writeSingleChunk(SyntheticRegionFiles.storeChunk(root, compression));
+
+    assertEquals(root, new AnvilRegionFile(path).readChunk(new VectorXZ(0, 0)));
+  }
+
+  /**
+   * Writes a region file containing chunk 0,0.
+   *
+   * @param stored The compression type and compressed data of the chunk.
+   * @return Path of the region file.
+   * @throws IOException Thrown if the region file could not be written.
+   */
+  private Path writeSingleChunk(byte[] stored) throws IOException {
+    Path path = folder.resolve("r.0.0.mca");
+    SyntheticRegionFiles.writeRegion(path, Collections.singletonMap(new VectorXZ(0, 0), stored), TIMESTAMP);
+    return path;
+  }
+
+  /**
+   * Overwrites a big-endian integer in a file.
+   *
+   * @param path     Path of the file.
+   * @param position Position of the integer.
+   * @param value    The new value.
+   * @throws IOException Thrown if the file could not be rewritten.
+   */
+  private static void overwriteInt(Path path, int position, int value) throws IOException {
+    ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(path));
+    contents.putInt(position, value);
+    Files.write(path, contents.array());
+  }
+}
@@ -0,0 +1,142 @@
+package com.jonathanpotts.blockmaps;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests for {@link GzipFileWriter}.
+ */
+public class GzipFileWriterTest {
+  /**
+   * Uncompressed data written by the tests.
+   */
+  private static final byte[] DATA = "{\"blocks\":[1,2,3]}".getBytes(StandardCharsets.UTF_8);
+
+  /**
+   * Folder containing the written files.
+   */
+  @TempDir
+  Path folder;
+
+  @Test
+  public void writesCompressedFile() throws IOException {
+    Path filePath = folder.resolve("chunks").resolve("0.0.json.gz");
+
+    try (GzipFileWriter writer = createWriter()) {
+      long written = writer.write(filePath, stream -> stream.write(DATA));
+
+      assertEquals(Files.size(filePath), written);
+    }
+
+    assertArrayEquals(DATA, decompress(filePath));
+    assertFalse(Files.exists(filePath.resolveSibling("0.0.json.gz.tmp")));
+  }
+
+  @Test
+  public void skipsUnchangedFileWithoutWritingIt() throws IOException {
+    Path filePath = folder.resolve("0.0.json.gz");
+
+    try (GzipFileWriter writer = createWriter()) {
+      writer.write(filePath, stream -> stream.write(DATA));
+
+      // Creating the temporary file fails while a folder has its name.
+      Files.createDirectory(filePath.resolveSibling("0.0.json.gz.tmp"));
+
+      assertEquals(0, writer.write(filePath, stream -> stream.write(DATA)));
+    }
+
+    assertArrayEquals(DATA, decompress(filePath));
+  }
+
+  @Test
+  public void rewritesChangedFile() throws IOException {
+    Path filePath = folder.resolve("0.0.json.gz");
+    byte[] changed = "{\"blocks\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    try (GzipFileWriter writer = createWriter()) {
+      writer.write(filePath, stream -> stream.write(DATA));
+
+      assertTrue(writer.write(filePath, stream -> stream.write(changed)) > 0);
+    }
+
+    assertArrayEquals(changed, decompress(filePath));
+  }
+
+  @Test
+  public void writesBlobOnce() throws IOException {
+    Path blobsPath = folder.resolve("blobs");
+
+    try (GzipFileWriter writer = createWriter()) {
+      GzipFileWriter.Blob first = writer.writeBlob(blobsPath, ".json.gz", stream -> stream.write(DATA));
+      GzipFileWriter.Blob second = writer.writeBlob(blobsPath, ".json.gz", stream -> stream.write(DATA));
+      Path blobPath = RegionIndexWriter.getBlobPath(blobsPath, first.hash, ".json.gz");
+
+      assertEquals(Files.size(blobPath), first.bytesWritten);
+      assertEquals(first.hash, second.hash);
+      assertEquals(0, second.bytesWritten);
+      assertArrayEquals(DATA, decompress(blobPath));
+    }
+  }
+
+  @Test
+  public void writesFilesAfterLargeFile() throws IOException {
+    Random random = new Random(42);
+    byte[] large = new byte[4 * 1024 * 1024];
+    random.nextBytes(large);
+    Path largePath = folder.resolve("large.json.gz");
+    Path smallPath = folder.resolve("small.json.gz");
+
+    try (GzipFileWriter writer = createWriter()) {
+      writer.write(largePath, stream -> stream.write(large));
+      writer.write(smallPath, stream -> stream.write(DATA));
+    }
+
+    assertArrayEquals(large, decompress(largePath));
+    assertArrayEquals(DATA, decompress(smallPath));
+  }
+
+  /**
+   * Creates a writer recording files in a manifest of the test folder.
+   *
+   * @return The writer.
+   */
+  private GzipFileWriter createWriter() {
+    return new GzipFileWriter(new OutputManifest(folder), -1, GzipFileWriter.SyncMode.NONE, new RenderMetrics());
+  }
+
+  /**
+   * Reads and decompresses a GZIP-compressed file.
+   *
+   * @param filePath Path of the file.
+   * @return The uncompressed data.
+   * @throws IOException Thrown if the file could not be read.
+   */
+  private static byte[] decompress(Path filePath) throws IOException {
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+    try (InputStream input = new GZIPInputStream(Files.newInputStream(filePath))) {
+      byte[] buffer = new byte[4096];
+      int length;
+
+      while ((length = input.read(buffer)) > 0) {
+        data.write(buffer, 0, length);
+      }
+    }
+
+    return data.toByteArray();
+  }
+}
@@ -0,0 +1,135 @@
+package com.jonathanpotts.blockmaps;
+
+import static com.jonathanpotts.blockmaps.SyntheticRegionFiles.compound;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link NbtReader}.
+ */
+public class NbtReaderTest {
+  @Test
+  public void readsEveryTagType() throws IOException {
+    Map<String, Object> root = compound(
+        "byte", (byte) -3,
+        "short", (short) 300,
+        "int", 70000,
+        "long", 1L << 40,
+        "float", 1.5f,
+        "double", -2.25,
+        "bytes", new byte[] { 1, 2, 3 },
+        "string", "minecraft:stone",
+        "list", Arrays.asList("a", "b"),
+        "empty", Collections.emptyList(),
+        "compound", compound("nested", 7),
+        "ints", new int[] { -1, 0, 1 },
+        "longs", new long[] { Long.MIN_VALUE, Long.MAX_VALUE });
+
+    Map<String, Object> read = read(NbtWriter.writeRoot(root));
+
+    assertEquals((byte) -3, read.get("byte"));
+    assertEquals((short) 300, read.get("short"));
+    assertEquals(70000, read.get("int"));
+    assertEquals(1L << 40, read.get("long"));
+    assertEquals(1.5f, read.get("float"));
+    assertEquals(-2.25, read.get("double"));
+    assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) read.get("bytes"));
+    assertEquals("minecraft:stone", read.get("string"));
+    assertEquals(Arrays.asList("a", "b"), read.get("list"));
+    assertEquals(0, ((List<?>) read.get("empty")).size());
+    assertEquals(compound("nested", 7), read.get("compound"));
+    assertArrayEquals(new int[] { -1, 0, 1 }, (int[]) read.get("ints"));
+    assertArrayEquals(new long[] { Long.MIN_VALUE, Long.MAX_VALUE }, (long[]) read.get("longs"));
+  }
+
+  @Test
+  public void rejectsRootThatIsNotCompound() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeByte(8);
+      output.writeUTF("");
+      output.writeUTF("stone");
+    }
+
+    assertThrows(IOException.class, () -> read(bytes.toByteArray()));
+  }
+
+  @Test
+  public void rejectsNegativeArrayLength() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeByte(10);
+      output.writeUTF("");
+      output.writeByte(12);
+      output.writeUTF("data");
+      output.writeInt(-1);
+      output.writeByte(0);
+    }
+
+    assertThrows(IOException.class, () -> read(bytes.toByteArray()));
+  }
+
+  @Test
+  public void rejectsUnknownTagType() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeByte(10);
+      output.writeUTF("");
+      output.writeByte(13);
+      output.writeUTF("unknown");
+      output.writeByte(0);
+    }
+
+    assertThrows(IOException.class, () -> read(bytes.toByteArray()));
+  }
+
+  @Test
+  public void rejectsDeeplyNestedData() throws IOException {
+    Map<String, Object> root = compound();
+    Map<String, Object> current = root;
+
+    for (int i = 0; i < 1000; i++) {
+      Map<String, Object> child = compound();
+      current.put("child", child);
+      current = child;
+    }
+
+    byte[] data = NbtWriter.writeRoot(root);
+
+    assertThrows(IOException.class, () -> read(data));
+  }
+
+  @Test
+  public void rejectsTruncatedData() throws IOException {
+    byte[] data = NbtWriter.writeRoot(compound("longs", new long[] { 1, 2, 3 }));
+
+    assertThrows(IOException.class, () -> read(Arrays.copyOf(data, data.length - 5)));
+  }
+
+  /**
+   * Reads NBT data.
+   *
+   * @param data The NBT data.
+   * @return The root compound.
+   * @throws IOException Thrown if the data could not be read.
+   */
+  private static Map<String, Object> read(byte[] data) throws IOException {
+    return NbtReader.readRoot(new DataInputStream(new ByteArrayInputStream(data)));
+  }
+}
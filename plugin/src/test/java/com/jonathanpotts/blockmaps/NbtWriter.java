@@ -0,0 +1,146 @@
+package com.jonathanpotts.blockmaps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes data in the Named Binary Tag (NBT) format for tests. Maps are written
+ * as compounds, lists as lists, primitive arrays as arrays and boxed values as
+ * the tag of their type.
+ */
+public final class NbtWriter {
+  private NbtWriter() {
+  }
+
+  /**
+   * Writes a named root compound.
+   *
+   * @param root The root compound.
+   * @return The NBT data.
+   * @throws IOException Thrown if a value has no NBT type.
+   */
+  public static byte[] writeRoot(Map<String, ?> root) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeByte(10);
+      output.writeUTF("");
+      writePayload(output, root);
+    }
+
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Gets the type ID of a value.
+   *
+   * @param value The value.
+   * @return The type ID.
+   * @throws IOException Thrown if the value has no NBT type.
+   */
+  static int getType(Object value) throws IOException {
+    if (value instanceof Byte) {
+      return 1;
+    } else if (value instanceof Short) {
+      return 2;
+    } else if (value instanceof Integer) {
+      return 3;
+    } else if (value instanceof Long) {
+      return 4;
+    } else if (value instanceof Float) {
+      return 5;
+    } else if (value instanceof Double) {
+      return 6;
+    } else if (value instanceof byte[]) {
+      return 7;
+    } else if (value instanceof String) {
+      return 8;
+    } else if (value instanceof List) {
+      return 9;
+    } else if (value instanceof Map) {
+      return 10;
+    } else if (value instanceof int[]) {
+      return 11;
+    } else if (value instanceof long[]) {
+      return 12;
+    }
+
+    throw new IOException("No NBT type for " + value);
+  }
+
+  /**
+   * Writes the payload of a tag.
+   *
+   * @param output Output to write to.
+   * @param value  The value of the tag.
+   * @throws IOException Thrown if a value has no NBT type.
+   */
+  private static void writePayload(DataOutputStream output, Object value) throws IOException {
+    switch (getType(value)) {
+      case 1:
+        output.writeByte((Byte) value);
+        break;
+      case 2:
+        output.writeShort((Short) value);
+        break;
+      case 3:
+        output.writeInt((Integer) value);
+        break;
+      case 4:
+        output.writeLong((Long) value);
+        break;
+      case 5:
+        output.writeFloat((Float) value);
+        break;
+      case 6:
+        output.writeDouble((Double) value);
+        break;
+      case 7:
+        output.writeInt(((byte[]) value).length);
+        output.write((byte[]) value);
+        break;
+      case 8:
+        output.writeUTF((String) value);
+        break;
+      case 9: {
+        List<?> list = (List<?>) value;
+        output.writeByte(list.isEmpty() ? 0 : getType(list.get(0)));
+        output.writeInt(list.size());
+
+        for (Object element : list) {
+          writePayload(output, element);
+        }
+
+        break;
+      }
+      case 10:
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+          output.writeByte(getType(entry.getValue()));
+          output.writeUTF((String) entry.getKey());
+          writePayload(output, entry.getValue());
+        }
+
+        output.writeByte(0);
+        break;
+      case 11:
+        output.writeInt(((int[]) value).length);
+
+        for (int element : (int[]) value) {
+          output.writeInt(element);
+        }
+
+        break;
+      default:
+        output.writeInt(((long[]) value).length);
+
+        for (long element : (long[]) value) {
+          output.writeLong(element);
+        }
+
+        break;
+    }
+  }
+}
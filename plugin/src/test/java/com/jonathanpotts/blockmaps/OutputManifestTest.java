@@ -0,0 +1,60 @@
+package com.jonathanpotts.blockmaps;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Tests for {@link OutputManifest}.
+ */
+public class OutputManifestTest {
+  /**
+   * Folder containing the web app.
+   */
+  @TempDir
+  Path folder;
+
+  @Test
+  public void prunesRemovedFilesThroughGeneration() throws IOException {
+    OutputManifest manifest = new OutputManifest(folder);
+    removeInNewGeneration(manifest, "a.json");
+    removeInNewGeneration(manifest, "b.json");
+    removeInNewGeneration(manifest, "c.json");
+
+    OutputManifest loaded = new OutputManifest(folder);
+    loaded.load();
+    loaded.pruneRemoved(4);
+    loaded.save();
+    loaded.load();
+
+    assertEquals(1, loaded.countChanges(0));
+    assertEquals(1, loaded.writeDelta(4, folder.resolve("delta.zip")));
+    assertThrows(IOException.class, () -> loaded.writeDelta(3, folder.resolve("old-delta.zip")));
+  }
+
+  /**
+   * Writes a file in one generation and removes it in the next one.
+   *
+   * @param manifest     Manifest recording the file.
+   * @param relativePath Path of the file relative to the web app folder.
+   * @throws IOException Thrown if there is an issue writing or removing the file.
+   */
+  private void removeInNewGeneration(OutputManifest manifest, String relativePath) throws IOException {
+    Path filePath = folder.resolve(relativePath);
+
+    manifest.beginGeneration();
+    manifest.write(filePath, relativePath.getBytes(StandardCharsets.UTF_8));
+    manifest.save();
+
+    manifest.beginGeneration();
+    Files.delete(filePath);
+    manifest.save();
+  }
+}
@@ -0,0 +1,84 @@
+package com.jonathanpotts.blockmaps;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tests for {@link RefreshJournal}.
+ */
+public class RefreshJournalTest {
+  /**
+   * Folder containing the test journals.
+   */
+  @TempDir
+  Path folder;
+
+  @Test
+  public void loadsFinishedWork() throws IOException {
+    Path path = folder.resolve(RefreshJournal.FILE_NAME);
+    RefreshJournal journal = RefreshJournal.begin(path, true, "fingerprint");
+    journal.finishPhase("textures");
+    journal.beginRender(1234, false);
+    journal.finishRegion("world", new VectorXZ(-1, 2));
+    journal.finishWorld("world_nether");
+    journal.checkpoint(() -> {
+    });
+
+    RefreshJournal loaded = RefreshJournal.load(path);
+
+    assertTrue(loaded.isForced());
+    assertEquals("fingerprint", loaded.getFingerprint());
+    assertTrue(loaded.isPhaseFinished("textures"));
+    assertEquals(1234, loaded.getRenderTime());
+    assertTrue(loaded.isRegionFinished("world", new VectorXZ(-1, 2)));
+    assertTrue(loaded.isWorldFinished("world_nether"));
+  }
+
+  @Test
+  public void discardsPartiallyWrittenLastLine() throws IOException {
+    Path path = folder.resolve(RefreshJournal.FILE_NAME);
+    RefreshJournal journal = RefreshJournal.begin(path, false, "fingerprint");
+    journal.finishRegion("world", new VectorXZ(3, 0));
+    journal.checkpoint(() -> {
+    });
+
+    // The record of region 3,12 was cut off after its first digit.
+    Files.write(path, "region\tworld\t3\t1".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    RefreshJournal loaded = RefreshJournal.load(path);
+
+    assertTrue(loaded.isRegionFinished("world", new VectorXZ(3, 0)));
+    assertFalse(loaded.isRegionFinished("world", new VectorXZ(3, 1)));
+    assertEquals(1, loaded.countFinishedRegions());
+
+    loaded.finishRegion("world", new VectorXZ(3, 12));
+    loaded.checkpoint(() -> {
+    });
+
+    RefreshJournal resumed = RefreshJournal.load(path);
+
+    assertTrue(resumed.isRegionFinished("world", new VectorXZ(3, 12)));
+    assertFalse(resumed.isRegionFinished("world", new VectorXZ(3, 1)));
+    assertEquals(2, resumed.countFinishedRegions());
+  }
+
+  @Test
+  public void partiallyWrittenFirstLineIsNotJournal() throws IOException {
+    Path path = folder.resolve(RefreshJournal.FILE_NAME);
+    Files.write(path, "refresh\tfalse\tfinger".getBytes(StandardCharsets.UTF_8));
+
+    assertNull(RefreshJournal.load(path));
+  }
+}
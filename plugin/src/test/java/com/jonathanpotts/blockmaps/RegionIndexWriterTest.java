@@ -0,0 +1,85 @@
+package com.jonathanpotts.blockmaps;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Tests for {@link RegionIndexWriter}.
+ */
+public class RegionIndexWriterTest {
+  /**
+   * Hash of the chunk file referenced by the test region index.
+   */
+  private static final String REFERENCED_HASH = "0123456789abcdef0123456789abcdef01234567";
+
+  /**
+   * Hash of the chunk file not referenced by the test region index.
+   */
+  private static final String UNREFERENCED_HASH = "fedcba9876543210fedcba9876543210fedcba98";
+
+  /**
+   * Time of the first removal in seconds since the epoch.
+   */
+  private static final long NOW = 1_600_000_000L;
+
+  /**
+   * Folder containing the chunk files of the test world.
+   */
+  @TempDir
+  Path folder;
+
+  @Test
+  public void keepsUnreferencedBlobsForGracePeriod() throws IOException {
+    Path blobsPath = folder.resolve(Constants.BLOBS_FOLDER_NAME);
+    Path referenced = writeBlob(blobsPath, REFERENCED_HASH);
+    Path unreferenced = writeBlob(blobsPath, UNREFERENCED_HASH);
+    Files.write(folder.resolve("r.0.0" + Constants.REGION_INDEX_EXTENSION),
+        ("{\"chunks\":{\"json.gz\":{\"0.0\":\"" + REFERENCED_HASH + "\"}}}").getBytes(StandardCharsets.UTF_8));
+
+    assertEquals(0, RegionIndexWriter.removeUnreferencedBlobs(folder, NOW));
+    assertTrue(Files.exists(unreferenced));
+
+    assertEquals(0, RegionIndexWriter.removeUnreferencedBlobs(folder,
+        NOW + Constants.BLOB_GRACE_PERIOD_SECONDS - 1));
+    assertTrue(Files.exists(unreferenced));
+
+    assertEquals(1, RegionIndexWriter.removeUnreferencedBlobs(folder, NOW + Constants.BLOB_GRACE_PERIOD_SECONDS));
+    assertFalse(Files.exists(unreferenced));
+    assertFalse(Files.exists(unreferenced.getParent()));
+    assertTrue(Files.exists(referenced));
+  }
+
+  @Test
+  public void removesLeftoverTemporaryFilesImmediately() throws IOException {
+    Path tempPath = folder.resolve(Constants.BLOBS_FOLDER_NAME).resolve("01").resolve("123.tmp");
+    Files.createDirectories(tempPath.getParent());
+    Files.write(tempPath, new byte[] { 1 });
+
+    assertEquals(1, RegionIndexWriter.removeUnreferencedBlobs(folder, NOW));
+    assertFalse(Files.exists(tempPath));
+  }
+
+  /**
+   * Writes a content-addressed chunk file.
+   *
+   * @param blobsPath Folder containing the content-addressed chunk files.
+   * @param hash      Hash of the chunk file.
+   * @return Path of the chunk file.
+   * @throws IOException Thrown if the chunk file could not be written.
+   */
+  private static Path writeBlob(Path blobsPath, String hash) throws IOException {
+    Path blobPath = RegionIndexWriter.getBlobPath(blobsPath, hash, ".json.gz");
+    Files.createDirectories(blobPath.getParent());
+    Files.write(blobPath, new byte[] { 1, 2, 3 });
+    return blobPath;
+  }
+}
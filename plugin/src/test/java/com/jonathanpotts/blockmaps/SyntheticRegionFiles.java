@@ -0,0 +1,264 @@
+package com.jonathanpotts.blockmaps;
+
+import com.jonathanpotts.blockmaps.models.VectorXZ;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes region files in the Anvil format for tests and provides the server
+ * objects needed to decode their chunks without a running server.
+ */
+public final class SyntheticRegionFiles {
+  /**
+   * Compression type of GZIP-compressed chunks.
+   */
+  public static final int GZIP = 1;
+
+  /**
+   * Compression type of zlib-compressed chunks.
+   */
+  public static final int ZLIB = 2;
+
+  /**
+   * Compression type of uncompressed chunks.
+   */
+  public static final int NONE = 3;
+
+  /**
+   * Flag in the compression type of chunks stored in a separate file.
+   */
+  public static final int EXTERNAL = 0x80;
+
+  /**
+   * Size in bytes of a sector.
+   */
+  private static final int SECTOR_BYTES = 4096;
+
+  private SyntheticRegionFiles() {
+  }
+
+  /**
+   * Writes a region file. Chunks are stored one after another starting after
+   * the header.
+   *
+   * @param path      Path of the region file.
+   * @param chunks    Stored chunks, each made of its compression type followed
+   *                  by its compressed data, keyed by chunk coordinates.
+   * @param timestamp Time in seconds since the epoch stored for every chunk.
+   * @throws IOException Thrown if the file cannot be written.
+   */
+  public static void writeRegion(Path path, Map<VectorXZ, byte[]> chunks, int timestamp) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(2 * SECTOR_BYTES);
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    int sector = 2;
+
+    for (Map.Entry<VectorXZ, byte[]> chunk : chunks.entrySet()) {
+      byte[] stored = chunk.getValue();
+      int sectors = (stored.length + 4 + SECTOR_BYTES - 1) / SECTOR_BYTES;
+      int index = RegionBatch.getChunkIndex(chunk.getKey());
+
+      header.putInt(index * 4, sector << 8 | sectors);
+      header.putInt(SECTOR_BYTES + index * 4, timestamp);
+
+      ByteBuffer data = ByteBuffer.allocate(sectors * SECTOR_BYTES);
+      data.putInt(stored.length);
+      data.put(stored);
+      body.write(data.array());
+      sector += sectors;
+    }
+
+    try (OutputStream output = Files.newOutputStream(path)) {
+      output.write(header.array());
+      output.write(body.toByteArray());
+    }
+  }
+
+  /**
+   * Encodes and compresses a chunk for storage in a region file.
+   *
+   * @param root        The root compound of the chunk.
+   * @param compression Compression type.
+   * @return The compression type followed by the compressed data.
+   * @throws IOException Thrown if the chunk cannot be encoded.
+   */
+  public static byte[] storeChunk(Map<String, ?> root, int compression) throws IOException {
+    ByteArrayOutputStream stored = new ByteArrayOutputStream();
+    stored.write(compression);
+    stored.write(compress(NbtWriter.writeRoot(root), compression));
+    return stored.toByteArray();
+  }
+
+  /**
+   * Compresses data.
+   *
+   * @param data        The data.
+   * @param compression Compression type.
+   * @return The compressed data.
+   * @throws IOException Thrown if the data cannot be compressed.
+   */
+  public static byte[] compress(byte[] data, int compression) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    OutputStream output;
+
+    switch (compression) {
+      case GZIP:
+        output = new GZIPOutputStream(compressed);
+        break;
+      case ZLIB:
+        output = new DeflaterOutputStream(compressed);
+        break;
+      default:
+        output = compressed;
+        break;
+    }
+
+    output.write(data);
+    output.close();
+
+    return compressed.toByteArray();
+  }
+
+  /**
+   * Creates a compound from names and values.
+   *
+   * @param namesAndValues Names of the tags each followed by its value.
+   * @return The compound.
+   */
+  public static Map<String, Object> compound(Object... namesAndValues) {
+    Map<String, Object> compound = new LinkedHashMap<>();
+
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      compound.put((String) namesAndValues[i], namesAndValues[i + 1]);
+    }
+
+    return compound;
+  }
+
+  /**
+   * Packs palette indices into longs where no index spans two longs.
+   *
+   * @param indices The indices.
+   * @param bits    Number of bits used by each index.
+   * @return The packed indices.
+   */
+  public static long[] pack(int[] indices, int bits) {
+    int valuesPerLong = 64 / bits;
+    long[] data = new long[(indices.length + valuesPerLong - 1) / valuesPerLong];
+
+    for (int i = 0; i < indices.length; i++) {
+      data[i / valuesPerLong] |= (long) indices[i] << ((i % valuesPerLong) * bits);
+    }
+
+    return data;
+  }
+
+  /**
+   * Sets a server whose block data only reports its material and block state
+   * string, unless a server is already set.
+   */
+  public static void installServer() {
+    if (Bukkit.getServer() != null) {
+      return;
+    }
+
+    Server server = (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[] { Server.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getLogger":
+              return Logger.getLogger("BlockMapsTest");
+            case "getName":
+            case "getVersion":
+            case "getBukkitVersion":
+              return "test";
+            case "createBlockData":
+              if (args.length == 1 && args[0] instanceof String) {
+                return createBlockData((String) args[0]);
+              }
+
+              throw new UnsupportedOperationException(method.getName());
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+
+    Bukkit.setServer(server);
+  }
+
+  /**
+   * Creates a world that only reports its name and environment.
+   *
+   * @param name        Name of the world.
+   * @param environment Environment of the world.
+   * @return The world.
+   */
+  public static World createWorld(String name, World.Environment environment) {
+    return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] { World.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getName":
+              return name;
+            case "getEnvironment":
+              return environment;
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  /**
+   * Creates block data that only reports its material and block state string.
+   *
+   * @param state The block state string.
+   * @return The block data.
+   */
+  private static BlockData createBlockData(String state) {
+    int propertiesStart = state.indexOf('[');
+    Material material = Material.matchMaterial(propertiesStart >= 0 ? state.substring(0, propertiesStart) : state);
+
+    if (material == null) {
+      throw new IllegalArgumentException("Unknown block " + state);
+    }
+
+    return (BlockData) Proxy.newProxyInstance(BlockData.class.getClassLoader(), new Class<?>[] { BlockData.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getMaterial":
+              return material;
+            case "getAsString":
+            case "toString":
+              return state;
+            case "matches":
+            case "equals":
+              return args[0] instanceof BlockData && state.equals(((BlockData) args[0]).getAsString());
+            case "hashCode":
+              return state.hashCode();
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+}
@@ -9,6 +9,8 @@ import { TransformNode } from '@babylonjs/core/Meshes/transformNode';
 import { Scene } from '@babylonjs/core/scene';
 import BlockModel from './models/BlockModel';
 import BlockState, { BlockStateModel } from './models/BlockState';
+import TextureAtlas from './TextureAtlas';
+import BlockModelBundle from './BlockModelBundle';
 
 export default class BlockLoader {
   /**
@@ -75,12 +77,9 @@ export default class BlockLoader {
       return this.blocks[blockName].clone(`${blockName}-${this.blockCloneCount[blockName]++}`, null);
     }
 
-    const materialFileName = materialName.split(':').pop();
-    const response = await fetch(`data/blockstates/${materialFileName}.json`);
-    if (!response.ok) {
-      throw new Error(`Unable to fetch block state for ${materialName}`);
-    }
-    const blockState: BlockState = await response.json();
+    const atlas = await TextureAtlas.loadAsync();
+    const bundle = await BlockModelBundle.loadAsync();
+    const blockState = bundle?.getBlockState(materialName) ?? await this.fetchBlockState(materialName);
 
     const tags = (blockData?.length ?? 0) === 0 ? [''] : blockData?.split(',') ?? [''];
     if (!tags.includes('')) {
@@ -215,7 +214,7 @@ export default class BlockLoader {
             }
             const texture = model.textures[textureLookup];
 
-            const meshFace = this.createFace(texture, uv, width, height);
+            const meshFace = this.createFace(texture, uv, width, height, atlas);
             meshFace.setParent(modelParent);
             meshFace.setPositionWithLocalVector(from);
             meshFace.rotate(rotationAxis, rotationAmount);
@@ -236,12 +235,33 @@ export default class BlockLoader {
     return null;
   }
 
+  /**
+   * Fetches the block state file of a material.
+   * @param materialName Name of the material.
+   * @returns Block state of the material.
+   */
+  private static async fetchBlockState(materialName: string): Promise<BlockState> {
+    const materialFileName = materialName.split(':').pop();
+    const response = await fetch(`data/blockstates/${materialFileName}.json`);
+    if (!response.ok) {
+      throw new Error(`Unable to fetch block state for ${materialName}`);
+    }
+
+    return response.json();
+  }
+
   /**
    * Gets a model with the parent data applied.
    * @param model URI of the model to get.
    * @returns Model after applying parent data.
    */
   private static async getModel(model: string): Promise<BlockModel> {
+    const bundle = await BlockModelBundle.loadAsync();
+    const bundledModel = bundle?.getModel(model);
+    if (bundledModel) {
+      return bundledModel;
+    }
+
     const fileName = model.split('/').pop();
     const response = await fetch(`data/models/block/${fileName}.json`);
     if (!response.ok) {
@@ -282,10 +302,12 @@ export default class BlockLoader {
    * @param textureUri Texture URI for the texture of the face.
    * @param width Width of the face.
    * @param height Height of the face.
+   * @param atlas Texture atlas whose page material is used if it contains the
+   * texture.
    * @returns Created face instance.
    */
   private static createFace(
-    textureUri: string, uv: number[], width: number, height: number,
+    textureUri: string, uv: number[], width: number, height: number, atlas: TextureAtlas | null = null,
   ): InstancedMesh {
     if (!this.scene || this.scene.isDisposed) {
       throw new Error('The scene has not been set or has been disposed');
@@ -299,6 +321,26 @@ export default class BlockLoader {
 
     const face = MeshBuilder.CreatePlane(faceName, { width, height });
     face.isVisible = false;
+
+    const region = atlas?.getRegion(textureUri);
+
+    if (atlas && region) {
+      face.material = this.getAtlasMaterial(atlas, region.page);
+
+      const [u0, v0] = atlas.mapUV(region, uv[0], uv[1]);
+      const [u1, v1] = atlas.mapUV(region, uv[2], uv[3]);
+      face.setVerticesData(VertexBuffer.UVKind, [
+        u0, v1,
+        u1, v1,
+        u1, v0,
+        u0, v0,
+      ]);
+
+      this.faces[faceName] = face;
+      this.faceInstanceCount[faceName] = 0;
+      return this.faces[faceName].createInstance(`${faceName}-${this.faceInstanceCount[faceName]++}`);
+    }
+
     const material = this.getMaterial(textureUri);
     face.material = material;
     const texture = material.diffuseTexture;
@@ -341,4 +383,22 @@ export default class BlockLoader {
     this.materials[textureUri].diffuseTexture = texture;
     return this.materials[textureUri];
   }
+
+  /**
+   * Gets the material shared by the textures of an atlas page.
+   * @param atlas The texture atlas.
+   * @param page Index of the page.
+   * @returns Material.
+   */
+  private static getAtlasMaterial(atlas: TextureAtlas, page: number): BackgroundMaterial {
+    const materialName = `atlas-${page}`;
+
+    if (materialName in this.materials) {
+      return this.materials[materialName];
+    }
+
+    this.materials[materialName] = new BackgroundMaterial(materialName, this.scene);
+    this.materials[materialName].diffuseTexture = atlas.getPageTexture(page, this.scene);
+    return this.materials[materialName];
+  }
 }
@@ -14,8 +14,27 @@ export default class BlockMaterial extends ShaderMaterial {
    * Creates a material for rendering blocks.
    * @param name Name of the material.
    * @param scene Scene to add the material to.
+   * @param atlas Status of the diffuse texture being an atlas page, in which
+   * case each vertex provides the rectangle of its texture on the page in the
+   * atlasRect attribute and UV coordinates repeat within that rectangle.
+   * @param vertexColors Status of each vertex providing its tint color in the
+   * color attribute and its sky and emitted light levels in the lights
+   * attribute, which the texture is multiplied by.
    */
-  public constructor(name: string, scene: Scene) {
+  public constructor(name: string, scene: Scene, atlas = false, vertexColors = false) {
+    const attributes = ['position', 'uv'];
+    const defines: string[] = [];
+
+    if (atlas) {
+      attributes.push('atlasRect');
+      defines.push('#define ATLAS');
+    }
+
+    if (vertexColors) {
+      attributes.push('color', 'lights');
+      defines.push('#define VERTEX_COLORS');
+    }
+
     super(
       name,
       scene,
@@ -24,23 +43,27 @@ export default class BlockMaterial extends ShaderMaterial {
         fragmentSource: fragmentShader,
       },
       {
-        attributes: [
-          'position',
-          'uv',
-        ],
+        attributes,
         uniforms: [
           'worldViewProjection',
           'diffuse',
           'tintColor',
           'shadeColor',
+          'minBrightness',
+          'maxBrightness',
+          'maxLightLevel',
         ],
         needAlphaBlending: true,
+        defines,
       },
     );
 
     this.setColor4('tintColor', Color3.White().toColor4());
     this.setColor4('shadeColor',
       new Color4(Constants.MAX_BRIGHTNESS, Constants.MAX_BRIGHTNESS, Constants.MAX_BRIGHTNESS, 1));
+    this.setFloat('minBrightness', Constants.OVERWORLD_MIN_BRIGHTNESS);
+    this.setFloat('maxBrightness', Constants.MAX_BRIGHTNESS);
+    this.setFloat('maxLightLevel', Constants.MAX_LIGHT_LEVEL);
   }
 
   /**
@@ -0,0 +1,78 @@
+import BlockModel from './models/BlockModel';
+import BlockModelBundleModel from './models/BlockModelBundleModel';
+import BlockState from './models/BlockState';
+
+/**
+ * Looks up block states and resolved models in the bundle written by the
+ * server, so they are loaded with one request instead of fetching every block
+ * state and model file.
+ */
+export default class BlockModelBundle {
+  /**
+   * Promise for the bundle, shared by every loader.
+   */
+  private static loadPromise: Promise<BlockModelBundle | null> | null = null;
+
+  /**
+   * Creates a block model bundle.
+   * @param model Contents of the bundle.
+   */
+  private constructor(private model: BlockModelBundleModel) {
+  }
+
+  /**
+   * Loads the bundle once.
+   * @returns Promise to provide the bundle or null if the server did not write
+   * one.
+   */
+  public static loadAsync(): Promise<BlockModelBundle | null> {
+    if (!this.loadPromise) {
+      this.loadPromise = fetch('data/blockmodels.json')
+        .then(async (response) => {
+          if (!response.ok) {
+            return null;
+          }
+
+          const model: BlockModelBundleModel = await response.json();
+          return model.blockstates && model.models ? new BlockModelBundle(model) : null;
+        })
+        .catch(() => null);
+    }
+
+    return this.loadPromise;
+  }
+
+  /**
+   * Gets the block state of a block.
+   * @param name Name of the block (e.g. "minecraft:stone").
+   * @returns The block state or undefined if it is not in the bundle.
+   */
+  public getBlockState(name: string): BlockState | undefined {
+    return this.model.blockstates[BlockModelBundle.stripNamespace(name)];
+  }
+
+  /**
+   * Gets a model merged with its parents.
+   * @param name Name of the model (e.g. "minecraft:block/stone").
+   * @returns A copy of the model whose properties and textures can be replaced
+   * or undefined if it is not in the bundle.
+   */
+  public getModel(name: string): BlockModel | undefined {
+    const model = this.model.models[BlockModelBundle.stripNamespace(name)];
+
+    if (!model) {
+      return undefined;
+    }
+
+    return { ...model, textures: { ...model.textures } };
+  }
+
+  /**
+   * Removes the "minecraft:" namespace from a resource name.
+   * @param name The resource name.
+   * @returns The name without the namespace.
+   */
+  private static stripNamespace(name: string): string {
+    return name.startsWith('minecraft:') ? name.substring('minecraft:'.length) : name;
+  }
+}
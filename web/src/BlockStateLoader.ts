@@ -15,6 +15,8 @@ import WeightedModel from './models/WeightedModel';
 import BlockMaterial from './BlockMaterial';
 import BlockDataModel from './models/BlockDataModel';
 import Helpers from './Helpers';
+import TextureAtlas from './TextureAtlas';
+import BlockModelBundle from './BlockModelBundle';
 
 /**
  * Loads and processes block states.
@@ -72,12 +74,9 @@ export default class BlockStateLoader {
     const blockData = blockDataModel.data;
     const blockStateName = blockData ? `${materialName}[${blockData}]` : materialName;
 
-    const blockStateFile = materialName.split(':').pop();
-    const response = await fetch(`data/blockstates/${blockStateFile}.json`);
-    if (!response.ok) {
-      throw new Error(`Unable to fetch block state for ${materialName}`);
-    }
-    const blockState: BlockState = await response.json();
+    const bundle = await BlockModelBundle.loadAsync();
+    const blockState = bundle?.getBlockState(materialName)
+      ?? await this.fetchBlockStateAsync(materialName);
 
     const tags = blockData ? blockData.split(',') : [''];
     if (!tags.includes('')) {
@@ -95,6 +94,21 @@ export default class BlockStateLoader {
     return models[0][0].model;
   }
 
+  /**
+   * Fetches the block state file of a material.
+   * @param materialName Name of the material.
+   * @returns A promise for the block state.
+   */
+  private async fetchBlockStateAsync(materialName: string): Promise<BlockState> {
+    const blockStateFile = materialName.split(':').pop();
+    const response = await fetch(`data/blockstates/${blockStateFile}.json`);
+    if (!response.ok) {
+      throw new Error(`Unable to fetch block state for ${materialName}`);
+    }
+
+    return response.json();
+  }
+
   /**
    * Loads block state variant.
    * @param blockDataModel Block data model for the block.
@@ -228,6 +242,7 @@ export default class BlockStateLoader {
     }
 
     const scale = 1 / 16;
+    const atlas = await TextureAtlas.loadAsync();
 
     const elementMeshes: Mesh[] = [];
 
@@ -354,11 +369,21 @@ export default class BlockStateLoader {
           2, 3, 0,
         ];
 
-        const loadedTexture = await this.loadTextureAsync(texture);
-        uvs[0] /= loadedTexture.getBaseSize().width;
-        uvs[1] /= loadedTexture.getBaseSize().height;
-        uvs[2] /= loadedTexture.getBaseSize().width;
-        uvs[3] /= loadedTexture.getBaseSize().height;
+        // Textures packed in the atlas share the material of their page.
+        const region = atlas?.getRegion(texture);
+        let loadedTexture: Texture;
+
+        if (atlas && region) {
+          loadedTexture = atlas.getPageTexture(region.page, this.scene);
+          [uvs[0], uvs[1]] = atlas.mapUV(region, uvs[0], uvs[1]);
+          [uvs[2], uvs[3]] = atlas.mapUV(region, uvs[2], uvs[3]);
+        } else {
+          loadedTexture = await this.loadTextureAsync(texture);
+          uvs[0] /= loadedTexture.getBaseSize().width;
+          uvs[1] /= loadedTexture.getBaseSize().height;
+          uvs[2] /= loadedTexture.getBaseSize().width;
+          uvs[3] /= loadedTexture.getBaseSize().height;
+        }
 
         const vertexData = new VertexData();
         vertexData.positions = positions;
@@ -598,6 +623,12 @@ export default class BlockStateLoader {
    * @returns A promise for the loaded model.
    */
   private async loadModelAsync(model: string): Promise<BlockModel> {
+    const bundle = await BlockModelBundle.loadAsync();
+    const bundledModel = bundle?.getModel(model);
+    if (bundledModel) {
+      return bundledModel;
+    }
+
     const modelFileName = model.split('/').pop();
     const response = await fetch(`data/models/block/${modelFileName}.json`);
     if (!response.ok) {
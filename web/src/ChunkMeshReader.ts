@@ -0,0 +1,202 @@
+import Pako from 'pako';
+import { Mesh } from '@babylonjs/core/Meshes/mesh';
+import { VertexData } from '@babylonjs/core/Meshes/mesh.vertexData';
+import { TransformNode } from '@babylonjs/core/Meshes/transformNode';
+import { Material } from '@babylonjs/core/Materials/material';
+import { Texture } from '@babylonjs/core/Materials/Textures/texture';
+import { Scene } from '@babylonjs/core/scene';
+import BlockMaterial from './BlockMaterial';
+import ChunkReader from './ChunkReader';
+import Constants from './Constants';
+import TextureAtlas from './TextureAtlas';
+import VectorXZ from './models/VectorXZ';
+import WorldModel from './models/WorldModel';
+
+/**
+ * Loads the meshes of chunks built by the server and uploads their vertex
+ * buffers without processing the blocks.
+ */
+export default class ChunkMeshReader {
+  /**
+   * Materials by texture name.
+   */
+  private static materials: Map<string, Material> = new Map();
+
+  /**
+   * Materials shared by the textures of each atlas page by page index.
+   */
+  private static atlasMaterials: Map<number, Material> = new Map();
+
+  /**
+   * Loads the mesh of a chunk.
+   * @param world World containing the chunk.
+   * @param coordinates Coordinates of the chunk.
+   * @param scene Scene to add the mesh to.
+   * @param layout Layout of the chunk files ("files", "region-pack" or
+   * "content-addressed").
+   * @returns Promise to provide a node containing one mesh per texture or null
+   * if the chunk has no mesh. Meshes of textures packed in the texture atlas
+   * share the material of their atlas page.
+   */
+  public static async loadAsync(
+    world: WorldModel, coordinates: VectorXZ, scene: Scene, layout = 'files',
+  ): Promise<TransformNode | null> {
+    const data = await ChunkReader.fetchAsync(world, coordinates, 'mesh', layout);
+    const atlas = await TextureAtlas.loadAsync();
+
+    if (data === null) {
+      return null;
+    }
+
+    const bytes = Pako.inflate(data);
+    const view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+
+    if (view.getUint32(0, true) !== Constants.MESH_MAGIC) {
+      throw new Error('Invalid chunk mesh.');
+    }
+
+    const version = view.getUint32(4, true);
+    if (version !== Constants.MESH_FORMAT_VERSION) {
+      throw new Error(`Unsupported chunk mesh version ${version}.`);
+    }
+
+    const groupCount = view.getUint32(8, true);
+    if (groupCount === 0) {
+      return null;
+    }
+
+    const chunk = new TransformNode(`chunk:${coordinates.x},${coordinates.z}`, scene);
+    chunk.position.set(
+      coordinates.x * Constants.WIDTH_OF_CHUNK, 0, coordinates.z * Constants.DEPTH_OF_CHUNK,
+    );
+
+    let offset = 12;
+
+    // Arrays are viewed in place when the platform is little-endian and the
+    // buffer is aligned, which avoids copying the vertex data.
+    const direct = new Uint8Array(new Uint16Array([1]).buffer)[0] === 1 && bytes.byteOffset % 4 === 0;
+
+    const readFloats = (count: number): Float32Array => {
+      let values: Float32Array;
+      if (direct) {
+        values = new Float32Array(bytes.buffer, bytes.byteOffset + offset, count);
+      } else {
+        values = new Float32Array(count);
+        for (let j = 0; j < count; j++) {
+          values[j] = view.getFloat32(offset + j * 4, true);
+        }
+      }
+      offset += count * 4;
+      return values;
+    };
+
+    const readIndices = (count: number): Uint32Array => {
+      let values: Uint32Array;
+      if (direct) {
+        values = new Uint32Array(bytes.buffer, bytes.byteOffset + offset, count);
+      } else {
+        values = new Uint32Array(count);
+        for (let j = 0; j < count; j++) {
+          values[j] = view.getUint32(offset + j * 4, true);
+        }
+      }
+      offset += count * 4;
+      return values;
+    };
+
+    for (let i = 0; i < groupCount; i++) {
+      const nameLength = view.getUint32(offset, true);
+      offset += 4;
+      const texture = new TextDecoder().decode(bytes.subarray(offset, offset + nameLength));
+      offset += (nameLength + 3) & ~3;
+
+      const vertexCount = view.getUint32(offset, true);
+      const indexCount = view.getUint32(offset + 4, true);
+      offset += 8;
+
+      const vertexData = new VertexData();
+      vertexData.positions = readFloats(vertexCount * 3);
+      vertexData.normals = readFloats(vertexCount * 3);
+      const uvs = readFloats(vertexCount * 2);
+      vertexData.uvs = uvs;
+      vertexData.colors = readFloats(vertexCount * 4);
+      const lights = readFloats(vertexCount * 2);
+      vertexData.indices = readIndices(indexCount);
+
+      const region = atlas?.getRegion(texture);
+
+      // The atlas only contains the first frame of animated textures, so V
+      // coordinates are scaled from the frame strip to that frame.
+      if (region && region.frames > 1) {
+        for (let j = 1; j < uvs.length; j += 2) {
+          uvs[j] *= region.frames;
+        }
+      }
+
+      const mesh = new Mesh(`${chunk.name}:${texture}`, scene);
+      vertexData.applyToMesh(mesh);
+      mesh.setVerticesData('lights', lights, false, 2);
+
+      if (atlas && region) {
+        const rect = atlas.getRect(region);
+        const atlasRects = new Float32Array(vertexCount * 4);
+        for (let j = 0; j < atlasRects.length; j += 4) {
+          atlasRects.set(rect, j);
+        }
+
+        mesh.setVerticesData('atlasRect', atlasRects, false, 4);
+        mesh.material = this.getAtlasMaterial(atlas, region.page, scene);
+      } else {
+        mesh.material = this.getMaterial(texture, scene);
+      }
+      mesh.parent = chunk;
+      mesh.freezeWorldMatrix();
+    }
+
+    return chunk;
+  }
+
+  /**
+   * Gets the material of a texture. Textures repeat so merged faces show one
+   * copy of the texture per block.
+   * @param texture Name of the texture (e.g. "block/stone").
+   * @param scene Scene the material belongs to.
+   * @returns The material.
+   */
+  private static getMaterial(texture: string, scene: Scene): Material {
+    let material = this.materials.get(texture);
+
+    if (!material || material.getScene() !== scene) {
+      const diffuse = new Texture(`data/textures/${texture}.png`, scene, true, false, Texture.NEAREST_SAMPLINGMODE);
+      diffuse.wrapU = Texture.WRAP_ADDRESSMODE;
+      diffuse.wrapV = Texture.WRAP_ADDRESSMODE;
+      diffuse.hasAlpha = true;
+
+      material = new BlockMaterial(texture, scene, false, true).setDiffuseTexture(diffuse);
+      this.materials.set(texture, material);
+    }
+
+    return material;
+  }
+
+  /**
+   * Gets the material shared by the textures of an atlas page. Textures repeat
+   * within their rectangle of the page so merged faces show one copy of the
+   * texture per block.
+   * @param atlas The texture atlas.
+   * @param page Index of the page.
+   * @param scene Scene the material belongs to.
+   * @returns The material.
+   */
+  private static getAtlasMaterial(atlas: TextureAtlas, page: number, scene: Scene): Material {
+    let material = this.atlasMaterials.get(page);
+
+    if (!material || material.getScene() !== scene) {
+      material = new BlockMaterial(`atlas-${page}`, scene, true, true)
+        .setDiffuseTexture(atlas.getPageTexture(page, scene));
+      this.atlasMaterials.set(page, material);
+    }
+
+    return material;
+  }
+}
@@ -0,0 +1,426 @@
+import Pako from 'pako';
+import Constants from './Constants';
+import Helpers from './Helpers';
+import BiomeGridModel from './models/BiomeGridModel';
+import BlockDataModel from './models/BlockDataModel';
+import ChunkBlock from './models/ChunkBlock';
+import RegionIndexModel from './models/RegionIndexModel';
+import VectorXZ from './models/VectorXZ';
+import WorldModel from './models/WorldModel';
+
+/**
+ * Reads chunk data in the JSON and binary chunk formats.
+ */
+export default class ChunkReader {
+  /**
+   * Size in bytes of a region pack header.
+   */
+  private static readonly REGION_PACK_HEADER_BYTES = Constants.WIDTH_OF_REGION
+    * Constants.DEPTH_OF_REGION * 8;
+
+  /**
+   * Promises to provide the headers of region packs by URL.
+   */
+  private static regionPackHeaders: Map<string, Promise<DataView>> = new Map();
+
+  /**
+   * Promises to provide the indexes of content-addressed chunk files by URL.
+   */
+  private static regionIndexes: Map<string, Promise<RegionIndexModel>> = new Map();
+
+  /**
+   * Loads the blocks of a chunk.
+   * @param world World containing the chunk.
+   * @param coordinates Coordinates of the chunk.
+   * @param format Format of the chunk files ("json" or "binary").
+   * @param layout Layout of the chunk files ("files", "region-pack" or
+   * "content-addressed").
+   * @returns Promise to provide the blocks of the chunk.
+   */
+  public static async loadAsync(
+    world: WorldModel, coordinates: VectorXZ, format = 'json', layout = 'files',
+  ): Promise<ChunkBlock[]> {
+    const data = await this.fetchAsync(world, coordinates, format, layout);
+
+    if (data === null) {
+      return [];
+    }
+
+    if (format === 'binary') {
+      return this.readBinary(Pako.inflate(data));
+    }
+
+    return this.readJson(Pako.inflate(data, { to: 'string' }));
+  }
+
+  /**
+   * Fetches the compressed data of a chunk.
+   * @param world World containing the chunk.
+   * @param coordinates Coordinates of the chunk.
+   * @param format Format of the chunk files ("json", "binary" or "mesh").
+   * @param layout Layout of the chunk files ("files", "region-pack" or
+   * "content-addressed").
+   * @returns Promise to provide the compressed chunk data or null if the chunk
+   * is not stored.
+   */
+  public static async fetchAsync(
+    world: WorldModel, coordinates: VectorXZ, format = 'json', layout = 'files',
+  ): Promise<Uint8Array | null> {
+    switch (layout) {
+      case 'region-pack':
+        return this.fetchFromRegionPack(world, coordinates, format);
+      case 'content-addressed':
+        return this.fetchFromRegionIndex(world, coordinates, format);
+      default:
+        return this.fetchFile(world, coordinates, format);
+    }
+  }
+
+  /**
+   * Gets the extension of the chunk files of a format without the compression
+   * suffix.
+   * @param format Format of the chunk files.
+   * @returns The extension.
+   */
+  private static getExtension(format: string): string {
+    switch (format) {
+      case 'binary':
+        return 'bin';
+      case 'mesh':
+        return 'mesh';
+      default:
+        return 'json';
+    }
+  }
+
+  /**
+   * Fetches the compressed data of a chunk from its chunk file.
+   * @param world World containing the chunk.
+   * @param coordinates Coordinates of the chunk.
+   * @param format Format of the chunk files.
+   * @returns Promise to provide the compressed chunk data.
+   */
+  private static async fetchFile(world: WorldModel, coordinates: VectorXZ, format: string)
+    : Promise<Uint8Array> {
+    const extension = `${this.getExtension(format)}.gz`;
+    const response = await fetch(`data/worlds/${world.name}/${coordinates.x}.${coordinates.z}.${extension}`);
+    if (!response.ok) {
+      throw new Error(`Unable to load chunk data for ${world.name}:${coordinates.x},${coordinates.z}.`);
+    }
+
+    return new Uint8Array(await response.arrayBuffer());
+  }
+
+  /**
+   * Fetches the compressed data of a chunk from a region pack using HTTP range
+   * requests. The header of each region pack is only fetched once.
+   * @param world World containing the chunk.
+   * @param coordinates Coordinates of the chunk.
+   * @param format Format of the chunk files.
+   * @returns Promise to provide the compressed chunk data or null if the region
+   * pack does not contain the chunk.
+   */
+  private static async fetchFromRegionPack(
+    world: WorldModel, coordinates: VectorXZ, format: string,
+  ): Promise<Uint8Array | null> {
+    const regionX = Math.floor(coordinates.x / Constants.WIDTH_OF_REGION);
+    const regionZ = Math.floor(coordinates.z / Constants.DEPTH_OF_REGION);
+    const extension = `${this.getExtension(format)}.pack`;
+    const url = `data/worlds/${world.name}/r.${regionX}.${regionZ}.${extension}`;
+
+    let header = this.regionPackHeaders.get(url);
+    if (header === undefined) {
+      header = this.fetchRange(url, 0, this.REGION_PACK_HEADER_BYTES)
+        .then((data) => new DataView(data.buffer, data.byteOffset, data.byteLength));
+      this.regionPackHeaders.set(url, header);
+      header.catch(() => this.regionPackHeaders.delete(url));
+    }
+
+    const index = (coordinates.z - regionZ * Constants.DEPTH_OF_REGION) * Constants.WIDTH_OF_REGION
+      + (coordinates.x - regionX * Constants.WIDTH_OF_REGION);
+
+    const view = await header;
+    const offset = view.getUint32(index * 8);
+    const length = view.getUint32(index * 8 + 4);
+
+    if (length === 0) {
+      return null;
+    }
+
+    return this.fetchRange(url, offset, length);
+  }
+
+  /**
+   * Fetches the compressed data of a chunk from its content-addressed chunk
+   * file. The index of each region is only fetched once and is always
+   * revalidated with the server, while the chunk files it refers to never
+   * change and can be served from the browser cache.
+   * @param world World containing the chunk.
+   * @param coordinates Coordinates of the chunk.
+   * @param format Format of the chunk files.
+   * @returns Promise to provide the compressed chunk data or null if the region
+   * index does not contain the chunk.
+   */
+  private static async fetchFromRegionIndex(
+    world: WorldModel, coordinates: VectorXZ, format: string,
+  ): Promise<Uint8Array | null> {
+    const regionX = Math.floor(coordinates.x / Constants.WIDTH_OF_REGION);
+    const regionZ = Math.floor(coordinates.z / Constants.DEPTH_OF_REGION);
+    const url = `data/worlds/${world.name}/r.${regionX}.${regionZ}.index.json`;
+
+    let index = this.regionIndexes.get(url);
+    if (index === undefined) {
+      index = fetch(url, { cache: 'no-cache' }).then((response) => {
+        if (response.status === 404) {
+          return { chunks: {} };
+        }
+
+        if (!response.ok) {
+          throw new Error(`Unable to load region index ${url}.`);
+        }
+
+        return response.json();
+      });
+      this.regionIndexes.set(url, index);
+      index.catch(() => this.regionIndexes.delete(url));
+    }
+
+    const extension = `${this.getExtension(format)}.gz`;
+    const hash = (await index).chunks[extension]?.[`${coordinates.x}.${coordinates.z}`];
+
+    if (hash === undefined) {
+      return null;
+    }
+
+    const response = await fetch(
+      `data/worlds/${world.name}/blobs/${hash.substring(0, 2)}/${hash}.${extension}`,
+    );
+    if (!response.ok) {
+      throw new Error(`Unable to load chunk data for ${world.name}:${coordinates.x},${coordinates.z}.`);
+    }
+
+    return new Uint8Array(await response.arrayBuffer());
+  }
+
+  /**
+   * Fetches a range of bytes from a file. Falls back to slicing the whole file
+   * if the server does not support range requests.
+   * @param url URL of the file.
+   * @param offset Offset in bytes of the range.
+   * @param length Length in bytes of the range.
+   * @returns Promise to provide the bytes.
+   */
+  private static async fetchRange(url: string, offset: number, length: number)
+    : Promise<Uint8Array> {
+    const response = await fetch(url, {
+      headers: { Range: `bytes=${offset}-${offset + length - 1}` },
+    });
+    if (!response.ok) {
+      throw new Error(`Unable to load region pack ${url}.`);
+    }
+
+    const data = new Uint8Array(await response.arrayBuffer());
+
+    if (response.status === 206) {
+      return data;
+    }
+
+    return data.subarray(offset, offset + length);
+  }
+
+  /**
+   * Reads the blocks of a chunk in the JSON chunk format.
+   * @param json Chunk data.
+   * @returns The blocks of the chunk.
+   */
+  public static readJson(json: string): ChunkBlock[] {
+    const chunk: {
+      blocks: Record<number, Record<number, Record<number, BlockDataModel>>>,
+      biomes?: BiomeGridModel,
+    } = JSON.parse(json);
+    const chunkBlocks = chunk.blocks;
+
+    const blocks: ChunkBlock[] = [];
+
+    for (const [y, yMap] of Object.entries(chunkBlocks)) {
+      for (const [x, xMap] of Object.entries(yMap)) {
+        for (const [z, block] of Object.entries(xMap)) {
+          if (block.state !== undefined) {
+            const blockState = Helpers.getBlockState(block.state);
+            block.material = blockState ? blockState.material : -1;
+            block.data = blockState?.data;
+          }
+
+          blocks.push({
+            x: parseInt(x, 10), y: parseInt(y, 10), z: parseInt(z, 10), block,
+          });
+        }
+      }
+    }
+
+    if (chunk.biomes) {
+      this.applyBiomes(blocks, chunk.biomes);
+    }
+
+    return blocks;
+  }
+
+  /**
+   * Reads the blocks of a chunk in the binary chunk format.
+   * @param data Chunk data.
+   * @returns The blocks of the chunk.
+   */
+  public static readBinary(data: Uint8Array): ChunkBlock[] {
+    const view = new DataView(data.buffer, data.byteOffset, data.byteLength);
+    let offset = 0;
+
+    if (view.getUint32(offset) !== Constants.BINARY_CHUNK_MAGIC) {
+      throw new Error('Chunk data is not in the binary chunk format.');
+    }
+    offset += 4;
+
+    const version = view.getUint8(offset++);
+    if (version !== Constants.BINARY_CHUNK_FORMAT_VERSION) {
+      throw new Error(`Unsupported binary chunk format version ${version}.`);
+    }
+
+    const blocksPerSection = Constants.WIDTH_OF_CHUNK * Constants.DEPTH_OF_CHUNK
+      * Constants.HEIGHT_OF_SECTION;
+    const sectionCount = view.getUint8(offset++);
+    const blocks: ChunkBlock[] = [];
+
+    for (let section = 0; section < sectionCount; section++) {
+      const sectionY = view.getInt8(offset++);
+
+      const paletteSize = view.getUint16(offset);
+      offset += 2;
+
+      const palette: number[] = [-1];
+      for (let i = 1; i < paletteSize; i++) {
+        palette.push(view.getInt32(offset));
+        offset += 4;
+      }
+
+      const bitsPerIndex = view.getUint8(offset++);
+      const indicesOffset = offset;
+      offset += Math.ceil((blocksPerSection * bitsPerIndex) / 8);
+
+      const skyLightOffset = offset;
+      offset += blocksPerSection / 2;
+
+      const emittedLightOffset = offset;
+      offset += blocksPerSection / 2;
+
+      for (let i = 0; i < blocksPerSection; i++) {
+        const index = this.readBits(data, indicesOffset, i * bitsPerIndex, bitsPerIndex);
+        if (index === 0) {
+          continue;
+        }
+
+        const state = palette[index];
+        const blockState = Helpers.getBlockState(state);
+        const block: BlockDataModel = {
+          state,
+          material: blockState ? blockState.material : -1,
+          data: blockState?.data,
+          skyLight: this.readNibble(data, skyLightOffset, i),
+          emittedLight: this.readNibble(data, emittedLightOffset, i),
+        };
+
+        blocks.push({
+          x: i % Constants.WIDTH_OF_CHUNK,
+          y: sectionY * Constants.HEIGHT_OF_SECTION
+            + Math.floor(i / (Constants.WIDTH_OF_CHUNK * Constants.DEPTH_OF_CHUNK)),
+          z: Math.floor(i / Constants.WIDTH_OF_CHUNK) % Constants.DEPTH_OF_CHUNK,
+          block,
+        });
+      }
+    }
+
+    const minY = view.getInt16(offset);
+    const cellsY = view.getUint16(offset + 2);
+    const biomePaletteSize = view.getUint16(offset + 4);
+    offset += 6;
+
+    const biomePalette: number[] = [];
+    for (let i = 0; i < biomePaletteSize; i++) {
+      biomePalette.push(view.getUint16(offset));
+      offset += 2;
+    }
+
+    const biomeBitsPerIndex = view.getUint8(offset++);
+    const cellCount = cellsY * (Constants.WIDTH_OF_CHUNK / Constants.SIZE_OF_BIOME_CELL)
+      * (Constants.DEPTH_OF_CHUNK / Constants.SIZE_OF_BIOME_CELL);
+    const cells: number[] = new Array(cellCount);
+
+    for (let i = 0; i < cellCount; i++) {
+      cells[i] = this.readBits(data, offset, i * biomeBitsPerIndex, biomeBitsPerIndex);
+    }
+
+    this.applyBiomes(blocks, { minY, palette: biomePalette, cells });
+
+    return blocks;
+  }
+
+  /**
+   * Sets the biome, temperature and humidity of blocks from the biome grid of
+   * their chunk.
+   * @param blocks Blocks of the chunk.
+   * @param biomes Biome grid of the chunk.
+   */
+  private static applyBiomes(blocks: ChunkBlock[], biomes: BiomeGridModel): void {
+    const cellsX = Constants.WIDTH_OF_CHUNK / Constants.SIZE_OF_BIOME_CELL;
+    const cellsZ = Constants.DEPTH_OF_CHUNK / Constants.SIZE_OF_BIOME_CELL;
+
+    for (const { x, y, z, block } of blocks) {
+      const cellX = Math.floor(x / Constants.SIZE_OF_BIOME_CELL);
+      const cellY = Math.floor((y - biomes.minY) / Constants.SIZE_OF_BIOME_CELL);
+      const cellZ = Math.floor(z / Constants.SIZE_OF_BIOME_CELL);
+
+      const biome = biomes.palette[biomes.cells[(cellY * cellsZ + cellZ) * cellsX + cellX]];
+      if (biome === undefined) {
+        continue;
+      }
+
+      const biomeTint = Helpers.getBiomeTint(biome);
+
+      block.biome = biome;
+      block.temperature = biomeTint?.temperature;
+      block.humidity = biomeTint?.humidity;
+    }
+  }
+
+  /**
+   * Reads a value packed least significant bit first.
+   * @param data Data containing the packed values.
+   * @param offset Offset in bytes of the packed values.
+   * @param bitIndex Index of the first bit of the value.
+   * @param bits Number of bits in the value.
+   * @returns The value.
+   */
+  private static readBits(data: Uint8Array, offset: number, bitIndex: number, bits: number)
+    : number {
+    let value = 0;
+
+    for (let bit = 0; bit < bits; bit++) {
+      const position = bitIndex + bit;
+      if ((data[offset + (position >> 3)] >> (position & 7)) & 1) {
+        value |= 1 << bit;
+      }
+    }
+
+    return value;
+  }
+
+  /**
+   * Reads a value from packed nibbles.
+   * @param data Data containing the packed nibbles.
+   * @param offset Offset in bytes of the packed nibbles.
+   * @param index Index of the nibble.
+   * @returns The value.
+   */
+  private static readNibble(data: Uint8Array, offset: number, index: number): number {
+    const value = data[offset + (index >> 1)];
+    return (index & 1) === 0 ? value & 0xf : value >> 4;
+  }
+}
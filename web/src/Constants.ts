@@ -14,6 +14,52 @@ export default class Constants {
    */
   static readonly DEPTH_OF_CHUNK: number = 16;
 
+  /**
+   * The height (y-axis) in blocks of a chunk section.
+   */
+  static readonly HEIGHT_OF_SECTION: number = 16;
+
+  /**
+   * The size in blocks of a biome cell on each axis.
+   */
+  static readonly SIZE_OF_BIOME_CELL: number = 4;
+
+  /**
+   * The width (x-axis) in chunks of a region.
+   */
+  static readonly WIDTH_OF_REGION: number = 32;
+
+  /**
+   * The depth (z-axis) in chunks of a region.
+   */
+  static readonly DEPTH_OF_REGION: number = 32;
+
+  /**
+   * The screen pixels per block at which the map switches from the surface
+   * tiles to 3D chunks.
+   */
+  static readonly CHUNK_VIEW_SCALE: number = 8;
+
+  /**
+   * The magic number at the start of a binary chunk ("BMCK").
+   */
+  static readonly BINARY_CHUNK_MAGIC: number = 0x424d434b;
+
+  /**
+   * The version of the binary chunk format.
+   */
+  static readonly BINARY_CHUNK_FORMAT_VERSION: number = 3;
+
+  /**
+   * The magic number at the start of a chunk mesh ("BMMS").
+   */
+  static readonly MESH_MAGIC: number = 0x424d4d53;
+
+  /**
+   * The version of the chunk mesh format.
+   */
+  static readonly MESH_FORMAT_VERSION: number = 1;
+
   /**
    * The minimum value for a stored lighting level.
    */
@@ -1,4 +1,6 @@
 import Constants from './Constants';
+import BiomeTintModel from './models/BiomeTintModel';
+import BlockStateModel from './models/BlockStateModel';
 import VectorXYZ from './models/VectorXYZ';
 import VectorXZ from './models/VectorXZ';
 
@@ -16,6 +18,16 @@ export default class Helpers {
    */
   private static biomesMap: Record<number, string>;
 
+  /**
+   * The block state table used to look up block states.
+   */
+  private static blockStates: BlockStateModel[];
+
+  /**
+   * The biome tint table used to look up biome climates and tint colors.
+   */
+  private static biomeTints: Record<number, BiomeTintModel>;
+
   /**
    * Loads data used by the helper methods.
    */
@@ -37,6 +49,20 @@ export default class Helpers {
 
       this.biomesMap = await biomesResponse.json();
     }
+
+    if (!this.blockStates) {
+      const blockStatesResponse = await fetch('data/blockstates.json');
+      if (!blockStatesResponse.ok) {
+        throw new Error('Unable to retrieve block state table.');
+      }
+
+      this.blockStates = await blockStatesResponse.json();
+    }
+
+    if (!this.biomeTints) {
+      const biomeTintsResponse = await fetch('data/biometints.json');
+      this.biomeTints = biomeTintsResponse.ok ? await biomeTintsResponse.json() : {};
+    }
   }
 
   /**
@@ -65,6 +91,32 @@ export default class Helpers {
     return this.biomesMap[ordinal];
   }
 
+  /**
+   * Gets a block state using its ID.
+   * @param id ID of the block state.
+   * @returns The block state or undefined if the ID is not in the block state table.
+   */
+  public static getBlockState(id: number): BlockStateModel | undefined {
+    if (!this.blockStates) {
+      throw new Error('The helper data was not loaded.');
+    }
+
+    return this.blockStates[id];
+  }
+
+  /**
+   * Gets the climate and tint colors of a biome using an ordinal value.
+   * @param ordinal Ordinal value for the biome.
+   * @returns Climate and tint colors of the biome or undefined if the biome was not rendered.
+   */
+  public static getBiomeTint(ordinal: number): BiomeTintModel | undefined {
+    if (!this.biomeTints) {
+      throw new Error('The helper data was not loaded.');
+    }
+
+    return this.biomeTints[ordinal];
+  }
+
   /**
    * Gets the coordinates of the chunk containing the specified block coordinates.
    * @param blockCoordinates Coordinates of the block.
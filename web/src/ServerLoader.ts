@@ -5,7 +5,6 @@ import { Mesh } from '@babylonjs/core/Meshes/mesh';
 import { UniversalCamera } from '@babylonjs/core/Cameras/universalCamera';
 import { Vector3 } from '@babylonjs/core/Maths/math.vector';
 import { Color3 } from '@babylonjs/core/Maths/math.color';
-import { ungzip } from 'pako';
 import ServerModel from './models/ServerModel';
 import WorldModel from './models/WorldModel';
 import BlockDataModel from './models/BlockDataModel';
@@ -17,6 +16,8 @@ import '@babylonjs/core/Materials/standardMaterial';
 import '@babylonjs/core/Meshes/Builders/boxBuilder';
 import '@babylonjs/core/Meshes/instancedMesh';
 import BlockLoader from './BlockLoader';
+import ChunkMeshReader from './ChunkMeshReader';
+import ChunkReader from './ChunkReader';
 
 /**
  * Handles loading data for the server.
@@ -118,7 +119,13 @@ export default class ServerLoader {
     BlockLoader.setScene(scene);
 
     const spawnChunk = Helpers.getChunkCoordinates(world.spawn);
-    await ServerLoader.loadChunk(spawnChunk, world, scene);
+    if (this.serverModel.meshes) {
+      await ChunkMeshReader.loadAsync(world, spawnChunk, scene, this.serverModel.chunkLayout);
+    } else {
+      await ServerLoader.loadChunk(
+        spawnChunk, world, scene, this.serverModel.chunkFormat, this.serverModel.chunkLayout,
+      );
+    }
 
     const camera = new UniversalCamera('camera', new Vector3(world.spawn.x, world.spawn.y + 10, world.spawn.z), scene);
     camera.setTarget(new Vector3(world.spawn.x, world.spawn.y, world.spawn.z));
@@ -136,18 +143,15 @@ export default class ServerLoader {
    * @param coordinates Coordinates of the chunk to load.
    * @param world World containing the chunk.
    * @param scene Scene to add the chunk to.
+   * @param chunkFormat Format of the chunk files.
+   * @param chunkLayout Layout of the chunk files.
+   * @returns Promise to provide the node containing the blocks of the chunk.
    */
-  private static async loadChunk(coordinates: VectorXZ, world: WorldModel, scene: Scene)
-    : Promise<void> {
-    const response = await fetch(`data/worlds/${world.name}/${coordinates.x}.${coordinates.z}.json.gz`);
-    if (!response.ok) {
-      throw new Error(`Unable to load chunk data for ${world.name}:${coordinates.x},${coordinates.z}.`);
-    }
-
-    const responseBody = new Uint8Array(await response.arrayBuffer());
-    const responseJson = ungzip(responseBody, { to: 'string' });
-    const chunkBlocks:
-      Record<number, Record<number, Record<number, BlockDataModel>>> = JSON.parse(responseJson);
+  public static async loadChunk(
+    coordinates: VectorXZ, world: WorldModel, scene: Scene, chunkFormat?: string,
+    chunkLayout?: string,
+  ): Promise<TransformNode> {
+    const chunkBlocks = await ChunkReader.loadAsync(world, coordinates, chunkFormat, chunkLayout);
 
     const transform = new TransformNode(`chunk:${coordinates.x},${coordinates.z}`, scene);
     transform.setPositionWithLocalVector(
@@ -156,16 +160,11 @@ export default class ServerLoader {
       ),
     );
 
-    for (const [y, yMap] of Object.entries(chunkBlocks)) {
-      for (const [x, xMap] of Object.entries(yMap)) {
-        for (const [z, blockModel] of Object.entries(xMap)) {
-          await this.loadBlock(
-            new Vector3(parseInt(x, 10), parseInt(y, 10), parseInt(z, 10)),
-            blockModel, transform,
-          );
-        }
-      }
+    for (const { x, y, z, block } of chunkBlocks) {
+      await this.loadBlock(new Vector3(x, y, z), block, transform);
     }
+
+    return transform;
   }
 
   /**
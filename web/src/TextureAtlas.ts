@@ -0,0 +1,125 @@
+import { Texture } from '@babylonjs/core/Materials/Textures/texture';
+import { Scene } from '@babylonjs/core/scene';
+import TextureAtlasModel, { AtlasPageModel, AtlasTextureModel } from './models/TextureAtlasModel';
+
+/**
+ * Looks up the location of block textures in the atlas pages packed by the
+ * server, so blocks sharing a page are rendered with one material.
+ */
+export default class TextureAtlas {
+  /**
+   * Promise for the atlas, shared by every loader.
+   */
+  private static loadPromise: Promise<TextureAtlas | null> | null = null;
+
+  /**
+   * Loaded page textures by page index.
+   */
+  private pageTextures: Map<number, Texture> = new Map();
+
+  /**
+   * Creates a texture atlas.
+   * @param model Index of the atlas.
+   */
+  private constructor(private model: TextureAtlasModel) {
+  }
+
+  /**
+   * Loads the atlas index once.
+   * @returns Promise to provide the atlas or null if the server did not build
+   * one.
+   */
+  public static loadAsync(): Promise<TextureAtlas | null> {
+    if (!this.loadPromise) {
+      this.loadPromise = fetch('data/textures/atlas.json')
+        .then(async (response) => {
+          if (!response.ok) {
+            return null;
+          }
+
+          const model: TextureAtlasModel = await response.json();
+          return model.pages && model.textures ? new TextureAtlas(model) : null;
+        })
+        .catch(() => null);
+    }
+
+    return this.loadPromise;
+  }
+
+  /**
+   * Gets the location of a texture.
+   * @param texture Name of the texture (e.g. "minecraft:block/stone" or
+   * "block/stone").
+   * @returns The location or undefined if the texture is not in the atlas.
+   */
+  public getRegion(texture: string): AtlasTextureModel | undefined {
+    let name = texture.split(':').pop() ?? texture;
+
+    if (!name.includes('/')) {
+      name = `block/${name}`;
+    }
+
+    return this.model.textures[name];
+  }
+
+  /**
+   * Gets a page of the atlas.
+   * @param page Index of the page.
+   * @returns The page.
+   */
+  public getPage(page: number): AtlasPageModel {
+    return this.model.pages[page];
+  }
+
+  /**
+   * Gets the texture of a page.
+   * @param page Index of the page.
+   * @param scene Scene the texture belongs to.
+   * @returns The texture.
+   */
+  public getPageTexture(page: number, scene: Scene): Texture {
+    let texture = this.pageTextures.get(page);
+
+    if (!texture || texture.getScene() !== scene) {
+      texture = new Texture(`data/textures/${this.getPage(page).file}`, scene, true, false, Texture.NEAREST_SAMPLINGMODE);
+      texture.name = `atlas-${page}`;
+      texture.hasAlpha = true;
+      this.pageTextures.set(page, texture);
+    }
+
+    return texture;
+  }
+
+  /**
+   * Maps model UV coordinates of a texture to its page.
+   * @param region Location of the texture.
+   * @param u U coordinate from 0 to 16 across the texture.
+   * @param v V coordinate from 0 to 16 down the first frame of the texture.
+   * @returns The U and V coordinates on the page from 0 to 1.
+   */
+  public mapUV(region: AtlasTextureModel, u: number, v: number): [number, number] {
+    const page = this.getPage(region.page);
+
+    return [
+      (region.x + (u / 16) * region.width) / page.width,
+      (region.y + (v / 16) * region.height) / page.height,
+    ];
+  }
+
+  /**
+   * Gets the rectangle covered by a texture on its page.
+   * @param region Location of the texture.
+   * @returns The U and V coordinates of the top left corner followed by the
+   * width and height, all from 0 to 1.
+   */
+  public getRect(region: AtlasTextureModel): [number, number, number, number] {
+    const page = this.getPage(region.page);
+
+    return [
+      region.x / page.width,
+      region.y / page.height,
+      region.width / page.width,
+      region.height / page.height,
+    ];
+  }
+}
@@ -0,0 +1,147 @@
+import Constants from './Constants';
+import TileIndexModel from './models/TileIndexModel';
+import VectorXZ from './models/VectorXZ';
+import WorldModel from './models/WorldModel';
+
+/**
+ * Draws the top-down surface tiles of a world on a 2D canvas. The zoom level of
+ * the tiles is picked so each tile pixel covers at least one screen pixel.
+ */
+export default class TileMap {
+  private index: TileIndexModel | null = null;
+
+  private available: Set<string>[] = [];
+
+  private images: Map<string, HTMLImageElement> = new Map();
+
+  private centerX: number;
+
+  private centerZ: number;
+
+  /**
+   * Screen pixels per block.
+   */
+  private scale = 1;
+
+  public constructor(private world: WorldModel, private canvas: HTMLCanvasElement) {
+    this.centerX = world.spawn.x;
+    this.centerZ = world.spawn.z;
+  }
+
+  public async loadAsync(): Promise<void> {
+    const response = await fetch(`data/tiles/${this.world.name}/tiles.json`);
+
+    if (!response.ok) {
+      throw new Error(`Unable to retrieve tiles of ${this.world.name}`);
+    }
+
+    this.index = await response.json();
+    this.available = this.index!.levels.map((tiles) => new Set(tiles));
+    this.draw();
+  }
+
+  public panBy(dx: number, dy: number): void {
+    this.centerX -= dx / this.scale;
+    this.centerZ -= dy / this.scale;
+    this.draw();
+  }
+
+  /**
+   * Gets the number of screen pixels per block.
+   */
+  public getScale(): number {
+    return this.scale;
+  }
+
+  /**
+   * Gets the block coordinates at the center of the view.
+   */
+  public getCenter(): VectorXZ {
+    return { x: this.centerX, z: this.centerZ };
+  }
+
+  public zoomBy(factor: number): void {
+    const maxScale = 16;
+    const minScale = 1 / 2 ** Math.max(this.available.length - 1, 0);
+    this.scale = Math.min(Math.max(this.scale * factor, minScale), maxScale);
+    this.draw();
+  }
+
+  /**
+   * Gets the chunks in view, used to load 3D chunks when zoomed in.
+   */
+  public getVisibleChunks(): VectorXZ[] {
+    const widthInBlocks = this.canvas.width / this.scale;
+    const heightInBlocks = this.canvas.height / this.scale;
+    const minX = Math.floor((this.centerX - widthInBlocks / 2) / Constants.WIDTH_OF_CHUNK);
+    const maxX = Math.floor((this.centerX + widthInBlocks / 2) / Constants.WIDTH_OF_CHUNK);
+    const minZ = Math.floor((this.centerZ - heightInBlocks / 2) / Constants.DEPTH_OF_CHUNK);
+    const maxZ = Math.floor((this.centerZ + heightInBlocks / 2) / Constants.DEPTH_OF_CHUNK);
+    const chunks: VectorXZ[] = [];
+
+    for (let x = minX; x <= maxX; x++) {
+      for (let z = minZ; z <= maxZ; z++) {
+        chunks.push({ x, z });
+      }
+    }
+
+    return chunks;
+  }
+
+  public draw(): void {
+    const context = this.canvas.getContext('2d');
+
+    if (!context || !this.index) {
+      return;
+    }
+
+    context.imageSmoothingEnabled = false;
+    context.clearRect(0, 0, this.canvas.width, this.canvas.height);
+
+    const level = Math.min(
+      Math.max(Math.floor(-Math.log2(this.scale)), 0), this.available.length - 1,
+    );
+    const blocksPerTile = this.index.tileSize * 2 ** level;
+    const tileScreenSize = blocksPerTile * this.scale;
+    const left = this.centerX - this.canvas.width / 2 / this.scale;
+    const top = this.centerZ - this.canvas.height / 2 / this.scale;
+    const minTileX = Math.floor(left / blocksPerTile);
+    const minTileZ = Math.floor(top / blocksPerTile);
+    const maxTileX = Math.floor((left + this.canvas.width / this.scale) / blocksPerTile);
+    const maxTileZ = Math.floor((top + this.canvas.height / this.scale) / blocksPerTile);
+
+    for (let tileX = minTileX; tileX <= maxTileX; tileX++) {
+      for (let tileZ = minTileZ; tileZ <= maxTileZ; tileZ++) {
+        if (!this.available[level].has(`${tileX}.${tileZ}`)) {
+          continue;
+        }
+
+        const image = this.getImage(level, tileX, tileZ);
+
+        if (image.complete && image.naturalWidth > 0) {
+          context.drawImage(
+            image,
+            (tileX * blocksPerTile - left) * this.scale,
+            (tileZ * blocksPerTile - top) * this.scale,
+            tileScreenSize,
+            tileScreenSize,
+          );
+        }
+      }
+    }
+  }
+
+  private getImage(level: number, tileX: number, tileZ: number): HTMLImageElement {
+    const key = `${level}/${tileX}.${tileZ}`;
+    let image = this.images.get(key);
+
+    if (!image) {
+      image = new Image();
+      image.onload = () => this.draw();
+      image.src = `data/tiles/${this.world.name}/${key}.png`;
+      this.images.set(key, image);
+    }
+
+    return image;
+  }
+}
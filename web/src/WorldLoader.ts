@@ -1,53 +1,87 @@
-import { Tags } from '@babylonjs/core/Misc/tags';
-import { Vector3 } from '@babylonjs/core/Maths/math.vector';
-import { Mesh } from '@babylonjs/core/Meshes/mesh';
+import { TransformNode } from '@babylonjs/core/Meshes/transformNode';
 import { Scene } from '@babylonjs/core/scene';
-import Pako from 'pako';
-import BlockStateLoader from './BlockStateLoader';
-import BlockDataModel from './models/BlockDataModel';
+import BlockLoader from './BlockLoader';
+import ChunkMeshReader from './ChunkMeshReader';
+import ServerLoader from './ServerLoader';
 import VectorXZ from './models/VectorXZ';
 import WorldModel from './models/WorldModel';
 
+/**
+ * Loads the 3D chunks of a world near the view and unloads the chunks that are
+ * no longer near it.
+ */
 export default class WorldLoader {
-  private blockStateLoader: BlockStateLoader;
+  /**
+   * Loaded chunks, or chunks being loaded, keyed as "x.z".
+   */
+  private chunks: Map<string, Promise<TransformNode | null>> = new Map();
 
-  public constructor(private world: WorldModel, private scene: Scene) {
-    this.blockStateLoader = new BlockStateLoader(scene);
+  /**
+   * Number of times the visible chunks were updated, used to stop loading
+   * chunks of an outdated view.
+   */
+  private viewVersion = 0;
+
+  /**
+   * Creates a world loader.
+   * @param world World to load chunks from.
+   * @param scene Scene to add the chunks to.
+   * @param chunkFormat Format of the chunk files.
+   * @param chunkLayout Layout of the chunk files.
+   * @param meshes Status of chunk meshes being written by the server.
+   */
+  public constructor(
+    private world: WorldModel, private scene: Scene, private chunkFormat = 'json',
+    private chunkLayout = 'files', private meshes = false,
+  ) {
+    BlockLoader.setScene(scene);
   }
 
-  public async loadChunkAsync(coordinates: VectorXZ): Promise<void> {
-    const response = await fetch(`data/worlds/${this.world.name}/${coordinates.x}.${coordinates.z}.json.gz`);
-    if (!response.ok) {
-      throw new Error('Unable to fetch chunk data');
+  /**
+   * Loads a chunk into the scene.
+   * @param coordinates Coordinates of the chunk.
+   * @returns Promise to provide the node containing the chunk or null if the
+   * chunk has no mesh.
+   */
+  public async loadChunkAsync(coordinates: VectorXZ): Promise<TransformNode | null> {
+    if (this.meshes) {
+      return ChunkMeshReader.loadAsync(this.world, coordinates, this.scene, this.chunkLayout);
     }
 
-    const data = new Uint8Array(await response.arrayBuffer());
-    const json = Pako.inflate(data, { to: 'string' });
-    const chunkBlocks:
-      Record<number, Record<number, Record<number, BlockDataModel>>> = JSON.parse(json);
+    return ServerLoader.loadChunk(
+      coordinates, this.world, this.scene, this.chunkFormat, this.chunkLayout,
+    );
+  }
 
-    const blocks: Map<Vector3, Mesh> = new Map();
+  /**
+   * Loads the chunks near the view that are not loaded yet and unloads the
+   * chunks that are no longer near it. Chunks are loaded in the order given.
+   * @param visibleChunks Coordinates of the chunks near the view.
+   */
+  public async showChunksAsync(visibleChunks: VectorXZ[]): Promise<void> {
+    this.viewVersion += 1;
+    const version = this.viewVersion;
+    const visible = new Set(visibleChunks.map(({ x, z }) => `${x}.${z}`));
 
-    for (const [y, yMap] of Object.entries(chunkBlocks)) {
-      for (const [x, xMap] of Object.entries(yMap)) {
-        for (const [z, blockModel] of Object.entries(xMap)) {
-          const blockCoordinates = new Vector3(parseInt(x, 10), parseInt(y, 10), parseInt(z, 10));
-          const model = await this.blockStateLoader.loadAsync(blockModel);
-        }
+    for (const [key, chunk] of this.chunks) {
+      if (!visible.has(key)) {
+        this.chunks.delete(key);
+        chunk.then((node) => node?.dispose()).catch(() => null);
       }
     }
 
-    const subMeshes: Mesh[] = [];
-
-    for (const [blockCoordinates, blockMesh] of blocks) {
-      // check for face culling
-      for (const blockSubMesh of blockMesh.subMeshes) {
-        const tags = Tags.GetTags(blockSubMesh);
+    for (const coordinates of visibleChunks) {
+      if (version !== this.viewVersion) {
+        return;
       }
 
-      subMeshes.push(blockMesh);
-    }
+      const key = `${coordinates.x}.${coordinates.z}`;
 
-    const chunk = Mesh.MergeMeshes(subMeshes);
+      if (!this.chunks.has(key)) {
+        const chunk = this.loadChunkAsync(coordinates).catch(() => null);
+        this.chunks.set(key, chunk);
+        await chunk;
+      }
+    }
   }
 }
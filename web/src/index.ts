@@ -3,22 +3,16 @@ import { Engine } from '@babylonjs/core/Engines/engine';
 import { Vector3 } from '@babylonjs/core/Maths/math.vector';
 import { Scene } from '@babylonjs/core/scene';
 import { ILoadingScreen } from '@babylonjs/core/Loading/loadingScreen';
-import BlockStateLoader from './BlockStateLoader';
-import BlockDataModel from './models/BlockDataModel';
 import ServerModel from './models/ServerModel';
+import VectorXZ from './models/VectorXZ';
+import Constants from './Constants';
 import Helpers from './Helpers';
+import TileMap from './TileMap';
+import WorldLoader from './WorldLoader';
 import './index.scss';
 
 const canvas = document.getElementById('renderCanvas') as HTMLCanvasElement;
-
-fetch('data/server.json').then(async (response) => {
-  if (!response.ok) {
-    throw new Error('Unable to retrieve server data');
-  }
-  const serverData: ServerModel = await response.json();
-  document.title = `${serverData.motd} - ${document.title}`;
-  canvas.setAttribute('aria-label', `3D map of ${serverData.motd}`);
-});
+const tileCanvas = document.getElementById('tileCanvas') as HTMLCanvasElement;
 
 const loadingScreenDiv = document.getElementById('loading') as HTMLDivElement;
 const loadingScreen: ILoadingScreen = {
@@ -42,35 +36,116 @@ const engine = new Engine(
 );
 engine.loadingScreen = loadingScreen;
 
-window.addEventListener('resize', () => {
-  engine.resize();
-});
-
 engine.loadingScreen.displayLoadingUI();
 const scene = new Scene(engine);
 // scene.clearColor = new Color4(0, 0, 0, 1);
 const camera = new UniversalCamera('camera', new Vector3(0, 0, -4), scene);
-camera.attachControl(true);
 
 engine.runRenderLoop(() => {
   scene.render();
 });
 
-Helpers.loadAsync().then(() => {
-  const testBlock: BlockDataModel = {
-    material: 8,
-    data: 'snowy=false',
-    biome: 4,
-    temperature: 0.7,
-    humidity: 0.8,
+/**
+ * Sorts chunks by their distance to a point, nearest first.
+ * @param chunks Coordinates of the chunks.
+ * @param center Block coordinates of the point.
+ * @returns The sorted chunks.
+ */
+const sortByDistance = (chunks: VectorXZ[], center: VectorXZ): VectorXZ[] => {
+  const distance = ({ x, z }: VectorXZ) => {
+    const dx = (x + 0.5) * Constants.WIDTH_OF_CHUNK - center.x;
+    const dz = (z + 0.5) * Constants.DEPTH_OF_CHUNK - center.z;
+    return dx * dx + dz * dz;
+  };
+
+  return chunks.sort((a, b) => distance(a) - distance(b));
+};
+
+/**
+ * Shows the surface tiles of a world when zoomed out and loads the 3D chunks
+ * near the center of the view when zoomed in.
+ * @param serverData Server containing the world.
+ */
+const showMapAsync = async (serverData: ServerModel): Promise<void> => {
+  const world = serverData.worlds[0];
+  const tileMap = new TileMap(world, tileCanvas);
+  const worldLoader = new WorldLoader(
+    world, scene, serverData.chunkFormat, serverData.chunkLayout, serverData.meshes,
+  );
+
+  const updateView = () => {
+    const scale = tileMap.getScale();
+
+    if (scale < Constants.CHUNK_VIEW_SCALE) {
+      tileCanvas.classList.remove('hidden');
+      tileCanvas.classList.add('visible');
+      return;
+    }
+
+    tileCanvas.classList.remove('visible');
+    tileCanvas.classList.add('hidden');
+
+    // Look straight down from the height that shows about as many blocks as
+    // the tiles did at this zoom level.
+    const center = tileMap.getCenter();
+    const altitude = (canvas.clientHeight / scale / 2) / Math.tan(camera.fov / 2);
+    camera.position.set(center.x, world.spawn.y + altitude, center.z);
+    camera.setTarget(new Vector3(center.x, world.spawn.y, center.z - 0.001));
+
+    worldLoader.showChunksAsync(sortByDistance(tileMap.getVisibleChunks(), center));
   };
 
-  // const testBlock: BlockDataModel = { material: 171 };
+  const resize = () => {
+    tileCanvas.width = tileCanvas.clientWidth;
+    tileCanvas.height = tileCanvas.clientHeight;
+    engine.resize();
+    tileMap.draw();
+    updateView();
+  };
+
+  window.addEventListener('resize', resize);
+  resize();
+
+  // Without surface tiles, only the 3D chunks around spawn are shown.
+  await tileMap.loadAsync().catch(() => tileMap.zoomBy(Constants.CHUNK_VIEW_SCALE));
+
+  window.addEventListener('wheel', (ev) => {
+    tileMap.zoomBy(ev.deltaY < 0 ? 1.25 : 0.8);
+    updateView();
+  });
 
-  const loader = new BlockStateLoader(scene);
-  loader.loadAsync(testBlock).then(() => {
-    engine.loadingScreen.hideLoadingUI();
+  let dragging = false;
+  window.addEventListener('pointerdown', () => {
+    dragging = true;
   });
+  window.addEventListener('pointerup', () => {
+    dragging = false;
+  });
+  window.addEventListener('pointermove', (ev) => {
+    if (dragging) {
+      tileMap.panBy(ev.movementX, ev.movementY);
+      updateView();
+    }
+  });
+
+  updateView();
+};
+
+Promise.all([Helpers.loadAsync(), fetch('data/server.json')]).then(async ([, response]) => {
+  if (!response.ok) {
+    throw new Error('Unable to retrieve server data');
+  }
+  const serverData: ServerModel = await response.json();
+  document.title = `${serverData.motd} - ${document.title}`;
+  canvas.setAttribute('aria-label', `3D map of ${serverData.motd}`);
+  tileCanvas.setAttribute('aria-label', `Map of ${serverData.motd}`);
+
+  if (serverData.worlds.length <= 0) {
+    throw new Error('No worlds are defined on the server.');
+  }
+
+  await showMapAsync(serverData);
+  engine.loadingScreen.hideLoadingUI();
 });
 
 // #region Development builds only
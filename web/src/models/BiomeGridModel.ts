@@ -0,0 +1,21 @@
+/**
+ * Stores the biomes of a chunk sampled in cells of 4x4x4 blocks.
+ */
+interface BiomeGridModel {
+  /**
+   * Y coordinate of the bottom of the lowest cell.
+   */
+  minY: number;
+
+  /**
+   * Biome ordinals referenced by the cells.
+   */
+  palette: number[];
+
+  /**
+   * Palette indices of the cells in YZX order.
+   */
+  cells: number[];
+}
+
+export default BiomeGridModel;
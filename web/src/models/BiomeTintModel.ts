@@ -0,0 +1,36 @@
+/**
+ * Stores the climate and tint colors of a biome.
+ */
+interface BiomeTintModel {
+  /**
+   * Name of the biome.
+   */
+  name: string;
+
+  /**
+   * Temperature of the biome.
+   */
+  temperature?: number;
+
+  /**
+   * Humidity of the biome.
+   */
+  humidity?: number;
+
+  /**
+   * Grass tint color as RGB.
+   */
+  grass?: number;
+
+  /**
+   * Foliage tint color as RGB.
+   */
+  foliage?: number;
+
+  /**
+   * Water tint color as RGB.
+   */
+  water?: number;
+}
+
+export default BiomeTintModel;
@@ -2,6 +2,11 @@
  * Stores data used to process a block.
  */
 interface BlockDataModel {
+  /**
+   * Block state ID in the block state table.
+   */
+  state?: number;
+
   /**
    * Material ID ordinal.
    */
@@ -0,0 +1,22 @@
+import BlockModel from './BlockModel';
+import BlockState from './BlockState';
+
+/**
+ * Stores the block states of the materials and the models they use.
+ */
+interface BlockModelBundleModel {
+  /**
+   * Block states by block name without the namespace (e.g. "stone"). Every
+   * variant and part lists its models in an array.
+   */
+  blockstates: Record<string, BlockState>;
+
+  /**
+   * Models merged with their parents by name without the namespace (e.g.
+   * "block/stone"). Texture variables are resolved to the textures they refer
+   * to.
+   */
+  models: Record<string, BlockModel>;
+}
+
+export default BlockModelBundleModel;
@@ -0,0 +1,21 @@
+/**
+ * Stores data used to process a block state.
+ */
+interface BlockStateModel {
+  /**
+   * Full block state string.
+   */
+  name: string;
+
+  /**
+   * Material ID ordinal.
+   */
+  material: number;
+
+  /**
+   * Additional block data.
+   */
+  data?: string;
+}
+
+export default BlockStateModel;
@@ -0,0 +1,28 @@
+import BlockDataModel from './BlockDataModel';
+
+/**
+ * A block read from chunk data.
+ */
+interface ChunkBlock {
+  /**
+   * X coordinate of the block in the chunk.
+   */
+  x: number;
+
+  /**
+   * Y coordinate of the block.
+   */
+  y: number;
+
+  /**
+   * Z coordinate of the block in the chunk.
+   */
+  z: number;
+
+  /**
+   * Data about the block.
+   */
+  block: BlockDataModel;
+}
+
+export default ChunkBlock;
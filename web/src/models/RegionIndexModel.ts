@@ -0,0 +1,13 @@
+/**
+ * Maps the chunks of a region to their content-addressed chunk files.
+ */
+interface RegionIndexModel {
+  /**
+   * SHA-1 hashes of the chunk files keyed by chunk file extension without the
+   * leading dot (such as "json.gz") and then by chunk coordinates formatted as
+   * "x.z".
+   */
+  chunks: Record<string, Record<string, string>>;
+}
+
+export default RegionIndexModel;
@@ -9,6 +9,22 @@ interface ServerModel {
    */
   motd: string;
 
+  /**
+   * Format of the chunk files ("json" or "binary").
+   */
+  chunkFormat?: string;
+
+  /**
+   * Layout of the chunk files ("files", "region-pack" or
+   * "content-addressed").
+   */
+  chunkLayout?: string;
+
+  /**
+   * Status of chunk meshes being written alongside the chunk files.
+   */
+  meshes?: boolean;
+
   /**
    * Worlds on the server.
    */
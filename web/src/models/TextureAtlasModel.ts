@@ -0,0 +1,81 @@
+/**
+ * A page of the texture atlas.
+ */
+export interface AtlasPageModel {
+  /**
+   * File name of the page in the textures folder.
+   */
+  file: string;
+
+  /**
+   * Width of the page in pixels.
+   */
+  width: number;
+
+  /**
+   * Height of the page in pixels.
+   */
+  height: number;
+}
+
+/**
+ * Location of a texture in the texture atlas.
+ */
+export interface AtlasTextureModel {
+  /**
+   * Index of the page containing the texture.
+   */
+  page: number;
+
+  /**
+   * X coordinate of the texture on the page in pixels.
+   */
+  x: number;
+
+  /**
+   * Y coordinate of the texture on the page in pixels.
+   */
+  y: number;
+
+  /**
+   * Width of the texture in pixels.
+   */
+  width: number;
+
+  /**
+   * Height of the first frame of the texture in pixels.
+   */
+  height: number;
+
+  /**
+   * Number of animation frames in the source texture.
+   */
+  frames: number;
+
+  /**
+   * Number of game ticks each animation frame is shown for.
+   */
+  frametime: number;
+}
+
+/**
+ * Index of the texture atlas.
+ */
+interface TextureAtlasModel {
+  /**
+   * Hash of the textures the atlas was built from.
+   */
+  source: string;
+
+  /**
+   * Pages of the atlas.
+   */
+  pages: AtlasPageModel[];
+
+  /**
+   * Locations of the textures by name (e.g. "block/stone").
+   */
+  textures: Record<string, AtlasTextureModel>;
+}
+
+export default TextureAtlasModel;
@@ -0,0 +1,16 @@
+/**
+ * Lists the surface tiles of a world.
+ */
+interface TileIndexModel {
+  /**
+   * Width and height of a tile in pixels.
+   */
+  tileSize: number;
+
+  /**
+   * Coordinates of the tiles of each zoom level formatted as "x.z".
+   */
+  levels: string[][];
+}
+
+export default TileIndexModel;
@@ -4,10 +4,27 @@ uniform vec4 shadeColor;
 
 varying vec2 vUV;
 
+#ifdef ATLAS
+varying vec4 vAtlasRect;
+#endif
+
+#ifdef VERTEX_COLORS
+varying vec4 vColor;
+#endif
+
 void main(void) {
+#ifdef ATLAS
+  // Repeat the texture within its rectangle of the atlas page.
+  vec4 color = texture2D(diffuse, vAtlasRect.xy + fract(vUV) * vAtlasRect.zw);
+#else
   vec4 color = texture2D(diffuse, vUV);
+#endif
   // color *= tintColor;
   // color *= shadeColor;
 
+#ifdef VERTEX_COLORS
+  color *= vColor;
+#endif
+
   gl_FragColor = color;
 }
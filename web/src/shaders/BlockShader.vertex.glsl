@@ -1,12 +1,45 @@
 attribute vec3 position;
 attribute vec2 uv;
 
+#ifdef ATLAS
+attribute vec4 atlasRect;
+#endif
+
+#ifdef VERTEX_COLORS
+attribute vec4 color;
+attribute vec2 lights;
+#endif
+
 uniform mat4 worldViewProjection;
 
+#ifdef VERTEX_COLORS
+uniform float minBrightness;
+uniform float maxBrightness;
+uniform float maxLightLevel;
+#endif
+
 varying vec2 vUV;
 
+#ifdef ATLAS
+varying vec4 vAtlasRect;
+#endif
+
+#ifdef VERTEX_COLORS
+varying vec4 vColor;
+#endif
+
 void main(void) {
   gl_Position = worldViewProjection * vec4(position, 1.0);
 
   vUV = uv;
+
+#ifdef ATLAS
+  vAtlasRect = atlasRect;
+#endif
+
+#ifdef VERTEX_COLORS
+  // Shade the tint by the brighter of the sky and emitted light levels.
+  float brightness = mix(minBrightness, maxBrightness, max(lights.x, lights.y) / maxLightLevel);
+  vColor = vec4(color.rgb * brightness, color.a);
+#endif
 }